@@ -5,6 +5,8 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -14,6 +16,7 @@ import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.execution.*;
 import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.QueryPlanCache;
 import simpledb.optimizer.TableStats;
 import simpledb.storage.IntField;
 import simpledb.storage.StringField;
@@ -48,6 +51,11 @@ public class Parser {
         throw new simpledb.ParsingException("Unknown predicate " + s);
     }
 
+    /** @return whether the expression is a parameter, ?, of a prepared query */
+    private static boolean isParameter(ZExp e) {
+        return e instanceof ZExpression && ((ZExpression) e).getOperator().equals("?");
+    }
+
     void processExpression(TransactionId tid, ZExpression wx, LogicalPlan lp)
             throws simpledb.ParsingException, IOException, ParseException {
         if (wx.getOperator().equals("AND")) {
@@ -75,6 +83,15 @@ public class Parser {
             boolean isJoin = false;
             Predicate.Op op = getOp(wx.getOperator());
 
+            if (isParameter(ops.get(0)) || isParameter(ops.get(1))) {
+                if (!(ops.get(0) instanceof ZConstant)
+                        || ((ZConstant) ops.get(0)).getType() != ZConstant.COLUMNNAME)
+                    throw new simpledb.ParsingException(
+                            "Parameters are only supported in expressions of the form field op ?.");
+                lp.addParameterFilter(((ZConstant) ops.get(0)).getValue(), op);
+                return;
+            }
+
             boolean op1const = ops.get(0) instanceof ZConstant; // otherwise
                                                                       // is a
                                                                       // Query
@@ -139,6 +156,16 @@ public class Parser {
 
     public LogicalPlan parseQueryLogicalPlan(TransactionId tid, ZQuery q)
             throws IOException, Zql.ParseException, simpledb.ParsingException {
+        return parseQueryLogicalPlan(tid, q, -1);
+    }
+
+    /**
+     * Builds the logical plan of a query that returns at most the specified
+     * number of tuples, or all of them if the limit is -1; Zql does not know
+     * about LIMIT, so the limit is parsed by {@link #stripLimit}.
+     */
+    public LogicalPlan parseQueryLogicalPlan(TransactionId tid, ZQuery q, int limit)
+            throws IOException, Zql.ParseException, simpledb.ParsingException {
         @SuppressWarnings("unchecked")
         List<ZFromItem> from = q.getFrom();
         LogicalPlan lp = new LogicalPlan();
@@ -212,8 +239,8 @@ public class Parser {
         // validity
         @SuppressWarnings("unchecked")
         List<ZSelectItem> selectList = q.getSelect();
-        String aggField = null;
-        String aggFun = null;
+        List<String> aggFields = new ArrayList<>();
+        List<String> aggFuns = new ArrayList<>();
 
         for (int i = 0; i < selectList.size(); i++) {
             ZSelectItem si = selectList.get(i);
@@ -223,15 +250,13 @@ public class Parser {
                         "Expressions in SELECT list are not supported.");
             }
             if (si.getAggregate() != null) {
-                if (aggField != null) {
-                    throw new simpledb.ParsingException(
-                            "Aggregates over multiple fields not supported.");
-                }
-                aggField = ((ZConstant) ((ZExpression) si.getExpression())
+                String aggField = ((ZConstant) ((ZExpression) si.getExpression())
                         .getOperand(0)).getValue();
-                aggFun = si.getAggregate();
+                String aggFun = si.getAggregate();
                 System.out.println("Aggregate field is " + aggField
                         + ", agg fun is : " + aggFun);
+                aggFields.add(aggField);
+                aggFuns.add(aggFun);
                 lp.addProjectField(aggField, aggFun);
             } else {
                 if (groupByField != null
@@ -246,32 +271,32 @@ public class Parser {
             }
         }
 
-        if (groupByField != null && aggFun == null) {
+        if (groupByField != null && aggFuns.isEmpty()) {
             throw new simpledb.ParsingException("GROUP BY without aggregation.");
         }
 
-        if (aggFun != null) {
-            lp.addAggregate(aggFun, aggField, groupByField);
+        for (int i = 0; i < aggFuns.size(); i++) {
+            lp.addAggregate(aggFuns.get(i), aggFields.get(i), groupByField);
         }
         // sort the data
 
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             List<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.get(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
+        if (limit >= 0) {
+            lp.addLimit(limit);
+        }
         return lp;
     }
 
@@ -281,14 +306,99 @@ public class Parser {
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws IOException,
             simpledb.ParsingException, Zql.ParseException {
+        Query query = handleQueryStatement(null, s, -1, tId, Collections.emptyList());
+        printQueryPlan(query);
+        return query;
+    }
+
+    /**
+     * Plans the query with the specified LIMIT, or -1, with its parameters
+     * bound to the specified values, and caches the plan in the
+     * QueryPlanCache under the specified normalized text, unless it is null.
+     */
+    private Query handleQueryStatement(String key, ZQuery s, int limit, TransactionId tId, List<String> params)
+            throws IOException,
+            simpledb.ParsingException, Zql.ParseException {
         Query query = new Query(tId);
 
-        LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        LogicalPlan lp = parseQueryLogicalPlan(tId, s, limit);
         OpIterator physicalPlan = lp.physicalPlan(tId,
-                TableStats.getStatsMap(), explain);
+                TableStats.getStatsMap(), explain, params);
         query.setPhysicalPlan(physicalPlan);
         query.setLogicalPlan(lp);
+        if (key != null)
+            QueryPlanCache.put(key, lp);
+        return query;
+    }
+
+    /**
+     * Plans the query with the specified normalized text, with its
+     * parameters bound to the specified values: the plan in the
+     * QueryPlanCache is converted for the transaction if there is one, and
+     * otherwise the query is parsed, optimized and cached.
+     */
+    Query planQuery(String key, TransactionId tId, List<String> params)
+            throws IOException, simpledb.ParsingException {
+        LogicalPlan lp = QueryPlanCache.get(key);
+        if (lp != null)
+            return cachedQuery(lp, tId, params);
+        try {
+            // Zql needs the semicolon normalizing removed
+            StrippedStatement stripped = stripLimit(key + ";");
+            return handleQueryStatement(key, parseQuery(stripped), stripped.limit, tId, params);
+        } catch (Zql.ParseException | TokenMgrError e) {
+            throw new simpledb.ParsingException("Invalid SQL expression: \n \t " + e);
+        }
+    }
+
+    /** Parses the query with the specified normalized text, stripped of its LIMIT clause. */
+    private ZQuery parseQuery(StrippedStatement stripped) throws simpledb.ParsingException, Zql.ParseException {
+        ZStatement s = parseStatement(stripped.text);
+        if (!(s instanceof ZQuery))
+            throw new simpledb.ParsingException("Not a query: " + stripped.text);
+        return (ZQuery) s;
+    }
+
+    private static Query cachedQuery(LogicalPlan lp, TransactionId tId, List<String> params)
+            throws simpledb.ParsingException {
+        Query query = new Query(tId);
+        query.setPhysicalPlan(lp.instantiate(tId, params));
+        query.setLogicalPlan(lp);
+        return query;
+    }
 
+    /**
+     * Prepares a query whose filters may compare fields with parameters,
+     * written <tt>field op ?</tt>, whose values are given each time it runs.
+     * The query is parsed, optimized and cached when it is prepared, and only
+     * again when the catalog or the table statistics change, or its plan is
+     * dropped from the QueryPlanCache.
+     *
+     * @throws ParsingException if the query is invalid or has subqueries
+     */
+    public PreparedQuery prepare(String query) throws simpledb.ParsingException {
+        String key = QueryPlanCache.normalize(query);
+        LogicalPlan lp = QueryPlanCache.get(key);
+        if (lp == null) {
+            TransactionId tid = new TransactionId();
+            try {
+                StrippedStatement stripped = stripLimit(key + ";");
+                lp = parseQueryLogicalPlan(tid, parseQuery(stripped), stripped.limit);
+            } catch (IOException | Zql.ParseException | TokenMgrError e) {
+                throw new simpledb.ParsingException("Invalid SQL expression: \n \t " + e);
+            }
+            if (!lp.isReusable())
+                throw new simpledb.ParsingException("Queries with subqueries cannot be prepared: " + query);
+            lp.optimize(tid, TableStats.getStatsMap(), explain);
+            QueryPlanCache.put(key, lp);
+        }
+        return new PreparedQuery(key, lp.numParameters());
+    }
+
+    /** Prints the plan of a query, with the cardinality of each operator. */
+    private static void printQueryPlan(Query query) {
+        OpIterator physicalPlan = query.getPhysicalPlan();
+        LogicalPlan lp = query.getLogicalPlan();
         if (physicalPlan != null) {
             Class<?> c;
             try {
@@ -312,13 +422,18 @@ public class Parser {
                 e.printStackTrace();
             }
         }
-
-        return query;
     }
 
     public Query handleInsertStatement(ZInsert s, TransactionId tId)
             throws DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
+        return handleInsertStatement(s, -1, tId);
+    }
+
+    /** Plans the insert of the values, or of the tuples of the query with the specified LIMIT, or -1. */
+    private Query handleInsertStatement(ZInsert s, int limit, TransactionId tId)
+            throws DbException, IOException,
+            simpledb.ParsingException, Zql.ParseException {
         int tableId;
         try {
             tableId = Database.getCatalog().getTableId(s.getTable()); // will
@@ -382,7 +497,7 @@ public class Parser {
 
         } else {
             ZQuery zq = s.getQuery();
-            LogicalPlan lp = parseQueryLogicalPlan(tId, zq);
+            LogicalPlan lp = parseQueryLogicalPlan(tId, zq, limit);
             newTups = lp.physicalPlan(tId, TableStats.getStatsMap(), explain);
         }
         Query insertQ = new Query(tId);
@@ -465,12 +580,11 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException, IOException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
-        ZqlParser p = new ZqlParser(bis);
         try {
-            ZStatement stmt = p.readStatement();
+            StrippedStatement stripped = stripLimit(s);
+            ZStatement stmt = parseStatement(stripped.text);
             if (stmt instanceof ZQuery) {
-                return parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                return parseQueryLogicalPlan(tid, (ZQuery) stmt, stripped.limit);
             }
         } catch (Zql.ParseException e) {
             throw new simpledb.ParsingException(
@@ -493,10 +607,93 @@ public class Parser {
         processNextStatement(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)));
     }
 
+    /**
+     * Zql does not know about LIMIT, so a trailing "LIMIT n" clause is removed
+     * from the statement text before it is parsed, and its limit is passed
+     * to {@link #parseQueryLogicalPlan(TransactionId, ZQuery, int)}.
+     */
+    private static final Pattern LIMIT_CLAUSE = Pattern.compile(
+            "\\s+limit\\s+(\\d+)\\s*(;?)\\s*$", Pattern.CASE_INSENSITIVE);
+
+    /** The text of a statement without its LIMIT clause, and the limit, or -1 if it has none. */
+    private static final class StrippedStatement {
+        final String text;
+        final int limit;
+
+        StrippedStatement(String text, int limit) {
+            this.text = text;
+            this.limit = limit;
+        }
+    }
+
+    private static StrippedStatement stripLimit(String s) throws simpledb.ParsingException {
+        Matcher m = LIMIT_CLAUSE.matcher(s);
+        if (!m.find())
+            return new StrippedStatement(s, -1);
+        try {
+            return new StrippedStatement(s.substring(0, m.start()) + m.group(2), Integer.parseInt(m.group(1)));
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("Invalid LIMIT " + m.group(1));
+        }
+    }
+
+    /** Parses a statement without a LIMIT clause (see {@link #stripLimit}). */
+    private static ZStatement parseStatement(String s) throws Zql.ParseException {
+        ZqlParser p = new ZqlParser(new ByteArrayInputStream(
+                s.getBytes(StandardCharsets.UTF_8)));
+        return p.readStatement();
+    }
+
+    private static String readStatement(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = is.read(buf)) != -1)
+            bos.write(buf, 0, n);
+        return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * ANALYZE [table, ...] recomputes the statistics of the specified tables,
+     * or of every table, and saves them; Zql does not know about it either.
+     */
+    private static final Pattern ANALYZE_STATEMENT = Pattern.compile(
+            "^\\s*analyze((?:\\s+\\w+\\s*,?)*+)\\s*;?\\s*$", Pattern.CASE_INSENSITIVE);
+
+    private void handleAnalyzeStatement(String tables) throws simpledb.ParsingException {
+        List<String> names = new ArrayList<>();
+        for (String name : tables.split("[\\s,]+")) {
+            if (name.isEmpty())
+                continue;
+            try {
+                Database.getCatalog().getTableId(name);
+            } catch (NoSuchElementException e) {
+                throw new simpledb.ParsingException("Unknown table " + name);
+            }
+            names.add(name);
+        }
+        if (names.isEmpty()) {
+            Iterator<Integer> tableIt = Database.getCatalog().tableIdIterator();
+            while (tableIt.hasNext())
+                names.add(Database.getCatalog().getTableName(tableIt.next()));
+        }
+        TableStats.analyze(names);
+        System.out.println("Analyzed " + names.size() + " table(s).");
+    }
+
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
-            ZStatement s = p.readStatement();
+            String statement = readStatement(is);
+            Matcher analyze = ANALYZE_STATEMENT.matcher(statement);
+            if (analyze.matches()) {
+                handleAnalyzeStatement(analyze.group(1));
+                return;
+            }
+            // a query whose plan is cached is not parsed again
+            String key = QueryPlanCache.normalize(statement);
+            LogicalPlan cached = QueryPlanCache.get(key);
+            StrippedStatement stripped = stripLimit(statement);
+            ZStatement s = cached == null ? parseStatement(stripped.text) : null;
 
             Query query = null;
             if (s instanceof ZTransactStmt)
@@ -509,16 +706,20 @@ public class Parser {
                             + curtrans.getId().getId());
                 }
                 try {
-                    if (s instanceof ZInsert)
-                        query = handleInsertStatement((ZInsert) s,
+                    if (cached != null) {
+                        query = cachedQuery(cached, curtrans.getId(), Collections.emptyList());
+                        printQueryPlan(query);
+                    } else if (s instanceof ZInsert)
+                        query = handleInsertStatement((ZInsert) s, stripped.limit,
                                 curtrans.getId());
                     else if (s instanceof ZDelete)
                         query = handleDeleteStatement((ZDelete) s,
                                 curtrans.getId());
-                    else if (s instanceof ZQuery)
-                        query = handleQueryStatement((ZQuery) s,
-                                curtrans.getId());
-                    else {
+                    else if (s instanceof ZQuery) {
+                        query = handleQueryStatement(key, (ZQuery) s, stripped.limit,
+                                curtrans.getId(), Collections.emptyList());
+                        printQueryPlan(query);
+                    } else {
                         System.out
                                 .println("Can't parse "
                                         + s
@@ -567,7 +768,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit", "analyze" };
 
     public static void main(String[] argv) throws IOException {
 
@@ -593,7 +794,8 @@ public class Parser {
     protected void start(String[] argv) throws IOException {
         // first add tables to database
         Database.getCatalog().loadSchema(argv[0]);
-        TableStats.computeStatistics();
+        // statistics saved by an earlier run are loaded on first use
+        TableStats.setStatsFile(new File(argv[0] + ".stats"));
 
         String queryFile = null;
 
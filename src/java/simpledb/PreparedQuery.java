@@ -0,0 +1,58 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.execution.Query;
+import simpledb.transaction.TransactionId;
+
+/**
+ * A query prepared by {@link Parser#prepare}, whose filters may compare
+ * fields with parameters, written ?, bound to values each time it runs. Its
+ * optimized plan is kept in the {@link simpledb.optimizer.QueryPlanCache},
+ * so that running it again only binds the parameters and creates the
+ * operators for the transaction. Several threads may bind it at once.
+ */
+public class PreparedQuery {
+
+    private final String text;
+    private final int numParameters;
+
+    PreparedQuery(String text, int numParameters) {
+        this.text = text;
+        this.numParameters = numParameters;
+    }
+
+    /** @return the normalized text of the query */
+    public String getText() {
+        return text;
+    }
+
+    /** @return the number of parameters of the query */
+    public int numParameters() {
+        return numParameters;
+    }
+
+    /**
+     * Binds the parameters of the query to the specified values, Integers
+     * for integer fields and Strings for string fields, in the order they
+     * appear in the query.
+     *
+     * @return the query, to be run as a part of the specified transaction
+     * @throws ParsingException if the values do not match the parameters, or
+     *         the query is no longer valid
+     */
+    public Query bind(TransactionId tid, Object... params) throws ParsingException {
+        if (params.length != numParameters)
+            throw new ParsingException("Expected " + numParameters + " parameters, got " + params.length);
+        List<String> values = new ArrayList<>(params.length);
+        for (Object param : params)
+            values.add(String.valueOf(param));
+        try {
+            return new Parser().planQuery(text, tid, values);
+        } catch (IOException e) {
+            throw new ParsingException(e);
+        }
+    }
+}
@@ -11,6 +11,10 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The Catalog keeps track of all available tables in the database and their
@@ -25,10 +29,14 @@ public class Catalog {
 
     ConcurrentHashMap<Integer,Table> intTablesMap;
     ConcurrentHashMap<String,Table> stringTablesMap;
+    /** Counts changes to the tables, so that plans made before one can tell. */
+    private final AtomicLong version = new AtomicLong();
     public class Table{
         public String tableName;
         public DbFile tableFile;
         public String pkeyField;
+        /** The groups of correlated fields whose statistics are kept together. */
+        public final List<int[]> columnGroups = new CopyOnWriteArrayList<>();
         public Table(String tableName, DbFile tableFile, String pkeyField){
             this.tableName = tableName;
             this.tableFile = tableFile;
@@ -64,6 +72,7 @@ public class Catalog {
         }
         stringTablesMap.put(name,table);
         intTablesMap.put(file.getId(),table);
+        version.incrementAndGet();
     }
 
     public void addTable(DbFile file, String name) {
@@ -130,6 +139,52 @@ public class Catalog {
     }
 
 
+    /**
+     * Declares a group of correlated fields of a table, such as a city and
+     * its zip code, whose values TableStats samples together to estimate
+     * conjunctions of predicates on them, rather than taking the predicates
+     * to be independent. Statistics computed before the group was declared
+     * are not affected.
+     *
+     * @param tableid the id of the table
+     * @param fields the indices of two or more distinct fields of the table
+     * @throws NoSuchElementException if the table doesn't exist
+     * @throws IllegalArgumentException if the fields are not two or more
+     *     distinct fields of the table
+     */
+    public void addColumnGroup(int tableid, int... fields) {
+        Table table = intTablesMap.get(tableid);
+        if (table == null)
+            throw new NoSuchElementException();
+        int[] group = fields.clone();
+        Arrays.sort(group);
+        int numFields = table.tableFile.getTupleDesc().numFields();
+        for (int i = 0; i < group.length; i++) {
+            if (group[i] < 0 || group[i] >= numFields || (i > 0 && group[i] == group[i - 1]))
+                throw new IllegalArgumentException("invalid field " + group[i] + " in column group");
+        }
+        if (group.length < 2)
+            throw new IllegalArgumentException("a column group needs at least two fields");
+        for (int[] g : table.columnGroups) {
+            if (Arrays.equals(g, group))
+                return;
+        }
+        table.columnGroups.add(group);
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return the column groups of the specified table, each the sorted
+     *     indices of its fields
+     * @throws NoSuchElementException if the table doesn't exist
+     */
+    public List<int[]> getColumnGroups(int tableid) {
+        Table table = intTablesMap.get(tableid);
+        if (table == null)
+            throw new NoSuchElementException();
+        return Collections.unmodifiableList(table.columnGroups);
+    }
+
     class TableIdIterator implements Iterator<Integer> {
         private final Iterator<Table> tableIter;
 
@@ -166,10 +221,24 @@ public class Catalog {
         // some code goes here
         intTablesMap.clear();
         stringTablesMap.clear();
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return a number that changes whenever a table or column group is
+     *     added or the catalog is cleared
+     */
+    public long getVersion() {
+        return version.get();
     }
     
+    private static final Pattern COLUMN_GROUP = Pattern.compile("group\\s*\\(([^)]*)\\)");
+
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line is of the form <tt>name (field type [pk] [dict], ...)</tt>,
+     * where <tt>dict</tt> marks a string field that is dictionary-encoded,
+     * optionally followed by column groups <tt>group (field, field, ...)</tt>.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -187,6 +256,7 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<>();
                 ArrayList<Type> types = new ArrayList<>();
                 String primaryKey = "";
+                ArrayList<Integer> encoded = new ArrayList<>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -198,11 +268,13 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("dict") && types.get(types.size() - 1) == Type.STRING_TYPE)
+                            encoded.add(names.size() - 1);
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
@@ -210,14 +282,23 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                int[] encodedAr = encoded.stream().mapToInt(Integer::intValue).toArray();
+                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t, encodedAr);
                 addTable(tabHf,name,primaryKey);
+                Matcher groups = COLUMN_GROUP.matcher(line.substring(line.indexOf(")") + 1));
+                while (groups.find()) {
+                    String[] groupFields = groups.group(1).split(",");
+                    int[] group = new int[groupFields.length];
+                    for (int i = 0; i < group.length; i++)
+                        group[i] = t.fieldNameToIndex(groupFields[i].trim());
+                    addColumnGroup(tabHf.getId(), group);
+                }
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
-        } catch (IndexOutOfBoundsException e) {
+        } catch (IndexOutOfBoundsException | NoSuchElementException | IllegalArgumentException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
         }
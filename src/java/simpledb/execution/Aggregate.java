@@ -2,29 +2,65 @@ package simpledb.execution;
 
 import simpledb.common.DbException;
 import simpledb.common.Type;
+import simpledb.storage.BufferPool;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.storage.TupleSpillFile;
 import simpledb.transaction.TransactionAbortedException;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
- * min). Note that we only support aggregates over a single column, grouped by a
- * single column.
+ * min). Several aggregates, each over a single column, may be computed in one
+ * pass over the input; results are grouped by at most a single column.
+ * <p>
+ * Groups are aggregated in a hash table until it reaches the memory budget.
+ * From then on, tuples of groups already in the table are still merged into
+ * it, while tuples of new groups are partitioned by the hash of their group
+ * value into {@link TupleSpillFile}s. Since every tuple of a group goes to
+ * the same partition, each partition is aggregated on its own once the
+ * in-memory groups have been returned, spilling again if it is still too
+ * large.
  */
-public class Aggregate extends Operator {
+public class Aggregate extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Default number of bytes of groups an Aggregate keeps in memory before spilling. */
+    public static final int DEFAULT_AGGREGATE_MEMORY = 8 * 1024 * 1024;
+
+    /** Maximum number of partitions the input is spilled to at a time. */
+    static final int MAX_PARTITIONS = 64;
+
+    /** Partitions nested deeper than this are not split again. */
+    private static final int MAX_DEPTH = 8;
+
+    private static int aggregateMemory = DEFAULT_AGGREGATE_MEMORY;
+
     private OpIterator child;
-    private int afield;
-    private int gfield;
-    private Aggregator.Op op;
-    private Aggregator aggregator;
+    private final int[] afields;
+    private final int gfield;
+    private final Aggregator.Op[] ops;
+    private final int memoryBudget;
+    private final int depth;
     private TupleDesc td;
     private OpIterator it;
+    private Aggregator aggregator;
+    private final List<TupleSpillFile> partitions = new ArrayList<>();
+    private int nextPartition;
+    private transient Aggregate partitionAgg;
+    private transient TupleBatch batch;
+    /** True for the per-fragment aggregates of {@link #parallel}. */
+    private boolean partial = false;
+    /** The TupleDesc of a merging aggregate of {@link #parallel}, or null. */
+    private TupleDesc outputTd;
     /**
      * Constructor.
      * <p>
@@ -39,23 +75,147 @@ public class Aggregate extends Operator {
      * @param aop    The aggregation operator to use
      */
     public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop) {
-        // some code goes here
+        this(child, new int[] { afield }, gfield, new Aggregator.Op[] { aop });
+    }
+
+    /**
+     * Constructor for computing several aggregates in the same pass.
+     *
+     * @param child   The OpIterator that is feeding us tuples.
+     * @param afields The columns over which we are computing aggregates.
+     * @param gfield  The column over which we are grouping the result, or -1
+     *                if there is no grouping
+     * @param aops    The aggregation operator to use for each column in
+     *                afields
+     * @throws IllegalArgumentException if afields and aops differ in length
+     */
+    public Aggregate(OpIterator child, int[] afields, int gfield, Aggregator.Op[] aops) {
+        this(child, afields, gfield, aops, aggregateMemory);
+    }
+
+    /**
+     * Constructor for computing several aggregates in the same pass that
+     * keeps at most memoryBudget bytes of groups in memory.
+     *
+     * @param memoryBudget the number of bytes of groups to keep in memory;
+     *                     see {@link #estimateGroupMemory}
+     */
+    public Aggregate(OpIterator child, int[] afields, int gfield, Aggregator.Op[] aops,
+                     int memoryBudget) {
+        this(child, afields, gfield, aops, memoryBudget, 0);
+    }
+
+    private Aggregate(OpIterator child, int[] afields, int gfield, Aggregator.Op[] aops,
+                      int memoryBudget, int depth) {
+        if (afields.length == 0 || afields.length != aops.length)
+            throw new IllegalArgumentException("need one operator per aggregate field");
         this.child = child;
-        this.afield = afield;
+        this.afields = afields.clone();
         this.gfield = gfield;
-        this.op = aop;
-        Type gfieldType;
-        if(gfield==-1){
-            gfieldType = null;
-        }else{
-            gfieldType = child.getTupleDesc().getFieldType(gfield);
+        this.ops = aops.clone();
+        this.memoryBudget = memoryBudget;
+        this.depth = depth;
+        // fail now rather than in open() if an aggregate is not supported
+        newAggregator();
+    }
+
+    /**
+     * Creates an aggregate that is computed in parallel over fragments of its
+     * input: each fragment is aggregated into partial groups on a worker
+     * thread, and the partial groups are gathered and merged by the returned
+     * Aggregate. Partial COUNTs are merged by summing them, and AVG is
+     * computed from SUM_COUNT partials with SC_AVG.
+     *
+     * @param fragments disjoint parts of the input that together make up the
+     *                  whole input, see {@link Gather}
+     * @return the merging aggregate, which has the same TupleDesc as an
+     *         Aggregate over the whole input
+     * @throws IllegalArgumentException if an operator cannot be merged
+     */
+    public static Aggregate parallel(OpIterator[] fragments, int[] afields, int gfield,
+                                     Aggregator.Op[] aops) {
+        Aggregator.Op[] partialOps = new Aggregator.Op[aops.length];
+        Aggregator.Op[] mergeOps = new Aggregator.Op[aops.length];
+        int[] mergeFields = new int[aops.length];
+        int next = gfield == Aggregator.NO_GROUPING ? 0 : 1;
+        for (int i = 0; i < aops.length; i++) {
+            switch (aops[i]) {
+            case COUNT:
+                partialOps[i] = Aggregator.Op.COUNT;
+                mergeOps[i] = Aggregator.Op.SUM;
+                break;
+            case AVG:
+                partialOps[i] = Aggregator.Op.SUM_COUNT;
+                mergeOps[i] = Aggregator.Op.SC_AVG;
+                break;
+            case MIN:
+            case MAX:
+            case SUM:
+                partialOps[i] = mergeOps[i] = aops[i];
+                break;
+            default:
+                throw new IllegalArgumentException("Aggregate " + aops[i] + " cannot be computed in parallel");
+            }
+            mergeFields[i] = next;
+            next += partialOps[i] == Aggregator.Op.SUM_COUNT ? 3 : 1;
         }
 
-        if(child.getTupleDesc().getFieldType(afield)== Type.INT_TYPE){
-            aggregator = new IntegerAggregator(gfield,gfieldType,afield,op);
-        }else{
-            aggregator = new StringAggregator(gfield,gfieldType,afield,op);
+        OpIterator[] partials = new OpIterator[fragments.length];
+        for (int f = 0; f < fragments.length; f++) {
+            Aggregate a = new Aggregate(fragments[f], afields, gfield, partialOps);
+            a.partial = true;
+            partials[f] = a;
+        }
+        Aggregate merge = new Aggregate(new Gather(partials), mergeFields,
+                gfield == Aggregator.NO_GROUPING ? Aggregator.NO_GROUPING : 0, mergeOps);
+        merge.outputTd = new Aggregate(fragments[0], afields, gfield, aops).getTupleDesc();
+        return merge;
+    }
+
+    /**
+     * @return true if this is one of the per-fragment aggregates of a
+     *         parallel aggregate
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public static int getAggregateMemory() {
+        return aggregateMemory;
+    }
+
+    /**
+     * Set the memory budget, in bytes, of Aggregate operators created
+     * afterwards.
+     */
+    public static void setAggregateMemory(int bytes) {
+        Aggregate.aggregateMemory = bytes;
+    }
+
+    public static void resetAggregateMemory() {
+        Aggregate.aggregateMemory = DEFAULT_AGGREGATE_MEMORY;
+    }
+
+    /**
+     * Estimates the number of heap bytes one group occupies in the hash
+     * table: the table entry and group value, plus the state of each
+     * aggregate.
+     */
+    static int estimateGroupMemory(TupleDesc childTd, int gfield, int numAggregates) {
+        int keySize = gfield == Aggregator.NO_GROUPING ? 0 : childTd.getFieldType(gfield).getLen();
+        return 64 + keySize + numAggregates * 48;
+    }
+
+    private Aggregator newAggregator() {
+        TupleDesc childTd = child.getTupleDesc();
+        Type gfieldType = gfield == -1 ? null : childTd.getFieldType(gfield);
+        if (afields.length == 1 && childTd.getFieldType(afields[0]) == Type.STRING_TYPE)
+            return new StringAggregator(gfield, gfieldType, afields[0], ops[0]);
+        for (int i = 0; i < afields.length; i++) {
+            if (childTd.getFieldType(afields[i]) == Type.STRING_TYPE && ops[i] != Aggregator.Op.COUNT)
+                throw new IllegalArgumentException("Only COUNT is supported over string fields");
         }
+        return new IntegerAggregator(gfield, gfieldType, afields, ops);
     }
 
     /**
@@ -87,7 +247,7 @@ public class Aggregate extends Operator {
      */
     public int aggregateField() {
         // some code goes here
-        return afield;
+        return afields[0];
     }
 
     /**
@@ -96,7 +256,7 @@ public class Aggregate extends Operator {
      */
     public String aggregateFieldName() {
         // some code goes here
-        return child.getTupleDesc().getFieldName(afield);
+        return child.getTupleDesc().getFieldName(afields[0]);
     }
 
     /**
@@ -104,23 +264,141 @@ public class Aggregate extends Operator {
      */
     public Aggregator.Op aggregateOp() {
         // some code goes here
-        return op;
+        return ops[0];
+    }
+
+    /**
+     * @return the fields of the <b>INPUT</b> tuples that are aggregated, in
+     * the order their results appear in the output
+     */
+    public int[] aggregateFields() {
+        return afields.clone();
+    }
+
+    /**
+     * @return the aggregate operator for each field in {@link #aggregateFields}
+     */
+    public Aggregator.Op[] aggregateOps() {
+        return ops.clone();
+    }
+
+    /**
+     * @return the number of aggregates computed
+     */
+    protected int numAggregates() {
+        return afields.length;
+    }
+
+    /**
+     * @return the field of the <b>INPUT</b> tuples that aggregate i is
+     * computed over
+     */
+    protected int aggregateField(int i) {
+        return afields[i];
+    }
+
+    /**
+     * @return the operator of aggregate i
+     */
+    protected Aggregator.Op aggregateOp(int i) {
+        return ops[i];
     }
 
     public static String nameOfAggregatorOp(Aggregator.Op aop) {
         return aop.toString();
     }
 
+    /**
+     * @return the number of partitions spilled to disk by the last open(), or
+     *         0 if all groups fit in memory.
+     */
+    public int numSpilledPartitions() {
+        return partitions.size();
+    }
+
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
         // some code goes here
         child.open();
-        while(child.hasNext()){
-            aggregator.mergeTupleIntoGroup(child.next());
+        aggregateChild();
+        super.open();
+    }
+
+    /**
+     * Consumes the opened child and prepares the results for fetchNext();
+     * called by open() and, when the input must be read again, by rewind().
+     */
+    protected void aggregateChild() throws DbException, TransactionAbortedException {
+        deletePartitions();
+        aggregator = newAggregator();
+        int groupMemory = estimateGroupMemory(child.getTupleDesc(), gfield, afields.length);
+        boolean canSpill = gfield != Aggregator.NO_GROUPING && depth < MAX_DEPTH;
+        BatchIterator in = BatchAdapter.batches(child);
+        TupleBatch b;
+        while ((b = in.nextBatch()) != null) {
+            // a batch adds at most one group per row, so while the budget
+            // leaves room for that many groups, merge it in one go
+            if (partitions.isEmpty() && (!canSpill
+                    || (long) (aggregator.numGroups() + b.numSelected()) * groupMemory < memoryBudget)) {
+                aggregator.mergeBatch(b);
+                continue;
+            }
+            for (int i = 0; i < b.numSelected(); i++) {
+                Tuple t = b.getTuple(b.selected(i));
+                if (partitions.isEmpty()) {
+                    aggregator.mergeTupleIntoGroup(t);
+                    if (canSpill && (long) aggregator.numGroups() * groupMemory >= memoryBudget)
+                        createPartitions();
+                } else if (!aggregator.mergeTupleIntoExistingGroup(t)) {
+                    spill(t);
+                }
+            }
+        }
+        try {
+            for (TupleSpillFile f : partitions)
+                f.finish();
+        } catch (IOException e) {
+            throw new DbException("could not write aggregate partition: " + e.getMessage());
+        }
+        if (partial && aggregator.numGroups() == 0) {
+            // an empty fragment must not contribute an empty ungrouped result
+            it = new TupleIterator(getTupleDesc(), Collections.emptyList());
+        } else {
+            it = aggregator.iterator();
         }
-        it = aggregator.iterator();
         it.open();
-        super.open();
+        nextPartition = 0;
+    }
+
+    private void createPartitions() throws DbException {
+        int n = Math.max(2, Math.min(MAX_PARTITIONS, memoryBudget / (2 * BufferPool.getPageSize())));
+        try {
+            for (int i = 0; i < n; i++)
+                partitions.add(new TupleSpillFile(child.getTupleDesc()));
+        } catch (IOException e) {
+            throw new DbException("could not create aggregate partition: " + e.getMessage());
+        }
+    }
+
+    private void spill(Tuple t) throws DbException {
+        // mix in the depth so that a partition is split differently from its parent
+        int h = t.getField(gfield).hashCode() * 0x9E3779B9 + depth * 0x7F4A7C15;
+        h ^= h >>> 15;
+        try {
+            partitions.get(Math.floorMod(h, partitions.size())).append(t);
+        } catch (IOException e) {
+            throw new DbException("could not write aggregate partition: " + e.getMessage());
+        }
+    }
+
+    private void deletePartitions() {
+        if (partitionAgg != null) {
+            partitionAgg.close();
+            partitionAgg = null;
+        }
+        for (TupleSpillFile f : partitions)
+            f.delete();
+        partitions.clear();
     }
 
     /**
@@ -132,16 +410,52 @@ public class Aggregate extends Operator {
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
-        if(it.hasNext()){
+        if(it != null && it.hasNext()){
             return it.next();
         }
-        return null;
+        if (partitions.isEmpty())
+            return null;
+        // then the groups of each spilled partition, one partition at a time;
+        // the in-memory groups are dropped first to make room for them
+        if (it != null) {
+            it.close();
+            it = null;
+            aggregator = null;
+        }
+        while (true) {
+            if (partitionAgg != null && partitionAgg.hasNext())
+                return partitionAgg.next();
+            if (partitionAgg != null) {
+                partitionAgg.close();
+                partitionAgg = null;
+            }
+            if (nextPartition >= partitions.size())
+                return null;
+            TupleSpillFile f = partitions.get(nextPartition++);
+            if (f.numTuples() == 0)
+                continue;
+            partitionAgg = new Aggregate(new SpillFileScan(f), afields, gfield, ops,
+                    memoryBudget, depth + 1);
+            partitionAgg.open();
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        return BatchAdapter.fill(this, batch);
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
-        child.rewind();
-        it.rewind();
+        if (partitions.isEmpty()) {
+            it.rewind();
+        } else {
+            // the in-memory groups may have been dropped already, so
+            // aggregate the input again
+            child.rewind();
+            aggregateChild();
+        }
     }
 
     /**
@@ -157,23 +471,31 @@ public class Aggregate extends Operator {
      */
     public TupleDesc getTupleDesc() {
         // some code goes here
+        if (outputTd != null)
+            return outputTd;
         TupleDesc child_td = child.getTupleDesc();
-        Type[] types;
-        String[] names;
-        if(gfield == -1){
-            types = new Type[1];
-            types[0] = Type.INT_TYPE;
-            names = new String[1];
-            names[0] = op.toString()+" ("+child_td.getFieldName(afield)+")";
-        }else{
-            types = new Type[2];
-            types[0] = child.getTupleDesc().getFieldType(gfield);
-            types[1] = Type.INT_TYPE;
-            names = new String[2];
-            names[0] = child.getTupleDesc().getFieldName(gfield);
-            names[1] = op.toString()+" ("+child_td.getFieldName(afield)+")";
-        }
-        td = new TupleDesc(types,names);
+        List<Type> types = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        if (gfield != -1) {
+            types.add(child_td.getFieldType(gfield));
+            names.add(child_td.getFieldName(gfield));
+        }
+        for (int i = 0; i < afields.length; i++) {
+            String fieldName = child_td.getFieldName(afields[i]);
+            if (ops[i] == Aggregator.Op.SUM_COUNT) {
+                // the high and low halves of the sum, then a count field
+                types.add(Type.INT_TYPE);
+                names.add(Aggregator.Op.SUM.toString() + " high (" + fieldName + ")");
+                types.add(Type.INT_TYPE);
+                names.add(Aggregator.Op.SUM.toString() + " low (" + fieldName + ")");
+                types.add(Type.INT_TYPE);
+                names.add(Aggregator.Op.COUNT.toString() + " (" + fieldName + ")");
+            } else {
+                types.add(Type.INT_TYPE);
+                names.add(ops[i].toString() + " (" + fieldName + ")");
+            }
+        }
+        td = new TupleDesc(types.toArray(new Type[0]), names.toArray(new String[0]));
         return td;
     }
 
@@ -181,7 +503,11 @@ public class Aggregate extends Operator {
         // some code goes here
         super.close();
         child.close();
-        it.close();
+        if (it != null)
+            it.close();
+        it = null;
+        aggregator = null;
+        deletePartitions();
     }
 
     @Override
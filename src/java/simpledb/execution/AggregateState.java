@@ -0,0 +1,63 @@
+package simpledb.execution;
+
+import java.io.Serializable;
+
+/**
+ * The running state of one aggregate over one group: a count, a sum kept as
+ * a long so that it cannot overflow while values are merged, and the minimum
+ * and maximum seen so far. Every {@link Aggregator.Op} that IntegerAggregator
+ * supports can be computed from these four values, so a group needs O(1)
+ * memory however many tuples it contains.
+ */
+final class AggregateState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    long count;
+    long sum;
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+
+    /** Merges a value into the state. */
+    void add(int value) {
+        count++;
+        sum += value;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+    }
+
+    /** Merges another partial state for the same group into this one. */
+    void merge(AggregateState other) {
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return the value of the aggregate op over the merged values; 0 if no
+     *         values were merged. SUM is truncated to an int, since aggregate
+     *         results are IntFields.
+     */
+    int result(Aggregator.Op op) {
+        if (count == 0)
+            return 0;
+        switch (op) {
+        case MIN:
+            return min;
+        case MAX:
+            return max;
+        case SUM:
+            return (int) sum;
+        case AVG:
+        case SC_AVG:
+            return (int) (sum / count);
+        case COUNT:
+            return (int) count;
+        default:
+            throw new IllegalArgumentException("Aggregate not implemented.");
+        }
+    }
+}
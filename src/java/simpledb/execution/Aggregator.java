@@ -79,6 +79,33 @@ public interface Aggregator extends Serializable {
      */
     void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * Merges the selected rows of a batch into the aggregate, as if by
+     * {@link #mergeTupleIntoGroup} for each row.
+     *
+     * @param batch the tuples to merge
+     */
+    default void mergeBatch(TupleBatch batch) {
+        for (int i = 0; i < batch.numSelected(); i++)
+            mergeTupleIntoGroup(batch.getTuple(batch.selected(i)));
+    }
+
+    /**
+     * Merge a new tuple into the aggregate only if its group value has
+     * already been encountered. Used by {@link Aggregate} to keep the groups
+     * it holds in memory up to date once it has started spilling new groups
+     * to disk.
+     *
+     * @param tup the Tuple containing an aggregate field and a group-by field
+     * @return true if the tuple was merged, false if its group is new
+     */
+    boolean mergeTupleIntoExistingGroup(Tuple tup);
+
+    /**
+     * @return the number of distinct groups merged so far
+     */
+    int numGroups();
+
     /**
      * Create a OpIterator over group aggregate results.
      * @see TupleIterator for a possible helper
@@ -0,0 +1,139 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Adapts between the tuple-at-a-time OpIterator interface and the
+ * batch-at-a-time {@link BatchIterator} interface, so that operators of
+ * either kind compose.
+ */
+public final class BatchAdapter {
+
+    private BatchAdapter() {
+    }
+
+    /**
+     * @return it, if it is a BatchIterator, and otherwise a BatchIterator
+     *         that reads its batches from it with next(); it is opened,
+     *         rewound and closed through the returned iterator
+     */
+    public static BatchIterator batches(OpIterator it) {
+        if (it instanceof BatchIterator)
+            return (BatchIterator) it;
+        return new TupleBatches(it);
+    }
+
+    /**
+     * @return an OpIterator returning the selected rows of the batches of it
+     *         one at a time; it is opened, rewound and closed through the
+     *         returned iterator
+     */
+    public static OpIterator tuples(BatchIterator it) {
+        return new BatchTuples(it);
+    }
+
+    /**
+     * Fills batch from the next() method of it, which is how operators that
+     * produce one tuple at a time implement nextBatch().
+     *
+     * @return batch, or null if it has no more tuples
+     */
+    public static TupleBatch fill(OpIterator it, TupleBatch batch)
+            throws DbException, TransactionAbortedException {
+        batch.clear();
+        while (!batch.isFull() && it.hasNext())
+            batch.add(it.next());
+        return batch.numRows() == 0 ? null : batch;
+    }
+
+    private static class TupleBatches implements BatchIterator {
+        private static final long serialVersionUID = 1L;
+        private final OpIterator child;
+        private transient TupleBatch batch;
+
+        TupleBatches(OpIterator child) {
+            this.child = child;
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+            if (batch == null)
+                batch = new TupleBatch(child.getTupleDesc());
+            return fill(child, batch);
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            return child.hasNext();
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            return child.next();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void close() {
+            child.close();
+        }
+    }
+
+    private static class BatchTuples implements OpIterator {
+        private static final long serialVersionUID = 1L;
+        private final BatchIterator child;
+        private transient TupleBatch batch;
+        private transient int pos;
+
+        BatchTuples(BatchIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            batch = null;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (batch == null || pos == batch.numSelected()) {
+                batch = child.nextBatch();
+                pos = 0;
+                if (batch == null)
+                    return false;
+            }
+            return true;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return batch.getTuple(batch.selected(pos++));
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+            batch = null;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void close() {
+            child.close();
+            batch = null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * An OpIterator that can also return its tuples a batch at a time, which
+ * saves the per-tuple calls of hasNext() and next() and lets operators work
+ * on whole columns of a batch. A consumer should read an iterator either
+ * with next() or with nextBatch() between calls of open() or rewind(), not
+ * both. {@link BatchAdapter} adapts between the two interfaces.
+ */
+public interface BatchIterator extends OpIterator {
+
+    /**
+     * Returns the next batch of tuples. The batch belongs to the iterator,
+     * which may reuse it for the next batch, so it is only valid until the
+     * next call of nextBatch(); the consumer may narrow its selection.
+     *
+     * @return the next batch, with at least one selected row, or null if
+     *         there are no more tuples
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+}
@@ -0,0 +1,45 @@
+package simpledb.execution;
+
+import java.io.Serializable;
+
+/**
+ * An exchange that gives each of a number of consumers, usually on different
+ * worker threads, the whole output of its fragments; e.g. to join every
+ * fragment of a large input with all of a small one.
+ * <p>
+ * The fragments are run to completion when the first output is opened, and
+ * their output is kept, and shared by the outputs, until all outputs have
+ * been closed: in memory up to the budget of
+ * {@link Exchange#getExchangeMemory}, and in spill files beyond it.
+ */
+public class Broadcast implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ExchangeReader[] outputs;
+
+    /**
+     * @param numOutputs the number of consumers
+     * @param fragments the plan fragments whose output is broadcast; a
+     *                  single serial plan is a fragment too
+     */
+    public Broadcast(int numOutputs, OpIterator... fragments) {
+        if (numOutputs < 1)
+            throw new IllegalArgumentException("need at least one output");
+        ExchangeBuffer buffer = new ExchangeBuffer(fragments, 1, numOutputs, t -> 0);
+        outputs = new ExchangeReader[numOutputs];
+        for (int i = 0; i < numOutputs; i++)
+            outputs[i] = new ExchangeReader("broadcast " + i + "/" + numOutputs, buffer, i, 0);
+    }
+
+    public int numOutputs() {
+        return outputs.length;
+    }
+
+    /**
+     * @return the operator returning the tuples for consumer i
+     */
+    public Exchange output(int i) {
+        return outputs[i];
+    }
+}
@@ -0,0 +1,438 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.IntField;
+import simpledb.storage.StringDictionary;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A conjunction of {@link Predicate}s specialized for the TupleDesc they are
+ * evaluated against, so that a Filter does not dispatch through
+ * {@link simpledb.storage.Field#compare} and a switch on the operator for
+ * every tuple.
+ * <p>
+ * {@link #compile} picks one small final class per kind of comparison, with
+ * the field index and the constant held in final fields:
+ * <ul>
+ * <li>comparisons of an INT field with an INT constant other than
+ * NOT_EQUALS become a range test, and the ranges of several predicates on the
+ * same field are intersected into one, so <tt>a &gt; 5 AND a &lt;= 10</tt> is
+ * a single test and a contradiction such as <tt>a = 1 AND a = 2</tt> matches
+ * nothing without reading any tuple;</li>
+ * <li>NOT_EQUALS on INT, and EQUALS and LIKE on STRING compare the raw value
+ * directly, and EQUALS on a dictionary-encoded STRING compares codes;</li>
+ * <li>any other predicate is evaluated by the Predicate itself.</li>
+ * </ul>
+ * Conjuncts are evaluated cheapest first: INT tests, then string tests, then
+ * interpreted predicates.
+ * <p>
+ * INT tests can also be evaluated on a serialized tuple, which lets a
+ * HeapPage skip decoding the tuples they reject: see {@link #mayMatch} and
+ * {@link #residual}.
+ */
+public abstract class CompiledPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return true if t satisfies the predicate
+     */
+    public abstract boolean matches(Tuple t);
+
+    /**
+     * Removes the rows that do not satisfy the predicate from the selection
+     * of batch.
+     *
+     * @return the number of rows still selected
+     */
+    public int filter(TupleBatch batch) {
+        int[] sel = batch.selection();
+        int n = batch.numSelected();
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (matches(batch.getTuple(sel[i])))
+                sel[k++] = sel[i];
+        }
+        batch.setNumSelected(k);
+        return k;
+    }
+
+    /**
+     * Tests a tuple serialized in a page without decoding it, as far as that
+     * is possible: a tuple that passes must still be tested with
+     * {@link #residual}.
+     *
+     * @param data
+     *            the bytes of the page
+     * @param offset
+     *            the offset of the tuple in data
+     * @param fieldOffsets
+     *            the offset of each field within the tuple
+     * @return false if the tuple does not satisfy the predicate
+     */
+    public boolean mayMatch(byte[] data, int offset, int[] fieldOffsets) {
+        return true;
+    }
+
+    /**
+     * @return the part of this predicate that {@link #mayMatch} does not
+     *         test, or null if it tests all of it
+     */
+    public CompiledPredicate residual() {
+        return this;
+    }
+
+    /** Reads an INT serialized by {@link IntField#serialize}. */
+    static int readInt(byte[] b, int o) {
+        return (b[o] << 24) | ((b[o + 1] & 0xff) << 16) | ((b[o + 2] & 0xff) << 8) | (b[o + 3] & 0xff);
+    }
+
+    /**
+     * Compiles the conjunction of the specified predicates over tuples with
+     * the specified TupleDesc.
+     *
+     * @param td
+     *            the TupleDesc of the tuples the predicates are evaluated on
+     * @param conjuncts
+     *            the predicates that tuples must all satisfy
+     * @throws IllegalArgumentException if there are no predicates
+     */
+    public static CompiledPredicate compile(TupleDesc td, Predicate... conjuncts) {
+        if (conjuncts.length == 0)
+            throw new IllegalArgumentException("need at least one predicate");
+        Map<Integer, long[]> ranges = new LinkedHashMap<>();
+        List<CompiledPredicate> intTests = new ArrayList<>();
+        List<CompiledPredicate> stringTests = new ArrayList<>();
+        List<CompiledPredicate> interpreted = new ArrayList<>();
+        for (Predicate p : conjuncts) {
+            Type type = td.getFieldType(p.getField());
+            if (type == Type.INT_TYPE && p.getOperand() instanceof IntField) {
+                int c = ((IntField) p.getOperand()).getValue();
+                if (p.getOp() == Predicate.Op.NOT_EQUALS) {
+                    intTests.add(new IntNotEquals(p.getField(), c));
+                    continue;
+                }
+                long[] range = ranges.computeIfAbsent(p.getField(),
+                        f -> new long[] { Integer.MIN_VALUE, Integer.MAX_VALUE });
+                switch (p.getOp()) {
+                case EQUALS:
+                case LIKE:
+                    range[0] = Math.max(range[0], c);
+                    range[1] = Math.min(range[1], c);
+                    break;
+                case GREATER_THAN:
+                    range[0] = Math.max(range[0], (long) c + 1);
+                    break;
+                case GREATER_THAN_OR_EQ:
+                    range[0] = Math.max(range[0], c);
+                    break;
+                case LESS_THAN:
+                    range[1] = Math.min(range[1], (long) c - 1);
+                    break;
+                case LESS_THAN_OR_EQ:
+                    range[1] = Math.min(range[1], c);
+                    break;
+                default:
+                    throw new IllegalStateException("impossible to reach here");
+                }
+            } else if (type == Type.STRING_TYPE && p.getOperand() instanceof StringField
+                    && p.getOp() == Predicate.Op.EQUALS) {
+                stringTests.add(new StringEquals(p.getField(), ((StringField) p.getOperand()).getValue()));
+            } else if (type == Type.STRING_TYPE && p.getOperand() instanceof StringField
+                    && p.getOp() == Predicate.Op.LIKE) {
+                stringTests.add(new StringContains(p.getField(), ((StringField) p.getOperand()).getValue()));
+            } else {
+                interpreted.add(new Interpreted(p));
+            }
+        }
+
+        List<CompiledPredicate> all = new ArrayList<>();
+        for (Map.Entry<Integer, long[]> e : ranges.entrySet()) {
+            long[] range = e.getValue();
+            if (range[0] > range[1])
+                return new Nothing();
+            all.add(new IntRange(e.getKey(), (int) range[0], (int) range[1]));
+        }
+        all.addAll(intTests);
+        all.addAll(stringTests);
+        all.addAll(interpreted);
+        if (all.size() == 1)
+            return all.get(0);
+        return new And(all.toArray(new CompiledPredicate[0]));
+    }
+
+    /** lo &lt;= field &lt;= hi on an INT field. */
+    static final class IntRange extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field;
+        private final int lo;
+        private final int hi;
+
+        IntRange(int field, int lo, int hi) {
+            this.field = field;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        public boolean matches(Tuple t) {
+            int v = t.getInt(field);
+            return v >= lo && v <= hi;
+        }
+
+        public boolean mayMatch(byte[] data, int offset, int[] fieldOffsets) {
+            int v = readInt(data, offset + fieldOffsets[field]);
+            return v >= lo && v <= hi;
+        }
+
+        public CompiledPredicate residual() {
+            return null;
+        }
+
+        public int filter(TupleBatch batch) {
+            int[] col = batch.intColumn(field);
+            int[] sel = batch.selection();
+            int n = batch.numSelected();
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                int v = col[row];
+                if (v >= lo && v <= hi)
+                    sel[k++] = row;
+            }
+            batch.setNumSelected(k);
+            return k;
+        }
+
+        public String toString() {
+            if (lo == hi)
+                return "$" + field + " = " + lo;
+            return (lo == Integer.MIN_VALUE ? "" : lo + " <= ") + "$" + field
+                    + (hi == Integer.MAX_VALUE ? "" : " <= " + hi);
+        }
+    }
+
+    /** field &lt;&gt; c on an INT field. */
+    static final class IntNotEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field;
+        private final int c;
+
+        IntNotEquals(int field, int c) {
+            this.field = field;
+            this.c = c;
+        }
+
+        public boolean matches(Tuple t) {
+            return t.getInt(field) != c;
+        }
+
+        public boolean mayMatch(byte[] data, int offset, int[] fieldOffsets) {
+            return readInt(data, offset + fieldOffsets[field]) != c;
+        }
+
+        public CompiledPredicate residual() {
+            return null;
+        }
+
+        public int filter(TupleBatch batch) {
+            int[] col = batch.intColumn(field);
+            int[] sel = batch.selection();
+            int n = batch.numSelected();
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (col[row] != c)
+                    sel[k++] = row;
+            }
+            batch.setNumSelected(k);
+            return k;
+        }
+
+        public String toString() {
+            return "$" + field + " <> " + c;
+        }
+    }
+
+    /**
+     * field = s on a STRING field. Fields decoded from a StringDictionary are
+     * compared by code with the code of s in their dictionary.
+     */
+    static final class StringEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field;
+        private final String s;
+        /** The code of s in the dictionary of the last field tested. */
+        private transient volatile Code code;
+
+        /** The code of s in a dictionary of a given size, or -1. */
+        private static final class Code {
+            final StringDictionary dict;
+            final int size;
+            final int code;
+
+            Code(StringDictionary dict, String s) {
+                this.dict = dict;
+                // the size is read first, so a value added meanwhile is
+                // looked up again
+                this.size = dict.size();
+                this.code = dict.code(s);
+            }
+        }
+
+        StringEquals(int field, String s) {
+            this.field = field;
+            this.s = s;
+        }
+
+        public boolean matches(Tuple t) {
+            StringField f = (StringField) t.getField(field);
+            StringDictionary dict = f.getDictionary();
+            if (dict == null)
+                return s.equals(f.getValue());
+            Code c = code;
+            // a value that was not in the dictionary may have been added
+            if (c == null || c.dict != dict || (c.code < 0 && c.size != dict.size()))
+                code = c = new Code(dict, s);
+            return f.getCode() == c.code;
+        }
+
+        public String toString() {
+            return "$" + field + " = '" + s + "'";
+        }
+    }
+
+    /** field LIKE s on a STRING field, which tests for a substring. */
+    static final class StringContains extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field;
+        private final String s;
+
+        StringContains(int field, String s) {
+            this.field = field;
+            this.s = s;
+        }
+
+        public boolean matches(Tuple t) {
+            return ((StringField) t.getField(field)).getValue().contains(s);
+        }
+
+        public String toString() {
+            return "$" + field + " LIKE '" + s + "'";
+        }
+    }
+
+    /** A predicate evaluated by {@link Predicate#filter}. */
+    static final class Interpreted extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final Predicate p;
+
+        Interpreted(Predicate p) {
+            this.p = p;
+        }
+
+        public boolean matches(Tuple t) {
+            return p.filter(t);
+        }
+
+        public int filter(TupleBatch batch) {
+            return p.filter(batch);
+        }
+
+        public String toString() {
+            return p.toString();
+        }
+    }
+
+    /** A contradiction, which no tuple satisfies. */
+    static final class Nothing extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+
+        public boolean matches(Tuple t) {
+            return false;
+        }
+
+        public boolean mayMatch(byte[] data, int offset, int[] fieldOffsets) {
+            return false;
+        }
+
+        public CompiledPredicate residual() {
+            return null;
+        }
+
+        public int filter(TupleBatch batch) {
+            batch.setNumSelected(0);
+            return 0;
+        }
+
+        public String toString() {
+            return "false";
+        }
+    }
+
+    /** A conjunction, evaluated in order and stopping at the first failure. */
+    static final class And extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final CompiledPredicate[] conjuncts;
+
+        And(CompiledPredicate[] conjuncts) {
+            this.conjuncts = conjuncts;
+        }
+
+        public boolean matches(Tuple t) {
+            for (CompiledPredicate c : conjuncts) {
+                if (!c.matches(t))
+                    return false;
+            }
+            return true;
+        }
+
+        public boolean mayMatch(byte[] data, int offset, int[] fieldOffsets) {
+            for (CompiledPredicate c : conjuncts) {
+                if (!c.mayMatch(data, offset, fieldOffsets))
+                    return false;
+            }
+            return true;
+        }
+
+        public CompiledPredicate residual() {
+            List<CompiledPredicate> rest = new ArrayList<>();
+            for (CompiledPredicate c : conjuncts) {
+                CompiledPredicate r = c.residual();
+                if (r != null)
+                    rest.add(r);
+            }
+            if (rest.size() == conjuncts.length)
+                return this;
+            if (rest.isEmpty())
+                return null;
+            if (rest.size() == 1)
+                return rest.get(0);
+            return new And(rest.toArray(new CompiledPredicate[0]));
+        }
+
+        public int filter(TupleBatch batch) {
+            int k = batch.numSelected();
+            for (int i = 0; i < conjuncts.length && k > 0; i++)
+                k = conjuncts[i].filter(batch);
+            return k;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (CompiledPredicate c : conjuncts) {
+                if (sb.length() > 0)
+                    sb.append(" AND ");
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package simpledb.execution;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Type;
+import simpledb.optimizer.TableStats;
 import simpledb.storage.BufferPool;
 import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
@@ -82,10 +83,18 @@ public class Delete extends Operator {
         // some code goes here
         if(isDone)
             return null;
+        int tableid = -1;
+        TableStats stats = null;
         while (child.hasNext()) {
             Tuple tuple = child.next();
+            if (tuple.getRecordId().getPageId().getTableId() != tableid) {
+                tableid = tuple.getRecordId().getPageId().getTableId();
+                stats = TableStats.forTable(tableid);
+            }
             try{
                 Database.getBufferPool().deleteTuple(tid,tuple);
+                if (stats != null)
+                    stats.removeTuple(tuple);
             }catch(IOException e){
                 e.printStackTrace();
             }
@@ -94,6 +103,8 @@ public class Delete extends Operator {
         Tuple t = new Tuple(td);
         t.setField(0,new IntField(cnt));
         isDone = true;
+        if (tableid != -1)
+            TableStats.recordModifications(tid, tableid, cnt);
         return t;
     }
 
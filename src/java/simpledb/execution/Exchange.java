@@ -0,0 +1,96 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * Base class of the operators that move tuples between threads. The inputs
+ * of an exchange are plan fragments, copies of the same partial plan that
+ * each read a disjoint part of the data (typically through a
+ * {@link MorselScan}), which the exchange runs on worker threads of the
+ * {@link WorkerPool}:
+ * <ul>
+ * <li>a {@link Gather} returns the union of its fragments' output to a
+ * single consumer;</li>
+ * <li>a {@link Repartition} routes the output of its fragments into
+ * partitions by the hash of a field, so that the partitions can be processed
+ * independently, e.g. by one HashEquiJoin each;</li>
+ * <li>a {@link Broadcast} gives every consumer the whole output.</li>
+ * </ul>
+ */
+public abstract class Exchange extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of bytes of tuples the fragments of a Repartition or a
+     * Broadcast keep in memory before spilling.
+     */
+    public static final int DEFAULT_EXCHANGE_MEMORY = 8 * 1024 * 1024;
+
+    private static int exchangeMemory = DEFAULT_EXCHANGE_MEMORY;
+
+    private final String name;
+
+    protected Exchange(String name) {
+        this.name = name;
+    }
+
+    public static int getExchangeMemory() {
+        return exchangeMemory;
+    }
+
+    /**
+     * Set the memory budget, in bytes, of the Repartitions and Broadcasts
+     * created afterwards.
+     */
+    public static void setExchangeMemory(int bytes) {
+        Exchange.exchangeMemory = bytes;
+    }
+
+    public static void resetExchangeMemory() {
+        Exchange.exchangeMemory = DEFAULT_EXCHANGE_MEMORY;
+    }
+
+    /**
+     * @return a short description of this exchange, for printing plans
+     */
+    public String getName() {
+        return name;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return getChildren()[0].getTupleDesc();
+    }
+
+    /**
+     * Resets the shared sources of the {@link MorselScan}s of the specified
+     * fragments, so that running the fragments scans their tables again.
+     * Exchanges within the fragments reset their own inputs when they run.
+     */
+    static void resetMorselScans(OpIterator[] fragments) {
+        for (OpIterator f : fragments) {
+            if (f instanceof MorselScan)
+                ((MorselScan) f).getSource().reset();
+            else if (f instanceof Operator && !(f instanceof Exchange))
+                resetMorselScans(((Operator) f).getChildren());
+        }
+    }
+
+    /**
+     * Rethrows an exception thrown by a fragment on a worker thread in the
+     * thread that consumes the fragment's output.
+     */
+    static void rethrow(Throwable e) throws DbException, TransactionAbortedException {
+        if (e instanceof DbException)
+            throw (DbException) e;
+        if (e instanceof TransactionAbortedException)
+            throw (TransactionAbortedException) e;
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        throw new DbException("plan fragment failed: " + e);
+    }
+}
@@ -0,0 +1,209 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleSpillFile;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The output of plan fragments that are run once on worker threads, routed
+ * into a number of lists, for the readers of a {@link Repartition} or a
+ * {@link Broadcast}. The fragments are run when the first reader is opened,
+ * and the output is dropped once every reader has been closed, so readers on
+ * different threads may be opened, read and rewound in any order.
+ * <p>
+ * The fragments together keep at most memoryBudget bytes of tuples in
+ * memory (see {@link OrderBy#estimateTupleMemory}). A fragment that pushes
+ * the total past the budget moves its lists into {@link TupleSpillFile}s and
+ * appends the rest of its output to them.
+ */
+final class ExchangeBuffer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Chooses the list a tuple goes to. */
+    interface Router extends Serializable {
+        int route(Tuple t);
+    }
+
+    /** The tuples one fragment routed into one list. */
+    static final class Part {
+        final List<Tuple> tuples = new ArrayList<>();
+        /** The tuples spilled, or null if there are none. */
+        TupleSpillFile spilled;
+
+        private void spill(TupleDesc td, Tuple t) throws IOException {
+            if (spilled == null)
+                spilled = new TupleSpillFile(td);
+            spilled.append(t);
+        }
+
+        private void delete() {
+            if (spilled != null)
+                spilled.delete();
+            spilled = null;
+        }
+    }
+
+    private OpIterator[] fragments;
+    private final int numLists;
+    private final Router router;
+    private final int memoryBudget;
+    private final boolean[] closed;
+    /** The output of each fragment, by fragment and list, or null if not run. */
+    private transient Part[][] output;
+    /** The bytes of tuples the fragments of the current run keep in memory. */
+    private transient AtomicLong buffered;
+
+    ExchangeBuffer(OpIterator[] fragments, int numLists, int numReaders, Router router) {
+        if (fragments.length == 0)
+            throw new IllegalArgumentException("need at least one fragment");
+        this.fragments = fragments.clone();
+        this.numLists = numLists;
+        this.router = router;
+        this.memoryBudget = Exchange.getExchangeMemory();
+        this.closed = new boolean[numReaders];
+    }
+
+    synchronized OpIterator[] getFragments() {
+        return fragments.clone();
+    }
+
+    /**
+     * Replaces the fragments, dropping the output of the old ones.
+     *
+     * @throws IllegalArgumentException if there are no fragments
+     */
+    synchronized void setFragments(OpIterator[] fragments) {
+        if (fragments.length == 0)
+            throw new IllegalArgumentException("need at least one fragment");
+        this.fragments = fragments.clone();
+        drop();
+    }
+
+    /**
+     * Runs the fragments unless their output is still available, and returns
+     * the parts of the specified list.
+     */
+    synchronized List<Part> open(int list) throws DbException, TransactionAbortedException {
+        if (output == null)
+            run();
+        List<Part> parts = new ArrayList<>(output.length);
+        for (Part[] lists : output)
+            parts.add(lists[list]);
+        return parts;
+    }
+
+    synchronized void close(int reader) {
+        closed[reader] = true;
+        for (boolean c : closed) {
+            if (!c)
+                return;
+        }
+        drop();
+        Arrays.fill(closed, false);
+    }
+
+    private void drop() {
+        if (output != null) {
+            for (Part[] lists : output) {
+                if (lists == null)
+                    continue;
+                for (Part p : lists)
+                    p.delete();
+            }
+        }
+        output = null;
+    }
+
+    private void run() throws DbException, TransactionAbortedException {
+        Exchange.resetMorselScans(fragments);
+        buffered = new AtomicLong();
+        List<Future<Part[]>> results = new ArrayList<>();
+        for (OpIterator f : fragments)
+            results.add(WorkerPool.getExecutor().submit(() -> drain(f)));
+        Part[][] out = new Part[fragments.length][];
+        // wait for every fragment, even after a failure, so that none is
+        // still running when the fragments are run again
+        Throwable error = null;
+        boolean interrupted = false;
+        for (int i = 0; i < out.length; i++) {
+            while (true) {
+                try {
+                    out[i] = results.get(i).get();
+                } catch (ExecutionException e) {
+                    if (error == null)
+                        error = e.getCause();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    continue;
+                }
+                break;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        output = out;
+        if (error != null) {
+            drop();
+            Exchange.rethrow(error);
+        }
+    }
+
+    private Part[] drain(OpIterator fragment) throws DbException, TransactionAbortedException {
+        Part[] lists = new Part[numLists];
+        for (int i = 0; i < numLists; i++)
+            lists[i] = new Part();
+        TupleDesc td = fragment.getTupleDesc();
+        int tupleMemory = OrderBy.estimateTupleMemory(td);
+        long held = 0;
+        boolean spilling = false, done = false;
+        fragment.open();
+        try {
+            while (fragment.hasNext()) {
+                Tuple t = fragment.next();
+                Part p = lists[router.route(t)];
+                if (spilling) {
+                    p.spill(td, t);
+                    continue;
+                }
+                p.tuples.add(t);
+                held += tupleMemory;
+                if (buffered.addAndGet(tupleMemory) > memoryBudget) {
+                    // over budget: this fragment spills from now on
+                    for (Part l : lists) {
+                        for (Tuple s : l.tuples)
+                            l.spill(td, s);
+                        l.tuples.clear();
+                    }
+                    buffered.addAndGet(-held);
+                    spilling = true;
+                }
+            }
+            for (Part l : lists) {
+                if (l.spilled != null)
+                    l.spilled.finish();
+            }
+            done = true;
+        } catch (IOException e) {
+            throw new DbException("error spilling exchange output: " + e.getMessage());
+        } finally {
+            fragment.close();
+            if (!done) {
+                for (Part l : lists)
+                    l.delete();
+            }
+        }
+        return lists;
+    }
+}
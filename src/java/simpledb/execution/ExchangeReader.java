@@ -0,0 +1,97 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads one list of an {@link ExchangeBuffer}: a partition of a
+ * {@link Repartition} or an output of a {@link Broadcast}.
+ */
+class ExchangeReader extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ExchangeBuffer buffer;
+    private final int reader;
+    private final int list;
+    private transient List<ExchangeBuffer.Part> parts;
+    private transient int part;
+    private transient Iterator<Tuple> it;
+    /** The spilled tuples of the current part, read after those in memory. */
+    private transient DbFileIterator spilled;
+
+    ExchangeReader(String name, ExchangeBuffer buffer, int reader, int list) {
+        super(name);
+        this.buffer = buffer;
+        this.reader = reader;
+        this.list = list;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        parts = buffer.open(list);
+        rewind();
+        super.open();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (true) {
+            if (it != null && it.hasNext())
+                return it.next();
+            if (spilled != null && spilled.hasNext())
+                return spilled.next();
+            closeSpilled();
+            if (part >= parts.size())
+                return null;
+            ExchangeBuffer.Part p = parts.get(part++);
+            it = p.tuples.iterator();
+            if (p.spilled != null) {
+                spilled = p.spilled.iterator();
+                spilled.open();
+            }
+        }
+    }
+
+    private void closeSpilled() {
+        if (spilled != null)
+            spilled.close();
+        spilled = null;
+    }
+
+    public void rewind() {
+        part = 0;
+        it = null;
+        closeSpilled();
+    }
+
+    public void close() {
+        super.close();
+        closeSpilled();
+        if (parts != null)
+            buffer.close(reader);
+        parts = null;
+        it = null;
+    }
+
+    /**
+     * @return the fragments whose output is read; they are shared with the
+     *         other readers of the same exchange
+     */
+    @Override
+    public OpIterator[] getChildren() {
+        return buffer.getFragments();
+    }
+
+    /**
+     * Replaces the fragments whose output is read, for this reader and the
+     * other readers of the same exchange.
+     */
+    @Override
+    public void setChildren(OpIterator[] children) {
+        buffer.setFragments(children);
+    }
+}
@@ -0,0 +1,79 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * FieldFilter is an operator that returns the tuples of its child in which
+ * two fields satisfy a predicate. The planner uses it for a join predicate
+ * between two tables that another join already joined, as in a cycle of
+ * joins or a join on several fields.
+ */
+public class FieldFilter extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private final JoinPredicate p;
+    private OpIterator child;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            the predicate, whose fields are both fields of the child's
+     *            tuples
+     * @param child
+     *            the child operator
+     */
+    public FieldFilter(JoinPredicate p, OpIterator child) {
+        this.p = p;
+        this.child = child;
+    }
+
+    public JoinPredicate getPredicate() {
+        return p;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (p.filter(t, t))
+                return t;
+        }
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
@@ -8,14 +8,28 @@ import simpledb.storage.TupleDesc;
 import java.util.*;
 
 /**
- * Filter is an operator that implements a relational select.
+ * Filter is an operator that implements a relational select. Read a batch at
+ * a time, it narrows the selection of its child's batches.
+ * <p>
+ * When opened, a Filter evaluates its predicate as a {@link CompiledPredicate}.
+ * A chain of plain Filters directly below it, as the planner builds for the
+ * conjuncts of a WHERE clause on one table, is fused into the same compiled
+ * conjunction: the Filter then reads from the operator below the chain and
+ * the Filters in between are bypassed. If that operator is a scan of a
+ * HeapFile, the conjunction is pushed into the scan, which evaluates it as
+ * pages are decoded and returns only the tuples that satisfy it.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private final Predicate p;
     //private final TupleDesc td;
     private OpIterator child;
+    private transient OpIterator input;
+    private transient CompiledPredicate compiled;
+    /** Whether input is a scan that evaluates compiled itself. */
+    private transient boolean pushed;
+    private transient BatchIterator batches;
     /**
      * Constructor accepts a predicate to apply and a child operator to read
      * tuples to filter from.
@@ -44,19 +58,36 @@ public class Filter extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         // some code goes here
-        child.open();
+        List<Predicate> conjuncts = new ArrayList<>();
+        conjuncts.add(p);
+        OpIterator in = child;
+        while (in.getClass() == Filter.class) {
+            conjuncts.add(((Filter) in).p);
+            in = ((Filter) in).child;
+        }
+        compiled = CompiledPredicate.compile(in.getTupleDesc(), conjuncts.toArray(new Predicate[0]));
+        pushed = in instanceof SeqScan && ((SeqScan) in).pushPredicate(compiled);
+        in.open();
+        input = in;
+        batches = BatchAdapter.batches(in);
         super.open();
     }
 
     public void close() {
         // some code goes here
         super.close();
-        child.close();
+        if (input != null)
+            input.close();
+        if (pushed)
+            ((SeqScan) input).pushPredicate(null);
+        pushed = false;
+        input = null;
+        batches = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
-        child.rewind();
+        input.rewind();
     }
 
     /**
@@ -66,20 +97,35 @@ public class Filter extends Operator {
      * 
      * @return The next tuple that passes the filter, or null if there are no
      *         more tuples
-     * @see Predicate#filter
+     * @see CompiledPredicate#matches
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
         // some code goes here
-        while(child.hasNext()) {
-            Tuple next = child.next();
-            if(p.filter(next)) {
+        if (pushed)
+            return input.hasNext() ? input.next() : null;
+        while(input.hasNext()) {
+            Tuple next = input.next();
+            if(compiled.matches(next)) {
                 return next;
             }
         }
         return null;
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batches == null)
+            throw new IllegalStateException("Operator not yet open");
+        if (pushed)
+            return batches.nextBatch();
+        TupleBatch batch;
+        while ((batch = batches.nextBatch()) != null) {
+            if (compiled.filter(batch) > 0)
+                return batch;
+        }
+        return null;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
@@ -0,0 +1,178 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An exchange that runs each of its fragments on a worker thread and returns
+ * the union of their output, in no particular order.
+ * <p>
+ * Workers hand their tuples over in batches through a bounded queue, so a
+ * slow consumer throttles the workers instead of having their output
+ * buffered. Closing or rewinding the Gather stops the workers and waits for
+ * them to close their fragments; an exception in a fragment is rethrown by
+ * the Gather.
+ */
+public class Gather extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Maximum number of tuples a worker hands over at a time. */
+    static final int BATCH_SIZE = 512;
+
+    /** Marks the end of a worker's output in the queue. */
+    private static final List<Tuple> END = Collections.unmodifiableList(new ArrayList<>());
+
+    private OpIterator[] fragments;
+    private transient Run run;
+    private transient Iterator<Tuple> batch;
+
+    /**
+     * @param fragments the plan fragments to run in parallel
+     * @throws IllegalArgumentException if there are no fragments
+     */
+    public Gather(OpIterator... fragments) {
+        super("gather x" + fragments.length);
+        if (fragments.length == 0)
+            throw new IllegalArgumentException("need at least one fragment");
+        this.fragments = fragments.clone();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (run != null)
+            run.cancel();
+        resetMorselScans(fragments);
+        run = new Run();
+        batch = null;
+        for (OpIterator f : fragments)
+            WorkerPool.getExecutor().execute(() -> run.work(f));
+        super.open();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (batch == null || !batch.hasNext()) {
+            List<Tuple> next = run.take();
+            if (next == null)
+                return null;
+            batch = next.iterator();
+        }
+        return batch.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    public void close() {
+        super.close();
+        if (run != null)
+            run.cancel();
+        run = null;
+        batch = null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return fragments.clone();
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.fragments = children.clone();
+    }
+
+    /** The state of one execution of the fragments, shared with the workers. */
+    private class Run {
+        private final int numWorkers = fragments.length;
+        private final BlockingQueue<List<Tuple>> queue = new ArrayBlockingQueue<>(4 * numWorkers);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final CountDownLatch done = new CountDownLatch(numWorkers);
+        private volatile boolean cancelled = false;
+        private int finished = 0;
+
+        void work(OpIterator fragment) {
+            List<Tuple> out = new ArrayList<>(BATCH_SIZE);
+            try {
+                fragment.open();
+                while (!cancelled && fragment.hasNext()) {
+                    out.add(fragment.next());
+                    if (out.size() == BATCH_SIZE) {
+                        if (!put(out))
+                            return;
+                        out = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!out.isEmpty())
+                    put(out);
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            } finally {
+                fragment.close();
+                put(END);
+                done.countDown();
+            }
+        }
+
+        /** @return false if the run was cancelled before the batch was queued */
+        private boolean put(List<Tuple> b) {
+            try {
+                while (!queue.offer(b, 10, TimeUnit.MILLISECONDS)) {
+                    if (cancelled)
+                        return false;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /** @return the next batch, or null once every worker has finished */
+        List<Tuple> take() throws DbException, TransactionAbortedException {
+            while (finished < numWorkers) {
+                List<Tuple> b;
+                try {
+                    b = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DbException("interrupted while gathering tuples");
+                }
+                if (b != END)
+                    return b;
+                finished++;
+                Throwable e = error.get();
+                if (e != null) {
+                    cancel();
+                    rethrow(e);
+                }
+            }
+            return null;
+        }
+
+        /** Stops the workers and waits until they have closed their fragments. */
+        void cancel() {
+            cancelled = true;
+            queue.clear();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
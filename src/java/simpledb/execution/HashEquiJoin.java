@@ -2,22 +2,39 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
+import simpledb.common.Type;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * The Join operator implements the relational join operation. It hashes a
+ * part of its left child, then probes the hash table with a whole batch of
+ * its right child at a time, reading the join field of an INT join as a
+ * column of the batch; its tuples are returned from the batches it joins.
  */
-public class HashEquiJoin extends Operator {
+public class HashEquiJoin extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private final JoinPredicate pred;
     private OpIterator child1, child2;
     private final TupleDesc comboTD;
-    transient private Tuple t1 = null;
+    /** Whether the join fields are INT fields, hashed as Integers rather than Fields. */
+    private final boolean intKeys;
+    /** The children, read a batch at a time. */
+    transient private BatchIterator in1, in2;
+    /** The batch of child2 being probed, and the position of its next selected row. */
+    transient private TupleBatch probe;
+    transient private int probePos;
+    transient private int[] probeKeys;
+    /** The tuple of child2 being joined, with the remaining tuples of child1 it matches. */
     transient private Tuple t2 = null;
+    transient private List<Tuple> matches;
+    transient private int matchPos;
+    /** The batch of results, and the position of the next one fetchNext returns. */
+    transient private TupleBatch batch;
+    transient private int batchPos;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
@@ -35,6 +52,8 @@ public class HashEquiJoin extends Operator {
         this.child1 = child1;
         this.child2 = child2;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        intKeys = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(p.getField2()) == Type.INT_TYPE;
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -58,44 +77,98 @@ public class HashEquiJoin extends Operator {
     final Map<Object, List<Tuple>> map = new HashMap<>();
     public final static int MAP_SIZE = 20000;
 
+    /**
+     * Hashes the next batches of child1, until at least MAP_SIZE tuples.
+     *
+     * @return false if child1 had no more tuples
+     */
     private boolean loadMap() throws DbException, TransactionAbortedException {
         int cnt = 0;
         map.clear();
-        while (child1.hasNext()) {
-            t1 = child1.next();
-            List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+        int field = pred.getField1();
+        TupleBatch b;
+        while (cnt < MAP_SIZE && (b = in1.nextBatch()) != null) {
+            int[] keys = intKeys ? b.intColumn(field) : null;
+            for (int i = 0; i < b.numSelected(); i++) {
+                int row = b.selected(i);
+                Tuple t1 = b.getTuple(row);
+                Object key = intKeys ? (Object) keys[row] : t1.getField(field);
+                map.computeIfAbsent(key, k -> new ArrayList<>()).add(t1);
+            }
+            cnt += b.numSelected();
         }
         return cnt > 0;
-
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
-        child1.open();
-        child2.open();
+        in1 = BatchAdapter.batches(child1);
+        in2 = BatchAdapter.batches(child2);
+        in1.open();
+        in2.open();
         loadMap();
         super.open();
     }
 
     public void close() {
         super.close();
-        child2.close();
-        child1.close();
-        this.t1=null;
+        (in2 != null ? in2 : child2).close();
+        (in1 != null ? in1 : child1).close();
+        this.in1=null;
+        this.in2=null;
+        this.batch=null;
+        this.probe=null;
+        this.probeKeys=null;
         this.t2=null;
-        this.listIt=null;
+        this.matches=null;
         this.map.clear();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        child1.rewind();
-        child2.rewind();
+        in1.rewind();
+        in2.rewind();
+        probe = null;
+        matches = null;
+        batch = null;
+        loadMap();
     }
 
-    transient Iterator<Tuple> listIt = null;
+    /**
+     * Joins the next tuples of child2 with the hashed tuples of child1 that
+     * match them. When child2 is done, the next part of child1 is hashed and
+     * child2 is read again; once child1 is done, asking again at the end
+     * does not read either child again.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (in2 == null)
+            throw new IllegalStateException("Operator not yet open");
+        if (batch == null)
+            batch = new TupleBatch(comboTD);
+        batch.clear();
+        while (!batch.isFull()) {
+            if (matches != null && matchPos < matches.size()) {
+                batch.add(Tuple.join(comboTD, matches.get(matchPos++), t2));
+                continue;
+            }
+            matches = null;
+            if (probe == null || probePos == probe.numSelected()) {
+                probe = in2.nextBatch();
+                probePos = 0;
+                if (probe == null) {
+                    if (map.isEmpty() || !loadMap())
+                        break;
+                    in2.rewind();
+                    continue;
+                }
+                probeKeys = intKeys ? probe.intColumn(pred.getField2()) : null;
+            }
+            int row = probe.selected(probePos++);
+            t2 = probe.getTuple(row);
+            matches = map.get(intKeys ? (Object) probeKeys[row] : t2.getField(pred.getField2()));
+            matchPos = 0;
+        }
+        return batch.numRows() == 0 ? null : batch;
+    }
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
@@ -115,49 +188,13 @@ public class HashEquiJoin extends Operator {
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
-    private Tuple processList() {
-        t1 = listIt.next();
-
-        int td1n = t1.getTupleDesc().numFields();
-        int td2n = t2.getTupleDesc().numFields();
-
-        // set fields in combined tuple
-        Tuple t = new Tuple(comboTD);
-        for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
-        for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
-        return t;
-
-    }
-
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
+        while (batch == null || batchPos == batch.numRows()) {
+            batchPos = 0;
+            if (nextBatch() == null)
+                return null;
         }
-
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
-
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            List<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
-                continue;
-            listIt = l.iterator();
-
-            return processList();
-
-        }
-
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
-        }
-
-        return null;
+        return batch.getTuple(batchPos++);
     }
 
     @Override
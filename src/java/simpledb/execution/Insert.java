@@ -3,6 +3,7 @@ package simpledb.execution;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Type;
+import simpledb.optimizer.TableStats;
 import simpledb.storage.*;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
@@ -97,11 +98,14 @@ public class Insert extends Operator {
         if(isDone)
             return null;
         Tuple t = new Tuple(td);
+        TableStats stats = TableStats.forTable(tableid);
         while(child.hasNext()){
             cnt++;
             Tuple tupleToInsert = child.next();
             try{
                 Database.getBufferPool().insertTuple(tid,tableid,tupleToInsert);
+                if (stats != null)
+                    stats.addTuple(tupleToInsert);
             }catch(IOException e){
                 e.printStackTrace();
                 break;
@@ -109,6 +113,7 @@ public class Insert extends Operator {
         }
         t.setField(0,new IntField(cnt));
         isDone=true;
+        TableStats.recordModifications(tid, tableid, cnt);
         return t;
     }
 
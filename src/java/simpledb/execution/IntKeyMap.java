@@ -0,0 +1,117 @@
+package simpledb.execution;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from primitive int keys to values, used to
+ * group on INT fields without boxing every key into an IntField and an
+ * Integer. Keys live in an int array probed linearly; a null value marks an
+ * empty slot, so null values cannot be stored.
+ * <p>
+ * Iterate over the entries with
+ * <pre>
+ * for (int slot = 0; slot &lt; map.capacity(); slot++)
+ *     if (map.valueAt(slot) != null) ... map.keyAt(slot) ...
+ * </pre>
+ */
+final class IntKeyMap<V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    IntKeyMap() {
+        this(16);
+    }
+
+    IntKeyMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            Object v = values[slot];
+            if (v == null)
+                return null;
+            if (keys[slot] == key)
+                return (V) v;
+        }
+    }
+
+    /**
+     * Associates value with key, replacing any previous value.
+     *
+     * @throws IllegalArgumentException if value is null
+     */
+    void put(int key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("null values are not supported");
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length)
+            grow();
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null)
+                continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (values[slot] != null)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** @return the number of slots; see the class comment for iteration */
+    int capacity() {
+        return keys.length;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+}
@@ -1,6 +1,5 @@
 package simpledb.execution;
 
-import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.storage.*;
 
@@ -8,19 +7,33 @@ import java.util.*;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * Each group keeps one {@link AggregateState} per aggregate, which is updated
+ * in place as tuples are merged, so memory is proportional to the number of
+ * groups rather than the number of input tuples. Groups on an INT field are
+ * kept in an {@link IntKeyMap} keyed by the raw int value. Several aggregates
+ * can be computed in the same pass; COUNT may be over a field of any type.
+ * <p>
+ * SUM_COUNT produces three result fields, the high and low 32 bits of the
+ * sum and the count, so that partial aggregates computed in parallel can be
+ * combined into an average without truncating their sums: SC_AVG over field
+ * i reads a sum from fields i and i + 1 and a count from field i + 2.
  */
 public class IntegerAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
-    private int gbfield;
-    private Type gbfieldtype;
-    private int afield;
-    private Op op;
-    private Map<Field,Integer> aggreMap;
-    private Map<Field, List<Integer>> avgMap;
+    private final int gbfield;
+    private final Type gbfieldtype;
+    private final int[] afields;
+    private final Op[] ops;
+    private final TupleDesc td;
+    private AggregateState[] ungrouped;
+    private final IntKeyMap<AggregateState[]> intGroups;
+    private final Map<Field, AggregateState[]> groups;
+
     /**
      * Aggregate constructor
-     * 
+     *
      * @param gbfield
      *            the 0-based index of the group-by field in the tuple, or
      *            NO_GROUPING if there is no grouping
@@ -34,144 +47,265 @@ public class IntegerAggregator implements Aggregator {
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // some code goes here
+        this(gbfield, gbfieldtype, new int[] { afield }, new Op[] { what });
+    }
+
+    /**
+     * Constructor for computing several aggregates at once.
+     *
+     * @param gbfield
+     *            the 0-based index of the group-by field in the tuple, or
+     *            NO_GROUPING if there is no grouping
+     * @param gbfieldtype
+     *            the type of the group by field (e.g., Type.INT_TYPE), or null
+     *            if there is no grouping
+     * @param afields
+     *            the 0-based indexes of the aggregate fields in the tuple
+     * @param whats
+     *            the aggregation operator for each aggregate field
+     * @throws IllegalArgumentException
+     *             if afields and whats differ in length
+     */
+    public IntegerAggregator(int gbfield, Type gbfieldtype, int[] afields, Op[] whats) {
+        if (afields.length == 0 || afields.length != whats.length)
+            throw new IllegalArgumentException("need one operator per aggregate field");
         this.gbfield = gbfield;
         this.gbfieldtype = gbfieldtype;
-        this.afield = afield;
-        this.op = what;
-        aggreMap = new HashMap<Field,Integer>();
-        avgMap = new HashMap<Field,List<Integer>>();
+        this.afields = afields.clone();
+        this.ops = whats.clone();
+
+        int numResults = afields.length;
+        for (Op op : whats) {
+            if (op == Op.SUM_COUNT)
+                numResults += 2;
+        }
+        Type[] types = new Type[(gbfield == NO_GROUPING ? 0 : 1) + numResults];
+        String[] names = new String[types.length];
+        int i = 0;
+        if (gbfield != NO_GROUPING) {
+            types[0] = gbfieldtype;
+            names[0] = "groupVal";
+            i++;
+        }
+        for (int a = 0; i < types.length; a++, i++) {
+            types[i] = Type.INT_TYPE;
+            names[i] = numResults == 1 ? "aggregateVal" : "aggregateVal" + a;
+        }
+        this.td = new TupleDesc(types, names);
+
+        if (gbfield != NO_GROUPING && gbfieldtype == Type.INT_TYPE) {
+            intGroups = new IntKeyMap<>();
+            groups = null;
+        } else {
+            intGroups = null;
+            groups = new HashMap<>();
+        }
+    }
+
+    private AggregateState[] newStates() {
+        AggregateState[] states = new AggregateState[afields.length];
+        for (int i = 0; i < states.length; i++)
+            states[i] = new AggregateState();
+        return states;
     }
 
     /**
      * Merge a new tuple into the aggregate, grouping as indicated in the
      * constructor
-     * 
+     *
      * @param tup
      *            the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        // some code goes here
-        Field gf;
-        if(gbfield == NO_GROUPING){
-            gf = null;
-        }else{
-            gf = tup.getField(gbfield);
-        }
-        IntField af = (IntField) tup.getField(afield);
-        switch(this.op) {
-            case MIN:
-                if(!aggreMap.containsKey(gf)) {
-                    aggreMap.put(gf, af.getValue());
-                }else{
-                    aggreMap.put(gf, Math.min(aggreMap.get(gf), af.getValue()));
-                }
-                break;
-            case MAX:
-                if(!aggreMap.containsKey(gf)) {
-                    aggreMap.put(gf, af.getValue());
-                }else{
-                    aggreMap.put(gf, Math.max(aggreMap.get(gf), af.getValue()));
-                }
-                break;
-            case SUM:
-                if(!aggreMap.containsKey(gf)) {
-                    aggreMap.put(gf, af.getValue());
-                }else{
-                    aggreMap.put(gf, aggreMap.get(gf)+af.getValue());
-                }
-                break;
-            case AVG:
-                if(!avgMap.containsKey(gf)) {
-                    List<Integer> l = new ArrayList<Integer>();
-                    l.add(af.getValue());
-                    avgMap.put(gf, l);
-                }else{
-                    List<Integer> l = avgMap.get(gf);
-                    l.add(af.getValue());
-                }
-                break;
-            case COUNT:
-                if(!aggreMap.containsKey(gf)) {
-                    aggreMap.put(gf, 1);
-                }else{
-                    aggreMap.put(gf, aggreMap.get(gf)+1);
+        AggregateState[] states = findGroup(tup, true);
+        mergeInto(states, tup);
+    }
+
+    /**
+     * Merges a batch by looking up groups and reading aggregate values in the
+     * batch's extracted INT columns, rather than tuple by tuple.
+     */
+    @Override
+    public void mergeBatch(TupleBatch batch) {
+        if (gbfield != NO_GROUPING && intGroups == null) {
+            Aggregator.super.mergeBatch(batch);
+            return;
+        }
+        int[][] values = new int[afields.length][];
+        for (int a = 0; a < afields.length; a++) {
+            if (ops[a] == Op.SC_AVG) {
+                Aggregator.super.mergeBatch(batch);
+                return;
+            }
+            if (ops[a] != Op.COUNT)
+                values[a] = batch.intColumn(afields[a]);
+        }
+        int[] sel = batch.selection();
+        int n = batch.numSelected();
+        int[] keys = gbfield == NO_GROUPING ? null : batch.intColumn(gbfield);
+        if (keys == null && ungrouped == null && n > 0)
+            ungrouped = newStates();
+        AggregateState[] states = ungrouped;
+        int lastKey = 0;
+        for (int i = 0; i < n; i++) {
+            int row = sel[i];
+            if (keys != null && (i == 0 || keys[row] != lastKey)) {
+                // runs of equal keys share one lookup
+                lastKey = keys[row];
+                states = intGroups.get(lastKey);
+                if (states == null) {
+                    states = newStates();
+                    intGroups.put(lastKey, states);
                 }
-                break;
-            default:
-                throw new IllegalArgumentException("Aggregate not implemented.");
+            }
+            for (int a = 0; a < states.length; a++) {
+                if (values[a] == null)
+                    states[a].count++;
+                else
+                    states[a].add(values[a][row]);
+            }
         }
+    }
+
+    public boolean mergeTupleIntoExistingGroup(Tuple tup) {
+        AggregateState[] states = findGroup(tup, false);
+        if (states == null)
+            return false;
+        mergeInto(states, tup);
+        return true;
+    }
+
+    private AggregateState[] findGroup(Tuple tup, boolean create) {
+        AggregateState[] states;
+        if (gbfield == NO_GROUPING) {
+            if (ungrouped == null && create)
+                ungrouped = newStates();
+            states = ungrouped;
+        } else if (intGroups != null) {
+            int key = tup.getInt(gbfield);
+            states = intGroups.get(key);
+            if (states == null && create) {
+                states = newStates();
+                intGroups.put(key, states);
+            }
+        } else {
+            Field key = tup.getField(gbfield);
+            states = groups.get(key);
+            if (states == null && create) {
+                states = newStates();
+                groups.put(key, states);
+            }
+        }
+        return states;
+    }
 
+    private void mergeInto(AggregateState[] states, Tuple tup) {
+        for (int i = 0; i < afields.length; i++) {
+            if (ops[i] == Op.COUNT) {
+                states[i].count++;
+            } else if (ops[i] == Op.SC_AVG) {
+                states[i].sum += (long) tup.getInt(afields[i]) << 32 | (tup.getInt(afields[i] + 1) & 0xffffffffL);
+                states[i].count += tup.getInt(afields[i] + 2);
+            } else
+                states[i].add(tup.getInt(afields[i]));
+        }
+    }
+
+    /**
+     * @return the number of groups merged so far
+     */
+    public int numGroups() {
+        if (gbfield == NO_GROUPING)
+            return ungrouped == null ? 0 : 1;
+        return intGroups != null ? intGroups.size() : groups.size();
+    }
+
+    private Tuple resultTuple(Field group, AggregateState[] states) {
+        Tuple t = new Tuple(td);
+        int i = 0;
+        if (group != null)
+            t.setField(i++, group);
+        for (int a = 0; a < states.length; a++) {
+            if (ops[a] == Op.SUM_COUNT) {
+                t.setInt(i++, (int) (states[a].sum >>> 32));
+                t.setInt(i++, (int) states[a].sum);
+                t.setInt(i++, states[a].result(Op.COUNT));
+            } else {
+                t.setInt(i++, states[a].result(ops[a]));
+            }
+        }
+        return t;
     }
 
     /**
      * Create a OpIterator over group aggregate results.
-     * 
+     *
      * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
      *         if using group, or a single (aggregateVal) if no grouping. The
      *         aggregateVal is determined by the type of aggregate specified in
-     *         the constructor.
+     *         the constructor; with several aggregates there is one
+     *         aggregateVal field per aggregate, in constructor order. Result
+     *         tuples are built as they are returned, so the aggregator must
+     *         not be merged into while the iterator is in use.
      */
     public OpIterator iterator() {
-        // some code goes here
-        Type[]types;
-        String[]names;
-        TupleDesc td;
-        List<Tuple>tuples = new ArrayList<>();
-
-        if(gbfield == NO_GROUPING){
-            types=new Type[]{Type.INT_TYPE};
-            names = new String[]{"aggregateVal"};
-            td = new TupleDesc(types,names);
-
-            if(op == Op.MAX || op == Op.MIN || op == Op.SUM||op == Op.COUNT){
-                Tuple t = new Tuple(td);
-                IntField intf =new IntField(aggreMap.get(null));
-                t.setField(0,intf);
-                tuples.add(t);
-            }else if(op == Op.AVG){
-                Tuple t = new Tuple(td);
-                int sum = 0;
-                List<Integer> l = avgMap.get(null);
-                for(Integer i:l){
-                    sum+=i;
-                }
-                int len = l.size();
-                IntField intf =new IntField(sum/len);
-                t.setField(0,intf);
-                tuples.add(t);
+        return new ResultIterator();
+    }
+
+    private class ResultIterator implements OpIterator {
+        private static final long serialVersionUID = 1L;
+        private boolean open = false;
+        private boolean ungroupedDone;
+        private int slot;
+        private Iterator<Map.Entry<Field, AggregateState[]>> entries;
+
+        public void open() {
+            open = true;
+            rewind();
+        }
+
+        public void rewind() {
+            ungroupedDone = false;
+            slot = 0;
+            entries = groups != null ? groups.entrySet().iterator() : null;
+        }
+
+        public boolean hasNext() {
+            if (!open)
+                throw new IllegalStateException("Operator not yet open");
+            if (gbfield == NO_GROUPING)
+                return !ungroupedDone;
+            if (intGroups != null) {
+                while (slot < intGroups.capacity() && intGroups.valueAt(slot) == null)
+                    slot++;
+                return slot < intGroups.capacity();
             }
+            return entries.hasNext();
+        }
 
-        }else{
-            types=new Type[]{gbfieldtype,Type.INT_TYPE};
-            names = new String[]{"groupVal","aggregateVal"};
-            td = new TupleDesc(types,names);
-            if(op == Op.MAX || op == Op.MIN || op == Op.SUM||op == Op.COUNT){
-                for(Field f:aggreMap.keySet()){
-                    Tuple t = new Tuple(td);
-                    IntField intf= new IntField(aggreMap.get(f));
-                    t.setField(0,f);
-                    t.setField(1,intf);
-                    tuples.add(t);
-                }
-            }else if(op == Op.AVG){
-                for(Field f:avgMap.keySet()){
-                    Tuple t = new Tuple(td);
-                    int sum = 0;
-                    List<Integer> l = avgMap.get(f);
-                    for(Integer i:l){
-                        sum+=i;
-                    }
-                    int len = l.size();
-                    IntField intf= new IntField(sum/len);
-                    t.setField(0,f);
-                    t.setField(1,intf);
-                    tuples.add(t);
-                }
+        public Tuple next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (gbfield == NO_GROUPING) {
+                ungroupedDone = true;
+                return resultTuple(null, ungrouped != null ? ungrouped : newStates());
             }
+            if (intGroups != null) {
+                Tuple t = resultTuple(new IntField(intGroups.keyAt(slot)), intGroups.valueAt(slot));
+                slot++;
+                return t;
+            }
+            Map.Entry<Field, AggregateState[]> e = entries.next();
+            return resultTuple(e.getKey(), e.getValue());
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
         }
 
-        return new TupleIterator(td,tuples);
+        public void close() {
+            open = false;
+        }
     }
 
 }
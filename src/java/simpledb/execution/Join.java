@@ -17,6 +17,8 @@ public class Join extends Operator {
     private OpIterator child1;
     private OpIterator child2;
     private Tuple now;
+    /** The TupleDesc of the joined tuples, merged once when opened. */
+    private transient TupleDesc td;
 
     /**
      * Constructor. Accepts two children to join and the predicate to join them
@@ -76,6 +78,7 @@ public class Join extends Operator {
         // some code goes here
         child1.open();
         child2.open();
+        td = getTupleDesc();
         super.open();
     }
 
@@ -119,17 +122,7 @@ public class Join extends Operator {
             while(child2.hasNext()) {
                 Tuple t = child2.next();
                 if(p.filter(now,t)){
-                    TupleDesc td1 = now.getTupleDesc();
-                    TupleDesc td2 = t.getTupleDesc();
-                    TupleDesc newtd = TupleDesc.merge(td1, td2);
-                    Tuple newtuple = new Tuple(newtd);
-                    int i=0;
-                    for(;i<td1.numFields();i++){
-                        newtuple.setField(i,now.getField(i));
-                    }
-                    for(int j=0;j<td2.numFields();j++){
-                        newtuple.setField(i+j,t.getField(j));
-                    }
+                    Tuple newtuple = Tuple.join(td, now, t);
                     if(!child2.hasNext()){
                         child2.rewind();
                         now = null;
@@ -1,6 +1,8 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -39,12 +41,16 @@ public class JoinPredicate implements Serializable {
 
     /**
      * Apply the predicate to the two specified tuples. The comparison can be
-     * made through Field's compare method.
+     * made through Field's compare method; INT fields are compared as ints,
+     * without creating Fields for them.
      * 
      * @return true if the tuples satisfy the predicate.
      */
     public boolean filter(Tuple t1, Tuple t2) {
         // some code goes here
+        if (t1.getTupleDesc().getFieldType(field1) == Type.INT_TYPE
+                && t2.getTupleDesc().getFieldType(field2) == Type.INT_TYPE)
+            return IntField.compare(op, t1.getInt(field1), t2.getInt(field2));
         Field f1 = t1.getField(field1);
         Field f2 = t2.getField(field2);
         return f1.compare(op,f2);
@@ -0,0 +1,204 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scan of part of a HeapFile, for plan fragments that run in parallel.
+ * <p>
+ * The pages of the file are handed out in morsels of {@link #MORSEL_PAGES}
+ * consecutive pages by a {@link Source} that several MorselScans share. Each
+ * scan claims the next unclaimed morsel whenever it has returned the tuples
+ * of its last one, so every page is read by exactly one of the scans, and a
+ * scan on a busy thread simply claims fewer morsels. The {@link Exchange}
+ * running the fragments resets the source before every run.
+ */
+public class MorselScan extends SeqScan {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of consecutive pages a scan claims at a time. */
+    public static final int MORSEL_PAGES = 16;
+
+    /**
+     * Hands out the pages of a HeapFile to the MorselScans sharing it.
+     */
+    public static class Source implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final int tableid;
+        private final AtomicInteger nextPage = new AtomicInteger();
+        private volatile int numPages;
+
+        /**
+         * @param tableid the table to hand out the pages of
+         * @throws IllegalArgumentException if the table is not a HeapFile
+         */
+        public Source(int tableid) {
+            if (!(Database.getCatalog().getDatabaseFile(tableid) instanceof HeapFile))
+                throw new IllegalArgumentException("morsel scans need a HeapFile");
+            this.tableid = tableid;
+            reset();
+        }
+
+        public int getTableId() {
+            return tableid;
+        }
+
+        /**
+         * Starts handing out the pages of the table from the first page again.
+         */
+        public void reset() {
+            DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+            numPages = ((HeapFile) f).numPages();
+            nextPage.set(0);
+        }
+
+        /**
+         * @return the first page of the next unclaimed morsel, or -1 once
+         *         every page has been claimed
+         */
+        int claim() {
+            int start = nextPage.getAndAdd(MORSEL_PAGES);
+            return start < numPages ? start : -1;
+        }
+
+        int numPages() {
+            return numPages;
+        }
+    }
+
+    private final TransactionId tid;
+    private final Source source;
+    private final int[] columns;
+    private final List<Integer> claimed = new ArrayList<>();
+    private transient boolean open = false;
+    private transient int replayed;
+    private transient int page;
+    private transient int end;
+    private transient Iterator<Tuple> tuples;
+    private transient TupleBatch batch;
+
+    /**
+     * Creates a scan of the pages of the specified table that it claims from
+     * source.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan
+     * @param tableAlias
+     *            the alias of this table, see {@link SeqScan}
+     * @param source
+     *            the source of the table's pages, shared with the other scans
+     *            of the table
+     * @throws IllegalArgumentException if source hands out pages of another table
+     */
+    public MorselScan(TransactionId tid, int tableid, String tableAlias, Source source) {
+        this(tid, tableid, tableAlias, source, null);
+    }
+
+    /**
+     * Creates a scan that returns only some of the fields of the pages it
+     * claims from source.
+     *
+     * @param columns
+     *            the indexes in the table of the fields to return, or null to
+     *            return all fields
+     * @see #MorselScan(TransactionId, int, String, Source)
+     */
+    public MorselScan(TransactionId tid, int tableid, String tableAlias, Source source, int[] columns) {
+        super(tid, tableid, tableAlias, columns);
+        if (source.getTableId() != tableid)
+            throw new IllegalArgumentException("source is for another table");
+        this.tid = tid;
+        this.source = source;
+        this.columns = getColumns();
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        claimed.clear();
+        open = true;
+        replayed = 0;
+        page = end = 0;
+        tuples = null;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (!open)
+            throw new IllegalStateException("Operator not yet open");
+        while (tuples == null || !tuples.hasNext()) {
+            if (page >= end && !nextMorsel())
+                return false;
+            HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(source.getTableId(), page++), Permissions.READ_ONLY);
+            tuples = p.iterator(getPushedPredicate(), columns);
+        }
+        return true;
+    }
+
+    private boolean nextMorsel() {
+        int start;
+        if (replayed < claimed.size()) {
+            start = claimed.get(replayed++);
+        } else {
+            start = source.claim();
+            if (start < 0)
+                return false;
+            claimed.add(start);
+            replayed++;
+        }
+        page = start;
+        end = Math.min(start + MORSEL_PAGES, source.numPages());
+        return true;
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return tuples.next();
+    }
+
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        return BatchAdapter.fill(this, batch);
+    }
+
+    /**
+     * Returns the tuples of the morsels claimed so far again, before going on
+     * to claim new ones, so that after a complete pass the same tuples are
+     * returned again.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        replayed = 0;
+        page = end = 0;
+        tuples = null;
+    }
+
+    public void close() {
+        open = false;
+        tuples = null;
+        batch = null;
+    }
+}
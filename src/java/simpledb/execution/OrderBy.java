@@ -2,25 +2,46 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
-import simpledb.storage.Field;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleSpillFile;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * Input that fits in the sort memory budget is sorted in memory. Larger
+ * inputs are sorted externally: the input is cut into sorted runs of at most
+ * the memory budget, each run is written to a {@link TupleSpillFile}, and the
+ * runs are combined with a k-way merge driven by a heap, so the output is
+ * streamed without ever holding the whole input in memory.
+ * <p>
+ * Tuples may be ordered on several fields, each ascending or descending; the
+ * comparison is done by a comparator from {@link TupleComparator}.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Default number of bytes of tuples an OrderBy buffers before spilling a sorted run. */
+    public static final int DEFAULT_SORT_MEMORY = 8 * 1024 * 1024;
+
+    private static int sortMemory = DEFAULT_SORT_MEMORY;
+
     private OpIterator child;
     private final TupleDesc td;
     private final List<Tuple> childTups = new ArrayList<>();
-    private final int orderByField;
-    private final String orderByFieldName;
+    private final int[] orderByFields;
+    private final boolean[] asc;
     private Iterator<Tuple> it;
-    private final boolean asc;
+    private final int memoryBudget;
+    private final Comparator<Tuple> comparator;
+    private final List<TupleSpillFile> runs = new ArrayList<>();
+    private transient RunMerger merger;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -33,50 +54,220 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(orderbyField, asc, child, sortMemory);
+    }
+
+    /**
+     * Creates a new OrderBy node over the tuples from the iterator that uses
+     * at most memoryBudget bytes of tuples before spilling to disk.
+     *
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     * @param memoryBudget
+     *            the number of bytes of tuples to buffer in memory; see
+     *            {@link #estimateTupleMemory}
+     */
+    public OrderBy(int orderbyField, boolean asc, OpIterator child, int memoryBudget) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child, memoryBudget);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several fields.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if it is sorted in ascending order.
+     * @param child
+     *            the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child) {
+        this(orderbyFields, asc, child, sortMemory);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several fields and uses at
+     * most memoryBudget bytes of tuples before spilling to disk.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child, int memoryBudget) {
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.memoryBudget = memoryBudget;
+        this.comparator = TupleComparator.forKeys(td, orderbyFields, asc);
+    }
+
+    public static int getSortMemory() {
+        return sortMemory;
+    }
+
+    /**
+     * Set the memory budget, in bytes, of OrderBy operators created
+     * afterwards.
+     */
+    public static void setSortMemory(int bytes) {
+        OrderBy.sortMemory = bytes;
+    }
+
+    public static void resetSortMemory() {
+        OrderBy.sortMemory = DEFAULT_SORT_MEMORY;
+    }
+
+    /**
+     * Estimates the number of heap bytes a materialized tuple of the given
+     * schema occupies: the Tuple and its field list, plus one boxed Field per
+     * column on top of the raw field data.
+     */
+    static int estimateTupleMemory(TupleDesc td) {
+        return 64 + td.numFields() * 24 + td.getSize();
     }
     
     public boolean isASC()
     {
-	return this.asc;
+	return this.asc[0];
     }
     
     public int getOrderByField()
     {
-        return this.orderByField;
+        return this.orderByFields[0];
     }
     
     public String getOrderFieldName()
     {
-	return this.orderByFieldName;
+	return td.getFieldName(this.orderByFields[0]);
+    }
+
+    /**
+     * @return the fields this operator sorts on, most significant first
+     */
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /**
+     * @return for each sort field, true if it is sorted in ascending order
+     */
+    public boolean[] getAscending() {
+        return asc.clone();
     }
     
     public TupleDesc getTupleDesc() {
         return td;
     }
 
+    /**
+     * @return the number of sorted runs spilled to disk by the last open(),
+     *         or 0 if the input was sorted in memory.
+     */
+    public int numSpilledRuns() {
+        return runs.size();
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
+        childTups.clear();
+        deleteRuns();
+        int tupleMemory = estimateTupleMemory(td);
+        long used = 0;
+        // load tuples until the budget is exhausted, then spill them as a
+        // sorted run
+        while (child.hasNext()) {
             childTups.add(child.next());
-        childTups.sort(new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+            used += tupleMemory;
+            if (used >= memoryBudget) {
+                runs.add(writeRun(childTups));
+                childTups.clear();
+                used = 0;
+            }
+        }
+        if (runs.isEmpty()) {
+            childTups.sort(comparator);
+            it = childTups.iterator();
+        } else {
+            if (!childTups.isEmpty()) {
+                runs.add(writeRun(childTups));
+                childTups.clear();
+            }
+            mergeRunsDownToFanIn();
+            merger = new RunMerger(runs);
+            merger.open();
+        }
         super.open();
     }
 
+    private TupleSpillFile writeRun(List<Tuple> tups) throws DbException {
+        tups.sort(comparator);
+        try {
+            TupleSpillFile run = new TupleSpillFile(td);
+            for (Tuple t : tups)
+                run.append(t);
+            run.finish();
+            return run;
+        } catch (IOException e) {
+            throw new DbException("could not write sorted run: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Each run being merged buffers one block, so when there are more runs
+     * than fit in the memory budget merge them in groups first.
+     */
+    private void mergeRunsDownToFanIn() throws DbException, TransactionAbortedException {
+        int fanIn = Math.max(2, memoryBudget / BufferPool.getPageSize());
+        while (runs.size() > fanIn) {
+            List<TupleSpillFile> group = new ArrayList<>(runs.subList(0, fanIn));
+            runs.subList(0, fanIn).clear();
+            RunMerger m = new RunMerger(group);
+            m.open();
+            try {
+                TupleSpillFile merged = new TupleSpillFile(td);
+                Tuple t;
+                while ((t = m.next()) != null)
+                    merged.append(t);
+                merged.finish();
+                runs.add(merged);
+            } catch (IOException e) {
+                throw new DbException("could not write sorted run: " + e.getMessage());
+            } finally {
+                m.close();
+                for (TupleSpillFile f : group)
+                    f.delete();
+            }
+        }
+    }
+
+    private void deleteRuns() {
+        if (merger != null) {
+            merger.close();
+            merger = null;
+        }
+        for (TupleSpillFile f : runs)
+            f.delete();
+        runs.clear();
+    }
+
     public void close() {
         super.close();
+        child.close();
         it = null;
+        childTups.clear();
+        deleteRuns();
     }
 
-    public void rewind() {
-        it = childTups.iterator();
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (merger != null) {
+            merger.close();
+            merger.open();
+        } else {
+            it = childTups.iterator();
+        }
     }
 
     /**
@@ -86,8 +277,11 @@ public class OrderBy extends Operator {
      * @return The next tuple in the ordering, or null if there are no more
      *         tuples
      */
-    protected Tuple fetchNext() throws NoSuchElementException {
-        if (it != null && it.hasNext()) {
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (merger != null) {
+            return merger.next();
+        } else if (it != null && it.hasNext()) {
             return it.next();
         } else
             return null;
@@ -103,26 +297,59 @@ public class OrderBy extends Operator {
         this.child = children[0];
     }
 
-}
+    /**
+     * K-way merge of sorted runs. A heap holds the current head tuple of each
+     * run, ordered by the sort comparator.
+     */
+    private class RunMerger {
+        private final List<TupleSpillFile> files;
+        private final List<DbFileIterator> cursors = new ArrayList<>();
+        private PriorityQueue<RunHead> heap;
+
+        RunMerger(List<TupleSpillFile> files) {
+            this.files = files;
+        }
 
-class TupleComparator implements Comparator<Tuple> {
-    final int field;
-    final boolean asc;
+        void open() throws DbException, TransactionAbortedException {
+            heap = new PriorityQueue<>(Math.max(1, files.size()),
+                    (a, b) -> comparator.compare(a.tuple, b.tuple));
+            for (TupleSpillFile f : files) {
+                DbFileIterator cursor = f.iterator();
+                cursor.open();
+                cursors.add(cursor);
+                if (cursor.hasNext())
+                    heap.add(new RunHead(cursor.next(), cursor));
+            }
+        }
 
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
+        Tuple next() throws DbException, TransactionAbortedException {
+            RunHead head = heap.poll();
+            if (head == null)
+                return null;
+            Tuple result = head.tuple;
+            if (head.cursor.hasNext()) {
+                head.tuple = head.cursor.next();
+                heap.add(head);
+            }
+            return result;
+        }
+
+        void close() {
+            for (DbFileIterator cursor : cursors)
+                cursor.close();
+            cursors.clear();
+            heap = null;
+        }
     }
 
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
+    private static class RunHead {
+        Tuple tuple;
+        final DbFileIterator cursor;
+
+        RunHead(Tuple tuple, DbFileIterator cursor) {
+            this.tuple = tuple;
+            this.cursor = cursor;
+        }
     }
-    
+
 }
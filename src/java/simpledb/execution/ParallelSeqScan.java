@@ -0,0 +1,87 @@
+package simpledb.execution;
+
+import simpledb.transaction.TransactionId;
+
+/**
+ * A sequential scan of a HeapFile that reads the file on several worker
+ * threads: a {@link Gather} over one {@link MorselScan} per thread, each
+ * followed by the optional predicates, so that they are evaluated on the
+ * worker threads too. Tuples are returned in no particular order.
+ */
+public class ParallelSeqScan extends Gather {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int tableid;
+    private final String tableAlias;
+
+    /**
+     * Creates a parallel scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan; must be a HeapFile.
+     * @param tableAlias
+     *            the alias of this table, see {@link SeqScan}
+     * @param numThreads
+     *            the number of worker threads
+     * @param predicates
+     *            predicates that tuples must all satisfy to be returned
+     * @throws IllegalArgumentException if the table is not a HeapFile
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int numThreads,
+                           Predicate... predicates) {
+        super(fragments(tid, tableid, tableAlias, numThreads, predicates));
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+    }
+
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, WorkerPool.getParallelism());
+    }
+
+    /**
+     * @return one scan of the table per thread, sharing a morsel source, each
+     *         followed by a Filter per predicate
+     */
+    public static OpIterator[] fragments(TransactionId tid, int tableid, String tableAlias,
+                                         int numThreads, Predicate... predicates) {
+        return fragments(tid, tableid, tableAlias, null, numThreads, predicates);
+    }
+
+    /**
+     * @param columns
+     *            the indexes in the table of the fields the scans return, or
+     *            null for all fields; the predicates are over those fields
+     * @return one scan of the table per thread, returning just the specified
+     *         fields, each followed by a Filter per predicate
+     */
+    public static OpIterator[] fragments(TransactionId tid, int tableid, String tableAlias, int[] columns,
+                                         int numThreads, Predicate... predicates) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("need at least one thread");
+        MorselScan.Source source = new MorselScan.Source(tableid);
+        OpIterator[] fragments = new OpIterator[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            OpIterator f = new MorselScan(tid, tableid, tableAlias, source, columns);
+            for (Predicate p : predicates)
+                f = new Filter(p, f);
+            fragments[i] = f;
+        }
+        return fragments;
+    }
+
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public int getTableId() {
+        return tableid;
+    }
+
+    public int getNumThreads() {
+        return getChildren().length;
+    }
+}
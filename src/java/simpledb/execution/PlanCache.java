@@ -1,53 +1,133 @@
 package simpledb.execution;
-import simpledb.optimizer.LogicalJoinNode;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
 /** A PlanCache is a helper class that can be used to store the best
- * way to order a given set of joins */
+ * way to join a given set of tables, each a bit of a long: its cost and
+ * cardinality, and the two subsets of the tables its last join joins, the
+ * best plans of which are in the cache too. Plans are kept in primitive
+ * arrays, hashed by their set with open addressing, so that the optimizer
+ * neither hashes sets of objects nor boxes keys. */
 public class PlanCache {
-    final Map<Set<LogicalJoinNode>,List<LogicalJoinNode>> bestOrders= new HashMap<>();
-    final Map<Set<LogicalJoinNode>,Double> bestCosts= new HashMap<>();
-    final Map<Set<LogicalJoinNode>,Integer> bestCardinalities = new HashMap<>();
-    
-    /** Add a new cost, cardinality and ordering for a particular join set.  Does not verify that the
+    private static final int MIN_CAPACITY = 16;
+
+    /** The sets of the plans, 0 for a free slot since no plan joins no tables. */
+    private long[] sets = new long[MIN_CAPACITY];
+    private double[] costs = new double[MIN_CAPACITY];
+    private int[] cards = new int[MIN_CAPACITY];
+    private long[] outers = new long[MIN_CAPACITY];
+    private int[] joins = new int[MIN_CAPACITY];
+    private int size;
+
+    /** @return the slot of s, or of the free slot where it would go */
+    private int slot(long s) {
+        int mask = sets.length - 1;
+        int i = (int) ((s * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+        while (sets[i] != 0 && sets[i] != s)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private int find(long s) {
+        int i = slot(s);
+        if (sets[i] == 0)
+            throw new NoSuchElementException("no plan for tables " + Long.toBinaryString(s));
+        return i;
+    }
+
+    private void grow() {
+        long[] oldSets = sets, oldOuters = outers;
+        double[] oldCosts = costs;
+        int[] oldCards = cards, oldJoins = joins;
+        int capacity = oldSets.length * 2;
+        sets = new long[capacity];
+        costs = new double[capacity];
+        cards = new int[capacity];
+        outers = new long[capacity];
+        joins = new int[capacity];
+        for (int i = 0; i < oldSets.length; i++) {
+            if (oldSets[i] != 0) {
+                int j = slot(oldSets[i]);
+                sets[j] = oldSets[i];
+                costs[j] = oldCosts[i];
+                cards[j] = oldCards[i];
+                outers[j] = oldOuters[i];
+                joins[j] = oldJoins[i];
+            }
+        }
+    }
+
+    /** Add a new cost, cardinality and ordering for a particular set of tables.  Does not verify that the
         new cost is less than any previously added cost -- simply adds or replaces an existing plan for the
-        specified join set
-        @param s the set of joins for which a new ordering (plan) is being added
+        specified set
+        @param s the bits of the tables for which a new plan is being added
         @param cost the estimated cost of the specified plan
         @param card the estimatied cardinality of the specified plan
-        @param order the ordering of the joins in the plan
+        @param outer the bits of the tables of the outer side of the last join of the plan, of which the
+        rest of s is the inner side, or 0 if the plan scans a single table
+        @param join the index of the last join of the plan, in the list of joins being ordered
     */
-    public void addPlan(Set<LogicalJoinNode> s, double cost, int card, List<LogicalJoinNode> order) {
-        bestOrders.put(s,order);                        
-        bestCosts.put(s,cost);
-        bestCardinalities.put(s,card);
-    }
-    
-    /** Find the best join order in the cache for the specified plan 
-        @param s the set of joins to look up the best order for
-        @return the best order for s in the cache
+    public void addPlan(long s, double cost, int card, long outer, int join) {
+        if (s == 0)
+            throw new IllegalArgumentException("a plan joins at least one table");
+        int i = slot(s);
+        if (sets[i] == 0) {
+            if (2 * (size + 1) > sets.length) {
+                grow();
+                i = slot(s);
+            }
+            sets[i] = s;
+            size++;
+        }
+        costs[i] = cost;
+        cards[i] = card;
+        outers[i] = outer;
+        joins[i] = join;
+    }
+
+    /** @return whether the cache holds a plan for the set of tables s */
+    public boolean contains(long s) {
+        return s != 0 && sets[slot(s)] != 0;
+    }
+
+    /** Find the cost of the best plan in the cache for the specified set of tables
+        @param s the bits of the tables to look up the best cost for
+        @return the cost of the best plan for s in the cache
+        @throws NoSuchElementException if there is no plan for s
     */
-    public List<LogicalJoinNode> getOrder(Set<LogicalJoinNode> s) {
-        return bestOrders.get(s);
+    public double getCost(long s) {
+        return costs[find(s)];
     }
-    
-    /** Find the cost of the best join order in the cache for the specified plan 
-        @param s the set of joins to look up the best cost for
-        @return the cost of the best order for s in the cache
+
+    /** Find the cardinality of the best plan in the cache for the specified set of tables
+        @param s the bits of the tables to look up the best cardinality for
+        @return the cardinality of the best plan for s in the cache
+        @throws NoSuchElementException if there is no plan for s
     */
-    public double getCost(Set<LogicalJoinNode> s) {
-        return bestCosts.get(s);
+    public int getCard(long s) {
+        return cards[find(s)];
     }
-    
-    /** Find the cardinality of the best join order in the cache for the specified plan 
-        @param s the set of joins to look up the best cardinality for
-        @return the cardinality of the best order for s in the cache
+
+    /** Find the outer side of the last join of the best plan for the specified set of tables
+        @param s the bits of the tables to look up the best plan for
+        @return the bits of the tables of the outer side, or 0 if the plan scans a single table
+        @throws NoSuchElementException if there is no plan for s
     */
-    public int getCard(Set<LogicalJoinNode> s) {
-        return bestCardinalities.get(s);
+    public long getOuter(long s) {
+        return outers[find(s)];
+    }
+
+    /** Find the last join of the best plan for the specified set of tables
+        @param s the bits of the tables to look up the best plan for
+        @return the index of the join, or -1 if the plan scans a single table
+        @throws NoSuchElementException if there is no plan for s
+    */
+    public int getJoin(long s) {
+        return joins[find(s)];
+    }
+
+    /** @return the number of sets of tables with a plan in the cache */
+    public int size() {
+        return size;
     }
 }
@@ -1,6 +1,8 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -110,6 +112,76 @@ public class Predicate implements Serializable {
         return f.compare(op,operand);
     }
 
+    /**
+     * Removes the rows that do not satisfy the predicate from the selection
+     * of batch. Comparisons of an INT field with an INT operand are made
+     * directly on the extracted column.
+     *
+     * @return the number of rows still selected
+     */
+    public int filter(TupleBatch batch) {
+        int[] sel = batch.selection();
+        int n = batch.numSelected();
+        int k = 0;
+        if (!(operand instanceof IntField) || batch.getTupleDesc().getFieldType(field) != Type.INT_TYPE) {
+            for (int i = 0; i < n; i++) {
+                if (filter(batch.getTuple(sel[i])))
+                    sel[k++] = sel[i];
+            }
+            batch.setNumSelected(k);
+            return k;
+        }
+        int[] col = batch.intColumn(field);
+        int c = ((IntField) operand).getValue();
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (col[row] == c)
+                    sel[k++] = row;
+            }
+            break;
+        case NOT_EQUALS:
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (col[row] != c)
+                    sel[k++] = row;
+            }
+            break;
+        case GREATER_THAN:
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (col[row] > c)
+                    sel[k++] = row;
+            }
+            break;
+        case GREATER_THAN_OR_EQ:
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (col[row] >= c)
+                    sel[k++] = row;
+            }
+            break;
+        case LESS_THAN:
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (col[row] < c)
+                    sel[k++] = row;
+            }
+            break;
+        case LESS_THAN_OR_EQ:
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (col[row] <= c)
+                    sel[k++] = row;
+            }
+            break;
+        }
+        batch.setNumSelected(k);
+        return k;
+    }
+
     /**
      * Returns something useful, like "f = field_id op = op_string operand =
      * operand_string"
@@ -11,12 +11,14 @@ import java.util.*;
 /**
  * Project is an operator that implements a relational projection.
  */
-public class Project extends Operator {
+public class Project extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private OpIterator child;
     private final TupleDesc td;
     private final List<Integer> outFieldIds;
+    private transient BatchIterator batches;
+    private transient TupleBatch batch;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -51,12 +53,15 @@ public class Project extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
+        batches = BatchAdapter.batches(child);
         super.open();
     }
 
     public void close() {
         super.close();
         child.close();
+        batches = null;
+        batch = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
@@ -72,15 +77,32 @@ public class Project extends Operator {
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
         if (!child.hasNext()) return null;
-        Tuple t = child.next();
+        return project(child.next());
+    }
+
+    private Tuple project(Tuple t) {
         Tuple newTuple = new Tuple(td);
         newTuple.setRecordId(t.getRecordId());
         for (int i = 0; i < td.numFields(); i++) {
-            newTuple.setField(i, t.getField(outFieldIds.get(i)));
+            newTuple.copyField(i, t, outFieldIds.get(i));
         }
         return newTuple;
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batches == null)
+            throw new IllegalStateException("Operator not yet open");
+        TupleBatch in = batches.nextBatch();
+        if (in == null)
+            return null;
+        if (batch == null)
+            batch = new TupleBatch(td);
+        batch.clear();
+        for (int i = 0; i < in.numSelected(); i++)
+            batch.add(project(in.getTuple(in.selected(i))));
+        return batch;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[]{this.child};
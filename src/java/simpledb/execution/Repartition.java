@@ -0,0 +1,56 @@
+package simpledb.execution;
+
+import java.io.Serializable;
+
+/**
+ * An exchange that routes the output of its fragments into partitions by the
+ * hash of a field, so that tuples with equal values of the field end up in
+ * the same partition. Each partition is read by its own operator, usually on
+ * its own worker thread; e.g. joining partition i of both inputs of an
+ * equality join for every i computes the whole join.
+ * <p>
+ * The fragments are run to completion when the first partition is opened,
+ * and the partitions are kept until all of them have been closed, in memory
+ * up to the budget of {@link Exchange#getExchangeMemory} and in spill files
+ * beyond it. Unlike a streaming exchange this cannot deadlock however the
+ * consumers interleave their reads, and a partition can be rewound.
+ */
+public class Repartition implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ExchangeReader[] partitions;
+
+    /**
+     * @param field the index of the field to partition on
+     * @param numPartitions the number of partitions
+     * @param fragments the plan fragments whose output is partitioned
+     */
+    public Repartition(int field, int numPartitions, OpIterator... fragments) {
+        if (numPartitions < 1)
+            throw new IllegalArgumentException("need at least one partition");
+        ExchangeBuffer buffer = new ExchangeBuffer(fragments, numPartitions, numPartitions,
+                t -> partitionOf(t.getField(field).hashCode(), numPartitions));
+        String fieldName = fragments[0].getTupleDesc().getFieldName(field);
+        partitions = new ExchangeReader[numPartitions];
+        for (int i = 0; i < numPartitions; i++)
+            partitions[i] = new ExchangeReader("repartition(" + fieldName + ") " + i + "/" + numPartitions,
+                    buffer, i, i);
+    }
+
+    static int partitionOf(int hash, int numPartitions) {
+        int h = hash * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), numPartitions);
+    }
+
+    public int numPartitions() {
+        return partitions.length;
+    }
+
+    /**
+     * @return the operator returning the tuples of partition i
+     */
+    public Exchange partition(int i) {
+        return partitions[i];
+    }
+}
@@ -5,7 +5,9 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 import simpledb.common.Type;
 import simpledb.common.DbException;
+import simpledb.storage.DbFile;
 import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
@@ -15,14 +17,30 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * A predicate pushed into a scan of a HeapFile by {@link #pushPredicate} is
+ * evaluated while pages are decoded, and only the tuples that satisfy it
+ * are returned.
+ * <p>
+ * A scan can return just some of the fields of the table. Scans of a
+ * HeapFile then decode only those fields of tuples that have not been
+ * decoded yet, so narrow tuples are passed up the plan.
  */
-public class SeqScan implements OpIterator {
+public class SeqScan implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private final TransactionId tid;
     private int tableid;
     private String tableAlias;
+    private final int[] columns;
     private DbFileIterator it;
+    /** The TupleDesc of the tuples the scan projects itself, or null. */
+    private TupleDesc projectTo;
+    /** The catalog TupleDesc that aliasTd was built from. */
+    private transient TupleDesc tableTd;
+    private transient TupleDesc aliasTd;
+    private CompiledPredicate pushed;
+    private transient TupleBatch batch;
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -40,10 +58,24 @@ public class SeqScan implements OpIterator {
      *            tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan that returns only some of the fields of the
+     * specified table.
+     *
+     * @param columns
+     *            the indexes in the table of the fields to return, in the
+     *            order to return them, or null to return all fields
+     * @see #SeqScan(TransactionId, int, String)
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
         // some code goes here
         this.tid = tid;
         this.tableid = tableid;
         this.tableAlias = tableAlias;
+        this.columns = columns == null ? null : columns.clone();
     }
 
     /**
@@ -52,7 +84,30 @@ public class SeqScan implements OpIterator {
      *       be the actual name of the table in the catalog of the database
      * */
     public String getTableName() {
-        return null;
+        return Database.getCatalog().getTableName(tableid);
+    }
+
+    /**
+     * @return the id of the table this operator scans
+     */
+    public int getTableId() {
+        return tableid;
+    }
+
+    /**
+     * @return the indexes in the table of the fields this scan returns, or
+     *         null if it returns all fields
+     */
+    public int[] getColumns() {
+        return columns == null ? null : columns.clone();
+    }
+
+    /**
+     * @return the index in the table of the field at index i of the tuples
+     *         this scan returns
+     */
+    public int getColumn(int i) {
+        return columns == null ? i : columns[i];
     }
 
     /**
@@ -80,15 +135,46 @@ public class SeqScan implements OpIterator {
         // some code goes here
         this.tableid = tableid;
         this.tableAlias = tableAlias;
+        this.aliasTd = null;
     }
 
     public SeqScan(TransactionId tid, int tableId) {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Makes the scan return only the tuples that satisfy p, from the next
+     * time it is opened. Only scans of a HeapFile accept predicates.
+     *
+     * @param p
+     *            the predicate, over the tuples this scan returns, or null to
+     *            return every tuple again
+     * @return true if the scan evaluates p, false if the caller must
+     */
+    public boolean pushPredicate(CompiledPredicate p) {
+        if (p != null && !(Database.getCatalog().getDatabaseFile(tableid) instanceof HeapFile))
+            return false;
+        pushed = p;
+        return true;
+    }
+
+    /**
+     * @return the predicate pushed into this scan, or null
+     */
+    public CompiledPredicate getPushedPredicate() {
+        return pushed;
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
-        it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof HeapFile) {
+            it = ((HeapFile) file).iterator(tid, pushed, columns);
+            projectTo = null;
+        } else {
+            it = file.iterator(tid);
+            projectTo = columns == null ? null : file.getTupleDesc().project(columns);
+        }
         it.open();
     }
 
@@ -105,13 +191,18 @@ public class SeqScan implements OpIterator {
     public TupleDesc getTupleDesc() {
         // some code goes here
         TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+        if (td == tableTd && aliasTd != null)
+            return aliasTd;
+        tableTd = td;
+        if (columns != null)
+            td = td.project(columns);
         Type[] types = new Type[td.numFields()];
         String[] names = new String[td.numFields()];
         for(int i=0;i<names.length;i++){
             names[i]=tableAlias + "." + td.getFieldName(i);
             types[i]=td.getFieldType(i);
         }
-        TupleDesc aliasTd = new TupleDesc(types,names);
+        aliasTd = TupleDesc.intern(new TupleDesc(types,names));
         return aliasTd;
     }
 
@@ -127,7 +218,7 @@ public class SeqScan implements OpIterator {
             TransactionAbortedException, DbException {
         // some code goes here
         if(this.hasNext()){
-            Tuple tuple = it.next();
+            Tuple tuple = nextTuple();
             if(tuple != null){
                 return tuple;
             }else{
@@ -138,9 +229,32 @@ public class SeqScan implements OpIterator {
         }
     }
 
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (it == null)
+            throw new IllegalStateException("Operator not yet open");
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        batch.clear();
+        while (!batch.isFull() && it.hasNext())
+            batch.add(nextTuple());
+        return batch.numRows() == 0 ? null : batch;
+    }
+
+    private Tuple nextTuple() throws TransactionAbortedException, DbException {
+        Tuple t = it.next();
+        if (projectTo == null || t == null)
+            return t;
+        Tuple projected = new Tuple(projectTo);
+        projected.setRecordId(t.getRecordId());
+        for (int j = 0; j < columns.length; j++)
+            projected.copyField(j, t, columns[j]);
+        return projected;
+    }
+
     public void close() {
         // some code goes here
         it=null;
+        batch=null;
     }
 
     public void rewind() throws DbException, NoSuchElementException,
@@ -0,0 +1,57 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleSpillFile;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An OpIterator over the tuples of a finished {@link TupleSpillFile}, so that
+ * spilled tuples can be fed back into an operator.
+ */
+class SpillFileScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final TupleSpillFile file;
+    private transient DbFileIterator it;
+
+    SpillFileScan(TupleSpillFile file) {
+        this.file = file;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        it = file.iterator();
+        it.open();
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (it == null)
+            throw new IllegalStateException("Operator not yet open");
+        return it.hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (it == null)
+            throw new IllegalStateException("Operator not yet open");
+        return it.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return file.getTupleDesc();
+    }
+
+    public void close() {
+        if (it != null)
+            it.close();
+        it = null;
+    }
+}
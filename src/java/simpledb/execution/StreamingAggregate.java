@@ -0,0 +1,115 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * An {@link Aggregate} over input that arrives ordered (ascending or
+ * descending) on the group field, so that all tuples of a group are
+ * adjacent. A group is complete as soon as the group value changes, so it is
+ * returned right away and only the state of the current group is kept:
+ * the first result is available after reading the first group, not the
+ * whole input, and memory does not depend on the number of groups.
+ * <p>
+ * The planner uses this operator when it knows the order of its input;
+ * see {@link simpledb.optimizer.LogicalPlan}. If the input is not grouped,
+ * a group value is returned once per run of adjacent tuples.
+ */
+public class StreamingAggregate extends Aggregate {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator input;
+    private TupleDesc resultTd;
+    private Tuple pending;
+    private boolean done;
+
+    /**
+     * Constructor.
+     *
+     * @param child   The OpIterator that is feeding us tuples, ordered on
+     *                gfield.
+     * @param afields The columns over which we are computing aggregates.
+     * @param gfield  The column over which we are grouping the result, or -1
+     *                if there is no grouping
+     * @param aops    The aggregation operator to use for each column in
+     *                afields
+     * @throws IllegalArgumentException if an operator is not supported
+     */
+    public StreamingAggregate(OpIterator child, int[] afields, int gfield, Aggregator.Op[] aops) {
+        super(child, afields, gfield, aops);
+        TupleDesc childTd = child.getTupleDesc();
+        for (int i = 0; i < afields.length; i++) {
+            if (aops[i] != Aggregator.Op.MIN && aops[i] != Aggregator.Op.MAX && aops[i] != Aggregator.Op.SUM
+                    && aops[i] != Aggregator.Op.AVG && aops[i] != Aggregator.Op.COUNT)
+                throw new IllegalArgumentException("Aggregate " + aops[i] + " not implemented.");
+            if (childTd.getFieldType(afields[i]) == Type.STRING_TYPE && aops[i] != Aggregator.Op.COUNT)
+                throw new IllegalArgumentException("Only COUNT is supported over string fields");
+        }
+    }
+
+    @Override
+    protected void aggregateChild() throws DbException, TransactionAbortedException {
+        input = getChildren()[0];
+        resultTd = getTupleDesc();
+        pending = input.hasNext() ? input.next() : null;
+        done = false;
+    }
+
+    @Override
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (done)
+            return null;
+        int gfield = groupField();
+        AggregateState[] states = new AggregateState[numAggregates()];
+        for (int i = 0; i < states.length; i++)
+            states[i] = new AggregateState();
+        Field group = null;
+        if (pending != null) {
+            group = gfield == Aggregator.NO_GROUPING ? null : pending.getField(gfield);
+            merge(states, pending);
+            pending = null;
+            while (input.hasNext()) {
+                Tuple t = input.next();
+                if (group != null && !group.equals(t.getField(gfield))) {
+                    pending = t;
+                    break;
+                }
+                merge(states, t);
+            }
+        } else if (gfield != Aggregator.NO_GROUPING) {
+            // no input: no groups
+            done = true;
+            return null;
+        }
+        if (pending == null)
+            done = true;
+
+        Tuple result = new Tuple(resultTd);
+        int f = 0;
+        if (gfield != Aggregator.NO_GROUPING)
+            result.setField(f++, group);
+        for (int i = 0; i < states.length; i++)
+            result.setField(f++, new IntField(states[i].result(aggregateOp(i))));
+        return result;
+    }
+
+    private void merge(AggregateState[] states, Tuple t) {
+        for (int i = 0; i < states.length; i++) {
+            if (aggregateOp(i) == Aggregator.Op.COUNT)
+                states[i].count++;
+            else
+                states[i].add(t.getInt(aggregateField(i)));
+        }
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        input.rewind();
+        aggregateChild();
+    }
+}
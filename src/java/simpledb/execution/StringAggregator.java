@@ -62,6 +62,18 @@ public class StringAggregator implements Aggregator {
         }
     }
 
+    public boolean mergeTupleIntoExistingGroup(Tuple tup) {
+        Field gf = gbfield == NO_GROUPING ? null : tup.getField(gbfield);
+        if (!aggreMap.containsKey(gf))
+            return false;
+        mergeTupleIntoGroup(tup);
+        return true;
+    }
+
+    public int numGroups() {
+        return aggreMap.size();
+    }
+
     /**
      * Create a OpIterator over group aggregate results.
      *
@@ -0,0 +1,163 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.*;
+
+/**
+ * TopN is an operator that implements ORDER BY followed by a LIMIT. Instead
+ * of sorting the whole input it keeps the best N tuples seen so far in a
+ * bounded heap whose root is the worst of them, so it needs O(N) memory and
+ * O(input * log N) time.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator child;
+    private final TupleDesc td;
+    private final int[] orderByFields;
+    private final boolean[] asc;
+    private final int limit;
+    private final Comparator<Tuple> comparator;
+    private final List<Tuple> topTups = new ArrayList<>();
+    private Iterator<Tuple> it;
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param limit
+     *            the maximum number of tuples to return; must be
+     *            non-negative.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int orderbyField, boolean asc, int limit, OpIterator child) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, limit, child);
+    }
+
+    /**
+     * Creates a new TopN node that sorts on several fields.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if it is sorted in ascending order.
+     * @param limit
+     *            the maximum number of tuples to return; must be
+     *            non-negative.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int limit, OpIterator child) {
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.child = child;
+        this.td = child.getTupleDesc();
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.limit = limit;
+        this.comparator = TupleComparator.forKeys(td, orderbyFields, asc);
+    }
+
+    public boolean isASC() {
+        return this.asc[0];
+    }
+
+    public int getOrderByField() {
+        return this.orderByFields[0];
+    }
+
+    public String getOrderFieldName() {
+        return td.getFieldName(orderByFields[0]);
+    }
+
+    /**
+     * @return the fields this operator sorts on, most significant first
+     */
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /**
+     * @return for each sort field, true if it is sorted in ascending order
+     */
+    public boolean[] getAscending() {
+        return asc.clone();
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        topTups.clear();
+        if (limit > 0) {
+            // max-heap on the sort order: the root is the tuple to evict
+            PriorityQueue<Tuple> heap = new PriorityQueue<>(limit, comparator.reversed());
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                if (heap.size() < limit) {
+                    heap.add(t);
+                } else if (comparator.compare(t, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(t);
+                }
+            }
+            while (!heap.isEmpty())
+                topTups.add(heap.poll());
+            Collections.reverse(topTups);
+        }
+        it = topTups.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        it = null;
+        topTups.clear();
+    }
+
+    public void rewind() {
+        it = topTups.iterator();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the first limit tuples of
+     * the child operator in order
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException {
+        if (it != null && it.hasNext()) {
+            return it.next();
+        } else
+            return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
@@ -0,0 +1,135 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+/**
+ * A batch of up to {@link #MAX_ROWS} tuples passed between operators by
+ * {@link BatchIterator#nextBatch}, with a selection vector of the rows that
+ * are still part of the result: a Filter removes rows from the selection
+ * instead of copying the survivors into a new batch.
+ * <p>
+ * The values of an INT column are extracted into a primitive array the first
+ * time the column is asked for, so that operators can evaluate predicates
+ * and aggregates in tight loops over the column. Only the selected rows of
+ * an extracted column are valid.
+ */
+public class TupleBatch {
+
+    /** Maximum number of rows in a batch. */
+    public static final int MAX_ROWS = 1024;
+
+    private final TupleDesc td;
+    private final Tuple[] rows = new Tuple[MAX_ROWS];
+    private int numRows = 0;
+    private final int[] selection = new int[MAX_ROWS];
+    private int numSelected = 0;
+    private final int[][] intColumns;
+    /** The number of rows when each column was extracted, or -1. */
+    private final int[] extractedRows;
+
+    /**
+     * Creates an empty batch of tuples with the specified TupleDesc.
+     */
+    public TupleBatch(TupleDesc td) {
+        this.td = td;
+        this.intColumns = new int[td.numFields()][];
+        this.extractedRows = new int[td.numFields()];
+        clear();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Removes all rows from the batch.
+     */
+    public void clear() {
+        numRows = 0;
+        numSelected = 0;
+        java.util.Arrays.fill(extractedRows, -1);
+    }
+
+    public boolean isFull() {
+        return numRows == MAX_ROWS;
+    }
+
+    /**
+     * Appends a row to the batch and selects it.
+     *
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(Tuple t) {
+        if (numRows == MAX_ROWS)
+            throw new IllegalStateException("batch is full");
+        selection[numSelected++] = numRows;
+        rows[numRows++] = t;
+    }
+
+    /**
+     * @return the number of rows in the batch, selected or not
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int numSelected() {
+        return numSelected;
+    }
+
+    /**
+     * @return the index of the i-th selected row
+     */
+    public int selected(int i) {
+        return selection[i];
+    }
+
+    /**
+     * @return the selection vector: the indexes of the selected rows, in
+     *         ascending order, in its first {@link #numSelected} elements.
+     *         Operators narrowing the selection may overwrite it in place
+     *         and then call {@link #setNumSelected}.
+     */
+    public int[] selection() {
+        return selection;
+    }
+
+    public void setNumSelected(int n) {
+        if (n < 0 || n > numSelected)
+            throw new IllegalArgumentException("the selection can only shrink");
+        numSelected = n;
+    }
+
+    /**
+     * @return the tuple in the specified row
+     */
+    public Tuple getTuple(int row) {
+        return rows[row];
+    }
+
+    /**
+     * @return the values of the specified INT column, indexed by row; only
+     *         the values of selected rows are valid
+     * @throws IllegalArgumentException if the column is not an INT column
+     */
+    public int[] intColumn(int col) {
+        if (extractedRows[col] == numRows)
+            return intColumns[col];
+        if (td.getFieldType(col) != Type.INT_TYPE)
+            throw new IllegalArgumentException("column " + col + " is not an INT column");
+        int[] values = intColumns[col];
+        if (values == null)
+            values = intColumns[col] = new int[MAX_ROWS];
+        for (int i = 0; i < numSelected; i++) {
+            int row = selection[i];
+            values[row] = rows[row].getInt(col);
+        }
+        extractedRows[col] = numRows;
+        return values;
+    }
+}
@@ -0,0 +1,161 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the comparators used to sort tuples on one or more fields.
+ * <p>
+ * Rather than comparing through {@link simpledb.storage.Field#compare} and
+ * {@link Predicate.Op}, the comparator for a sort key is put together once
+ * from the field types of the schema: each key becomes a small comparator
+ * that reads the raw int or String of its field and compares it directly,
+ * with the sort direction folded in. Comparators hold no state, so they are
+ * cached and shared by every sort on the same key types, fields and
+ * directions.
+ */
+public final class TupleComparator {
+
+    private static final Map<String, Comparator<Tuple>> cache = new ConcurrentHashMap<>();
+
+    private TupleComparator() {
+    }
+
+    /**
+     * Returns a comparator that orders tuples on a single field.
+     *
+     * @param td
+     *            the schema of the tuples being compared
+     * @param field
+     *            the index of the field to sort on
+     * @param asc
+     *            true if the sort order is ascending
+     */
+    public static Comparator<Tuple> forKey(TupleDesc td, int field, boolean asc) {
+        return forKeys(td, new int[] { field }, new boolean[] { asc });
+    }
+
+    /**
+     * Returns a comparator that orders tuples on several fields: tuples are
+     * ordered by fields[0], ties are broken by fields[1], and so on.
+     *
+     * @param td
+     *            the schema of the tuples being compared
+     * @param fields
+     *            the indexes of the fields to sort on, most significant first
+     * @param asc
+     *            for each field, true if it is sorted in ascending order
+     * @throws IllegalArgumentException
+     *             if there are no keys or fields and asc differ in length
+     */
+    public static Comparator<Tuple> forKeys(TupleDesc td, int[] fields, boolean[] asc) {
+        if (fields.length == 0 || fields.length != asc.length)
+            throw new IllegalArgumentException("need one direction per sort field");
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            key.append(td.getFieldType(fields[i]) == Type.INT_TYPE ? 'I' : 'S')
+                    .append(fields[i]).append(asc[i] ? '+' : '-');
+        }
+        return cache.computeIfAbsent(key.toString(), k -> build(td, fields, asc));
+    }
+
+    private static Comparator<Tuple> build(TupleDesc td, int[] fields, boolean[] asc) {
+        if (fields.length == 1)
+            return keyComparator(td.getFieldType(fields[0]), fields[0], asc[0]);
+        @SuppressWarnings("unchecked")
+        Comparator<Tuple>[] keys = new Comparator[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            keys[i] = keyComparator(td.getFieldType(fields[i]), fields[i], asc[i]);
+        return new MultiKey(keys);
+    }
+
+    private static Comparator<Tuple> keyComparator(Type type, int field, boolean asc) {
+        switch (type) {
+        case INT_TYPE:
+            return asc ? new IntAsc(field) : new IntDesc(field);
+        case STRING_TYPE:
+            return asc ? new StringAsc(field) : new StringDesc(field);
+        default:
+            throw new IllegalArgumentException("cannot sort on type " + type);
+        }
+    }
+
+    private static int intAt(Tuple t, int field) {
+        return t.getInt(field);
+    }
+
+    private static String stringAt(Tuple t, int field) {
+        return ((StringField) t.getField(field)).getValue();
+    }
+
+    private static final class IntAsc implements Comparator<Tuple> {
+        private final int field;
+
+        IntAsc(int field) {
+            this.field = field;
+        }
+
+        public int compare(Tuple a, Tuple b) {
+            return Integer.compare(intAt(a, field), intAt(b, field));
+        }
+    }
+
+    private static final class IntDesc implements Comparator<Tuple> {
+        private final int field;
+
+        IntDesc(int field) {
+            this.field = field;
+        }
+
+        public int compare(Tuple a, Tuple b) {
+            return Integer.compare(intAt(b, field), intAt(a, field));
+        }
+    }
+
+    private static final class StringAsc implements Comparator<Tuple> {
+        private final int field;
+
+        StringAsc(int field) {
+            this.field = field;
+        }
+
+        public int compare(Tuple a, Tuple b) {
+            return stringAt(a, field).compareTo(stringAt(b, field));
+        }
+    }
+
+    private static final class StringDesc implements Comparator<Tuple> {
+        private final int field;
+
+        StringDesc(int field) {
+            this.field = field;
+        }
+
+        public int compare(Tuple a, Tuple b) {
+            return stringAt(b, field).compareTo(stringAt(a, field));
+        }
+    }
+
+    private static final class MultiKey implements Comparator<Tuple> {
+        private final Comparator<Tuple>[] keys;
+
+        MultiKey(Comparator<Tuple>[] keys) {
+            this.keys = keys;
+        }
+
+        public int compare(Tuple a, Tuple b) {
+            for (Comparator<Tuple> key : keys) {
+                int c = key.compare(a, b);
+                if (c != 0)
+                    return c;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb.execution;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads that parallel operators run their workers on. Threads are
+ * daemons created on demand and reused, so an operator may submit as many
+ * workers as it wants parallelism without sizing the pool up front.
+ */
+public class WorkerPool {
+
+    /** Default number of workers a parallel operator uses: one per core. */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static int parallelism = DEFAULT_PARALLELISM;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "simpledb-worker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private WorkerPool() {
+    }
+
+    /**
+     * @return the executor to submit workers to
+     */
+    public static ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the number of workers parallel operators created without an
+     *         explicit thread count use
+     */
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of workers of parallel operators created afterwards.
+     */
+    public static void setParallelism(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        WorkerPool.parallelism = threads;
+    }
+
+    public static void resetParallelism() {
+        WorkerPool.parallelism = DEFAULT_PARALLELISM;
+    }
+}
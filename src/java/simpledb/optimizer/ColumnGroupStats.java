@@ -0,0 +1,123 @@
+package simpledb.optimizer;
+
+import simpledb.execution.Predicate;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Statistics of a group of correlated fields of a table, declared with
+ * {@link simpledb.common.Catalog#addColumnGroup}: the values of the fields
+ * in the rows {@link TableStats} sampled, against which conjunctions of
+ * predicates on the fields are evaluated together, and a HyperLogLog sketch
+ * of the distinct combinations of their values.
+ */
+final class ColumnGroupStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The indices of the fields in the table, in increasing order. */
+    final int[] fields;
+    /** The sampled values of each field of the group, an int[] or a String[]. */
+    private final Object[] columns;
+    private final int rows;
+    final HyperLogLog distinct;
+    /** The number of distinct combinations among the tuples read. */
+    final long sampleDistinct;
+
+    ColumnGroupStats(int[] fields, Object[] columns, int rows, HyperLogLog distinct) {
+        this.fields = fields;
+        this.columns = columns;
+        this.rows = rows;
+        this.distinct = distinct;
+        this.sampleDistinct = distinct.estimate();
+    }
+
+    /** @return a hash of the combination of the values of the specified fields of t */
+    static long hash(Tuple t, int[] fields) {
+        long h = 0;
+        for (int f : fields) {
+            Field v = t.getField(f);
+            h = HyperLogLog.combine(h, v instanceof IntField ? HyperLogLog.hash(((IntField) v).getValue())
+                    : HyperLogLog.hash(((StringField) v).getValue()));
+        }
+        return h;
+    }
+
+    /** @return the position of the specified field in the group, or -1 if it is not in it */
+    int indexOf(int field) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == field)
+                return i;
+        }
+        return -1;
+    }
+
+    /** @return the number of sampled rows */
+    int rows() {
+        return rows;
+    }
+
+    private static boolean satisfies(int cmp, Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return cmp == 0;
+        case NOT_EQUALS:
+            return cmp != 0;
+        case LESS_THAN:
+            return cmp < 0;
+        case LESS_THAN_OR_EQ:
+            return cmp <= 0;
+        case GREATER_THAN:
+            return cmp > 0;
+        case GREATER_THAN_OR_EQ:
+            return cmp >= 0;
+        default:
+            throw new IllegalStateException("impossible to reach here");
+        }
+    }
+
+    /**
+     * @return the number of sampled rows that satisfy all the predicates,
+     *         whose fields must all be in the group
+     */
+    int matches(List<Predicate> preds) {
+        int n = preds.size();
+        Object[] cols = new Object[n];
+        Predicate.Op[] ops = new Predicate.Op[n];
+        int[] intConstants = new int[n];
+        String[] stringConstants = new String[n];
+        for (int k = 0; k < n; k++) {
+            Predicate p = preds.get(k);
+            cols[k] = columns[indexOf(p.getField())];
+            ops[k] = p.getOp();
+            if (p.getOperand() instanceof IntField)
+                intConstants[k] = ((IntField) p.getOperand()).getValue();
+            else
+                stringConstants[k] = ((StringField) p.getOperand()).getValue();
+        }
+        int count = 0;
+        rows:
+        for (int r = 0; r < rows; r++) {
+            for (int k = 0; k < n; k++) {
+                boolean match;
+                if (cols[k] instanceof int[]) {
+                    match = satisfies(Integer.compare(((int[]) cols[k])[r], intConstants[k]), ops[k]);
+                } else {
+                    String s = ((String[]) cols[k])[r];
+                    match = ops[k] == Predicate.Op.LIKE ? s.contains(stringConstants[k])
+                            : satisfies(s.compareTo(stringConstants[k]), ops[k]);
+                }
+                if (!match)
+                    continue rows;
+            }
+            count++;
+        }
+        return count;
+    }
+}
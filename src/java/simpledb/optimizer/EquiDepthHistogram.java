@@ -0,0 +1,461 @@
+package simpledb.optimizer;
+
+import simpledb.execution.Predicate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An equi-depth histogram over a field, with a list of its most common
+ * values, built from the sorted values of a sample.
+ * <p>
+ * Values much more common than the average are counted exactly, each on its
+ * own, so that a few heavy values of a skewed field neither swamp a bucket
+ * nor get averaged away. The other values are split into buckets that each
+ * hold about as many values, from the smallest to the largest value in the
+ * bucket; a value is never split between buckets. Values are assumed to be
+ * spread uniformly within a bucket, over the number of distinct values it
+ * holds.
+ * <p>
+ * Like {@link IntHistogram}, values may be added and removed concurrently
+ * without locks, and values below or above all buckets, which only values
+ * added after the histogram was built have, are counted in two more buckets,
+ * whose values are taken to be distinct as far as their range allows. A value
+ * that falls between two buckets widens the next one.
+ *
+ * @param <T> the type of the values
+ */
+public abstract class EquiDepthHistogram<T extends Comparable<? super T>> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The most common values, in increasing order, and how many of each there are. */
+    private final T[] common;
+    private final AtomicLongArray commonCounts;
+    /**
+     * The smallest and largest value of each bucket, in increasing order, or
+     * null while a bucket is empty; the first and last buckets hold the
+     * values below and above the others.
+     */
+    private final AtomicReferenceArray<T> lower;
+    private final AtomicReferenceArray<T> upper;
+    private final AtomicLongArray counts;
+    /** The number of distinct values in each bucket. */
+    private final AtomicLongArray distinct;
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * @param sorted the values to histogram, in increasing order
+     * @param buckets the largest number of buckets
+     * @param maxCommon the largest number of most common values
+     */
+    EquiDepthHistogram(T[] sorted, int buckets, int maxCommon) {
+        if (buckets < 1 || maxCommon < 0)
+            throw new IllegalArgumentException("need at least one bucket");
+        int n = sorted.length;
+        // the runs of equal values
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || sorted[i].compareTo(sorted[i - 1]) != 0)
+                starts.add(i);
+        }
+        int runs = starts.size();
+        starts.add(n);
+
+        // the most common values are those at least 1.25 times as common as
+        // the average value, as many as fit
+        double threshold = Math.max(2, 1.25 * n / Math.max(1, runs));
+        Integer[] byCount = new Integer[runs];
+        for (int r = 0; r < runs; r++)
+            byCount[r] = r;
+        Arrays.sort(byCount, (a, b) -> Integer.compare(starts.get(b + 1) - starts.get(b),
+                starts.get(a + 1) - starts.get(a)));
+        boolean[] isCommon = new boolean[runs];
+        int numCommon = 0;
+        for (int k = 0; k < Math.min(maxCommon, runs); k++) {
+            int r = byCount[k];
+            if (starts.get(r + 1) - starts.get(r) < threshold)
+                break;
+            isCommon[r] = true;
+            numCommon++;
+        }
+        common = Arrays.copyOf(sorted, numCommon);
+        commonCounts = new AtomicLongArray(numCommon);
+        int rest = n;
+        for (int r = 0, c = 0; r < runs; r++) {
+            if (isCommon[r]) {
+                common[c] = sorted[starts.get(r)];
+                commonCounts.set(c++, starts.get(r + 1) - starts.get(r));
+                rest -= starts.get(r + 1) - starts.get(r);
+            }
+        }
+
+        // the other values, cut into buckets at the end of the run that
+        // reaches each multiple of rest / buckets
+        List<Integer> firsts = new ArrayList<>();
+        List<Integer> lasts = new ArrayList<>();
+        List<Integer> bucketCounts = new ArrayList<>();
+        List<Integer> bucketDistinct = new ArrayList<>();
+        int seen = 0;
+        for (int r = 0; r < runs; r++) {
+            if (isCommon[r])
+                continue;
+            int len = starts.get(r + 1) - starts.get(r);
+            int b = bucketCounts.size();
+            if (b == 0 || (long) seen * buckets >= (long) b * rest) {
+                firsts.add(starts.get(r));
+                lasts.add(starts.get(r));
+                bucketCounts.add(0);
+                bucketDistinct.add(0);
+                b++;
+            }
+            lasts.set(b - 1, starts.get(r));
+            bucketCounts.set(b - 1, bucketCounts.get(b - 1) + len);
+            bucketDistinct.set(b - 1, bucketDistinct.get(b - 1) + 1);
+            seen += len;
+        }
+        int numBuckets = bucketCounts.size() + 2;
+        lower = new AtomicReferenceArray<>(numBuckets);
+        upper = new AtomicReferenceArray<>(numBuckets);
+        counts = new AtomicLongArray(numBuckets);
+        distinct = new AtomicLongArray(numBuckets);
+        for (int b = 0; b < bucketCounts.size(); b++) {
+            lower.set(b + 1, sorted[firsts.get(b)]);
+            upper.set(b + 1, sorted[lasts.get(b)]);
+            counts.set(b + 1, bucketCounts.get(b));
+            distinct.set(b + 1, bucketDistinct.get(b));
+        }
+        total.set(n);
+    }
+
+    /**
+     * @return the fraction of the values of a bucket from lo to hi that are
+     *         less than v, for lo &lt; v &lt;= hi
+     */
+    abstract double fraction(T lo, T hi, T v);
+
+    /**
+     * @return the number of distinct values there can be from lo to hi, or
+     *         Long.MAX_VALUE if there is no limit
+     */
+    abstract long width(T lo, T hi);
+
+    /** @return the bucket v belongs to: the first whose largest value is at least v */
+    private int bucket(T v) {
+        int last = counts.length() - 1;
+        if (last == 1 || v.compareTo(upper.get(last - 1)) > 0)
+            return last;
+        if (v.compareTo(lower.get(1)) < 0)
+            return 0;
+        int lo = 1, hi = last - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (upper.get(mid).compareTo(v) >= 0)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /** @return the number of distinct values taken to be in bucket b */
+    private long distinctIn(int b) {
+        if (b == 0 || b == counts.length() - 1) {
+            T lo = lower.get(b), hi = upper.get(b);
+            return lo == null || hi == null ? 1 : Math.max(1, Math.min(counts.get(b), width(lo, hi)));
+        }
+        return Math.max(1, distinct.get(b));
+    }
+
+    private static <T extends Comparable<? super T>> T min(T a, T b) {
+        return a == null || b.compareTo(a) < 0 ? b : a;
+    }
+
+    private static <T extends Comparable<? super T>> T max(T a, T b) {
+        return a == null || b.compareTo(a) > 0 ? b : a;
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     * @param v Value to add to the histogram
+     */
+    public void addValue(T v) {
+        int c = Arrays.binarySearch(common, v);
+        if (c >= 0) {
+            commonCounts.incrementAndGet(c);
+        } else {
+            int b = bucket(v);
+            // a value below the bucket is a value it did not hold yet
+            T lo = lower.get(b);
+            if (lo != null && v.compareTo(lo) < 0)
+                distinct.incrementAndGet(b);
+            lower.accumulateAndGet(b, v, EquiDepthHistogram::min);
+            upper.accumulateAndGet(b, v, EquiDepthHistogram::max);
+            counts.incrementAndGet(b);
+        }
+        total.incrementAndGet();
+    }
+
+    /**
+     * Removes a value added before, unless the count it would be removed from
+     * is already zero, as it may be for histograms of a sample of the values.
+     * @param v Value to remove from the histogram
+     */
+    public void removeValue(T v) {
+        int c = Arrays.binarySearch(common, v);
+        AtomicLongArray a = c >= 0 ? commonCounts : counts;
+        int i = c >= 0 ? c : bucket(v);
+        if (a.getAndUpdate(i, n -> Math.max(0, n - 1)) > 0)
+            total.decrementAndGet();
+    }
+
+    /**
+     * Multiplies each count by factor, so that a histogram of a sample of
+     * the values counts about as many values as there are. The distinct
+     * values of a bucket are scaled up in proportion to how many of its
+     * sampled values were distinct.
+     */
+    void scale(double factor) {
+        long sum = 0;
+        for (int c = 0; c < commonCounts.length(); c++) {
+            commonCounts.set(c, Math.round(commonCounts.get(c) * factor));
+            sum += commonCounts.get(c);
+        }
+        for (int b = 0; b < counts.length(); b++) {
+            long n = counts.get(b);
+            long d = distinct.get(b);
+            if (n > 0 && factor > 1) {
+                double scaled = d + d * (factor - 1) * ((double) d / n);
+                distinct.set(b, Math.min(width(lower.get(b), upper.get(b)),
+                        Math.min(Math.round(n * factor), Math.round(scaled))));
+            }
+            counts.set(b, Math.round(n * factor));
+            sum += counts.get(b);
+        }
+        total.set(sum);
+    }
+
+    /** @return the number of values equal to v */
+    private double countEqual(T v) {
+        int c = Arrays.binarySearch(common, v);
+        if (c >= 0)
+            return commonCounts.get(c);
+        int b = bucket(v);
+        T lo = lower.get(b), hi = upper.get(b);
+        if (lo == null || hi == null || v.compareTo(lo) < 0 || v.compareTo(hi) > 0)
+            return 0;
+        return counts.get(b) / (double) distinctIn(b);
+    }
+
+    /** @return the number of values less than v */
+    private double countLessThan(T v) {
+        double n = 0;
+        int c = Arrays.binarySearch(common, v);
+        int below = c >= 0 ? c : -c - 1;
+        for (int i = 0; i < below; i++)
+            n += commonCounts.get(i);
+        for (int b = 0; b < counts.length(); b++) {
+            T lo = lower.get(b), hi = upper.get(b);
+            if (lo == null || hi == null)
+                continue;
+            if (v.compareTo(lo) <= 0)
+                break;
+            if (v.compareTo(hi) > 0)
+                n += counts.get(b);
+            else
+                n += counts.get(b) * fraction(lo, hi, v);
+        }
+        return n;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this table.
+     *
+     * @param op Operator
+     * @param v Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, T v) {
+        double t = total.get();
+        if (t <= 0)
+            return 0;
+        double s;
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            s = countEqual(v) / t;
+            break;
+        case NOT_EQUALS:
+            s = 1 - countEqual(v) / t;
+            break;
+        case LESS_THAN:
+            s = countLessThan(v) / t;
+            break;
+        case LESS_THAN_OR_EQ:
+            s = (countLessThan(v) + countEqual(v)) / t;
+            break;
+        case GREATER_THAN:
+            s = 1 - (countLessThan(v) + countEqual(v)) / t;
+            break;
+        case GREATER_THAN_OR_EQ:
+            s = 1 - countLessThan(v) / t;
+            break;
+        default:
+            throw new IllegalStateException("impossible to reach here");
+        }
+        return Math.max(0, Math.min(1, s));
+    }
+
+    /**
+     * @return the chance that two values are equal, with the values of each
+     *         bucket uniform over its distinct values
+     */
+    public double avgSelectivity() {
+        double t = total.get();
+        if (t <= 0)
+            return 0;
+        double sum = 0;
+        for (int c = 0; c < commonCounts.length(); c++) {
+            double f = commonCounts.get(c) / t;
+            sum += f * f;
+        }
+        for (int b = 0; b < counts.length(); b++) {
+            double f = counts.get(b) / t;
+            sum += f * f / distinctIn(b);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of values added
+     */
+    public long numValues() {
+        return total.get();
+    }
+
+    /**
+     * @return the number of most common values counted on their own
+     */
+    public int numCommonValues() {
+        return common.length;
+    }
+
+    /**
+     * @return the number of buckets the histogram was built with
+     */
+    public int numBuckets() {
+        return counts.length() - 2;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("EquiDepthHistogram: common");
+        for (int c = 0; c < common.length; c++)
+            sb.append(' ').append(common[c]).append('=').append(commonCounts.get(c));
+        sb.append(", buckets");
+        for (int b = 0; b < counts.length(); b++)
+            sb.append(" [").append(lower.get(b)).append(", ").append(upper.get(b)).append("]=")
+                    .append(counts.get(b)).append('/').append(distinct.get(b));
+        return sb.toString();
+    }
+
+    /** An equi-depth histogram over an INT field. */
+    public static final class Ints extends EquiDepthHistogram<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param values the values to histogram, in any order
+         * @param n the number of values to histogram, the first n of values
+         * @param buckets the largest number of buckets
+         * @param maxCommon the largest number of most common values
+         */
+        public Ints(int[] values, int n, int buckets, int maxCommon) {
+            super(sorted(values, n), buckets, maxCommon);
+        }
+
+        private static Integer[] sorted(int[] values, int n) {
+            int[] copy = Arrays.copyOf(values, n);
+            Arrays.sort(copy);
+            Integer[] boxed = new Integer[n];
+            for (int i = 0; i < n; i++)
+                boxed[i] = copy[i];
+            return boxed;
+        }
+
+        @Override
+        double fraction(Integer lo, Integer hi, Integer v) {
+            return ((long) v - lo) / ((double) hi - lo + 1);
+        }
+
+        @Override
+        long width(Integer lo, Integer hi) {
+            return lo == null || hi == null ? Long.MAX_VALUE : (long) hi - lo + 1;
+        }
+    }
+
+    /**
+     * An equi-depth histogram over a STRING field. Within a bucket, strings
+     * are placed by the characters that follow the prefix its smallest and
+     * largest value share, so that long shared prefixes do not make all
+     * values of a bucket look the same.
+     */
+    public static final class Strings extends EquiDepthHistogram<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The number of characters after the shared prefix that place a string. */
+        private static final int CHARS = 6;
+
+        /**
+         * @param values the values to histogram, in any order
+         * @param n the number of values to histogram, the first n of values
+         * @param buckets the largest number of buckets
+         * @param maxCommon the largest number of most common values
+         */
+        public Strings(String[] values, int n, int buckets, int maxCommon) {
+            super(sorted(values, n), buckets, maxCommon);
+        }
+
+        private static String[] sorted(String[] values, int n) {
+            String[] copy = Arrays.copyOf(values, n);
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        /**
+         * @return where s falls in [0, 1), by its characters from the
+         *         specified index on, in the order of strings
+         */
+        private static double position(String s, int from) {
+            double p = 0, unit = 1;
+            for (int i = from; i < from + CHARS; i++) {
+                unit /= 257;
+                // the end of a string comes before every character
+                p += unit * (i < s.length() ? Math.min(255, s.charAt(i)) + 1 : 0);
+            }
+            return p;
+        }
+
+        @Override
+        double fraction(String lo, String hi, String v) {
+            int prefix = 0;
+            while (prefix < lo.length() && prefix < hi.length() && lo.charAt(prefix) == hi.charAt(prefix))
+                prefix++;
+            double l = position(lo, prefix), h = position(hi, prefix);
+            if (h <= l)
+                return 0.5;
+            return Math.max(0, Math.min(1, (position(v, prefix) - l) / (h - l)));
+        }
+
+        @Override
+        long width(String lo, String hi) {
+            return lo != null && lo.equals(hi) ? 1 : Long.MAX_VALUE;
+        }
+    }
+}
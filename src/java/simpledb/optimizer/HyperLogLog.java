@@ -0,0 +1,112 @@
+package simpledb.optimizer;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A HyperLogLog sketch of the number of distinct values of a field, in
+ * constant space: 2^{@link #P} registers, each the largest number of leading
+ * zeros plus one seen in the hashes that select it, for a standard error of
+ * about 1.6%.
+ * <p>
+ * Sketches of parts of a table are merged by taking the larger of each
+ * register. Registers only grow, and are updated atomically, so values may
+ * be added concurrently; a register is only written when a value raises it,
+ * which soon becomes rare. The estimate is kept until a register is raised,
+ * since the optimizer asks for it once for each plan it considers.
+ */
+final class HyperLogLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of bits of a hash that select its register. */
+    static final int P = 12;
+    private static final int M = 1 << P;
+
+    private final AtomicIntegerArray registers = new AtomicIntegerArray(M);
+
+    /** The number of times a register was raised, counted after raising it. */
+    private transient volatile int raised;
+    private static final AtomicIntegerFieldUpdater<HyperLogLog> RAISED =
+            AtomicIntegerFieldUpdater.newUpdater(HyperLogLog.class, "raised");
+    /** The last estimate, and the value of raised before it was made. */
+    private transient volatile long[] estimate;
+
+    /** @return a well-mixed 64-bit hash of v */
+    static long hash(long v) {
+        // the finalizer of SplitMix64
+        v = (v ^ (v >>> 30)) * 0xbf58476d1ce4e5b9L;
+        v = (v ^ (v >>> 27)) * 0x94d049bb133111ebL;
+        return v ^ (v >>> 31);
+    }
+
+    /** @return a 64-bit hash of s */
+    static long hash(String s) {
+        // FNV-1a, mixed further since its high bits select the register
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+
+    /** @return a hash of a combination of values, from that of the values before it and the next */
+    static long combine(long hash, long next) {
+        return hash(hash * 31 + next);
+    }
+
+    void add(int v) {
+        addHash(hash(v));
+    }
+
+    void add(String s) {
+        addHash(hash(s));
+    }
+
+    /** Adds a value by its hash. */
+    void addHash(long h) {
+        int index = (int) (h >>> (64 - P));
+        // the bit or'ed in bounds the rank at 64 - P + 1
+        int rank = Long.numberOfLeadingZeros((h << P) | (1L << (P - 1))) + 1;
+        if (rank > registers.get(index)) {
+            registers.accumulateAndGet(index, rank, Math::max);
+            RAISED.incrementAndGet(this);
+        }
+    }
+
+    /** Adds the values counted by another sketch. */
+    void addAll(HyperLogLog other) {
+        for (int i = 0; i < M; i++) {
+            int r = other.registers.get(i);
+            if (r > registers.get(i)) {
+                registers.accumulateAndGet(i, r, Math::max);
+                RAISED.incrementAndGet(this);
+            }
+        }
+    }
+
+    /** @return the estimated number of distinct values added */
+    long estimate() {
+        int before = raised;
+        long[] last = estimate;
+        if (last != null && last[0] == before)
+            return last[1];
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < M; i++) {
+            int r = registers.get(i);
+            sum += Math.scalb(1.0, -r);
+            if (r == 0)
+                zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / M);
+        double e = alpha * M * M / sum;
+        // few values leave many registers empty: count those instead
+        if (e <= 2.5 * M && zeros > 0)
+            e = M * Math.log((double) M / zeros);
+        estimate = new long[] { before, Math.round(e) };
+        return Math.round(e);
+    }
+}
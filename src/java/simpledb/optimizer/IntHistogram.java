@@ -2,28 +2,77 @@ package simpledb.optimizer;
 
 import simpledb.execution.Predicate;
 
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
 /** A class to represent a fixed-width histogram over a single integer-based field.
+ * <p>
+ * There are never more buckets than integers in the range, so each bucket
+ * holds at least one value. Values are assumed to be spread uniformly within
+ * a bucket.
+ * <p>
+ * Values may be added and removed concurrently, so that statistics follow
+ * the inserts and deletes of a table; the counts are atomic and updated
+ * without locks. Values outside min to max, which only tuples inserted after
+ * the histogram was built have, are counted in two more buckets, one from the
+ * smallest to the largest value below min and one from the smallest to the
+ * largest value above max.
  */
-public class IntHistogram {
+public class IntHistogram implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    private final int min;
+    private final int max;
+    /** The number of integers from min to max. */
+    private final long range;
+    private final AtomicIntegerArray counts;
+    private final AtomicLong total = new AtomicLong();
+    /** The number of values below min, and the smallest and largest of them. */
+    private final AtomicLong below = new AtomicLong();
+    private final AtomicLong belowMin = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong belowMax = new AtomicLong(Long.MIN_VALUE);
+    /** The number of values above max, and the smallest and largest of them. */
+    private final AtomicLong above = new AtomicLong();
+    private final AtomicLong aboveMin = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong aboveMax = new AtomicLong(Long.MIN_VALUE);
 
     /**
      * Create a new IntHistogram.
-     * 
+     *
      * This IntHistogram should maintain a histogram of integer values that it receives.
      * It should split the histogram into "buckets" buckets.
-     * 
+     *
      * The values that are being histogrammed will be provided one-at-a-time through the "addValue()" function.
-     * 
+     *
      * Your implementation should use space and have execution time that are both
-     * constant with respect to the number of values being histogrammed.  For example, you shouldn't 
+     * constant with respect to the number of values being histogrammed.  For example, you shouldn't
      * simply store every value that you see in a sorted list.
-     * 
+     *
      * @param buckets The number of buckets to split the input value into.
      * @param min The minimum integer value that will ever be passed to this class for histogramming
      * @param max The maximum integer value that will ever be passed to this class for histogramming
      */
     public IntHistogram(int buckets, int min, int max) {
     	// some code goes here
+        if (buckets < 1 || min > max)
+            throw new IllegalArgumentException("need at least one bucket and min <= max");
+        this.min = min;
+        this.max = max;
+        this.range = (long) max - min + 1;
+        this.counts = new AtomicIntegerArray((int) Math.min(buckets, range));
+    }
+
+    /** @return the bucket of v, which must be from min to max */
+    private int bucket(long v) {
+        return (int) ((v - min) * counts.length() / range);
+    }
+
+    /** @return the smallest value in bucket b, or max + 1 for b = counts.length() */
+    private long left(int b) {
+        // the smallest v with (v - min) * counts.length() >= b * range
+        return min + ((long) b * range + counts.length() - 1) / counts.length();
     }
 
     /**
@@ -32,14 +81,131 @@ public class IntHistogram {
      */
     public void addValue(int v) {
     	// some code goes here
+        if (v < min) {
+            belowMin.accumulateAndGet(v, Math::min);
+            belowMax.accumulateAndGet(v, Math::max);
+            below.incrementAndGet();
+        } else if (v > max) {
+            aboveMin.accumulateAndGet(v, Math::min);
+            aboveMax.accumulateAndGet(v, Math::max);
+            above.incrementAndGet();
+        } else {
+            counts.incrementAndGet(bucket(v));
+        }
+        total.incrementAndGet();
+    }
+
+    /**
+     * Removes a value added before. A value is removed from the bucket it
+     * would be added to, unless that bucket is already empty, as it may be
+     * for histograms of a sample of the values.
+     * @param v Value to remove from the histogram
+     */
+    public void removeValue(int v) {
+        boolean removed;
+        if (v < min)
+            removed = decrement(below);
+        else if (v > max)
+            removed = decrement(above);
+        else
+            removed = counts.getAndUpdate(bucket(v), c -> Math.max(0, c - 1)) > 0;
+        if (removed)
+            total.decrementAndGet();
+    }
+
+    private static boolean decrement(AtomicLong n) {
+        return n.getAndUpdate(c -> Math.max(0, c - 1)) > 0;
+    }
+
+    /**
+     * Adds the values of another histogram with the same buckets.
+     *
+     * @throws IllegalArgumentException if the buckets differ
+     */
+    void addAll(IntHistogram other) {
+        if (other.min != min || other.max != max || other.counts.length() != counts.length())
+            throw new IllegalArgumentException("histograms have different buckets");
+        for (int b = 0; b < counts.length(); b++)
+            counts.addAndGet(b, other.counts.get(b));
+        belowMin.accumulateAndGet(other.belowMin.get(), Math::min);
+        belowMax.accumulateAndGet(other.belowMax.get(), Math::max);
+        below.addAndGet(other.below.get());
+        aboveMin.accumulateAndGet(other.aboveMin.get(), Math::min);
+        aboveMax.accumulateAndGet(other.aboveMax.get(), Math::max);
+        above.addAndGet(other.above.get());
+        total.addAndGet(other.total.get());
+    }
+
+    /**
+     * Multiplies the count of each bucket by factor, so that a histogram of
+     * a sample of the values counts about as many values as there are.
+     */
+    void scale(double factor) {
+        long sum = 0;
+        for (int b = 0; b < counts.length(); b++) {
+            int c = (int) Math.min(Integer.MAX_VALUE, Math.round(counts.get(b) * factor));
+            counts.set(b, c);
+            sum += c;
+        }
+        below.set(Math.round(below.get() * factor));
+        above.set(Math.round(above.get() * factor));
+        total.set(sum + below.get() + above.get());
+    }
+
+    /**
+     * @return how many of n values, spread uniformly from first to last, are
+     *         less than v
+     */
+    private static double part(long n, long first, long last, long v) {
+        if (n <= 0 || v <= first)
+            return 0;
+        if (v > last)
+            return n;
+        return n * (double) (v - first) / (last - first + 1);
+    }
+
+    /**
+     * @return how many of n values, spread uniformly from first to last, are
+     *         equal to v
+     */
+    private static double equal(long n, long first, long last, long v) {
+        if (n <= 0 || v < first || v > last)
+            return 0;
+        return n / (double) (last - first + 1);
+    }
+
+    /**
+     * @return the number of values less than v
+     */
+    private double countLessThan(long v) {
+        double n = part(below.get(), belowMin.get(), belowMax.get(), v)
+                + part(above.get(), aboveMin.get(), aboveMax.get(), v);
+        if (v <= min)
+            return n;
+        if (v > max) {
+            for (int b = 0; b < counts.length(); b++)
+                n += counts.get(b);
+            return n;
+        }
+        int b = bucket(v);
+        for (int i = 0; i < b; i++)
+            n += counts.get(i);
+        return n + counts.get(b) * (double) (v - left(b)) / (left(b + 1) - left(b));
+    }
+
+    /**
+     * @return the fraction of values less than v
+     */
+    private double lessThan(long v) {
+        return Math.min(1, countLessThan(v) / total.get());
     }
 
     /**
      * Estimate the selectivity of a particular predicate and operand on this table.
-     * 
-     * For example, if "op" is "GREATER_THAN" and "v" is 5, 
+     *
+     * For example, if "op" is "GREATER_THAN" and "v" is 5,
      * return your estimate of the fraction of elements that are greater than 5.
-     * 
+     *
      * @param op Operator
      * @param v Value
      * @return Predicted selectivity of this particular operator and value
@@ -47,13 +213,42 @@ public class IntHistogram {
     public double estimateSelectivity(Predicate.Op op, int v) {
 
     	// some code goes here
-        return -1.0;
+        if (total.get() <= 0)
+            return 0;
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return equals(v);
+        case NOT_EQUALS:
+            return 1 - equals(v);
+        case LESS_THAN:
+            return lessThan(v);
+        case LESS_THAN_OR_EQ:
+            return lessThan((long) v + 1);
+        case GREATER_THAN:
+            return 1 - lessThan((long) v + 1);
+        case GREATER_THAN_OR_EQ:
+            return 1 - lessThan(v);
+        default:
+            throw new IllegalStateException("impossible to reach here");
+        }
     }
-    
+
+    private double equals(int v) {
+        double n;
+        if (v < min)
+            n = equal(below.get(), belowMin.get(), belowMax.get(), v);
+        else if (v > max)
+            n = equal(above.get(), aboveMin.get(), aboveMax.get(), v);
+        else
+            n = counts.get(bucket(v)) / (double) (left(bucket(v) + 1) - left(bucket(v)));
+        return Math.min(1, n / total.get());
+    }
+
     /**
      * @return
      *     the average selectivity of this histogram.
-     *     
+     *
      *     This is not an indispensable method to implement the basic
      *     join optimization. It may be needed if you want to
      *     implement a more efficient optimization
@@ -61,14 +256,41 @@ public class IntHistogram {
     public double avgSelectivity()
     {
         // some code goes here
-        return 1.0;
+        // the chance that two values are equal, with each bucket uniform
+        double t = total.get();
+        if (t <= 0)
+            return 0;
+        double sum = 0;
+        for (int b = 0; b < counts.length(); b++) {
+            double f = counts.get(b) / t;
+            sum += f * f / (left(b + 1) - left(b));
+        }
+        if (below.get() > 0)
+            sum += (below.get() / t) * (below.get() / t) / (belowMax.get() - belowMin.get() + 1);
+        if (above.get() > 0)
+            sum += (above.get() / t) * (above.get() / t) / (aboveMax.get() - aboveMin.get() + 1);
+        return sum;
     }
-    
+
+    /**
+     * @return the number of values added
+     */
+    public long numValues() {
+        return total.get();
+    }
+
     /**
      * @return A string describing this histogram, for debugging purposes
      */
     public String toString() {
         // some code goes here
-        return null;
+        StringBuilder sb = new StringBuilder("IntHistogram[" + min + ", " + max + "]:");
+        if (below.get() > 0)
+            sb.append(' ').append(belowMin.get()).append('=').append(below.get());
+        for (int b = 0; b < counts.length(); b++)
+            sb.append(' ').append(left(b)).append('=').append(counts.get(b));
+        if (above.get() > 0)
+            sb.append(' ').append(aboveMin.get()).append('=').append(above.get());
+        return sb.toString();
     }
 }
@@ -125,12 +125,14 @@ public class JoinOptimizer {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
+        } else if (j.p == Predicate.Op.EQUALS) {
+            // a HashEquiJoin hashes the left side HashEquiJoin.MAP_SIZE
+            // tuples at a time, and scans the right side for each batch
+            double batches = 1 + (double) card1 / HashEquiJoin.MAP_SIZE;
+            return cost1 + card1 + batches * (cost2 + card2);
         } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            return -1.0;
+            // a nested-loops join scans the right side for each left tuple
+            return cost1 + card1 * cost2 + (double) card1 * card2;
         }
     }
 
@@ -168,6 +170,13 @@ public class JoinOptimizer {
 
     /**
      * Estimate the join cardinality of two tables.
+     * <p>
+     * A join on a primary key yields one tuple for each tuple of the other
+     * side. Otherwise an equi-join yields card1 * card2 / max(ndv1, ndv2)
+     * tuples, where ndv is the number of distinct values of the join field
+     * on each side, from the table's statistics and reduced for the tuples
+     * filtered out; without statistics, it yields as many tuples as the
+     * larger side. Other comparisons keep 30% of the cross product.
      * */
     public static int estimateTableJoinCardinality(Predicate.Op joinOp,
                                                    String table1Alias, String table2Alias, String field1PureName,
@@ -176,9 +185,68 @@ public class JoinOptimizer {
                                                    Map<String, Integer> tableAliasToId) {
         int card = 1;
         // some code goes here
+        double cross = (double) card1 * card2;
+        double equal;
+        if (t1pkey && t2pkey)
+            equal = Math.min(card1, card2);
+        else if (t1pkey)
+            equal = card2;
+        else if (t2pkey)
+            equal = card1;
+        else {
+            double ndv1 = distinctValues(table1Alias, field1PureName, card1, stats, tableAliasToId);
+            double ndv2 = distinctValues(table2Alias, field2PureName, card2, stats, tableAliasToId);
+            if (ndv1 > 0 && ndv2 > 0)
+                equal = cross / Math.max(ndv1, ndv2);
+            else
+                equal = Math.max(card1, card2);
+        }
+        double estimate;
+        switch (joinOp) {
+        case EQUALS:
+        case LIKE:
+            estimate = equal;
+            break;
+        case NOT_EQUALS:
+            estimate = cross - equal;
+            break;
+        default:
+            estimate = 0.3 * cross;
+            break;
+        }
+        card = (int) Math.min(Integer.MAX_VALUE, Math.round(estimate));
         return card <= 0 ? 1 : card;
     }
 
+    /**
+     * @return the estimated number of distinct values of the specified field
+     *         of the table with the specified alias, among card of its tuples
+     *         chosen independently of the field, or 0 if there are no
+     *         statistics for it
+     */
+    private static double distinctValues(String alias, String field, int card,
+            Map<String, TableStats> stats, Map<String, Integer> tableAliasToId) {
+        Integer tableid = alias == null || tableAliasToId == null ? null : tableAliasToId.get(alias);
+        if (tableid == null)
+            return 0;
+        TableStats s = stats.get(Database.getCatalog().getTableName(tableid));
+        if (s == null)
+            return 0;
+        int index;
+        try {
+            index = Database.getCatalog().getTupleDesc(tableid).fieldNameToIndex(field);
+        } catch (NoSuchElementException e) {
+            return 0;
+        }
+        double ndv = s.distinctValues(index);
+        double n = s.totalTuples();
+        if (ndv <= 0 || card >= n)
+            return ndv;
+        // the expected number of values left when card of n tuples, each
+        // value of which appears n / ndv times, are kept
+        return ndv * (1 - Math.pow(1 - card / n, n / ndv));
+    }
+
     /**
      * Helper method to enumerate all of the subsets of a given size of a
      * specified vector.
@@ -212,8 +280,10 @@ public class JoinOptimizer {
     }
 
     /**
-     * Compute a logical, reasonably efficient join on the specified tables. See
-     * PS4 for hints on how this should be implemented.
+     * Compute a logical, reasonably efficient join on the specified tables.
+     * Up to {@link #getMaxDpJoins()} joins between tables are ordered by
+     * dynamic programming over the connected subgraphs of the join graph,
+     * and larger join graphs greedily; joins of subqueries come last.
      * 
      * @param stats
      *            Statistics for each table involved in the join, referenced by
@@ -225,8 +295,9 @@ public class JoinOptimizer {
      * @param explain
      *            Indicates whether your code should explain its query plan or
      *            simply execute it
-     * @return A List<LogicalJoinNode> that stores joins in the left-deep
-     *         order in which they should be executed.
+     * @return A List<LogicalJoinNode> that stores joins in the order in
+     *         which they should be executed, each joining the subplans that
+     *         hold its two tables, so that the plan may be bushy
      * @throws ParsingException
      *             when stats or filter selectivities is missing a table in the
      *             join, or or when another internal error occurs
@@ -235,175 +306,354 @@ public class JoinOptimizer {
             Map<String, TableStats> stats,
             Map<String, Double> filterSelectivities, boolean explain)
             throws ParsingException {
+        JoinGraph g = new JoinGraph(stats, filterSelectivities);
+        long[] components = g.edges.size() > maxDpJoins ? g.greedy() : g.enumerate();
 
-        // some code goes here
-        //Replace the following
-        return joins;
+        List<LogicalJoinNode> result = new ArrayList<>(joins.size());
+        for (long component : components)
+            g.addJoins(component, result);
+        result.addAll(g.others);
+
+        if (explain)
+            printJoins(result, g.subplans(result), g.best, stats, filterSelectivities);
+        return result;
     }
 
-    // ===================== Private Methods =================================
+    /**
+     * Default largest number of joins between tables that {@link #orderJoins}
+     * orders by dynamic programming.
+     */
+    public static final int DEFAULT_MAX_DP_JOINS = 16;
+
+    private static int maxDpJoins = DEFAULT_MAX_DP_JOINS;
 
     /**
-     * This is a helper method that computes the cost and cardinality of joining
-     * joinToRemove to joinSet (joinSet should contain joinToRemove), given that
-     * all of the subsets of size joinSet.size() - 1 have already been computed
-     * and stored in PlanCache pc.
-     * 
-     * @param stats
-     *            table stats for all of the tables, referenced by table names
-     *            rather than alias (see {@link #orderJoins})
-     * @param filterSelectivities
-     *            the selectivities of the filters over each of the tables
-     *            (where tables are indentified by their alias or name if no
-     *            alias is given)
-     * @param joinToRemove
-     *            the join to remove from joinSet
-     * @param joinSet
-     *            the set of joins being considered
-     * @param bestCostSoFar
-     *            the best way to join joinSet so far (minimum of previous
-     *            invocations of computeCostAndCardOfSubplan for this joinSet,
-     *            from returned CostCard)
-     * @param pc
-     *            the PlanCache for this join; should have subplans for all
-     *            plans of size joinSet.size()-1
-     * @return A {@link CostCard} objects desribing the cost, cardinality,
-     *         optimal subplan
-     * @throws ParsingException
-     *             when stats, filterSelectivities, or pc object is missing
-     *             tables involved in join
+     * @return the largest number of joins between tables that
+     *         {@link #orderJoins} orders by dynamic programming over the
+     *         connected subgraphs of the join graph; larger join graphs are
+     *         ordered greedily
      */
-    @SuppressWarnings("unchecked")
-    private CostCard computeCostAndCardOfSubplan(
-            Map<String, TableStats> stats,
-            Map<String, Double> filterSelectivities,
-            LogicalJoinNode joinToRemove, Set<LogicalJoinNode> joinSet,
-            double bestCostSoFar, PlanCache pc) throws ParsingException {
-
-        LogicalJoinNode j = joinToRemove;
-
-        List<LogicalJoinNode> prevBest;
-
-        if (this.p.getTableId(j.t1Alias) == null)
-            throw new ParsingException("Unknown table " + j.t1Alias);
-        if (this.p.getTableId(j.t2Alias) == null)
-            throw new ParsingException("Unknown table " + j.t2Alias);
-
-        String table1Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t1Alias));
-        String table2Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t2Alias));
-        String table1Alias = j.t1Alias;
-        String table2Alias = j.t2Alias;
-
-        Set<LogicalJoinNode> news = new HashSet<>(joinSet);
-        news.remove(j);
-
-        double t1cost, t2cost;
-        int t1card, t2card;
-        boolean leftPkey, rightPkey;
-
-        if (news.isEmpty()) { // base case -- both are base relations
-            prevBest = new ArrayList<>();
-            t1cost = stats.get(table1Name).estimateScanCost();
-            t1card = stats.get(table1Name).estimateTableCardinality(
-                    filterSelectivities.get(j.t1Alias));
-            leftPkey = isPkey(j.t1Alias, j.f1PureName);
-
-            t2cost = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateScanCost();
-            t2card = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateTableCardinality(
-                            filterSelectivities.get(j.t2Alias));
-            rightPkey = table2Alias != null && isPkey(table2Alias,
-                    j.f2PureName);
-        } else {
-            // news is not empty -- figure best way to join j to news
-            prevBest = pc.getOrder(news);
+    public static int getMaxDpJoins() {
+        return maxDpJoins;
+    }
+
+    /**
+     * Set the largest number of joins between tables that {@link #orderJoins}
+     * orders by dynamic programming.
+     */
+    public static void setMaxDpJoins(int joins) {
+        if (joins < 0)
+            throw new IllegalArgumentException("number of joins must not be negative");
+        JoinOptimizer.maxDpJoins = joins;
+    }
 
-            // possible that we have not cached an answer, if subset
-            // includes a cross product
-            if (prevBest == null) {
-                return null;
+    public static void resetMaxDpJoins() {
+        JoinOptimizer.maxDpJoins = DEFAULT_MAX_DP_JOINS;
+    }
+
+    /**
+     * The graph of the tables joined, by alias, with an edge for each join
+     * between two of them, and the best plans found for sets of the tables,
+     * each a bit of a long.
+     * <p>
+     * A plan is a list of joins, each of which LogicalPlan.physicalPlan
+     * applies to the subplans that hold its two tables, so plans of disjoint
+     * sets of tables are joined by concatenating them and adding the join
+     * between them: the plans may be bushy. While they are enumerated, plans
+     * only keep the two sets of tables their last join joins, in a PlanCache.
+     */
+    private class JoinGraph {
+        final Map<String, TableStats> stats;
+        final Map<String, Double> filterSelectivities;
+        /** The tables, numbered in breadth-first order of the join graph. */
+        final List<String> aliases = new ArrayList<>();
+        final Map<String, Integer> numbers = new HashMap<>();
+        /** The joins between two different tables. */
+        final List<LogicalJoinNode> edges = new ArrayList<>();
+        /** The bits of the two tables of each join. */
+        final long[] left, right;
+        /** The bits of the tables each table joins with. */
+        final long[] adjacent;
+        /** The bits of the tables of each connected component. */
+        final List<Long> components = new ArrayList<>();
+        /** The joins of subqueries and of tables with themselves, done last. */
+        final List<LogicalJoinNode> others = new ArrayList<>();
+        /** The best plan found for each set of tables, its last join an index in edges. */
+        final PlanCache best = new PlanCache();
+        /** The plan join last considered, kept by consider or compared by greedy. */
+        private double joinCost;
+        private int joinCard;
+        private long joinOuter;
+        private int joinEdge;
+
+        JoinGraph(Map<String, TableStats> stats,
+                Map<String, Double> filterSelectivities) throws ParsingException {
+            this.stats = stats;
+            this.filterSelectivities = filterSelectivities;
+            Map<String, List<String>> neighbours = new LinkedHashMap<>();
+            for (LogicalJoinNode j : joins) {
+                if (j instanceof LogicalSubplanJoinNode || j.t2Alias == null
+                        || j.t1Alias.equals(j.t2Alias)) {
+                    others.add(j);
+                    continue;
+                }
+                edges.add(j);
+                neighbours.computeIfAbsent(j.t1Alias, a -> new ArrayList<>()).add(j.t2Alias);
+                neighbours.computeIfAbsent(j.t2Alias, a -> new ArrayList<>()).add(j.t1Alias);
+            }
+            if (neighbours.size() > Long.SIZE)
+                throw new ParsingException("Cannot join more than " + Long.SIZE + " tables");
+
+            // DPccp requires a breadth-first numbering of each component
+            for (String start : neighbours.keySet()) {
+                if (numbers.containsKey(start))
+                    continue;
+                long component = 0;
+                Deque<String> queue = new ArrayDeque<>();
+                queue.add(start);
+                numbers.put(start, aliases.size());
+                while (!queue.isEmpty()) {
+                    String alias = queue.remove();
+                    aliases.add(alias);
+                    component |= 1L << numbers.get(alias);
+                    for (String n : neighbours.get(alias)) {
+                        if (!numbers.containsKey(n)) {
+                            numbers.put(n, aliases.size() + queue.size());
+                            queue.add(n);
+                        }
+                    }
+                }
+                components.add(component);
             }
 
-            double prevBestCost = pc.getCost(news);
-            int bestCard = pc.getCard(news);
-
-            // estimate cost of right subtree
-            if (doesJoin(prevBest, table1Alias)) { // j.t1 is in prevBest
-                t1cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t1card = bestCard;
-                leftPkey = hasPkey(prevBest);
-
-                t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateScanCost();
-                t2card = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateTableCardinality(
-                                filterSelectivities.get(j.t2Alias));
-                rightPkey = j.t2Alias != null && isPkey(j.t2Alias,
-                        j.f2PureName);
-            } else if (doesJoin(prevBest, j.t2Alias)) { // j.t2 is in prevbest
-                                                        // (both
-                // shouldn't be)
-                t2cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t2card = bestCard;
-                rightPkey = hasPkey(prevBest);
-                t1cost = stats.get(table1Name).estimateScanCost();
-                t1card = stats.get(table1Name).estimateTableCardinality(
-                        filterSelectivities.get(j.t1Alias));
-                leftPkey = isPkey(j.t1Alias, j.f1PureName);
+            left = new long[edges.size()];
+            right = new long[edges.size()];
+            adjacent = new long[aliases.size()];
+            for (int e = 0; e < edges.size(); e++) {
+                int t1 = numbers.get(edges.get(e).t1Alias), t2 = numbers.get(edges.get(e).t2Alias);
+                left[e] = 1L << t1;
+                right[e] = 1L << t2;
+                adjacent[t1] |= right[e];
+                adjacent[t2] |= left[e];
+            }
+            for (int i = 0; i < aliases.size(); i++)
+                scan(i);
+        }
 
+        /** Add the plan of scanning the table numbered i. */
+        private void scan(int i) throws ParsingException {
+            String alias = aliases.get(i);
+            Integer tableid = p.getTableId(alias);
+            if (tableid == null)
+                throw new ParsingException("Unknown table " + alias);
+            TableStats s = stats.get(Database.getCatalog().getTableName(tableid));
+            Double selectivity = filterSelectivities.get(alias);
+            if (s == null || selectivity == null)
+                throw new ParsingException("Missing statistics for table " + alias);
+            best.addPlan(1L << i, s.estimateScanCost(), s.estimateTableCardinality(selectivity), 0, -1);
+        }
+
+        /** @return the bits of the tables not in s that join with one in s */
+        private long neighbours(long s) {
+            long n = 0;
+            for (long r = s; r != 0; r &= r - 1)
+                n |= adjacent[Long.numberOfTrailingZeros(r)];
+            return n & ~s;
+        }
+
+        /** @return whether join e is between a table in s1 and one in s2 */
+        private boolean connects(int e, long s1, long s2) {
+            return ((left[e] & s1) != 0 && (right[e] & s2) != 0) || ((left[e] & s2) != 0 && (right[e] & s1) != 0);
+        }
+
+        /**
+         * Join the best plans of the disjoint sets of tables s1 and s2 by the
+         * cheapest of the joins that connect them, if any, into joinCost,
+         * joinCard, joinOuter and joinEdge.
+         * 
+         * @return false if no join connects them, or if the plan costs no
+         *         less than the best one of their union and always is false
+         */
+        private boolean join(long s1, long s2, boolean always) {
+            double cost1 = best.getCost(s1), cost2 = best.getCost(s2);
+            int card1 = best.getCard(s1), card2 = best.getCard(s2);
+            int chosen = -1;
+            boolean s1Outer = true;
+            double cost = 0;
+            for (int e = 0; e < edges.size(); e++) {
+                if (!connects(e, s1, s2))
+                    continue;
+                LogicalJoinNode j = edges.get(e);
+                double c1 = estimateJoinCost(j, card1, card2, cost1, cost2);
+                double c2 = estimateJoinCost(j, card2, card1, cost2, cost1);
+                if (chosen < 0 || Math.min(c1, c2) < cost) {
+                    chosen = e;
+                    s1Outer = c1 <= c2;
+                    cost = Math.min(c1, c2);
+                }
+            }
+            boolean known = best.contains(s1 | s2);
+            if (chosen < 0 || (!always && known && best.getCost(s1 | s2) <= cost))
+                return false;
+
+            long outer = s1Outer ? s1 : s2, inner = s1Outer ? s2 : s1;
+            if (known) {
+                joinCard = best.getCard(s1 | s2);
             } else {
-                // don't consider this plan if one of j.t1 or j.t2
-                // isn't a table joined in prevBest (cross product)
-                return null;
+                // orient the join so that its left table is in the outer plan;
+                // a key stays unique only in its own table
+                LogicalJoinNode j = (left[chosen] & outer) != 0 ? edges.get(chosen)
+                        : edges.get(chosen).swapInnerOuter();
+                boolean outerKey = Long.bitCount(outer) == 1 && isPkey(j.t1Alias, j.f1PureName);
+                boolean innerKey = Long.bitCount(inner) == 1 && isPkey(j.t2Alias, j.f2PureName);
+                joinCard = estimateJoinCardinality(j, best.getCard(outer), best.getCard(inner), outerKey, innerKey,
+                        stats);
             }
+            joinCost = cost;
+            joinOuter = outer;
+            joinEdge = chosen;
+            return true;
+        }
+
+        /** Keep the plan joining s1 and s2 if it is the best one of their union. */
+        private void consider(long s1, long s2) {
+            if (join(s1, s2, false))
+                best.addPlan(s1 | s2, joinCost, joinCard, joinOuter, joinEdge);
         }
 
-        // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
-
-        LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
-        if (cost2 < cost1) {
-            boolean tmp;
-            j = j2;
-            cost1 = cost2;
-            tmp = rightPkey;
-            rightPkey = leftPkey;
-            leftPkey = tmp;
+        /** Add the joins of the best plan of the set of tables s to the list. */
+        void addJoins(long s, List<LogicalJoinNode> joins) {
+            int join = best.getJoin(s);
+            if (join < 0)
+                return;
+            long outer = best.getOuter(s), inner = s & ~outer;
+            addJoins(outer, joins);
+            addJoins(inner, joins);
+            LogicalJoinNode j = edges.get(join);
+            joins.add((left[join] & outer) != 0 ? j : j.swapInnerOuter());
+            // further joins between the two follow, and are applied to the
+            // joined plan as filters (see LogicalPlan)
+            for (int e = 0; e < edges.size(); e++) {
+                if (e != join && connects(e, outer, inner))
+                    joins.add(edges.get(e));
+            }
         }
-        if (cost1 >= bestCostSoFar)
-            return null;
 
-        CostCard cc = new CostCard();
+        /**
+         * Find the best bushy plans by DPccp, which enumerates each pair of a
+         * connected set of tables and a connected set joining it once, in an
+         * order in which both sides have been planned before (Moerkotte and
+         * Neumann, VLDB 2006).
+         * 
+         * @return the bits of the tables of each connected component
+         */
+        long[] enumerate() {
+            for (int i = aliases.size() - 1; i >= 0; i--) {
+                long v = 1L << i;
+                emitCsg(v);
+                enumerateCsgRec(v, upTo(i));
+            }
+            return components.stream().mapToLong(Long::longValue).toArray();
+        }
 
-        cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
-                rightPkey, stats);
-        cc.cost = cost1;
-        cc.plan = new ArrayList<>(prevBest);
-        cc.plan.add(j); // prevbest is left -- add new join to end
-        return cc;
-    }
+        /** @return the bits of tables 0 to i */
+        private long upTo(int i) {
+            return ((1L << i) << 1) - 1;
+        }
 
-    /**
-     * Return true if the specified table is in the list of joins, false
-     * otherwise
-     */
-    private boolean doesJoin(List<LogicalJoinNode> joinlist, String table) {
-        for (LogicalJoinNode j : joinlist) {
-            if (j.t1Alias.equals(table)
-                    || (j.t2Alias != null && j.t2Alias.equals(table)))
-                return true;
+        /** Enumerate the connected sets that extend s1 by tables not in x. */
+        private void enumerateCsgRec(long s1, long x) {
+            long n = neighbours(s1) & ~x;
+            for (long s = -n & n; s != 0; s = (s - n) & n)
+                emitCsg(s1 | s);
+            for (long s = -n & n; s != 0; s = (s - n) & n)
+                enumerateCsgRec(s1 | s, x | n);
+        }
+
+        /** Join s1 with each connected set of larger-numbered tables it joins with. */
+        private void emitCsg(long s1) {
+            long x = s1 | upTo(Long.numberOfTrailingZeros(s1));
+            long n = neighbours(s1) & ~x;
+            for (long r = n; r != 0; r &= ~Long.highestOneBit(r)) {
+                long v = Long.highestOneBit(r);
+                consider(s1, v);
+                enumerateCmpRec(s1, v, x | (n & upTo(Long.numberOfTrailingZeros(v))));
+            }
+        }
+
+        /** Join s1 with the connected sets that extend s2 by tables not in x. */
+        private void enumerateCmpRec(long s1, long s2, long x) {
+            long n = neighbours(s2) & ~x;
+            for (long s = -n & n; s != 0; s = (s - n) & n)
+                consider(s1, s2 | s);
+            for (long s = -n & n; s != 0; s = (s - n) & n)
+                enumerateCmpRec(s1, s2 | s, x | n);
+        }
+
+        /**
+         * Find a plan greedily (GOO): join the two connected sets of tables
+         * whose join is estimated to yield the fewest tuples, until no two
+         * are connected.
+         * 
+         * @return the bits of the tables of each connected component
+         */
+        long[] greedy() {
+            List<Long> sets = new ArrayList<>();
+            for (int i = 0; i < aliases.size(); i++)
+                sets.add(1L << i);
+            while (true) {
+                int bestA = -1, bestB = -1;
+                double cost = 0;
+                int card = 0;
+                long outer = 0;
+                int edge = -1;
+                for (int a = 0; a < sets.size(); a++) {
+                    long n = neighbours(sets.get(a));
+                    for (int b = a + 1; b < sets.size(); b++) {
+                        if ((n & sets.get(b)) == 0 || !join(sets.get(a), sets.get(b), true))
+                            continue;
+                        if (bestA < 0 || joinCard < card || (joinCard == card && joinCost < cost)) {
+                            bestA = a;
+                            bestB = b;
+                            cost = joinCost;
+                            card = joinCard;
+                            outer = joinOuter;
+                            edge = joinEdge;
+                        }
+                    }
+                }
+                if (bestA < 0)
+                    return sets.stream().mapToLong(Long::longValue).toArray();
+                long union = sets.get(bestA) | sets.remove(bestB);
+                sets.set(bestA, union);
+                best.addPlan(union, cost, card, outer, edge);
+            }
+        }
+
+        /**
+         * @return the set of tables of the subplan each join of the plan
+         *         yields, for printJoins, or 0 if it is not in best
+         */
+        long[] subplans(List<LogicalJoinNode> plan) {
+            Map<String, Long> subplans = new HashMap<>();
+            for (int i = 0; i < aliases.size(); i++)
+                subplans.put(aliases.get(i), 1L << i);
+            long[] result = new long[plan.size()];
+            for (int k = 0; k < plan.size(); k++) {
+                LogicalJoinNode j = plan.get(k);
+                long s = subplans.getOrDefault(j.t1Alias, 0L) | subplans.getOrDefault(j.t2Alias, 0L);
+                for (int i = 0; i < aliases.size(); i++) {
+                    if ((s & 1L << i) != 0)
+                        subplans.put(aliases.get(i), s);
+                }
+                result[k] = best.contains(s) ? s : 0;
+            }
+            return result;
         }
-        return false;
     }
 
+    // ===================== Private Methods =================================
+
     /**
      * Return true if field is a primary key of the specified table, false
      * otherwise
@@ -420,20 +670,6 @@ public class JoinOptimizer {
         return pkey1.equals(field);
     }
 
-    /**
-     * Return true if a primary key field is joined by one of the joins in
-     * joinlist
-     */
-    private boolean hasPkey(List<LogicalJoinNode> joinlist) {
-        for (LogicalJoinNode j : joinlist) {
-            if (isPkey(j.t1Alias, j.f1PureName)
-                    || (j.t2Alias != null && isPkey(j.t2Alias, j.f2PureName)))
-                return true;
-        }
-        return false;
-
-    }
-
     /**
      * Helper function to display a Swing window with a tree representation of
      * the specified list of joins. See {@link #orderJoins}, which may want to
@@ -441,6 +677,9 @@ public class JoinOptimizer {
      * 
      * @param js
      *            the join plan to visualize
+     * @param subplans
+     *            the set of tables of the subplan each join yields, or 0 if
+     *            the PlanCache has no plan of it
      * @param pc
      *            the PlanCache accumulated whild building the optimal plan
      * @param stats
@@ -450,7 +689,7 @@ public class JoinOptimizer {
      *            (where tables are indentified by their alias or name if no
      *            alias is given)
      */
-    private void printJoins(List<LogicalJoinNode> js, PlanCache pc,
+    private void printJoins(List<LogicalJoinNode> js, long[] subplans, PlanCache pc,
             Map<String, TableStats> stats,
             Map<String, Double> selectivities) {
 
@@ -470,13 +709,13 @@ public class JoinOptimizer {
 
         // int k;
         DefaultMutableTreeNode root = null, treetop = null;
-        HashSet<LogicalJoinNode> pathSoFar = new HashSet<>();
         boolean neither;
 
         System.out.println(js);
-        for (LogicalJoinNode j : js) {
-            pathSoFar.add(j);
-            System.out.println("PATH SO FAR = " + pathSoFar);
+        for (int k = 0; k < js.size(); k++) {
+            LogicalJoinNode j = js.get(k);
+            long pathSoFar = subplans[k];
+            System.out.println("PATH SO FAR = " + js.subList(0, k + 1));
 
             String table1Name = Database.getCatalog().getTableName(
                     this.p.getTableId(j.t1Alias));
@@ -486,9 +725,9 @@ public class JoinOptimizer {
             // Double c = pc.getCost(pathSoFar);
             neither = true;
 
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
-                    + pc.getCost(pathSoFar) + ", card = "
-                    + pc.getCard(pathSoFar) + ")");
+            root = new DefaultMutableTreeNode("Join " + j
+                    + (pathSoFar == 0 ? "" : " (Cost =" + pc.getCost(pathSoFar)
+                            + ", card = " + pc.getCard(pathSoFar) + ")"));
             DefaultMutableTreeNode n = m.get(j.t1Alias);
             if (n == null) { // never seen this table before
                 n = new DefaultMutableTreeNode(j.t1Alias
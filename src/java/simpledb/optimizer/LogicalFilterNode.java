@@ -6,7 +6,8 @@ import simpledb.execution.Predicate;
     <p>
     Filter is of the form t.f p c
     <p>
-    Where t is a table, f is a field in t, p is a predicate, and c is a constant
+    Where t is a table, f is a field in t, p is a predicate, and c is a constant,
+    or a parameter of the query that is bound to a value each time it runs
 */
 public class LogicalFilterNode {
     /** The alias of a table (or the name if no alias) over which the filter ranges */
@@ -15,8 +16,11 @@ public class LogicalFilterNode {
     /** The predicate in the filter */
     public final Predicate.Op p;
     
-    /* The constant on the right side of the filter */
+    /* The constant on the right side of the filter, or null for a parameter */
     public final String c;
+
+    /** The index of the parameter on the right side of the filter, or -1 for a constant */
+    public final int param;
     
     /** The field from t which is in the filter. The pure name, without alias or tablename*/
     public final String fieldPureName;
@@ -24,9 +28,18 @@ public class LogicalFilterNode {
     public final String fieldQuantifiedName;
     
     public LogicalFilterNode(String table, String field, Predicate.Op pred, String constant) {
+        this(table, field, pred, constant, -1);
+    }
+
+    public LogicalFilterNode(String table, String field, Predicate.Op pred, int param) {
+        this(table, field, pred, null, param);
+    }
+
+    private LogicalFilterNode(String table, String field, Predicate.Op pred, String constant, int param) {
         tableAlias = table;
         p = pred;
         c = constant;
+        this.param = param;
         String[] tmps = field.split("[.]");
         if (tmps.length>1)
             fieldPureName = tmps[tmps.length-1];
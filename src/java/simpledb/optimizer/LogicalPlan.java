@@ -4,6 +4,7 @@ import simpledb.common.Database;
 import simpledb.ParsingException;
 import simpledb.common.Type;
 import simpledb.execution.*;
+import simpledb.index.BTreeFile;
 import simpledb.storage.*;
 import simpledb.transaction.TransactionId;
 
@@ -23,30 +24,58 @@ import java.io.File;
  * the {@link #physicalPlan} method, which uses the
  * {@link JoinOptimizer} to order joins optimally and to select the
  * best implementations for joins.
+ * <p>
+ * When {@link WorkerPool#getParallelism} is more than one, scans of large
+ * HeapFiles are split into one fragment per worker thread, and operators
+ * above them are run in parallel as long as possible: filters within the
+ * fragments, equality joins of two parallel inputs on repartitioned inputs,
+ * other joins against a broadcast of the other input, and aggregates as
+ * partial aggregates merged above a {@link Gather}.
+ * <p>
+ * Scans return only the fields of their table that the query refers to
+ * (see {@link #scanColumns}), so that joins, sorts and exchanges above them
+ * move narrower tuples.
+ * <p>
+ * Filters may compare fields with parameters, bound to values each time
+ * the plan is converted. Once optimized, a plan can be converted again by
+ * {@link #instantiate}, with the joins in the same order, until the
+ * catalog or the table statistics change (see {@link #isCurrent}).
  */
 public class LogicalPlan {
-    private List<LogicalJoinNode> joins;
+    /** Default minimum number of pages of a table for it to be scanned in parallel. */
+    public static final int DEFAULT_MIN_PARALLEL_PAGES = 4 * MorselScan.MORSEL_PAGES;
+
+    private static int minParallelPages = DEFAULT_MIN_PARALLEL_PAGES;
+
+    private final List<LogicalJoinNode> joins;
     private final List<LogicalScanNode> tables;
     private final List<LogicalFilterNode> filters;
-    private final Map<String, OpIterator> subplanMap;
+    private int numParameters = 0;
     private final Map<String,Integer> tableMap;
 
     private final List<LogicalSelectListNode> selectList;
     private String groupByField = null;
     private boolean hasAgg = false;
-    private String aggOp;
-    private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private final List<String> aggOps = new ArrayList<>();
+    private final List<String> aggFields = new ArrayList<>();
+    private final List<String> oByFields = new ArrayList<>();
+    private final List<Boolean> oByAsc = new ArrayList<>();
+    private int limit = -1;
     private String query;
 //    private Query owner;
 
+    /** The catalog the plan was made against, and its version then. */
+    private final Catalog catalog = Database.getCatalog();
+    private final long catalogVersion = catalog.getVersion();
+    /** The joins in the order physicalPlan last chose, or null, and the version of the statistics it used. */
+    private volatile List<LogicalJoinNode> orderedJoins;
+    private volatile long statsVersion;
+
     /** Constructor -- generate an empty logical plan */
     public LogicalPlan() {
         joins = new ArrayList<>();
         filters = new ArrayList<>();
         tables = new ArrayList<>();
-        subplanMap = new HashMap<>();
         tableMap = new HashMap<>();
 
         selectList = new ArrayList<>();
@@ -108,6 +137,25 @@ public class LogicalPlan {
         filters.add(lf);
     }
 
+    /** Add a new filter comparing a field with the next parameter of the plan, whose value
+     *   is given each time the plan is converted into a physical plan
+     *   @param field The name of the over which the filter applies, as for {@link #addFilter}
+     *   @param p The predicate for the filter
+     *   @throws ParsingException if field is not in one of the tables
+     *   added via {@link #addScan} or if field is ambiguous
+     */
+    public void addParameterFilter(String field, Predicate.Op p) throws ParsingException {
+        field = disambiguateName(field);
+        String table = field.split("[.]")[0];
+
+        filters.add(new LogicalFilterNode(table, field.split("[.]")[1], p, numParameters++));
+    }
+
+    /** @return the number of parameters added via {@link #addParameterFilter} */
+    public int numParameters() {
+        return numParameters;
+    }
+
     /** Add a join between two fields of two different tables.  
      *  @param joinField1 The name of the first join field; this can
      *  be a fully qualified name (e.g., tableName.field or
@@ -189,8 +237,8 @@ public class LogicalPlan {
     }
     
     /** Add an aggregate over the field with the specified grouping to
-        the query.  SimpleDb only supports a single aggregate
-        expression and GROUP BY field.
+        the query.  Calling this repeatedly adds several aggregates, which are
+        computed in one pass; SimpleDb only supports a single GROUP BY field.
         @param op the aggregation operator
         @param afield the field to aggregate over
         @param gfield the field to group by
@@ -200,23 +248,33 @@ public class LogicalPlan {
         afield=disambiguateName(afield);
         if (gfield!=null)
             gfield=disambiguateName(gfield);
-        aggOp = op;
-        aggField = afield;
+        aggOps.add(op);
+        aggFields.add(afield);
         groupByField = gfield;
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  Calling this
+        repeatedly orders by several fields; earlier fields are more significant.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
      * @throws ParsingException 
     */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field=disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
-        hasOrderBy = true;
+        oByFields.add(field);
+        oByAsc.add(asc);
+    }
+
+    /** Add a LIMIT clause, so that at most the specified number of tuples are returned.
+        When the plan also has an ORDER BY, the sort is replaced with a {@link TopN}.
+        @param limit the maximum number of result tuples
+        @throws ParsingException if the limit is negative
+    */
+    public void addLimit(int limit) throws ParsingException {
+        if (limit < 0)
+            throw new ParsingException("Invalid LIMIT " + limit);
+        this.limit = limit;
     }
 
     /** Given a name of a field, try to figure out what table it belongs to by looking
@@ -274,6 +332,93 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    public static int getMinParallelPages() {
+        return minParallelPages;
+    }
+
+    /** Set the minimum number of pages of a table for plans created afterwards to scan it
+        in parallel; smaller tables are not worth starting threads for.
+    */
+    public static void setMinParallelPages(int pages) {
+        LogicalPlan.minParallelPages = pages;
+    }
+
+    public static void resetMinParallelPages() {
+        LogicalPlan.minParallelPages = DEFAULT_MIN_PARALLEL_PAGES;
+    }
+
+    /** Determine whether the tuples of a (partial) physical plan are known to arrive
+        ordered, ascending or descending, on the specified field.  This is the case for an
+        ORDER BY on that field and for a scan of a B+ tree keyed on it; filters keep the
+        order of their input.
+        @param node the plan
+        @param field the index of the field in the plan's TupleDesc
+        @return true if tuples with equal values of field are known to be adjacent
+    */
+    public static boolean isOrderedOn(OpIterator node, int field) {
+        if (node instanceof Filter)
+            return isOrderedOn(((Filter) node).getChildren()[0], field);
+        if (node instanceof OrderBy)
+            return ((OrderBy) node).getOrderByField() == field;
+        if (node instanceof TopN)
+            return ((TopN) node).getOrderByField() == field;
+        if (node instanceof SeqScan) {
+            SeqScan scan = (SeqScan) node;
+            DbFile f = Database.getCatalog().getDatabaseFile(scan.getTableId());
+            return f instanceof BTreeFile && ((BTreeFile) f).keyField() == scan.getColumn(field);
+        }
+        return false;
+    }
+
+    /** Determine the fields of each table that the query refers to, in the select list, in
+        aggregates, in the GROUP BY and ORDER BY clauses, in filters and in joins, so that the
+        scans of the tables return just those.
+        @return for each table alias whose scan does not need to return all fields of the table,
+        the indexes in the table of the fields to return
+    */
+    Map<String,int[]> scanColumns() {
+        Map<String,int[]> columns = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.equals("null.*"))
+                return columns;
+            names.add(si.fname);
+        }
+        names.addAll(aggFields);
+        if (groupByField != null)
+            names.add(groupByField);
+        names.addAll(oByFields);
+        for (LogicalFilterNode lf : filters)
+            names.add(lf.fieldQuantifiedName);
+        for (LogicalJoinNode lj : joins) {
+            names.add(lj.f1QuantifiedName);
+            if (!(lj instanceof LogicalSubplanJoinNode))
+                names.add(lj.f2QuantifiedName);
+        }
+
+        Map<String,Set<String>> used = new HashMap<>();
+        for (String name : names) {
+            String[] parts = name.split("[.]");
+            if (parts.length != 2)
+                return columns;  // not a field of a table; scan all fields to be safe
+            used.computeIfAbsent(parts[0], a -> new HashSet<>()).add(parts[1]);
+        }
+        for (LogicalScanNode table : tables) {
+            Set<String> fields = used.get(table.alias);
+            if (fields == null)
+                continue;
+            TupleDesc td = Database.getCatalog().getTupleDesc(table.t);
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < td.numFields(); i++) {
+                if (fields.contains(td.getFieldName(i)))
+                    indexes.add(i);
+            }
+            if (!indexes.isEmpty() && indexes.size() < td.numFields())
+                columns.put(table.alias, indexes.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return columns;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link OpIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned OpIterator will run as a part of
@@ -288,24 +433,114 @@ public class LogicalPlan {
      *  @return A OpIterator representing this plan.
      */ 
     public OpIterator physicalPlan(TransactionId t, Map<String,TableStats> baseTableStats, boolean explain) throws ParsingException {
+        return physicalPlan(t, baseTableStats, explain, Collections.emptyList());
+    }
+
+    /** Convert this LogicalPlan into a physicalPlan as {@link #physicalPlan(TransactionId, Map, boolean)}
+     *  does, with its parameters bound to the specified values.
+     *  @param params the values of the parameters added via {@link #addParameterFilter}, in order;
+     *    for integer fields, Strings representing integers
+     *  @throws ParsingException if the logical plan is not valid, or the values do not match the parameters
+     */
+    public OpIterator physicalPlan(TransactionId t, Map<String,TableStats> baseTableStats, boolean explain,
+            List<String> params) throws ParsingException {
+        long version = TableStats.getVersion();
+        OpIterator plan = convert(t, baseTableStats, explain, params);
+        statsVersion = version;
+        return plan;
+    }
+
+    /** Order the joins of this LogicalPlan before the values of its parameters are known, so that
+     *  {@link #instantiate} can convert it; the filters on parameters are estimated with
+     *  {@link TableStats#avgSelectivity}.
+     *  @param t The transaction that optimizes the plan
+     *  @param baseTableStats the statistics of the tables, as for {@link #physicalPlan(TransactionId, Map, boolean)}
+     *  @param explain flag indicating whether output visualizing the join order should be given.
+     *  @throws ParsingException if the logical plan is not valid
+     */
+    public void optimize(TransactionId t, Map<String,TableStats> baseTableStats, boolean explain)
+            throws ParsingException {
+        long version = TableStats.getVersion();
+        convert(t, baseTableStats, explain, null);
+        statsVersion = version;
+    }
+
+    /** Convert this LogicalPlan into a physicalPlan again, joining the tables in the order the last
+     *  call to physicalPlan chose instead of optimizing the plan again.  Several threads may
+     *  convert the plan at once.
+     *  @param t The transaction that the returned OpIterator will run as a part of
+     *  @param params the values of the parameters added via {@link #addParameterFilter}, in order
+     *  @throws ParsingException if the values do not match the parameters
+     *  @throws IllegalStateException if the plan was not optimized, or joins a subquery
+     *    (see {@link #isReusable})
+     */
+    public OpIterator instantiate(TransactionId t, List<String> params) throws ParsingException {
+        if (orderedJoins == null)
+            throw new IllegalStateException("the plan was not optimized");
+        if (!isReusable())
+            throw new IllegalStateException("the plan of a subquery cannot be reused");
+        return convert(t, null, false, params);
+    }
+
+    /** @return whether the plan can be converted again by {@link #instantiate}: it does not
+        join a subquery, whose physical plan was made for the transaction that parsed it
+    */
+    public boolean isReusable() {
+        for (LogicalJoinNode lj : joins) {
+            if (lj instanceof LogicalSubplanJoinNode)
+                return false;
+        }
+        return true;
+    }
+
+    /** @return whether the plan was optimized by {@link #physicalPlan} and neither the catalog
+        nor the statistics of {@link TableStats} changed since, so that {@link #instantiate}
+        yields the plan physicalPlan would
+    */
+    public boolean isCurrent() {
+        return orderedJoins != null && catalog == Database.getCatalog() && catalog.getVersion() == catalogVersion
+                && statsVersion == TableStats.getVersion();
+    }
+
+    /** Convert this LogicalPlan into a physical plan, ordering its joins with the specified
+        statistics, or in the order last chosen if they are null.  If the values of the parameters
+        are null, the filters on them are left out of the plan, which is only good for its join order.
+    */
+    private OpIterator convert(TransactionId t, Map<String,TableStats> baseTableStats, boolean explain,
+            List<String> params) throws ParsingException {
+        if (params != null && params.size() != numParameters)
+            throw new ParsingException("Expected " + numParameters + " parameters, got " + params.size());
+        boolean optimize = baseTableStats != null;
+        Map<String, OpIterator> subplanMap = new HashMap<>();
         Iterator<LogicalScanNode> tableIt = tables.iterator();
         Map<String,String> equivMap = new HashMap<>();
         Map<String,Double> filterSelectivities = new HashMap<>();
+        Map<String,List<Predicate>> filterPredicates = new HashMap<>();
         Map<String,TableStats> statsMap = new HashMap<>();
+        // the per-thread fragments of the subplans that run in parallel
+        Map<String,OpIterator[]> fragmentMap = new HashMap<>();
+        int dop = WorkerPool.getParallelism();
+        Map<String,int[]> scanColumns = scanColumns();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
+            int[] columns = scanColumns.get(table.alias);
             SeqScan ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias, columns);
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
             
             subplanMap.put(table.alias,ss);
-            String baseTableName = Database.getCatalog().getTableName(table.t);
-            statsMap.put(baseTableName, baseTableStats.get(baseTableName));
-            filterSelectivities.put(table.alias, 1.0);
+            DbFile file = Database.getCatalog().getDatabaseFile(table.t);
+            if (dop > 1 && file instanceof HeapFile && ((HeapFile) file).numPages() >= minParallelPages)
+                fragmentMap.put(table.alias, ParallelSeqScan.fragments(t, table.t, table.alias, columns, dop));
+            if (optimize) {
+                String baseTableName = Database.getCatalog().getTableName(table.t);
+                statsMap.put(baseTableName, baseTableStats.get(baseTableName));
+                filterSelectivities.put(table.alias, 1.0);
+            }
 
         }
 
@@ -324,10 +559,24 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c));
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            if (lf.param >= 0 && params == null) {
+                if (optimize) {
+                    TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
+                    int field = Database.getCatalog().getTupleDesc(this.getTableId(lf.tableAlias))
+                            .fieldNameToIndex(lf.fieldPureName);
+                    filterSelectivities.merge(lf.tableAlias, s.avgSelectivity(field, lf.p), (a, b) -> a * b);
+                }
+                continue;
+            }
+            String c = lf.param >= 0 ? params.get(lf.param) : lf.c;
+            if (ftyp == Type.INT_TYPE) {
+                try {
+                    f = new IntField(Integer.parseInt(c));
+                } catch (NumberFormatException e) {
+                    throw new ParsingException("Value " + c + " of " + lf.fieldQuantifiedName + " is not an integer");
+                }
+            } else
+                f = new StringField(c, Type.STRING_LEN);
 
             Predicate p = null;
             try {
@@ -336,18 +585,33 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
             subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            OpIterator[] fragments = fragmentMap.get(lf.tableAlias);
+            if (fragments != null) {
+                for (int i = 0; i < fragments.length; i++)
+                    fragments[i] = new Filter(p, fragments[i]);
+            }
 
-            TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
-
-            double sel = s.estimateSelectivity(subplan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p, f);
-            filterSelectivities.put(lf.tableAlias, filterSelectivities.get(lf.tableAlias) * sel);
+            // the stats are over all fields of the table, not just the scanned ones
+            if (optimize)
+                filterPredicates.computeIfAbsent(lf.tableAlias, k -> new ArrayList<>()).add(new Predicate(
+                        Database.getCatalog().getTupleDesc(this.getTableId(lf.tableAlias))
+                                .fieldNameToIndex(lf.fieldPureName), lf.p, f));
+        }
 
-            //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
+        // the filters of a table are estimated together, so that those on
+        // correlated fields are not taken to be independent
+        for (Map.Entry<String,List<Predicate>> e : filterPredicates.entrySet()) {
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(e.getKey())));
+            filterSelectivities.merge(e.getKey(), s.estimateSelectivity(e.getValue()), (a, b) -> a * b);
         }
         
-        JoinOptimizer jo = new JoinOptimizer(this,joins);
+        List<LogicalJoinNode> joins = orderedJoins;
+        if (optimize) {
+            JoinOptimizer jo = new JoinOptimizer(this,this.joins);
 
-        joins = jo.orderJoins(statsMap,filterSelectivities,explain);
+            joins = jo.orderJoins(statsMap,filterSelectivities,explain);
+            orderedJoins = joins;
+        }
 
         for (LogicalJoinNode lj : joins) {
             OpIterator plan1;
@@ -365,6 +629,13 @@ public class LogicalPlan {
             else
                 t2name = lj.t2Alias;
 
+            if (!isSubqueryJoin && t1name.equals(t2name)) {
+                // an earlier join already joined the two tables, as in a cycle
+                // of joins or a join on several fields: filter its results
+                addFieldFilter(lj, t1name, subplanMap, fragmentMap);
+                continue;
+            }
+
             plan1 = subplanMap.get(t1name);
 
             if (isSubqueryJoin) {
@@ -380,8 +651,16 @@ public class LogicalPlan {
             if (plan2 == null)
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2Alias);
 
+            OpIterator[] fragments1 = fragmentMap.remove(t1name);
+            OpIterator[] fragments2 = isSubqueryJoin ? null : fragmentMap.remove(t2name);
             OpIterator j;
-            j = JoinOptimizer.instantiateJoin(lj, plan1, plan2);
+            if (fragments1 != null || fragments2 != null) {
+                OpIterator[] fragments = parallelJoin(lj, fragments1, plan1, fragments2, plan2, dop);
+                fragmentMap.put(t1name, fragments);
+                j = new Gather(fragments);
+            } else {
+                j = JoinOptimizer.instantiateJoin(lj, plan1, plan2);
+            }
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) {
@@ -405,7 +684,9 @@ public class LogicalPlan {
             throw new ParsingException("Query does not include join expressions joining all nodes!");
         }
         
-        OpIterator node = subplanMap.entrySet().iterator().next().getValue();
+        Map.Entry<String,OpIterator> last = subplanMap.entrySet().iterator().next();
+        OpIterator[] fragments = fragmentMap.get(last.getKey());
+        OpIterator node = fragments != null ? new Gather(fragments) : last.getValue();
 
         //walk the select list, to determine order in which to project output fields
         List<Integer> outFields = new ArrayList<>();
@@ -413,7 +694,11 @@ public class LogicalPlan {
         for (int i = 0; i < selectList.size(); i++) {
             LogicalSelectListNode si = selectList.get(i);
             if (si.aggOp != null) {
-                outFields.add(groupByField!=null?1:0);
+                int aggIndex = 0;
+                while (aggIndex < aggOps.size() - 1
+                        && !(aggOps.get(aggIndex).equals(si.aggOp) && aggFields.get(aggIndex).equals(si.fname)))
+                    aggIndex++;
+                outFields.add((groupByField!=null?1:0) + aggIndex);
                 TupleDesc td = node.getTupleDesc();
 //                int  id;
                 try {
@@ -461,23 +746,119 @@ public class LogicalPlan {
             TupleDesc td = node.getTupleDesc();
             Aggregate aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
+                int[] afields = new int[aggFields.size()];
+                Aggregator.Op[] aops = new Aggregator.Op[aggOps.size()];
+                for (int a = 0; a < afields.length; a++) {
+                    afields[a] = td.fieldNameToIndex(aggFields.get(a));
+                    aops[a] = getAggOp(aggOps.get(a));
+                }
+                int gfield = groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField);
+                if (fragments != null)
+                    aggNode = Aggregate.parallel(fragments, afields, gfield, aops);
+                else if (gfield != Aggregator.NO_GROUPING && isOrderedOn(node, gfield))
+                    aggNode = new StreamingAggregate(node, afields, gfield, aops);
+                else
+                    aggNode = new Aggregate(node, afields, gfield, aops);
             } catch (NoSuchElementException | IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
             node = aggNode;
         }
 
-        if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+        if (!oByFields.isEmpty()) {
+            int[] oByIndexes = new int[oByFields.size()];
+            boolean[] asc = new boolean[oByFields.size()];
+            for (int i = 0; i < oByIndexes.length; i++) {
+                oByIndexes[i] = node.getTupleDesc().fieldNameToIndex(oByFields.get(i));
+                asc[i] = oByAsc.get(i);
+            }
+            if (limit >= 0)
+                node = new TopN(oByIndexes, asc, limit, node);
+            else
+                node = new OrderBy(oByIndexes, asc, node);
+        } else if (limit >= 0) {
+            node = new Limit(limit, node);
         }
 
         return new Project(outFields, outTypes, node);
     }
 
+    /** Apply a join between two tables of the same subplan as a {@link FieldFilter} of the
+        subplan, and of its fragments if it runs in parallel.
+        @param name the name of the subplan in subplanMap and fragmentMap
+        @throws ParsingException if a join field is not in the subplan
+    */
+    private static void addFieldFilter(LogicalJoinNode lj, String name, Map<String,OpIterator> subplanMap,
+            Map<String,OpIterator[]> fragmentMap) throws ParsingException {
+        OpIterator plan = subplanMap.get(name);
+        TupleDesc td = plan.getTupleDesc();
+        JoinPredicate p;
+        try {
+            p = new JoinPredicate(td.fieldNameToIndex(lj.f1QuantifiedName), lj.p,
+                    td.fieldNameToIndex(lj.f2QuantifiedName));
+        } catch (NoSuchElementException e) {
+            throw new ParsingException("Unknown field in join " + lj.f1QuantifiedName + " " + lj.p + " "
+                    + lj.f2QuantifiedName);
+        }
+        OpIterator[] fragments = fragmentMap.get(name);
+        if (fragments != null) {
+            for (int i = 0; i < fragments.length; i++)
+                fragments[i] = new FieldFilter(p, fragments[i]);
+            subplanMap.put(name, new Gather(fragments));
+        } else {
+            subplanMap.put(name, new FieldFilter(p, plan));
+        }
+    }
+
+    /** Join two subplans of which at least one runs in parallel, keeping the join in the
+        fragments: an equality join of two parallel inputs joins matching partitions of both
+        inputs repartitioned on the join fields, and any other join joins each fragment of one
+        input with all of the other input, which is broadcast.
+        @param fragments1 the fragments of the left input, or null if it is serial
+        @param plan1 the left input, used if it is serial
+        @param fragments2 the fragments of the right input, or null if it is serial
+        @param plan2 the right input, used if it is serial
+        @param dop the number of fragments to create
+        @return the fragments of the join
+    */
+    private static OpIterator[] parallelJoin(LogicalJoinNode lj, OpIterator[] fragments1, OpIterator plan1,
+                                             OpIterator[] fragments2, OpIterator plan2, int dop)
+            throws ParsingException {
+        OpIterator[] left = new OpIterator[dop];
+        OpIterator[] right = new OpIterator[dop];
+        if (fragments1 != null && fragments2 != null && lj.p == Predicate.Op.EQUALS) {
+            int f1, f2;
+            try {
+                f1 = fragments1[0].getTupleDesc().fieldNameToIndex(lj.f1QuantifiedName);
+                f2 = fragments2[0].getTupleDesc().fieldNameToIndex(lj.f2QuantifiedName);
+            } catch (NoSuchElementException e) {
+                throw new ParsingException("Unknown field in join " + lj);
+            }
+            Repartition r1 = new Repartition(f1, dop, fragments1);
+            Repartition r2 = new Repartition(f2, dop, fragments2);
+            for (int i = 0; i < dop; i++) {
+                left[i] = r1.partition(i);
+                right[i] = r2.partition(i);
+            }
+        } else if (fragments1 != null) {
+            Broadcast b = fragments2 != null ? new Broadcast(dop, fragments2) : new Broadcast(dop, plan2);
+            for (int i = 0; i < dop; i++) {
+                left[i] = fragments1[i];
+                right[i] = b.output(i);
+            }
+        } else {
+            Broadcast b = new Broadcast(dop, plan1);
+            for (int i = 0; i < dop; i++) {
+                left[i] = b.output(i);
+                right[i] = fragments2[i];
+            }
+        }
+        OpIterator[] joins = new OpIterator[dop];
+        for (int i = 0; i < dop; i++)
+            joins[i] = JoinOptimizer.instantiateJoin(lj, left[i], right[i]);
+        return joins;
+    }
+
     public static void main(String[] argv) {
         // construct a 3-column table schema
         Type[] types = new Type[]{ Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
@@ -0,0 +1,120 @@
+package simpledb.optimizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the optimized LogicalPlans of queries, keyed by their
+ * normalized text (see {@link #normalize}), so that a query run again is
+ * neither parsed nor optimized again but only converted into operators for
+ * its transaction by {@link LogicalPlan#instantiate}. When the cache is
+ * full, the least recently used plan is dropped. A plan is dropped when it
+ * is looked up after the catalog or the table statistics it was optimized
+ * with changed.
+ */
+public class QueryPlanCache {
+
+    /** Default maximum number of plans cached. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static int capacity = DEFAULT_CAPACITY;
+
+    /** The plans, from the least to the most recently used. */
+    private static final LinkedHashMap<String, LogicalPlan> plans = new LinkedHashMap<String, LogicalPlan>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LogicalPlan> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    public static synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the maximum number of plans cached, dropping the least recently
+     * used ones beyond it; 0 disables the cache.
+     */
+    public static synchronized void setCapacity(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative");
+        QueryPlanCache.capacity = capacity;
+        trim();
+    }
+
+    public static synchronized void resetCapacity() {
+        capacity = DEFAULT_CAPACITY;
+        trim();
+    }
+
+    private static void trim() {
+        while (plans.size() > capacity)
+            plans.remove(plans.keySet().iterator().next());
+    }
+
+    /**
+     * @return the cached plan of the query with the specified normalized
+     *         text, or null if there is none or it is no longer current
+     */
+    public static synchronized LogicalPlan get(String query) {
+        LogicalPlan plan = plans.get(query);
+        if (plan != null && !plan.isCurrent()) {
+            plans.remove(query);
+            return null;
+        }
+        return plan;
+    }
+
+    /**
+     * Cache the plan of the query with the specified normalized text, if it
+     * is current and reusable (see {@link LogicalPlan#isReusable}).
+     */
+    public static synchronized void put(String query, LogicalPlan plan) {
+        if (capacity == 0 || !plan.isReusable() || !plan.isCurrent())
+            return;
+        plans.put(query, plan);
+    }
+
+    /** @return the number of plans cached */
+    public static synchronized int size() {
+        return plans.size();
+    }
+
+    /** Drop all cached plans. */
+    public static synchronized void clear() {
+        plans.clear();
+    }
+
+    /**
+     * @return the text of the query with runs of whitespace outside string
+     *         constants replaced with a single space, and without leading
+     *         or trailing whitespace or a trailing semicolon, so that the
+     *         same query written differently has the same key
+     */
+    public static String normalize(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean quoted = false, space = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!quoted && Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space)
+                sb.append(' ');
+            space = false;
+            if (c == '\'')
+                quoted = !quoted;
+            sb.append(c);
+        }
+        int end = sb.length();
+        if (!quoted && end > 0 && sb.charAt(end - 1) == ';')
+            end--;
+        if (end > 0 && sb.charAt(end - 1) == ' ')
+            end--;
+        return sb.substring(0, end);
+    }
+}
@@ -18,8 +18,22 @@ public class QueryPlanVisualizer {
     static final String SCAN = "scan";
     static final String ORDERBY = "o";
     static final String GROUPBY = "g";
+    static final String STREAM_GROUPBY = "g(sorted)";
+    static final String LIMIT = "limit";
     static final String SPACE = "  ";
 
+    private static String sortKeyText(TupleDesc td, int[] fields, boolean[] asc) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0)
+                text.append(",");
+            text.append(td.getFieldName(fields[i]));
+            if (!asc[i])
+                text.append(" desc");
+        }
+        return text.toString();
+    }
+
     private int calculateQueryPlanTreeDepth(OpIterator root) {
         if (root == null)
             return 0;
@@ -180,7 +194,8 @@ public class QueryPlanVisualizer {
                     alignTxt = td.getFieldName(0);
                 } else {
                     thisNode.text = String.format("%1$s(%2$s), %3$s(%4$s),card:%5$d",
-                            GROUPBY, a.groupFieldName(), a.aggregateOp(),
+                            a instanceof StreamingAggregate ? STREAM_GROUPBY : GROUPBY,
+                            a.groupFieldName(), a.aggregateOp(),
                             a.aggregateFieldName(),a.getEstimatedCardinality());
                     alignTxt = GROUPBY;
                 }
@@ -219,13 +234,57 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
+            } else if (plan instanceof FieldFilter) {
+                FieldFilter f = (FieldFilter) plan;
+                JoinPredicate p = f.getPredicate();
+                TupleDesc td = children[0].getTupleDesc();
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", SELECT, td.getFieldName(p.getField1())
+                        + p.getOperator() + td.getFieldName(p.getField2()), f.getEstimatedCardinality());
+                int upBarShift = parentUpperBarStartShift;
+                if (SELECT.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = SELECT.length() / 2;
+                SubTreeDescriptor child = this.buildTree(queryPlanDepth,
+                        currentDepth + 2 + adjustDepth, children[0],
+                        currentStartPosition, upBarShift);
+                thisNode.upBarPosition = child.upBarPosition;
+                thisNode.textStartPosition = thisNode.upBarPosition
+                        - SELECT.length() / 2;
+                thisNode.width = Math.max(child.width,
+                        thisNode.textStartPosition + thisNode.text.length()
+                                - currentStartPosition);
+                thisNode.leftChild = child;
+                thisNode.height = currentDepth;
             } else if (plan instanceof OrderBy) {
                 OrderBy o = (OrderBy) plan;
                 thisNode.text = String.format(
                         "%1$s(%2$s),card:%3$d",
                         ORDERBY,
-                        children[0].getTupleDesc().getFieldName(
-                                o.getOrderByField()),o.getEstimatedCardinality());
+                        sortKeyText(children[0].getTupleDesc(),
+                                o.getOrderByFields(), o.getAscending()),
+                        o.getEstimatedCardinality());
+                int upBarShift = parentUpperBarStartShift;
+                if (ORDERBY.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = ORDERBY.length() / 2;
+                SubTreeDescriptor child = this.buildTree(queryPlanDepth,
+                        currentDepth + 2 + adjustDepth, children[0],
+                        currentStartPosition, upBarShift);
+                thisNode.upBarPosition = child.upBarPosition;
+                thisNode.textStartPosition = thisNode.upBarPosition
+                        - ORDERBY.length() / 2;
+                thisNode.width = Math.max(child.width,
+                        thisNode.textStartPosition + thisNode.text.length()
+                                - currentStartPosition);
+                thisNode.leftChild = child;
+                thisNode.height = currentDepth;
+            } else if (plan instanceof TopN) {
+                TopN o = (TopN) plan;
+                thisNode.text = String.format(
+                        "%1$s(%2$s),%3$s(%4$d),card:%5$d",
+                        ORDERBY,
+                        sortKeyText(children[0].getTupleDesc(),
+                                o.getOrderByFields(), o.getAscending()),
+                        LIMIT, o.getLimit(),
+                        o.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
                 if (ORDERBY.length() / 2 > parentUpperBarStartShift)
                     upBarShift = ORDERBY.length() / 2;
@@ -240,6 +299,24 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
+            } else if (plan instanceof Limit) {
+                Limit l = (Limit) plan;
+                thisNode.text = String.format("%1$s(%2$d),card:%3$d", LIMIT,
+                        l.getLimit(), l.getEstimatedCardinality());
+                int upBarShift = parentUpperBarStartShift;
+                if (LIMIT.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = LIMIT.length() / 2;
+                SubTreeDescriptor child = this.buildTree(queryPlanDepth,
+                        currentDepth + 2 + adjustDepth, children[0],
+                        currentStartPosition, upBarShift);
+                thisNode.upBarPosition = child.upBarPosition;
+                thisNode.textStartPosition = thisNode.upBarPosition
+                        - LIMIT.length() / 2;
+                thisNode.width = Math.max(child.width,
+                        thisNode.textStartPosition + thisNode.text.length()
+                                - currentStartPosition);
+                thisNode.leftChild = child;
+                thisNode.height = currentDepth;
             } else if (plan instanceof Project) {
                 Project p = (Project) plan;
                 StringBuilder fields = new StringBuilder();
@@ -263,7 +340,8 @@ public class QueryPlanVisualizer {
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
             }
-            else if (plan.getClass().getSuperclass().getSuperclass().getSimpleName().equals("Exchange")) {
+            else if (plan instanceof Exchange
+                    || plan.getClass().getSuperclass().getSuperclass().getSimpleName().equals("Exchange")) {
                 String name="Exchange";
                 int card=0;
                 try {
@@ -0,0 +1,298 @@
+package simpledb.optimizer;
+
+import simpledb.common.Type;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Statistics of some of the tuples of a table, gathered in one pass and
+ * merged with the sketches of the other parts of the table, so that the
+ * pages of a table can be read in parallel.
+ * <p>
+ * For each INT field a sketch keeps the exact minimum and maximum and a
+ * reservoir sample of the values, from which {@link TableStats} builds a
+ * histogram once the range is known; tables with at most
+ * {@link TableStats#getReservoirSize()} tuples are sampled completely. The
+ * values of STRING fields go straight into a StringHistogram, whose range is
+ * fixed, and are sampled too, for equi-depth histograms. Every value also
+ * goes into a HyperLogLog sketch of the distinct values of its field, and
+ * the combination of values of each column group of the table into one of
+ * the distinct combinations of the group.
+ */
+final class TableSketch {
+
+    private final TupleDesc td;
+    private final List<int[]> groups;
+    private final int reservoirSize;
+    private final SplittableRandom random;
+    long tuples;
+    /** The number of pages of a HeapFile the tuples were read from. */
+    long pages;
+    final int[] min;
+    final int[] max;
+    /** The sampled values of each INT field, of min(tuples, reservoirSize) tuples. */
+    final int[][] sample;
+    /** The sampled values of each STRING field, of the same tuples. */
+    final String[][] stringSample;
+    final StringHistogram[] strings;
+    final HyperLogLog[] distinct;
+    final HyperLogLog[] groupDistinct;
+
+    TableSketch(TupleDesc td, List<int[]> groups, int reservoirSize, long seed) {
+        this.td = td;
+        this.groups = groups;
+        this.reservoirSize = reservoirSize;
+        this.random = new SplittableRandom(seed);
+        int n = td.numFields();
+        min = new int[n];
+        max = new int[n];
+        sample = new int[n][];
+        stringSample = new String[n][];
+        strings = new StringHistogram[n];
+        distinct = new HyperLogLog[n];
+        groupDistinct = new HyperLogLog[groups.size()];
+        for (int g = 0; g < groupDistinct.length; g++)
+            groupDistinct[g] = new HyperLogLog();
+        for (int i = 0; i < n; i++) {
+            distinct[i] = new HyperLogLog();
+            min[i] = Integer.MAX_VALUE;
+            max[i] = Integer.MIN_VALUE;
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                sample[i] = new int[Math.min(reservoirSize, 1024)];
+            } else {
+                strings[i] = new StringHistogram(TableStats.NUM_HIST_BINS);
+                stringSample[i] = new String[Math.min(reservoirSize, 1024)];
+            }
+        }
+    }
+
+    /** @return the number of sampled tuples */
+    int sampled() {
+        return (int) Math.min(tuples, reservoirSize);
+    }
+
+    /**
+     * Counts one more tuple.
+     *
+     * @return the slot of the tuple in the sample, or -1 if it is not sampled
+     */
+    private int nextSlot() {
+        int slot;
+        if (tuples < reservoirSize) {
+            slot = (int) tuples;
+        } else {
+            long r = random.nextLong(tuples + 1);
+            slot = r < reservoirSize ? (int) r : -1;
+        }
+        tuples++;
+        // the sample grows up to the reservoir size as it fills
+        for (int i = 0; i < sample.length; i++) {
+            if (sample[i] != null && slot >= sample[i].length)
+                sample[i] = Arrays.copyOf(sample[i], (int) Math.min(reservoirSize, 2L * sample[i].length));
+            if (stringSample[i] != null && slot >= stringSample[i].length)
+                stringSample[i] = Arrays.copyOf(stringSample[i],
+                        (int) Math.min(reservoirSize, 2L * stringSample[i].length));
+        }
+        return slot;
+    }
+
+    void add(Tuple t) {
+        int slot = nextSlot();
+        for (int i = 0; i < sample.length; i++) {
+            if (sample[i] != null) {
+                int v = t.getInt(i);
+                if (v < min[i])
+                    min[i] = v;
+                if (v > max[i])
+                    max[i] = v;
+                if (slot >= 0)
+                    sample[i][slot] = v;
+                distinct[i].add(v);
+            } else {
+                String s = ((StringField) t.getField(i)).getValue();
+                strings[i].addValue(s);
+                if (slot >= 0)
+                    stringSample[i][slot] = s;
+                distinct[i].add(s);
+            }
+        }
+        for (int g = 0; g < groupDistinct.length; g++)
+            groupDistinct[g].addHash(ColumnGroupStats.hash(t, groups.get(g)));
+    }
+
+    /**
+     * Adds the tuples of another sketch of the same table. If either sketch
+     * sampled all its tuples, those are added to the other one by one;
+     * otherwise the merged sample draws from each sample in proportion to the
+     * number of tuples it stands for.
+     */
+    void merge(TableSketch other) {
+        pages += other.pages;
+        for (int g = 0; g < groupDistinct.length; g++)
+            groupDistinct[g].addAll(other.groupDistinct[g]);
+        for (int i = 0; i < sample.length; i++) {
+            distinct[i].addAll(other.distinct[i]);
+            if (sample[i] == null)
+                strings[i].hist.addAll(other.strings[i].hist);
+        }
+        if (other.tuples <= other.reservoirSize) {
+            replay(other);
+        } else if (tuples <= reservoirSize) {
+            TableSketch mine = copy();
+            take(other);
+            replay(mine);
+        } else {
+            mergeSamples(other);
+        }
+    }
+
+    /** Adds the sampled values of other, which sampled all its tuples. */
+    private void replay(TableSketch other) {
+        for (int i = 0; i < sample.length; i++) {
+            if (sample[i] != null) {
+                min[i] = Math.min(min[i], other.min[i]);
+                max[i] = Math.max(max[i], other.max[i]);
+            }
+        }
+        for (int k = 0; k < other.tuples; k++) {
+            int slot = nextSlot();
+            if (slot < 0)
+                continue;
+            for (int i = 0; i < sample.length; i++) {
+                if (sample[i] != null)
+                    sample[i][slot] = other.sample[i][k];
+                else
+                    stringSample[i][slot] = other.stringSample[i][k];
+            }
+        }
+    }
+
+    /** @return a copy of the INT statistics and samples of this sketch */
+    private TableSketch copy() {
+        TableSketch c = new TableSketch(td, groups, reservoirSize, 0);
+        c.take(this);
+        return c;
+    }
+
+    /** Replaces the INT statistics and samples of this sketch with those of other. */
+    private void take(TableSketch other) {
+        tuples = other.tuples;
+        for (int i = 0; i < sample.length; i++) {
+            if (sample[i] != null) {
+                min[i] = other.min[i];
+                max[i] = other.max[i];
+                sample[i] = other.sample[i].clone();
+            } else {
+                stringSample[i] = other.stringSample[i].clone();
+            }
+        }
+    }
+
+    private void mergeSamples(TableSketch other) {
+        int a = sampled(), b = other.sampled();
+        long restA = tuples, restB = other.tuples;
+        int size = (int) Math.min(restA + restB, reservoirSize);
+        int[][] merged = new int[sample.length][];
+        String[][] mergedStrings = new String[sample.length][];
+        for (int i = 0; i < sample.length; i++) {
+            if (sample[i] != null) {
+                min[i] = Math.min(min[i], other.min[i]);
+                max[i] = Math.max(max[i], other.max[i]);
+                merged[i] = new int[Math.max(size, 1)];
+            } else {
+                mergedStrings[i] = new String[Math.max(size, 1)];
+            }
+        }
+        // pick size rows, each from a's sample with probability
+        // proportional to the tuples a has left to stand for
+        int[] orderA = shuffled(a), orderB = shuffled(b);
+        int nextA = 0, nextB = 0;
+        for (int k = 0; k < size; k++) {
+            boolean fromA = nextB == b || (nextA < a && random.nextLong(restA + restB) < restA);
+            int row = fromA ? orderA[nextA++] : orderB[nextB++];
+            if (fromA)
+                restA--;
+            else
+                restB--;
+            for (int i = 0; i < sample.length; i++) {
+                if (merged[i] != null)
+                    merged[i][k] = (fromA ? sample : other.sample)[i][row];
+                else
+                    mergedStrings[i][k] = (fromA ? stringSample : other.stringSample)[i][row];
+            }
+        }
+        for (int i = 0; i < sample.length; i++) {
+            if (merged[i] != null)
+                sample[i] = merged[i];
+            else
+                stringSample[i] = mergedStrings[i];
+        }
+        tuples += other.tuples;
+    }
+
+    /** @return a random permutation of 0 to n - 1 */
+    private int[] shuffled(int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        return order;
+    }
+
+    /**
+     * @return a histogram of the sampled values of INT field i
+     */
+    IntHistogram histogram(int i) {
+        if (tuples == 0)
+            return new IntHistogram(TableStats.NUM_HIST_BINS, 0, 0);
+        IntHistogram h = new IntHistogram(TableStats.NUM_HIST_BINS, min[i], max[i]);
+        int n = sampled();
+        for (int k = 0; k < n; k++)
+            h.addValue(sample[i][k]);
+        return h;
+    }
+
+    /**
+     * @return an equi-depth histogram of the sampled values of INT field i,
+     *         with its most common values counted on their own
+     */
+    EquiDepthHistogram.Ints intEquiDepth(int i) {
+        return new EquiDepthHistogram.Ints(sample[i], sampled(), TableStats.NUM_HIST_BINS,
+                TableStats.NUM_COMMON_VALUES);
+    }
+
+    /**
+     * @return an equi-depth histogram of the sampled values of STRING field
+     *         i, with its most common values counted on their own
+     */
+    EquiDepthHistogram.Strings stringEquiDepth(int i) {
+        return new EquiDepthHistogram.Strings(stringSample[i], sampled(), TableStats.NUM_HIST_BINS,
+                TableStats.NUM_COMMON_VALUES);
+    }
+
+    /**
+     * @return the statistics of column group g, from the sampled values of
+     *         its fields
+     */
+    ColumnGroupStats groupStats(int g) {
+        int[] fields = groups.get(g);
+        Object[] columns = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            int f = fields[i];
+            columns[i] = sample[f] != null ? Arrays.copyOf(sample[f], sampled())
+                    : Arrays.copyOf(stringSample[f], sampled());
+        }
+        return new ColumnGroupStats(fields, columns, sampled(), groupDistinct[g]);
+    }
+
+    TupleDesc getTupleDesc() {
+        return td;
+    }
+}
@@ -1,36 +1,109 @@
 package simpledb.optimizer;
 
 import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
 import simpledb.common.Type;
 import simpledb.execution.Predicate;
-import simpledb.execution.SeqScan;
+import simpledb.execution.WorkerPool;
+import simpledb.index.BTreeFile;
 import simpledb.storage.*;
-import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
 
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * TableStats represents statistics (e.g., histograms) about base tables in a
  * query. 
  * 
  * This class is not needed in implementing lab1 and lab2.
+ * <p>
+ * Statistics are gathered in a single pass over each table: the pages of a
+ * HeapFile are split into ranges of {@link #PAGES_PER_RANGE} pages, which
+ * {@link WorkerPool#getParallelism()} workers read in parallel. Each worker
+ * keeps a {@link TableSketch} of the ranges of each table it read, and the
+ * sketches of the workers are merged when they are done.
+ * {@link #computeStatistics} reads the ranges of all tables of the catalog
+ * with the same workers.
+ * <p>
+ * When {@link #getSampleFraction()} is less than 1, only that fraction of the
+ * pages of each HeapFile, chosen at random, is read; the number of tuples is
+ * extrapolated from the tuples on those pages, and the histograms are built
+ * from their values. Pages are read without being added to the BufferPool.
+ * <p>
+ * Once a statistics file is set with {@link #setStatsFile}, the statistics
+ * saved in it are loaded the first time any are needed; only tables missing
+ * from the file, or whose number of pages changed since, are read then.
+ * {@link #analyze} recomputes the statistics of some tables and saves them.
+ * Insert and Delete count the tuples they change with
+ * {@link #recordModifications}; once a table has changed by more than
+ * {@link #ANALYZE_BASE_THRESHOLD} plus {@link #getAnalyzeThreshold()} times
+ * its tuples, it is analyzed again in the background.
+ * <p>
+ * In between, Insert and Delete also add each tuple to or remove it from the
+ * statistics with {@link #addTuple} and {@link #removeTuple}, which update the
+ * number of tuples and the histograms with atomic counters, so estimates
+ * follow bulk loads without a scan.
+ * <p>
+ * The histograms are of the kind {@link #getHistogramType()} was when the
+ * statistics were computed: equal-width histograms, or equi-depth histograms
+ * with a list of the most common values of each field, which follow skewed
+ * fields, and strings that share long prefixes, much more closely.
+ * <p>
+ * For each column group declared in the catalog with
+ * {@link simpledb.common.Catalog#addColumnGroup}, the values of its fields in
+ * the sampled rows are kept together, so that a conjunction of predicates on
+ * correlated fields is estimated from the rows that satisfy all of them,
+ * rather than as the product of their selectivities; see
+ * {@link #estimateSelectivity(List)}.
  */
-public class TableStats {
+public class TableStats implements Serializable {
+
+    private static final long serialVersionUID = 5L;
 
     private static final ConcurrentMap<String, TableStats> statsMap = new ConcurrentHashMap<>();
 
     static final int IOCOSTPERPAGE = 1000;
 
+    /** Counts replacements of statistics, so that plans made before one can tell. */
+    private static final AtomicLong version = new AtomicLong();
+
+    /**
+     * @return a number that changes whenever the statistics of a table are
+     *         set, computed again or loaded
+     */
+    public static long getVersion() {
+        return version.get();
+    }
+
     public static TableStats getTableStats(String tablename) {
+        load();
         return statsMap.get(tablename);
     }
 
     public static void setTableStats(String tablename, TableStats stats) {
         statsMap.put(tablename, stats);
+        version.incrementAndGet();
     }
     
     public static void setStatsMap(Map<String,TableStats> s)
@@ -39,6 +112,7 @@ public class TableStats {
             java.lang.reflect.Field statsMapF = TableStats.class.getDeclaredField("statsMap");
             statsMapF.setAccessible(true);
             statsMapF.set(null, s);
+            version.incrementAndGet();
         } catch (NoSuchFieldException | IllegalAccessException | IllegalArgumentException | SecurityException e) {
             e.printStackTrace();
         }
@@ -46,21 +120,450 @@ public class TableStats {
     }
 
     public static Map<String, TableStats> getStatsMap() {
+        load();
         return statsMap;
     }
 
+    /** The file statistics are saved in, or null. */
+    private static volatile File statsFile;
+    /** Whether the statistics in statsFile were loaded. */
+    private static volatile boolean loaded = true;
+
+    /**
+     * Set the file the statistics of the catalog's tables are saved in, to be
+     * loaded the first time statistics are needed, or null to not save them.
+     */
+    public static void setStatsFile(File f) {
+        synchronized (TableStats.class) {
+            statsFile = f;
+            loaded = f == null;
+        }
+        version.incrementAndGet();
+    }
+
+    public static File getStatsFile() {
+        return statsFile;
+    }
+
+    /**
+     * Loads the statistics saved in the statistics file, if they were not
+     * loaded yet, and computes and saves those of the tables of the catalog
+     * that are missing or whose number of pages changed.
+     */
+    private static void load() {
+        if (loaded)
+            return;
+        synchronized (TableStats.class) {
+            if (loaded)
+                return;
+            Map<String, TableStats> saved = read(statsFile);
+            List<String> missing = new ArrayList<>();
+            Iterator<Integer> tableIt = Database.getCatalog().tableIdIterator();
+            while (tableIt.hasNext()) {
+                int tableid = tableIt.next();
+                String name = Database.getCatalog().getTableName(tableid);
+                TableStats s = saved.get(name);
+                if (s != null && s.numPages == numPages(Database.getCatalog().getDatabaseFile(tableid))
+                        && s.hasColumnGroups(Database.getCatalog().getColumnGroups(tableid)))
+                    statsMap.put(name, s);
+                else
+                    missing.add(name);
+            }
+            loaded = true;
+            version.incrementAndGet();
+            if (!missing.isEmpty())
+                analyze(missing);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, TableStats> read(File f) {
+        if (!f.exists())
+            return new HashMap<>();
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            return (Map<String, TableStats>) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // statistics are recomputed if they cannot be read
+            System.out.println("Cannot read table stats from " + f + ": " + e);
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Saves the statistics of the tables of the catalog to the statistics
+     * file, if one is set, replacing its contents at once.
+     */
+    private static synchronized void save() throws IOException {
+        File f = statsFile;
+        if (f == null)
+            return;
+        HashMap<String, TableStats> stats = new HashMap<>();
+        Iterator<Integer> tableIt = Database.getCatalog().tableIdIterator();
+        while (tableIt.hasNext()) {
+            String name = Database.getCatalog().getTableName(tableIt.next());
+            TableStats s = statsMap.get(name);
+            if (s != null)
+                stats.put(name, s);
+        }
+        File tmp = new File(f.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeObject(stats);
+        }
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Computes the statistics of the specified tables in one pass, and saves
+     * them to the statistics file, if one is set.
+     *
+     * @throws NoSuchElementException if a table is not in the catalog
+     */
+    public static void analyze(List<String> tablenames) {
+        load();
+        List<Integer> tableids = new ArrayList<>();
+        for (String name : tablenames)
+            tableids.add(Database.getCatalog().getTableId(name));
+        for (int tableid : tableids)
+            modifications.computeIfAbsent(tableid, k -> new AtomicLong()).set(0);
+        Map<Integer, TableSketch> sketches = sketch(tableids);
+        for (int tableid : tableids)
+            setTableStats(Database.getCatalog().getTableName(tableid),
+                    new TableStats(tableid, IOCOSTPERPAGE, sketches.get(tableid)));
+        try {
+            save();
+        } catch (IOException e) {
+            System.out.println("Cannot save table stats to " + statsFile + ": " + e);
+        }
+    }
+
+    /** Modifications beyond the fraction of a table that make it stale. */
+    public static final int ANALYZE_BASE_THRESHOLD = 50;
+
+    /** Default fraction of the tuples of a table that may change before it is analyzed again. */
+    public static final double DEFAULT_ANALYZE_THRESHOLD = 0.1;
+
+    private static double analyzeThreshold = DEFAULT_ANALYZE_THRESHOLD;
+
+    /**
+     * @return the fraction of the tuples of a table that may be inserted or
+     *         deleted, beyond {@link #ANALYZE_BASE_THRESHOLD}, before the
+     *         table is analyzed again in the background
+     */
+    public static double getAnalyzeThreshold() {
+        return analyzeThreshold;
+    }
+
+    public static void setAnalyzeThreshold(double threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("analyze threshold must not be negative");
+        TableStats.analyzeThreshold = threshold;
+    }
+
+    public static void resetAnalyzeThreshold() {
+        TableStats.analyzeThreshold = DEFAULT_ANALYZE_THRESHOLD;
+    }
+
+    /** The tuples inserted or deleted in each table since it was last analyzed. */
+    private static final ConcurrentMap<Integer, AtomicLong> modifications = new ConcurrentHashMap<>();
+    /** The tuples each running transaction inserted into or deleted from each table. */
+    private static final ConcurrentMap<TransactionId, Map<Integer, Long>> pendingModifications =
+            new ConcurrentHashMap<>();
+    /** The tables being analyzed in the background. */
+    private static final Set<Integer> analyzing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return the number of tuples committed transactions inserted into or
+     *         deleted from the specified table since its statistics were
+     *         computed
+     */
+    public static long getModifications(int tableid) {
+        AtomicLong n = modifications.get(tableid);
+        return n == null ? 0 : n.get();
+    }
+
+    /**
+     * Notes tuples the specified transaction inserted into or deleted from
+     * the specified table. They are counted when the transaction commits,
+     * see {@link #transactionComplete}.
+     */
+    public static void recordModifications(TransactionId tid, int tableid, int count) {
+        if (count <= 0)
+            return;
+        pendingModifications.computeIfAbsent(tid, k -> new ConcurrentHashMap<>())
+                .merge(tableid, (long) count, Long::sum);
+    }
+
+    /**
+     * Counts the tuples the specified transaction inserted or deleted if it
+     * committed, and forgets them if it aborted. A table whose statistics
+     * the committed tuples make stale is analyzed again in the background,
+     * so that neither the analysis nor the saved statistics see tuples that
+     * are rolled back.
+     */
+    public static void transactionComplete(TransactionId tid, boolean commit) {
+        Map<Integer, Long> pending = pendingModifications.remove(tid);
+        if (pending == null || !commit)
+            return;
+        for (Map.Entry<Integer, Long> e : pending.entrySet())
+            countModifications(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Counts committed tuples inserted into or deleted from the specified
+     * table, and starts analyzing it again in the background if that makes
+     * its statistics stale. Nothing is counted for tables without statistics.
+     */
+    private static void countModifications(int tableid, long count) {
+        String name = Database.getCatalog().getTableName(tableid);
+        TableStats s = statsMap.get(name);
+        if (s == null)
+            return;
+        long n = modifications.computeIfAbsent(tableid, k -> new AtomicLong()).addAndGet(count);
+        if (n > ANALYZE_BASE_THRESHOLD + analyzeThreshold * s.analyzedTuples && analyzing.add(tableid)) {
+            WorkerPool.getExecutor().execute(() -> {
+                try {
+                    analyze(Collections.singletonList(name));
+                } catch (RuntimeException e) {
+                    System.out.println("Cannot analyze " + name + ": " + e);
+                } finally {
+                    analyzing.remove(tableid);
+                }
+            });
+        }
+    }
+
     public static void computeStatistics() {
         Iterator<Integer> tableIt = Database.getCatalog().tableIdIterator();
+        List<Integer> tableids = new ArrayList<>();
+        while (tableIt.hasNext())
+            tableids.add(tableIt.next());
 
         System.out.println("Computing table stats.");
-        while (tableIt.hasNext()) {
-            int tableid = tableIt.next();
-            TableStats s = new TableStats(tableid, IOCOSTPERPAGE);
+        Map<Integer, TableSketch> sketches = sketch(tableids);
+        for (int tableid : tableids) {
+            TableStats s = new TableStats(tableid, IOCOSTPERPAGE, sketches.get(tableid));
             setTableStats(Database.getCatalog().getTableName(tableid), s);
         }
         System.out.println("Done.");
     }
 
+    /** Default number of values of each field sampled for a histogram. */
+    public static final int DEFAULT_RESERVOIR_SIZE = 1 << 16;
+
+    private static int reservoirSize = DEFAULT_RESERVOIR_SIZE;
+
+    /**
+     * @return the number of values of each INT field sampled to build its
+     *         histogram; smaller tables are histogrammed exactly
+     */
+    public static int getReservoirSize() {
+        return reservoirSize;
+    }
+
+    /**
+     * Set the number of values of each INT field sampled for statistics
+     * computed afterwards.
+     */
+    public static void setReservoirSize(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("reservoir size must be at least 1");
+        TableStats.reservoirSize = size;
+    }
+
+    public static void resetReservoirSize() {
+        TableStats.reservoirSize = DEFAULT_RESERVOIR_SIZE;
+    }
+
+    /** The kinds of histograms of the values of each field. */
+    public enum HistogramType {
+        /** {@link IntHistogram}s and {@link StringHistogram}s, of buckets of equal width. */
+        EQUI_WIDTH,
+        /** {@link EquiDepthHistogram}s, of buckets of about equal counts, and the most common values. */
+        EQUI_DEPTH
+    }
+
+    /** Default kind of histograms built for statistics. */
+    public static final HistogramType DEFAULT_HISTOGRAM_TYPE = HistogramType.EQUI_DEPTH;
+
+    private static HistogramType histogramType = DEFAULT_HISTOGRAM_TYPE;
+
+    /**
+     * @return the kind of histograms built for statistics computed from now on
+     */
+    public static HistogramType getHistogramType() {
+        return histogramType;
+    }
+
+    public static void setHistogramType(HistogramType type) {
+        if (type == null)
+            throw new IllegalArgumentException("histogram type must not be null");
+        TableStats.histogramType = type;
+    }
+
+    public static void resetHistogramType() {
+        TableStats.histogramType = DEFAULT_HISTOGRAM_TYPE;
+    }
+
+    /** Default fraction of the pages of a HeapFile read for its statistics. */
+    public static final double DEFAULT_SAMPLE_FRACTION = 1.0;
+
+    private static double sampleFraction = DEFAULT_SAMPLE_FRACTION;
+
+    /**
+     * @return the fraction of the pages of each HeapFile read to compute its
+     *         statistics, 1 to read every page
+     */
+    public static double getSampleFraction() {
+        return sampleFraction;
+    }
+
+    /**
+     * Set the fraction of the pages of each HeapFile read for statistics
+     * computed afterwards. At least one page of a non-empty table is read.
+     */
+    public static void setSampleFraction(double fraction) {
+        if (!(fraction > 0 && fraction <= 1))
+            throw new IllegalArgumentException("sample fraction must be in (0, 1]");
+        TableStats.sampleFraction = fraction;
+    }
+
+    public static void resetSampleFraction() {
+        TableStats.sampleFraction = DEFAULT_SAMPLE_FRACTION;
+    }
+
+    /**
+     * @return the numbers of the pages of a table of numPages pages to read,
+     *         in increasing order
+     */
+    static int[] samplePages(int numPages, double fraction, SplittableRandom random) {
+        int n = (int) Math.min(numPages, Math.max(1, Math.round(fraction * numPages)));
+        int[] pages = new int[numPages];
+        for (int i = 0; i < numPages; i++)
+            pages[i] = i;
+        if (n < numPages) {
+            // the first n of a random permutation
+            for (int i = 0; i < n; i++) {
+                int j = i + random.nextInt(numPages - i);
+                int tmp = pages[i];
+                pages[i] = pages[j];
+                pages[j] = tmp;
+            }
+            pages = Arrays.copyOf(pages, n);
+            Arrays.sort(pages);
+        }
+        return pages;
+    }
+
+    /** Number of pages of a HeapFile each worker reads at a time. */
+    static final int PAGES_PER_RANGE = 16;
+
+    /** Some pages of a table to read, or a whole table that is not a HeapFile. */
+    private static final class Range {
+        final int tableid;
+        /** The page numbers, or null for the whole table. */
+        final int[] pages;
+
+        Range(int tableid, int[] pages) {
+            this.tableid = tableid;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * Reads the specified tables in one pass, with the ranges of pages of
+     * all of them shared among the workers.
+     *
+     * @return a sketch of each table
+     */
+    static Map<Integer, TableSketch> sketch(List<Integer> tableids) {
+        Queue<Range> ranges = new ConcurrentLinkedQueue<>();
+        Map<Integer, TableSketch> sketches = new HashMap<>();
+        int size = reservoirSize;
+        SplittableRandom random = new SplittableRandom();
+        // the column groups as they are now, the same for every worker
+        Map<Integer, List<int[]>> groups = new HashMap<>();
+        for (int tableid : tableids) {
+            groups.put(tableid, new ArrayList<>(Database.getCatalog().getColumnGroups(tableid)));
+            DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+            if (file instanceof HeapFile) {
+                int[] pages = samplePages(((HeapFile) file).numPages(), sampleFraction, random);
+                for (int first = 0; first < pages.length; first += PAGES_PER_RANGE)
+                    ranges.add(new Range(tableid, Arrays.copyOfRange(pages, first,
+                            Math.min(pages.length, first + PAGES_PER_RANGE))));
+            } else {
+                ranges.add(new Range(tableid, null));
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        int workers = Math.min(WorkerPool.getParallelism(), ranges.size());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            final long seed = w;
+            futures.add(WorkerPool.getExecutor().submit(() -> {
+                // a sketch of the ranges of each table this worker read
+                Map<Integer, TableSketch> mine = new HashMap<>();
+                Range r;
+                while ((r = ranges.poll()) != null) {
+                    TableSketch part = mine.get(r.tableid);
+                    if (part == null) {
+                        part = new TableSketch(Database.getCatalog().getTupleDesc(r.tableid),
+                                groups.get(r.tableid), size,
+                                seed * 31 + r.tableid);
+                        mine.put(r.tableid, part);
+                    }
+                    scan(tid, r, part);
+                }
+                synchronized (sketches) {
+                    for (Map.Entry<Integer, TableSketch> e : mine.entrySet()) {
+                        sketches.merge(e.getKey(), e.getValue(), (a, b) -> {
+                            a.merge(b);
+                            return a;
+                        });
+                    }
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> f : futures)
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while computing table stats", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("cannot compute table stats: " + e.getCause(), e.getCause());
+        } finally {
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        for (int tableid : tableids) {
+            if (!sketches.containsKey(tableid))
+                sketches.put(tableid, new TableSketch(Database.getCatalog().getTupleDesc(tableid),
+                        groups.get(tableid), size, 0));
+        }
+        return sketches;
+    }
+
+    private static void scan(TransactionId tid, Range r, TableSketch sketch)
+            throws DbException, TransactionAbortedException {
+        if (r.pages == null) {
+            DbFileIterator it = Database.getCatalog().getDatabaseFile(r.tableid).iterator(tid);
+            it.open();
+            while (it.hasNext())
+                sketch.add(it.next());
+            it.close();
+            return;
+        }
+        for (int pgno : r.pages) {
+            HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(r.tableid, pgno), Permissions.READ_ONLY, false);
+            sketch.pages++;
+            Iterator<Tuple> it = p.iterator();
+            while (it.hasNext())
+                sketch.add(it.next());
+        }
+    }
+
     /**
      * Number of bins for the histogram. Feel free to increase this value over
      * 100, though our tests assume that you have at least 100 bins in your
@@ -68,6 +571,27 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    /** The largest number of most common values an equi-depth histogram counts on their own. */
+    static final int NUM_COMMON_VALUES = 32;
+
+    /** The number of pages and tuples when the table was analyzed. */
+    private final int numPages;
+    private final long analyzedTuples;
+    private final int ioCostPerPage;
+    /** The number of tuples, kept up to date by {@link #addTuple} and {@link #removeTuple}. */
+    private final AtomicLong numTuples;
+    /** The histogram of each field, of the one kind that fits its type and the histogram type. */
+    private final IntHistogram[] intHistograms;
+    private final StringHistogram[] stringHistograms;
+    private final EquiDepthHistogram.Ints[] intDepth;
+    private final EquiDepthHistogram.Strings[] stringDepth;
+    private final HyperLogLog[] distinct;
+    /** The number of distinct values of each field among the tuples read. */
+    private final long[] sampleDistinct;
+    /** The fraction of the tuples of the table that were read. */
+    private final double sampled;
+    private final ColumnGroupStats[] groups;
+
     /**
      * Create a new TableStats object, that keeps track of statistics on each
      * column of a table
@@ -87,6 +611,130 @@ public class TableStats {
         // necessarily have to (for example) do everything
         // in a single scan of the table.
         // some code goes here
+        this(tableid, ioCostPerPage, sketch(Collections.singletonList(tableid)).get(tableid));
+    }
+
+    private TableStats(int tableid, int ioCostPerPage, TableSketch sketch) {
+        this.numPages = numPages(Database.getCatalog().getDatabaseFile(tableid));
+        this.ioCostPerPage = ioCostPerPage;
+        if (sketch.pages > 0 && sketch.pages < numPages)
+            this.analyzedTuples = Math.round((double) sketch.tuples * numPages / sketch.pages);
+        else
+            this.analyzedTuples = sketch.tuples;
+        this.numTuples = new AtomicLong(analyzedTuples);
+        this.sampled = analyzedTuples == 0 ? 1 : Math.min(1, (double) sketch.tuples / analyzedTuples);
+        TupleDesc td = sketch.getTupleDesc();
+        distinct = sketch.distinct;
+        sampleDistinct = new long[td.numFields()];
+        for (int i = 0; i < td.numFields(); i++)
+            sampleDistinct[i] = distinct[i].estimate();
+        groups = new ColumnGroupStats[sketch.groupDistinct.length];
+        for (int g = 0; g < groups.length; g++)
+            groups[g] = sketch.groupStats(g);
+        intHistograms = new IntHistogram[td.numFields()];
+        stringHistograms = new StringHistogram[td.numFields()];
+        intDepth = new EquiDepthHistogram.Ints[td.numFields()];
+        stringDepth = new EquiDepthHistogram.Strings[td.numFields()];
+        // histograms of samples count about as many values as the table has
+        // tuples, so that each tuple added or removed later counts as one
+        for (int i = 0; i < td.numFields(); i++) {
+            boolean intField = td.getFieldType(i) == Type.INT_TYPE;
+            if (histogramType == HistogramType.EQUI_DEPTH) {
+                EquiDepthHistogram<?> h;
+                if (intField)
+                    h = intDepth[i] = sketch.intEquiDepth(i);
+                else
+                    h = stringDepth[i] = sketch.stringEquiDepth(i);
+                if (h.numValues() > 0 && h.numValues() != analyzedTuples)
+                    h.scale((double) analyzedTuples / h.numValues());
+            } else {
+                if (!intField)
+                    stringHistograms[i] = sketch.strings[i];
+                IntHistogram h = intField ? sketch.histogram(i) : stringHistograms[i].hist;
+                if (h.numValues() > 0 && h.numValues() != analyzedTuples)
+                    h.scale((double) analyzedTuples / h.numValues());
+                intHistograms[i] = intField ? h : null;
+            }
+        }
+    }
+
+    /** @return whether these statistics have exactly the specified column groups */
+    private boolean hasColumnGroups(List<int[]> columnGroups) {
+        if (columnGroups.size() != groups.length)
+            return false;
+        for (int g = 0; g < groups.length; g++) {
+            if (!Arrays.equals(groups[g].fields, columnGroups.get(g)))
+                return false;
+        }
+        return true;
+    }
+
+    /** @return whether field i is an INT field */
+    private boolean isInt(int i) {
+        return intHistograms[i] != null || intDepth[i] != null;
+    }
+
+    /**
+     * @return the statistics of the specified table, or null if it has none;
+     *         unlike {@link #getTableStats}, this never loads or computes any
+     */
+    public static TableStats forTable(int tableid) {
+        return statsMap.get(Database.getCatalog().getTableName(tableid));
+    }
+
+    /**
+     * Counts a tuple inserted into the table in its statistics. This takes no
+     * locks, so it can be called for every tuple inserted.
+     */
+    public void addTuple(Tuple t) {
+        numTuples.incrementAndGet();
+        for (int i = 0; i < intHistograms.length; i++) {
+            if (isInt(i)) {
+                int v = t.getInt(i);
+                if (intDepth[i] != null)
+                    intDepth[i].addValue(v);
+                else
+                    intHistograms[i].addValue(v);
+                distinct[i].add(v);
+            } else {
+                String s = ((StringField) t.getField(i)).getValue();
+                if (stringDepth[i] != null)
+                    stringDepth[i].addValue(s);
+                else
+                    stringHistograms[i].addValue(s);
+                distinct[i].add(s);
+            }
+        }
+        for (ColumnGroupStats g : groups)
+            g.distinct.addHash(ColumnGroupStats.hash(t, g.fields));
+    }
+
+    /**
+     * Counts a tuple deleted from the table in its statistics. This takes no
+     * locks, so it can be called for every tuple deleted. The number of
+     * distinct values of a field does not go down until the table is
+     * analyzed again, but is never more than the number of tuples.
+     */
+    public void removeTuple(Tuple t) {
+        numTuples.updateAndGet(n -> Math.max(0, n - 1));
+        for (int i = 0; i < intHistograms.length; i++) {
+            if (intDepth[i] != null)
+                intDepth[i].removeValue(t.getInt(i));
+            else if (intHistograms[i] != null)
+                intHistograms[i].removeValue(t.getInt(i));
+            else if (stringDepth[i] != null)
+                stringDepth[i].removeValue(((StringField) t.getField(i)).getValue());
+            else
+                stringHistograms[i].removeValue(((StringField) t.getField(i)).getValue());
+        }
+    }
+
+    private static int numPages(DbFile file) {
+        if (file instanceof HeapFile)
+            return ((HeapFile) file).numPages();
+        if (file instanceof BTreeFile)
+            return ((BTreeFile) file).numPages();
+        return 0;
     }
 
     /**
@@ -103,7 +751,13 @@ public class TableStats {
      */
     public double estimateScanCost() {
         // some code goes here
-        return 0;
+        // pages are never freed, and tuples inserted since the table was
+        // analyzed fill about as many pages as those before
+        long pages = numPages;
+        long n = numTuples.get();
+        if (n > analyzedTuples && analyzedTuples > 0)
+            pages = (long) Math.ceil((double) n * numPages / analyzedTuples);
+        return (double) pages * ioCostPerPage;
     }
 
     /**
@@ -117,7 +771,7 @@ public class TableStats {
      */
     public int estimateTableCardinality(double selectivityFactor) {
         // some code goes here
-        return 0;
+        return (int) Math.round(numTuples.get() * selectivityFactor);
     }
 
     /**
@@ -129,10 +783,29 @@ public class TableStats {
      * The semantic of the method is that, given the table, and then given a
      * tuple, of which we do not know the value of the field, return the
      * expected selectivity. You may estimate this value from the histograms.
+     * Only EQUALS and NOT_EQUALS are estimated; other comparisons are taken
+     * to select half of the tuples.
      * */
     public double avgSelectivity(int field, Predicate.Op op) {
         // some code goes here
-        return 1.0;
+        double eq;
+        if (intDepth[field] != null)
+            eq = intDepth[field].avgSelectivity();
+        else if (intHistograms[field] != null)
+            eq = intHistograms[field].avgSelectivity();
+        else if (stringDepth[field] != null)
+            eq = stringDepth[field].avgSelectivity();
+        else
+            eq = stringHistograms[field].avgSelectivity();
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return eq;
+        case NOT_EQUALS:
+            return 1 - eq;
+        default:
+            return 0.5;
+        }
     }
 
     /**
@@ -150,7 +823,133 @@ public class TableStats {
      */
     public double estimateSelectivity(int field, Predicate.Op op, Field constant) {
         // some code goes here
-        return 1.0;
+        if (intDepth[field] != null)
+            return intDepth[field].estimateSelectivity(op, ((IntField) constant).getValue());
+        if (intHistograms[field] != null)
+            return intHistograms[field].estimateSelectivity(op, ((IntField) constant).getValue());
+        if (stringDepth[field] != null)
+            return stringDepth[field].estimateSelectivity(op, ((StringField) constant).getValue());
+        return stringHistograms[field].estimateSelectivity(op, ((StringField) constant).getValue());
+    }
+
+    /**
+     * Estimate the selectivity of a conjunction of predicates on the table,
+     * each of the form <tt>field op constant</tt>, with the fields numbered
+     * as in the table.
+     * <p>
+     * Predicates on two or more fields of a column group are estimated
+     * together, as the fraction of the sampled rows that satisfy all of
+     * them; the group covering the most predicates is used first. If no
+     * sampled row does, the conjunction is taken to be rarer than one sampled
+     * row, and, for equalities on all fields of the group, than one of its
+     * distinct combinations. The other predicates are taken to be
+     * independent.
+     *
+     * @param predicates
+     *            the predicates, whose fields are those of the table
+     * @return The estimated selectivity of the conjunction
+     */
+    public double estimateSelectivity(List<Predicate> predicates) {
+        List<Predicate> rest = new ArrayList<>(predicates);
+        double sel = 1;
+        while (true) {
+            // the group with the most predicates not estimated yet
+            ColumnGroupStats best = null;
+            List<Predicate> bestPreds = Collections.emptyList();
+            for (ColumnGroupStats g : groups) {
+                List<Predicate> preds = new ArrayList<>();
+                for (Predicate p : rest) {
+                    if (g.indexOf(p.getField()) >= 0)
+                        preds.add(p);
+                }
+                if (preds.size() >= 2 && preds.size() > bestPreds.size()) {
+                    best = g;
+                    bestPreds = preds;
+                }
+            }
+            if (best == null)
+                break;
+            sel *= groupSelectivity(best, bestPreds);
+            rest.removeAll(bestPreds);
+        }
+        for (Predicate p : rest)
+            sel *= estimateSelectivity(p.getField(), p.getOp(), p.getOperand());
+        return sel;
+    }
+
+    private double groupSelectivity(ColumnGroupStats g, List<Predicate> preds) {
+        double independent = 1;
+        boolean allEqual = preds.size() == g.fields.length;
+        for (Predicate p : preds) {
+            independent *= estimateSelectivity(p.getField(), p.getOp(), p.getOperand());
+            allEqual &= p.getOp() == Predicate.Op.EQUALS;
+        }
+        if (g.rows() == 0)
+            return independent;
+        int matches = g.matches(preds);
+        if (matches > 0)
+            return (double) matches / g.rows();
+        double bound = 1.0 / g.rows();
+        if (allEqual)
+            bound = Math.min(bound, 1.0 / Math.max(1, scaleDistinct(g.distinct.estimate(), g.sampleDistinct)));
+        return Math.min(independent, bound);
+    }
+
+    /**
+     * Estimates the number of distinct combinations of values of some
+     * fields. For a column group of exactly these fields, this is estimated
+     * from the HyperLogLog sketch of its combinations, as
+     * {@link #distinctValues(int)} does for one field; otherwise the fields
+     * are taken to be independent.
+     *
+     * @param fields
+     *            the indices of the fields
+     * @return the estimated number of distinct combinations, from 1 to the
+     *         number of tuples, or 0 if the table is empty
+     */
+    public long distinctValues(int[] fields) {
+        int[] sorted = fields.clone();
+        Arrays.sort(sorted);
+        for (ColumnGroupStats g : groups) {
+            if (Arrays.equals(g.fields, sorted))
+                return scaleDistinct(g.distinct.estimate(), g.sampleDistinct);
+        }
+        double d = 1;
+        for (int f : sorted)
+            d *= distinctValues(f);
+        return (long) Math.min(d, numTuples.get());
+    }
+
+    /**
+     * Estimates the number of distinct values of a field from its HyperLogLog
+     * sketch. If only a sample of the table was read, the count of the
+     * sample is scaled up by the fraction of the sample's values that were
+     * distinct: a field whose sampled values were all distinct is taken to be
+     * a key, and one with a few values repeated many times to have no more.
+     *
+     * @param field
+     *            the index of the field
+     * @return the estimated number of distinct values of the field, from 1 to
+     *         the number of tuples, or 0 if the table is empty
+     */
+    public long distinctValues(int field) {
+        return scaleDistinct(distinct[field].estimate(), sampleDistinct[field]);
+    }
+
+    /**
+     * @return d distinct values counted by a HyperLogLog sketch, of which
+     *         sampleDistinct were among the tuples read, scaled up to the
+     *         whole table and capped at its number of tuples
+     */
+    private long scaleDistinct(long d, long sampleDistinct) {
+        long n = numTuples.get();
+        if (sampled < 1) {
+            // the values added since the table was analyzed are all counted
+            long read = Math.round(analyzedTuples * sampled);
+            double unique = read == 0 ? 0 : Math.min(1, (double) sampleDistinct / read);
+            d = Math.round(d + sampleDistinct * (1 / sampled - 1) * unique);
+        }
+        return Math.max(Math.min(d, n), n == 0 ? 0 : 1);
     }
 
     /**
@@ -158,7 +957,7 @@ public class TableStats {
      * */
     public int totalTuples() {
         // some code goes here
-        return 0;
+        return (int) numTuples.get();
     }
 
 }
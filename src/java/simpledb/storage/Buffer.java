@@ -10,6 +10,13 @@ public interface Buffer {
     Page getPage(PageId pageId)
             throws TransactionAbortedException, DbException;
 
+    /**
+     * Like {@link #getPage(PageId)}, but a page that is not in the buffer is
+     * read without being added to it.
+     */
+    Page getPage(PageId pageId, boolean cache)
+            throws TransactionAbortedException, DbException;
+
     void insertTuple(TransactionId tid,int tableId,Tuple t)
             throws DbException, IOException, TransactionAbortedException;
 
@@ -4,6 +4,8 @@ import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Debug;
 import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.execution.CompiledPredicate;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
@@ -17,6 +19,12 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * STRING fields can be dictionary-encoded: pages then store an INT code for
+ * each value of those fields, and the values are kept in a
+ * {@link StringDictionary} in a file next to the heap file, with the suffix
+ * ".dict". Tuples read from the file carry the dictionary's StringFields,
+ * which compare equal by code.
  * 
  * @see HeapPage#HeapPage
  * @author Sam Madden
@@ -24,6 +32,9 @@ import java.util.*;
 public class HeapFile implements DbFile {
     final private File f;
     final private TupleDesc td;
+    /** The TupleDesc of tuples on pages, with codes for encoded fields. */
+    final private TupleDesc storedTd;
+    final private StringDictionary dictionary;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -36,6 +47,38 @@ public class HeapFile implements DbFile {
         // some code goes here
         this.f = f;
         this.td = td;
+        this.storedTd = td;
+        this.dictionary = null;
+    }
+
+    /**
+     * Constructs a heap file with dictionary-encoded STRING fields, whose
+     * dictionary is read from the file f with ".dict" appended, if it exists.
+     *
+     * @param encodedFields
+     *            the indexes of the STRING fields to encode
+     * @throws IllegalArgumentException
+     *             if one of the fields is not a STRING field
+     * @throws IOException
+     *             if the dictionary cannot be read
+     */
+    public HeapFile(File f, TupleDesc td, int[] encodedFields) throws IOException {
+        this.f = f;
+        this.td = td;
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = td.getFieldName(i);
+        }
+        for (int i : encodedFields) {
+            if (types[i] != Type.STRING_TYPE)
+                throw new IllegalArgumentException("field " + i + " is not a STRING field");
+            types[i] = Type.INT_TYPE;
+        }
+        this.storedTd = new TupleDesc(types, names);
+        this.dictionary = encodedFields.length == 0 ? null
+                : new StringDictionary(new File(f.getPath() + ".dict"));
     }
 
     /**
@@ -72,6 +115,22 @@ public class HeapFile implements DbFile {
         return td;
     }
 
+    /**
+     * @return the TupleDesc of the tuples stored on pages, in which each
+     *         dictionary-encoded field is an INT code
+     */
+    TupleDesc getStoredTupleDesc() {
+        return storedTd;
+    }
+
+    /**
+     * @return the dictionary of the encoded fields, or null if no field is
+     *         encoded
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
         // some code goes here
@@ -119,6 +178,9 @@ public class HeapFile implements DbFile {
         HeapPageId pid = (HeapPageId) page.getId();
         int tableId = pid.getTableId();
         int pgno = pid.getPageNumber();
+        // the values of the codes on the page reach the disk first
+        if (dictionary != null)
+            dictionary.sync();
         RandomAccessFile raf = null;
         try{
             raf = new RandomAccessFile(f,"rw");
@@ -187,33 +249,47 @@ public class HeapFile implements DbFile {
         return arrayList;
         // not necessary for lab1
     }
+    /**
+     * Iterates over the tuples of a HeapFile one page at a time. Only the
+     * current page is held by the iterator, so scanning a file does not keep
+     * more of it in memory than the BufferPool does. With a predicate, only
+     * the tuples that satisfy it are returned, and with columns, only those
+     * fields of them, see {@link HeapPage#iterator(CompiledPredicate, int[])}.
+     */
     public class HeapFileIterator implements DbFileIterator{
         private final HeapFile f;
         private final TransactionId tid;
+        private final CompiledPredicate filter;
+        private final int[] columns;
         private Iterator<Tuple> it;
         private int nowPage;
-        private ArrayList<Iterator<Tuple>> itlist;
+        private int numPages;
         public HeapFileIterator(HeapFile f,TransactionId tid) {
+            this(f, tid, null, null);
+        }
+
+        public HeapFileIterator(HeapFile f,TransactionId tid,CompiledPredicate filter,int[] columns) {
             this.f = f;
             this.tid = tid;
+            this.filter = filter;
+            this.columns = columns;
             this.it = null;
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
             nowPage = 0;
-            itlist = new ArrayList<>();
-            for(int i = 0 ; i < numPages() ; i++){
-                itlist.add(tupleIterator(i));
-            }
-            it = itlist.get(nowPage);
+            // pages appended while scanning (e.g. INSERT INTO t SELECT FROM t)
+            // are not visited
+            numPages = f.numPages();
+            it = numPages > 0 ? tupleIterator(nowPage) : null;
         }
 
         private Iterator<Tuple> tupleIterator(int pageIndex) throws DbException, TransactionAbortedException {
             if(pageIndex>=0 && pageIndex<f.numPages()){
                 HeapPageId pid = new HeapPageId(f.getId(), pageIndex);
                 HeapPage p = (HeapPage)Database.getBufferPool().getPage(tid,pid,Permissions.READ_ONLY);
-                return p.iterator();
+                return p.iterator(filter, columns);
             }else{
                 throw new DbException(String.format("File %s have not page %d",f.getFile().getAbsolutePath(),pageIndex));
             }
@@ -225,23 +301,20 @@ public class HeapFile implements DbFile {
             if(it == null){
                 return false;
             }
-            if(it.hasNext()){
-                return true;
-            }else{
-                if(nowPage < itlist.size()-1){
-                    nowPage++;
-                    it = itlist.get(nowPage);
-                    return this.hasNext();
-                }else{
+            while(!it.hasNext()){
+                if(nowPage >= numPages-1){
                     return false;
                 }
+                nowPage++;
+                it = tupleIterator(nowPage);
             }
+            return true;
         }
 
         @Override
         public Tuple next() throws DbException, TransactionAbortedException {
             if(hasNext()){
-                return itlist.get(nowPage).next();
+                return it.next();
             }else{
                 throw new NoSuchElementException();
             }
@@ -265,5 +338,18 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator(this,tid);
     }
 
+    /**
+     * @param filter
+     *            a predicate over the projected tuples, or null
+     * @param columns
+     *            the indexes of the fields to return, or null for all fields
+     * @return an iterator over the tuples of this file that satisfy filter,
+     *         with just the specified fields, which only decodes the tuples
+     *         that may satisfy filter
+     */
+    public DbFileIterator iterator(TransactionId tid, CompiledPredicate filter, int[] columns) {
+        return new HeapFileIterator(this,tid,filter,columns);
+    }
+
 }
 
@@ -4,6 +4,8 @@ import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Debug;
 import simpledb.common.Catalog;
+import simpledb.common.Type;
+import simpledb.execution.CompiledPredicate;
 import simpledb.transaction.TransactionId;
 
 import java.util.*;
@@ -13,6 +15,11 @@ import java.math.RoundingMode.*;
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * Tuples are decoded from the page's bytes the first time they are returned,
+ * and then kept. {@link #iterator(CompiledPredicate)} evaluates a pushed-down
+ * predicate on the bytes of the slots not decoded yet, so that only the
+ * tuples that may satisfy it are decoded.
  *
  * @see HeapFile
  * @see BufferPool
@@ -22,9 +29,18 @@ public class HeapPage implements Page {
 
     private final HeapPageId pid;
     private final TupleDesc td;
+    /** The TupleDesc of the stored tuples, with codes for encoded fields. */
+    private final TupleDesc stored;
+    /** The dictionary of the encoded fields, or null if there are none. */
+    private final StringDictionary dict;
     private final byte[] header;
     private final Tuple[] tuples;
     private final int numSlots;
+    /** The data the page was read from, until every tuple is decoded. */
+    private byte[] data;
+    private int numUndecoded;
+    /** The offset of each field within a tuple. */
+    private final int[] fieldOffsets;
     private boolean isDirty;
     private TransactionId tid;
 
@@ -39,6 +55,8 @@ public class HeapPage implements Page {
      *          floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
      * database table, which can be determined via {@link Catalog#getTupleDesc}.
+     * Dictionary-encoded STRING fields are stored as INT codes, so they count
+     * as INT fields in the tuple size (see {@link HeapFile}).
      * The number of 8-bit header words is equal to:
      * <p>
      *      ceiling(no. tuple slots / 8)
@@ -50,25 +68,26 @@ public class HeapPage implements Page {
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        DbFile file = Database.getCatalog().getDatabaseFile(id.getTableId());
+        if (file instanceof HeapFile) {
+            this.stored = ((HeapFile) file).getStoredTupleDesc();
+            this.dict = ((HeapFile) file).getDictionary();
+        } else {
+            this.stored = td;
+            this.dict = null;
+        }
         this.numSlots = getNumTuples();
         this.isDirty = false;
 
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
         // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
+        header = Arrays.copyOf(data, getHeaderSize());
         this.tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i);
-            }
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
+        this.fieldOffsets = stored.offsets();
+        // the records are decoded when they are first returned
+        this.data = data;
+        this.numUndecoded = numSlots - getNumEmptySlots();
+        if (numUndecoded == 0)
+            this.data = null;
 
         setBeforeImage();
     }
@@ -78,7 +97,7 @@ public class HeapPage implements Page {
     */
     private int getNumTuples() {        
         // some code goes here
-        return (int)Math.floor((BufferPool.getPageSize()*8)/(td.getSize()*8+1));
+        return (int)Math.floor((BufferPool.getPageSize()*8)/(stored.getSize()*8+1));
     }
 
     /**
@@ -123,36 +142,52 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Decodes fields of the tuple in a used slot from the data the page was
+     * read from.
+     *
+     * @param desc the TupleDesc of the returned tuple
+     * @param storedDesc how each field of desc is stored
+     * @param offsets the offset within the tuple of each field of desc
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
-
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
+    private Tuple readTuple(int slotId, TupleDesc desc, TupleDesc storedDesc, int[] offsets)
+            throws NoSuchElementException {
+        Tuple t = new Tuple(desc);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
+        int offset = header.length + slotId * stored.getSize();
         try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+            for (int j=0; j<desc.numFields(); j++) {
+                int o = offset + offsets[j];
+                Type type = desc.getFieldType(j);
+                if (type == Type.INT_TYPE)
+                    t.setInt(j, readInt(data, o));
+                else if (storedDesc.getFieldType(j) == Type.INT_TYPE)
+                    t.setField(j, dict.decode(readInt(data, o)));
+                else
+                    t.setField(j, type.parse(new DataInputStream(new ByteArrayInputStream(data, o, type.getLen()))));
             }
         } catch (java.text.ParseException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
         }
+        return t;
+    }
+
+    private static int readInt(byte[] b, int o) {
+        return (b[o] << 24) | ((b[o+1] & 0xff) << 16) | ((b[o+2] & 0xff) << 8) | (b[o+3] & 0xff);
+    }
 
+    /**
+     * @return the tuple in a used slot, decoding it if necessary
+     */
+    private Tuple tupleAt(int slotId) {
+        Tuple t = tuples[slotId];
+        if (t == null) {
+            t = readTuple(slotId, td, stored, fieldOffsets);
+            tuples[slotId] = t;
+            if (--numUndecoded == 0)
+                data = null;
+        }
         return t;
     }
 
@@ -167,7 +202,7 @@ public class HeapPage implements Page {
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
-    public byte[] getPageData() {
+    public synchronized byte[] getPageData() {
         int len = BufferPool.getPageSize();
         ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
         DataOutputStream dos = new DataOutputStream(baos);
@@ -187,7 +222,7 @@ public class HeapPage implements Page {
 
             // empty slot
             if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
+                for (int j=0; j<stored.getSize(); j++) {
                     try {
                         dos.writeByte(0);
                     } catch (IOException e) {
@@ -198,11 +233,25 @@ public class HeapPage implements Page {
                 continue;
             }
 
+            // non-empty slot that has not been decoded
+            if (tuples[i] == null) {
+                int offset = header.length + i * stored.getSize();
+                try {
+                    dos.write(data, offset, stored.getSize());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
             // non-empty slot
             for (int j=0; j<td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
                 try {
-                    f.serialize(dos);
+                    if (stored.getFieldType(j) != td.getFieldType(j))
+                        dos.writeInt(dict.encode((StringField) f));
+                    else
+                        f.serialize(dos);
                 
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -211,7 +260,7 @@ public class HeapPage implements Page {
         }
 
         // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
+        int zerolen = BufferPool.getPageSize() - (header.length + stored.getSize() * tuples.length); //- numSlots * stored.getSize();
         byte[] zeroes = new byte[zerolen];
         try {
             dos.write(zeroes, 0, zerolen);
@@ -249,7 +298,7 @@ public class HeapPage implements Page {
      *         already empty.
      * @param t The tuple to delete
      */
-    public void deleteTuple(Tuple t) throws DbException {
+    public synchronized void deleteTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
         if(!this.pid.equals(t.getRecordId().getPageId())){
@@ -257,6 +306,8 @@ public class HeapPage implements Page {
         }
         int i = t.getRecordId().getTupleNumber();
         if(isSlotUsed(i)){
+            if (tuples[i] == null && --numUndecoded == 0)
+                data = null;
             tuples[i] = null;
             markSlotUsed(i,false);
         }else{
@@ -271,11 +322,12 @@ public class HeapPage implements Page {
      *         is mismatch.
      * @param t The tuple to add.
      */
-    public void insertTuple(Tuple t) throws DbException {
+    public synchronized void insertTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
         for (int i=0; i<tuples.length; i++) {
             if(!isSlotUsed(i)) {
+                encode(t);
                 t.setRecordId(new RecordId(pid, i));
                 tuples[i] = t;
                 markSlotUsed(i,true);
@@ -285,6 +337,25 @@ public class HeapPage implements Page {
         throw new DbException("Page has no empty slot");
     }
 
+    /**
+     * Replaces the values of the dictionary-encoded fields of t with the
+     * dictionary's fields, adding new values to the dictionary, so that the
+     * page can be written without changing the dictionary.
+     */
+    private void encode(Tuple t) throws DbException {
+        if (dict == null)
+            return;
+        for (int j=0; j<td.numFields(); j++) {
+            if (stored.getFieldType(j) == td.getFieldType(j))
+                continue;
+            try {
+                t.setField(j, dict.decode(dict.encode((StringField) t.getField(j))));
+            } catch (IOException e) {
+                throw new DbException("cannot add to the dictionary " + dict.getFile() + ": " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Marks this page as dirty/not dirty and record that transaction
      * that did the dirtying
@@ -352,16 +423,79 @@ public class HeapPage implements Page {
      * (note that this iterator shouldn't return tuples in empty slots!)
      */
 
-    public Iterator<Tuple> iterator() {
+    public synchronized Iterator<Tuple> iterator() {
         // some code goes here
         ArrayList<Tuple> usedTuples = new ArrayList<Tuple>();
         for(int i=0;i<numSlots;i++) {
             if(isSlotUsed(i)) {
-                usedTuples.add(tuples[i]);
+                usedTuples.add(tupleAt(i));
             }
         }
         return usedTuples.iterator();
     }
 
-}
+    /**
+     * @return an iterator over the tuples on this page that satisfy p. Tuples
+     *         that have not been decoded yet are first tested on the page's
+     *         data, and only decoded if they may satisfy p.
+     */
+    public synchronized Iterator<Tuple> iterator(CompiledPredicate p) {
+        ArrayList<Tuple> usedTuples = new ArrayList<Tuple>();
+        CompiledPredicate residual = p.residual();
+        for(int i=0;i<numSlots;i++) {
+            if(!isSlotUsed(i))
+                continue;
+            Tuple t = tuples[i];
+            if (t != null) {
+                if (p.matches(t))
+                    usedTuples.add(t);
+            } else if (p.mayMatch(data, header.length + i * stored.getSize(), fieldOffsets)) {
+                t = tupleAt(i);
+                if (residual == null || residual.matches(t))
+                    usedTuples.add(t);
+            }
+        }
+        return usedTuples.iterator();
+    }
+
+    /**
+     * @param p
+     *            a predicate over the projected tuples, or null
+     * @param columns
+     *            the indexes of the fields to return, or null for all fields
+     * @return an iterator over the tuples on this page that satisfy p, with
+     *         just the specified fields. Tuples that have not been decoded
+     *         yet are tested on the page's data, and only the specified
+     *         fields are decoded; the projected tuples are not kept.
+     */
+    public synchronized Iterator<Tuple> iterator(CompiledPredicate p, int[] columns) {
+        if (columns == null)
+            return p == null ? iterator() : iterator(p);
+        TupleDesc projected = td.project(columns);
+        TupleDesc storedProjected = stored.project(columns);
+        int[] offsets = new int[columns.length];
+        for (int j=0; j<columns.length; j++)
+            offsets[j] = fieldOffsets[columns[j]];
+        ArrayList<Tuple> usedTuples = new ArrayList<Tuple>();
+        CompiledPredicate residual = p == null ? null : p.residual();
+        for(int i=0;i<numSlots;i++) {
+            if(!isSlotUsed(i))
+                continue;
+            Tuple t = tuples[i];
+            if (t != null) {
+                Tuple pt = new Tuple(projected);
+                pt.setRecordId(t.getRecordId());
+                for (int j=0; j<columns.length; j++)
+                    pt.copyField(j, t, columns[j]);
+                if (p == null || p.matches(pt))
+                    usedTuples.add(pt);
+            } else if (p == null || p.mayMatch(data, header.length + i * stored.getSize(), offsets)) {
+                t = readTuple(i, projected, storedProjected, offsets);
+                if (residual == null || residual.matches(t))
+                    usedTuples.add(t);
+            }
+        }
+        return usedTuples.iterator();
+    }
 
+}
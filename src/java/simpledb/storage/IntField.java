@@ -55,20 +55,30 @@ public class IntField implements Field {
 
         IntField iVal = (IntField) val;
 
+        return compare(op, value, iVal.value);
+    }
+
+    /**
+     * Compare two int values as {@link #compare(Predicate.Op, Field)}
+     * compares IntFields holding them, without creating the IntFields.
+     *
+     * @return true if value op val holds
+     */
+    public static boolean compare(Predicate.Op op, int value, int val) {
         switch (op) {
             case EQUALS:
             case LIKE:
-                return value == iVal.value;
+                return value == val;
             case NOT_EQUALS:
-                return value != iVal.value;
+                return value != val;
             case GREATER_THAN:
-                return value > iVal.value;
+                return value > val;
             case GREATER_THAN_OR_EQ:
-                return value >= iVal.value;
+                return value >= val;
             case LESS_THAN:
-                return value < iVal.value;
+                return value < val;
             case LESS_THAN_OR_EQ:
-                return value <= iVal.value;
+                return value <= val;
         }
 
         return false;
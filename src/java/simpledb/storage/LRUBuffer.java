@@ -53,40 +53,66 @@ public class LRUBuffer implements Buffer {
     }
 
     private void addPageToBuffer(Page p)throws DbException{
+        PageId pid = p.getId();
+        Node<Page> old = pages.get(pid);
+        if(old != null){
+            // replace the cached version of the page
+            old.value = p;
+            moveToHead(old);
+            return;
+        }
         //If buffer is full,evict one Page then add.
         if(pages.size() >= capacity){
             evictPage();
         }
-        PageId pid = p.getId();
         Node<Page> n = new Node<>(p);
         addToHead(n);
         pages.put(pid, n);
     }
 
-    private void updatePageInBuffer(PageId pid) {
-        Node<Page> n = pages.get(pid);
-        moveToHead(n);
+    /**
+     * Pages are read from disk outside the buffer's lock, so that several
+     * threads scanning in parallel read and parse their pages concurrently;
+     * only the lookup and the LRU list update are serialized.
+     */
+    @Override
+    public Page getPage(PageId pid) throws TransactionAbortedException, DbException{
+        return getPage(pid, true);
     }
 
-
     @Override
-    public Page getPage(PageId pid) throws TransactionAbortedException, DbException{
-        if(pages.containsKey(pid)){
-            updatePageInBuffer(pid);
-            return pages.get(pid).value;
+    public Page getPage(PageId pid, boolean cache) throws TransactionAbortedException, DbException{
+        synchronized (this) {
+            Node<Page> n = pages.get(pid);
+            if(n != null){
+                moveToHead(n);
+                return n.value;
+            }
         }
         DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
         Page p = f.readPage(pid);
-        addPageToBuffer(p);
-        return p;
+        if (!cache)
+            return p;
+        synchronized (this) {
+            // another thread may have loaded the page in the meantime
+            Node<Page> n = pages.get(pid);
+            if(n != null){
+                moveToHead(n);
+                return n.value;
+            }
+            addPageToBuffer(p);
+            return p;
+        }
     }
 
     @Override
     public void deleteTuple(TransactionId tid,Tuple t) throws DbException, IOException, TransactionAbortedException {
         DbFile f = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
         List<Page> l = f.deleteTuple(tid, t);
-        for(Page p:l){
-            addPageToBuffer(p);
+        synchronized (this) {
+            for(Page p:l){
+                addPageToBuffer(p);
+            }
         }
     }
 
@@ -94,8 +120,10 @@ public class LRUBuffer implements Buffer {
     public void insertTuple(TransactionId tid,int tableId, Tuple t) throws DbException, IOException, TransactionAbortedException{
         DbFile f = Database.getCatalog().getDatabaseFile(tableId);
         List<Page> l = f.insertTuple(tid, t);
-        for(Page p:l){
-            addPageToBuffer(p);
+        synchronized (this) {
+            for(Page p:l){
+                addPageToBuffer(p);
+            }
         }
     }
 
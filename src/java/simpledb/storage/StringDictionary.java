@@ -0,0 +1,157 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the distinct values of the dictionary-encoded STRING fields of a
+ * HeapFile to int codes, which the pages of the file store instead of the
+ * strings.
+ * <p>
+ * Codes are assigned in the order values are first encoded and are never
+ * reused. New values are appended to a dictionary file alongside the heap
+ * file through a stream kept open, and {@link #sync} forces them to disk:
+ * HeapFile syncs its dictionary before it writes a page, so a page that
+ * refers to a code is never written before the value it stands for.
+ * <p>
+ * Each code is decoded to one shared StringField, which carries its code:
+ * two such fields from the same dictionary are compared by code, without
+ * comparing the strings.
+ */
+public class StringDictionary {
+
+    private final File file;
+    /** The field for each code, replaced by a longer copy as values are added. */
+    private volatile StringField[] values = new StringField[0];
+    private int size;
+    private final Map<String, Integer> codes = new HashMap<>();
+    /** The stream new values are appended to, or null until the first one. */
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    /** Whether values were appended since the last sync. */
+    private boolean unsynced;
+
+    /**
+     * Opens the dictionary stored in the specified file, reading the values
+     * it already holds, if the file exists.
+     *
+     * @throws IOException if the file exists but cannot be read
+     */
+    public StringDictionary(File file) throws IOException {
+        this.file = file;
+        if (!file.exists())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                String s;
+                try {
+                    s = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                add(s);
+            }
+        }
+    }
+
+    /**
+     * @return the file this dictionary is stored in
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private int add(String s) {
+        int code = size;
+        StringField[] v = values;
+        if (code == v.length)
+            v = Arrays.copyOf(v, Math.max(16, v.length * 2));
+        v[code] = new StringField(s, Type.STRING_LEN, this, code);
+        size++;
+        values = v;
+        codes.put(s, code);
+        return code;
+    }
+
+    /**
+     * @return the number of values in the dictionary, which are the codes
+     *         0 to size() - 1
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the code of the specified value, or -1 if it is not in the
+     *         dictionary
+     */
+    public synchronized int code(String s) {
+        Integer code = codes.get(truncate(s));
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Returns the code of the specified value, adding it to the dictionary
+     * and its file if it is not in the dictionary yet.
+     *
+     * @throws IOException if a new value cannot be written to the file
+     */
+    public synchronized int encode(String s) throws IOException {
+        s = truncate(s);
+        Integer code = codes.get(s);
+        if (code != null)
+            return code;
+        if (out == null) {
+            fileOut = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        }
+        out.writeUTF(s);
+        unsynced = true;
+        return add(s);
+    }
+
+    /**
+     * Forces the values added since the last call to disk, so that pages
+     * referring to their codes can be written.
+     *
+     * @throws IOException if the values cannot be written
+     */
+    public synchronized void sync() throws IOException {
+        if (!unsynced)
+            return;
+        out.flush();
+        fileOut.getFD().sync();
+        unsynced = false;
+    }
+
+    /**
+     * @return the code of the value of f in this dictionary, adding it if it
+     *         is not in the dictionary yet
+     * @throws IOException if a new value cannot be written to the file
+     */
+    public int encode(StringField f) throws IOException {
+        if (f.getDictionary() == this)
+            return f.getCode();
+        return encode(f.getValue());
+    }
+
+    /**
+     * @return the field for the specified code
+     * @throws IllegalArgumentException if the code is not in the dictionary
+     */
+    public StringField decode(int code) {
+        StringField[] v = values;
+        if (code < 0 || code >= v.length || v[code] == null)
+            throw new IllegalArgumentException("no value with code " + code + " in " + file);
+        return v[code];
+    }
+
+    /** StringFields keep at most STRING_LEN characters of a value. */
+    private static String truncate(String s) {
+        return s.length() > Type.STRING_LEN ? s.substring(0, Type.STRING_LEN) : s;
+    }
+}
@@ -7,6 +7,9 @@ import java.io.*;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
+ * <p>
+ * A StringField decoded from a {@link StringDictionary} also carries its
+ * code, and is compared with another field of the same dictionary by code.
  */
 public class StringField implements Field {
 
@@ -14,11 +17,27 @@ public class StringField implements Field {
 
 	private final String value;
 	private final int maxSize;
+	private final transient StringDictionary dict;
+	private final int code;
 
 	public String getValue() {
 		return value;
 	}
 
+	/**
+	 * @return the dictionary this field was decoded from, or null
+	 */
+	public StringDictionary getDictionary() {
+		return dict;
+	}
+
+	/**
+	 * @return the code of this field in its dictionary, or -1 if it has none
+	 */
+	public int getCode() {
+		return dict == null ? -1 : code;
+	}
+
 	/**
 	 * Constructor.
 	 * 
@@ -28,7 +47,14 @@ public class StringField implements Field {
 	 *            The maximum size of this string
 	 */
 	public StringField(String s, int maxSize) {
+		this(s, maxSize, null, -1);
+	}
+
+	/** Creates the field for a code of a dictionary. */
+	StringField(String s, int maxSize, StringDictionary dict, int code) {
 		this.maxSize = maxSize;
+		this.dict = dict;
+		this.code = code;
 
 		if (s.length() > maxSize)
 			value = s.substring(0, maxSize);
@@ -36,6 +62,11 @@ public class StringField implements Field {
 			value = s;
 	}
 
+	/** @return true if both fields have codes of the same dictionary */
+	private boolean sameDictionary(StringField other) {
+		return dict != null && dict == other.dict;
+	}
+
 	public String toString() {
 		return value;
 	}
@@ -46,7 +77,10 @@ public class StringField implements Field {
 
 	public boolean equals(Object field) {
 	    if (!(field instanceof StringField)) return false;
-		return ((StringField) field).value.equals(value);
+		StringField other = (StringField) field;
+		if (sameDictionary(other))
+			return code == other.code;
+		return other.value.equals(value);
 	}
 
 	/**
@@ -80,6 +114,12 @@ public class StringField implements Field {
 	public boolean compare(Predicate.Op op, Field val) {
 
 		StringField iVal = (StringField) val;
+		if (sameDictionary(iVal)) {
+			if (op == Predicate.Op.EQUALS)
+				return code == iVal.code;
+			if (op == Predicate.Op.NOT_EQUALS)
+				return code != iVal.code;
+		}
 		int cmpVal = value.compareTo(iVal.value);
 
 		switch (op) {
@@ -1,21 +1,35 @@
 package simpledb.storage;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * The values of INT fields are kept unboxed in an int array, and an IntField
+ * is only created when {@link #getField} is called for one; {@link #getInt},
+ * {@link #setInt} and {@link #copyField} read and write them without boxing.
+ * {@link #join} returns a view of the concatenation of two tuples that does
+ * not copy their fields.
  */
 public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
+
+    /** Marks a field whose value is the INT in {@link #ints}. */
+    private static final Field UNBOXED = new IntField(0);
+
     private TupleDesc td;
     private RecordId rid;
-    private ArrayList<Field> fields;
+    /** The value of each field held unboxed. */
+    private int[] ints;
+    /** The value of each field, UNBOXED for an INT in ints, or null if unset. */
+    private Field[] fields;
 
     /**
      * Create a new tuple with the specified schema (type).
@@ -27,10 +41,13 @@ public class Tuple implements Serializable {
     public Tuple(TupleDesc td) {
         // some code goes here
         this.td = td;
-        this.fields = new ArrayList<>(td.numFields());
-        for(int i = 0; i < td.numFields(); i++) {
-            this.fields.add(null);
-        }
+        this.ints = new int[td.numFields()];
+        this.fields = new Field[td.numFields()];
+    }
+
+    /** Creates a tuple whose fields are held elsewhere, by a subclass. */
+    private Tuple(TupleDesc td, boolean view) {
+        this.td = td;
     }
 
     /**
@@ -71,7 +88,44 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
-        fields.set(i, f);
+        if (f instanceof IntField) {
+            ints[i] = ((IntField) f).getValue();
+            fields[i] = UNBOXED;
+        } else {
+            fields[i] = f;
+        }
+    }
+
+    /**
+     * Changes the value of the ith field of this tuple to an INT.
+     *
+     * @param i
+     *            index of the field to change. It must be a valid index.
+     * @param v
+     *            new value for the field.
+     */
+    public void setInt(int i, int v) {
+        ints[i] = v;
+        fields[i] = UNBOXED;
+    }
+
+    /**
+     * Sets the ith field of this tuple to the jth field of another tuple,
+     * without boxing an INT.
+     */
+    public void copyField(int i, Tuple src, int j) {
+        if (src.isUnboxed(j))
+            setInt(i, src.getInt(j));
+        else
+            setField(i, src.getField(j));
+    }
+
+    /**
+     * @return true if the ith field is an INT that getInt reads without
+     *         unboxing
+     */
+    boolean isUnboxed(int i) {
+        return fields[i] == UNBOXED;
     }
 
     /**
@@ -82,7 +136,19 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        return fields.get(i);
+        Field f = fields[i];
+        return f == UNBOXED ? new IntField(ints[i]) : f;
+    }
+
+    /**
+     * @return the value of the ith field, which must be an INT that has been
+     *         set.
+     * @throws ClassCastException
+     *             if the field is not an INT
+     */
+    public int getInt(int i) {
+        Field f = fields[i];
+        return f == UNBOXED ? ints[i] : ((IntField) f).getValue();
     }
 
     /**
@@ -95,9 +161,9 @@ public class Tuple implements Serializable {
      */
     public String toString() {
         // some code goes here
-        StringBuffer s = new StringBuffer();
-        for(Field f : fields) {
-            s.append(f.toString());
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < td.numFields(); i++) {
+            s.append(getField(i).toString());
             s.append("\t");
         }
         return s.toString();
@@ -110,8 +176,19 @@ public class Tuple implements Serializable {
     public Iterator<Field> fields()
     {
         // some code goes here
+        return new Iterator<Field>() {
+            private int i = 0;
+
+            public boolean hasNext() {
+                return i < td.numFields();
+            }
 
-        return fields.iterator();
+            public Field next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return getField(i++);
+            }
+        };
     }
 
     /**
@@ -122,4 +199,95 @@ public class Tuple implements Serializable {
         // some code goes here
         this.td=td;
     }
+
+    /** Restores the UNBOXED marks, which are not the same object once read. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (fields != null) {
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] instanceof IntField)
+                    fields[i] = UNBOXED;
+            }
+        }
+    }
+
+    /**
+     * Returns the concatenation of two tuples, without copying their fields:
+     * the result reads the fields of left and right for as long as it is not
+     * changed, so they must not be changed while it is in use.
+     *
+     * @param td
+     *            the TupleDesc of the result, which is usually
+     *            {@link TupleDesc#merge} of the TupleDescs of left and right
+     */
+    public static Tuple join(TupleDesc td, Tuple left, Tuple right) {
+        return new Joined(td, left, right);
+    }
+
+    /**
+     * A view of the concatenation of two tuples, which copies their fields
+     * into arrays of its own when one of its fields is set.
+     */
+    private static final class Joined extends Tuple {
+        private static final long serialVersionUID = 1L;
+        private Tuple left;
+        private Tuple right;
+        private final int split;
+
+        Joined(TupleDesc td, Tuple left, Tuple right) {
+            super(td, true);
+            this.left = left;
+            this.right = right;
+            this.split = left.getTupleDesc().numFields();
+        }
+
+        private void materialize() {
+            if (left == null)
+                return;
+            Tuple l = left, r = right;
+            left = right = null;
+            int n = getTupleDesc().numFields();
+            super.ints = new int[n];
+            super.fields = new Field[n];
+            for (int i = 0; i < n; i++) {
+                if (i < split)
+                    super.copyField(i, l, i);
+                else
+                    super.copyField(i, r, i - split);
+            }
+        }
+
+        public void setField(int i, Field f) {
+            materialize();
+            super.setField(i, f);
+        }
+
+        public void setInt(int i, int v) {
+            materialize();
+            super.setInt(i, v);
+        }
+
+        public void copyField(int i, Tuple src, int j) {
+            materialize();
+            super.copyField(i, src, j);
+        }
+
+        boolean isUnboxed(int i) {
+            if (left == null)
+                return super.isUnboxed(i);
+            return i < split ? left.isUnboxed(i) : right.isUnboxed(i - split);
+        }
+
+        public Field getField(int i) {
+            if (left == null)
+                return super.getField(i);
+            return i < split ? left.getField(i) : right.getField(i - split);
+        }
+
+        public int getInt(int i) {
+            if (left == null)
+                return super.getInt(i);
+            return i < split ? left.getInt(i) : right.getInt(i - split);
+        }
+    }
 }
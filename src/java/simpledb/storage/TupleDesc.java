@@ -3,14 +3,36 @@ package simpledb.storage;
 import simpledb.common.Type;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.*;
 
 /**
  * TupleDesc describes the schema of a tuple.
+ * <p>
+ * A TupleDesc is immutable. The offset of each field and the size of a tuple
+ * are computed when it is created, the index of each field name the first
+ * time a name is looked up, and {@link #merge} remembers the last TupleDesc
+ * each one was merged with. {@link #intern} returns one instance for all
+ * TupleDescs with the same field types and names, and the TupleDescs that
+ * merge, {@link #project} and the scans return are interned, so that the
+ * schema of the tuples of a plan is computed once rather than per tuple.
  */
 public class TupleDesc implements Serializable {
 
-    private final ArrayList<TDItem> TDItems;
+    private final TDItem[] TDItems;
+    /** TDItems as a list, which is the key of the interned instance. */
+    private final List<TDItem> itemList;
+    /** The offset of each field in a serialized tuple. */
+    private final int[] offsets;
+    private final int size;
+    private final int hash;
+    /** The index of the first field with each name, built when first used. */
+    private transient volatile Map<String, Integer> nameIndex;
+    /** The last TupleDesc this was merged with, and the result. */
+    private transient volatile TupleDesc[] lastMerge;
+
+    /** The interned TupleDescs, by their fields. */
+    private static final Map<List<TDItem>, WeakReference<TupleDesc>> interned = new WeakHashMap<>();
     /**
      * A help class to facilitate organizing the information of each field
      * */
@@ -36,6 +58,17 @@ public class TupleDesc implements Serializable {
         public String toString() {
             return fieldName + "(" + fieldType + ")";
         }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TDItem))
+                return false;
+            TDItem other = (TDItem) o;
+            return fieldType == other.fieldType && Objects.equals(fieldName, other.fieldName);
+        }
+
+        public int hashCode() {
+            return fieldType.ordinal() * 31 + Objects.hashCode(fieldName);
+        }
     }
 
     /**
@@ -45,7 +78,7 @@ public class TupleDesc implements Serializable {
      * */
     public Iterator<TDItem> iterator() {
         // some code goes here
-        return TDItems.iterator();
+        return itemList.iterator();
     }
 
     private static final long serialVersionUID = 1L;
@@ -63,11 +96,7 @@ public class TupleDesc implements Serializable {
      */
     public TupleDesc(Type[] typeAr, String[] fieldAr) {
         // some code goes here
-        int length = typeAr.length;
-        TDItems = new ArrayList();
-        for (int i = 0; i < length; i++) {
-            TDItems.add(new TDItem(typeAr[i], fieldAr[i]));
-        }
+        this(items(typeAr, fieldAr));
     }
 
     /**
@@ -80,16 +109,51 @@ public class TupleDesc implements Serializable {
      */
     public TupleDesc(Type[] typeAr) {
         // some code goes here
-        int length = typeAr.length;
-        TDItems = new ArrayList<TDItem>();
-        for (Type t : typeAr) {
-            TDItems.add(new TDItem(t, null));
-        }
+        this(items(typeAr, new String[typeAr.length]));
     }
 
     public TupleDesc(ArrayList<TDItem> tds) {
-        TDItems = new ArrayList<TDItem>();
-        TDItems.addAll(tds);
+        this(tds.toArray(new TDItem[0]));
+    }
+
+    private TupleDesc(TDItem[] items) {
+        TDItems = items;
+        itemList = Collections.unmodifiableList(Arrays.asList(items));
+        offsets = new int[items.length];
+        int sum = 0, h = 1;
+        for (int i = 0; i < items.length; i++) {
+            offsets[i] = sum;
+            sum += items[i].fieldType.getLen();
+            // the ordinal, unlike the identity hash of the enum, is the same in every JVM
+            h = h * 31 + items[i].fieldType.ordinal();
+        }
+        size = sum;
+        hash = h;
+    }
+
+    private static TDItem[] items(Type[] typeAr, String[] fieldAr) {
+        TDItem[] items = new TDItem[typeAr.length];
+        for (int i = 0; i < items.length; i++)
+            items[i] = new TDItem(typeAr[i], fieldAr[i]);
+        return items;
+    }
+
+    /**
+     * @return the instance shared by all interned TupleDescs with the same
+     *         field types and names as td, which is td if there was none
+     */
+    public static TupleDesc intern(TupleDesc td) {
+        synchronized (interned) {
+            WeakReference<TupleDesc> ref = interned.get(td.itemList);
+            TupleDesc canonical = ref == null ? null : ref.get();
+            if (canonical != null)
+                return canonical;
+            // the key of a cleared entry may be the list of a collected
+            // TupleDesc, so it is replaced along with the value
+            interned.remove(td.itemList);
+            interned.put(td.itemList, new WeakReference<>(td));
+            return td;
+        }
     }
 
     /**
@@ -97,7 +161,7 @@ public class TupleDesc implements Serializable {
      */
     public int numFields() {
         // some code goes here
-        return TDItems.size();
+        return TDItems.length;
     }
 
     /**
@@ -111,7 +175,9 @@ public class TupleDesc implements Serializable {
      */
     public String getFieldName(int i) throws NoSuchElementException {
         // some code goes here
-        return TDItems.get(i).fieldName;
+        if (i < 0 || i >= TDItems.length)
+            throw new NoSuchElementException("no field " + i);
+        return TDItems[i].fieldName;
     }
 
     /**
@@ -126,7 +192,9 @@ public class TupleDesc implements Serializable {
      */
     public Type getFieldType(int i) throws NoSuchElementException {
         // some code goes here
-        return TDItems.get(i).fieldType;
+        if (i < 0 || i >= TDItems.length)
+            throw new NoSuchElementException("no field " + i);
+        return TDItems[i].fieldType;
     }
 
     /**
@@ -143,13 +211,19 @@ public class TupleDesc implements Serializable {
         if(name == null){
             throw new NoSuchElementException();
         }
-        for(int i = 0; i < TDItems.size(); i++) {
-            String i_name = TDItems.get(i).fieldName;
-            if(i_name!=null&&i_name.equals(name)) {
-                return i;
+        Map<String, Integer> index = nameIndex;
+        if (index == null) {
+            index = new HashMap<>();
+            for (int i = 0; i < TDItems.length; i++) {
+                if (TDItems[i].fieldName != null)
+                    index.putIfAbsent(TDItems[i].fieldName, i);
             }
+            nameIndex = index;
         }
-        throw new NoSuchElementException();
+        Integer i = index.get(name);
+        if (i == null)
+            throw new NoSuchElementException("no field named " + name);
+        return i;
     }
 
     /**
@@ -158,11 +232,19 @@ public class TupleDesc implements Serializable {
      */
     public int getSize() {
         // some code goes here
-        int sum=0;
-        for(TDItem i : TDItems) {
-            sum+=i.fieldType.getLen();
-        }
-        return sum;
+        return size;
+    }
+
+    /**
+     * @return the offset in bytes of the ith field in a serialized tuple
+     */
+    public int getOffset(int i) {
+        return offsets[i];
+    }
+
+    /** @return the offset of each field, which must not be changed */
+    int[] offsets() {
+        return offsets;
     }
 
     /**
@@ -173,15 +255,31 @@ public class TupleDesc implements Serializable {
      *            The TupleDesc with the first fields of the new TupleDesc
      * @param td2
      *            The TupleDesc with the last fields of the TupleDesc
-     * @return the new TupleDesc
+     * @return the new TupleDesc, which is interned
      */
     public static TupleDesc merge(TupleDesc td1, TupleDesc td2) {
         // some code goes here
-        ArrayList<TDItem> newTDItems = new ArrayList<TDItem>();
-        newTDItems.addAll(td1.TDItems);
-        newTDItems.addAll(td2.TDItems);
+        TupleDesc[] last = td1.lastMerge;
+        if (last != null && last[0] == td2)
+            return last[1];
+        TDItem[] items = Arrays.copyOf(td1.TDItems, td1.TDItems.length + td2.TDItems.length);
+        System.arraycopy(td2.TDItems, 0, items, td1.TDItems.length, td2.TDItems.length);
+        TupleDesc merged = intern(new TupleDesc(items));
+        td1.lastMerge = new TupleDesc[] { td2, merged };
+        return merged;
+    }
 
-        return new TupleDesc(newTDItems);
+    /**
+     * @param fields
+     *            the indexes of fields of this TupleDesc
+     * @return a TupleDesc with just the specified fields, in the specified
+     *         order, which is interned
+     */
+    public TupleDesc project(int[] fields) {
+        TDItem[] items = new TDItem[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            items[i] = TDItems[fields[i]];
+        return intern(new TupleDesc(items));
     }
 
     /**
@@ -197,21 +295,23 @@ public class TupleDesc implements Serializable {
 
     public boolean equals(Object o) {
         // some code goes here
+        if(this==o) {return true;}
         if(o==null||getClass()!=o.getClass()) {return false;}
         TupleDesc other = (TupleDesc) o;
-        if(TDItems.size() != other.TDItems.size()) {return false;}
-        for(int i = 0; i < TDItems.size(); i++) {
-            if(!TDItems.get(i).fieldType.equals(((TupleDesc) o).TDItems.get(i).fieldType)){
+        if(TDItems.length != other.TDItems.length || hash != other.hash) {return false;}
+        for(int i = 0; i < TDItems.length; i++) {
+            if(!TDItems[i].fieldType.equals(other.TDItems[i].fieldType)){
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * @return a hash code of the field types, as equals compares only them
+     */
     public int hashCode() {
-        // If you want to use TupleDesc as keys for HashMap, implement this so
-        // that equal objects have equals hashCode() results
-        throw new UnsupportedOperationException("unimplemented");
+        return hash;
     }
 
     /**
@@ -223,6 +323,12 @@ public class TupleDesc implements Serializable {
      */
     public String toString() {
         // some code goes here
-        return "";
+        StringBuilder sb = new StringBuilder();
+        for (TDItem item : TDItems) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(item.fieldType).append("(").append(item.fieldName).append(")");
+        }
+        return sb.toString();
     }
 }
@@ -0,0 +1,193 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.io.*;
+
+/**
+ * TupleSpillFile is a temporary, append-only file of tuples that operators use
+ * when their working set does not fit in memory (e.g., the sorted runs of an
+ * external sort).
+ * <p>
+ * Tuples are stored in page-sized blocks of {@link BufferPool#getPageSize()}
+ * bytes. Each block starts with a 4-byte count of the tuples it holds,
+ * followed by the tuples serialized with {@link Field#serialize}, and is zero
+ * padded to the end of the block. Spill files do not go through the
+ * BufferPool, since they are private to the operator that created them.
+ */
+public class TupleSpillFile {
+
+    private final TupleDesc td;
+    private final File f;
+    private final int blockSize;
+    private final int tuplesPerBlock;
+
+    private DataOutputStream out;
+    private ByteArrayOutputStream block;
+    private DataOutputStream blockOut;
+    private int blockTuples;
+    private long numTuples;
+
+    /**
+     * Creates a new, empty spill file for tuples with the given schema.
+     *
+     * @param td the schema of the tuples that will be written to this file
+     * @throws IOException if the temporary file cannot be created
+     */
+    public TupleSpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.blockSize = Math.max(BufferPool.getPageSize(), td.getSize() + 4);
+        this.tuplesPerBlock = (blockSize - 4) / td.getSize();
+        this.f = File.createTempFile("simpledb-spill", ".dat");
+        this.f.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), blockSize));
+        this.block = new ByteArrayOutputStream(blockSize);
+        this.blockOut = new DataOutputStream(block);
+        this.blockTuples = 0;
+        this.numTuples = 0;
+    }
+
+    /**
+     * @return the schema of the tuples in this file
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of tuples appended to this file
+     */
+    public long numTuples() {
+        return numTuples;
+    }
+
+    /**
+     * Appends a tuple to the end of the file.
+     *
+     * @param t the tuple to append; must match the schema of this file
+     * @throws IllegalStateException if the file has already been finished
+     */
+    public void append(Tuple t) throws IOException {
+        if (out == null)
+            throw new IllegalStateException("spill file already finished");
+        for (int i = 0; i < td.numFields(); i++) {
+            t.getField(i).serialize(blockOut);
+        }
+        blockTuples++;
+        numTuples++;
+        if (blockTuples == tuplesPerBlock)
+            flushBlock();
+    }
+
+    /**
+     * Flushes any buffered tuples and closes the file for writing. After this
+     * call the file can only be read through {@link #iterator()}.
+     */
+    public void finish() throws IOException {
+        if (out == null)
+            return;
+        if (blockTuples > 0)
+            flushBlock();
+        out.close();
+        out = null;
+        block = null;
+        blockOut = null;
+    }
+
+    private void flushBlock() throws IOException {
+        out.writeInt(blockTuples);
+        block.writeTo(out);
+        int padding = blockSize - 4 - block.size();
+        for (int i = 0; i < padding; i++)
+            out.write(0);
+        block.reset();
+        blockTuples = 0;
+    }
+
+    /**
+     * Removes the file from disk. The file must not be read afterwards.
+     */
+    public void delete() {
+        try {
+            finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        f.delete();
+    }
+
+    /**
+     * @return an iterator over the tuples of this file, in the order they were
+     *         appended. The file must have been finished first.
+     */
+    public DbFileIterator iterator() {
+        if (out != null)
+            throw new IllegalStateException("spill file not finished");
+        return new SpillFileIterator();
+    }
+
+    private class SpillFileIterator extends AbstractDbFileIterator {
+        private DataInputStream in;
+        private int remainingInBlock;
+        private long remaining;
+
+        @Override
+        public void open() throws DbException {
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), blockSize));
+            } catch (FileNotFoundException e) {
+                throw new DbException("spill file " + f + " is missing");
+            }
+            remainingInBlock = 0;
+            remaining = numTuples;
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException {
+            if (in == null || remaining == 0)
+                return null;
+            try {
+                if (remainingInBlock == 0) {
+                    remainingInBlock = in.readInt();
+                }
+                Tuple t = new Tuple(td);
+                for (int i = 0; i < td.numFields(); i++) {
+                    if (td.getFieldType(i) == Type.INT_TYPE)
+                        t.setInt(i, in.readInt());
+                    else
+                        t.setField(i, td.getFieldType(i).parse(in));
+                }
+                remaining--;
+                // only the last block is partially filled, so a block that
+                // runs out here was full and is followed by its padding
+                if (--remainingInBlock == 0 && remaining > 0) {
+                    in.skipBytes(blockSize - 4 - tuplesPerBlock * td.getSize());
+                }
+                return t;
+            } catch (IOException | java.text.ParseException e) {
+                throw new DbException("error reading spill file: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                in = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class BatchIteratorTest extends SimpleDbTestBase {
+
+  private static List<List<Integer>> readTuples(OpIterator it) throws Exception {
+    List<List<Integer>> result = new ArrayList<>();
+    it.open();
+    while (it.hasNext())
+      result.add(SystemTestUtil.tupleToList(it.next()));
+    it.close();
+    return result;
+  }
+
+  private static List<List<Integer>> readBatches(BatchIterator it) throws Exception {
+    List<List<Integer>> result = new ArrayList<>();
+    it.open();
+    TupleBatch b;
+    while ((b = it.nextBatch()) != null) {
+      assertTrue(b.numSelected() > 0);
+      assertTrue(b.numRows() <= TupleBatch.MAX_ROWS);
+      for (int i = 0; i < b.numSelected(); i++)
+        result.add(SystemTestUtil.tupleToList(b.getTuple(b.selected(i))));
+    }
+    it.close();
+    return result;
+  }
+
+  /**
+   * Unit test for the selection vector and extracted columns of TupleBatch
+   */
+  @Test public void tupleBatch() {
+    TupleBatch b = new TupleBatch(Utility.getTupleDesc(2));
+    for (int i = 0; i < 10; i++)
+      b.add(Utility.getHeapTuple(new int[] { i, 10 * i }));
+    assertEquals(10, b.numRows());
+    assertEquals(10, b.numSelected());
+    assertEquals(70, b.intColumn(1)[7]);
+
+    // keep the odd rows
+    int k = 0;
+    for (int i = 0; i < b.numSelected(); i++) {
+      if (b.selected(i) % 2 == 1)
+        b.selection()[k++] = b.selected(i);
+    }
+    b.setNumSelected(k);
+    assertEquals(5, b.numSelected());
+    assertEquals(3, b.selected(1));
+    assertEquals(3, ((IntField) b.getTuple(b.selected(1)).getField(0)).getValue());
+
+    b.clear();
+    assertEquals(0, b.numRows());
+    b.add(Utility.getHeapTuple(new int[] { 5, 6 }));
+    assertEquals(6, b.intColumn(1)[0]);
+  }
+
+  /**
+   * Unit test that Predicate.filter(TupleBatch) agrees with Predicate.filter(Tuple)
+   */
+  @Test public void predicateOnBatch() {
+    TupleBatch b = new TupleBatch(Utility.getTupleDesc(1));
+    for (Predicate.Op op : Predicate.Op.values()) {
+      Predicate p = new Predicate(0, op, new IntField(3));
+      b.clear();
+      for (int i = 0; i < 8; i++)
+        b.add(Utility.getHeapTuple(i));
+      p.filter(b);
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        if (p.filter(Utility.getHeapTuple(i)))
+          expected.add(i);
+      }
+      List<Integer> actual = new ArrayList<>();
+      for (int i = 0; i < b.numSelected(); i++)
+        actual.add(b.selected(i));
+      assertEquals(op.toString(), expected, actual);
+    }
+
+    // string fields are compared tuple by tuple
+    TupleBatch s = new TupleBatch(new simpledb.storage.TupleDesc(new Type[] { Type.STRING_TYPE }));
+    for (String v : new String[] { "a", "b", "c" }) {
+      Tuple t = new Tuple(s.getTupleDesc());
+      t.setField(0, new StringField(v, Type.STRING_LEN));
+      s.add(t);
+    }
+    new Predicate(0, Predicate.Op.GREATER_THAN, new StringField("a", Type.STRING_LEN)).filter(s);
+    assertEquals(2, s.numSelected());
+  }
+
+  /**
+   * Unit test that operators return the same tuples a batch at a time as
+   * one at a time
+   */
+  @Test public void operatorsAgree() throws Exception {
+    HeapFile table = SystemTestUtil.createRandomHeapFile(3, 5000, 100, null, null);
+    TransactionId tid = new TransactionId();
+
+    OpIterator[] plans = new OpIterator[5];
+    plans[0] = new SeqScan(tid, table.getId(), "t");
+    plans[1] = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(30)),
+        new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(50)),
+            new SeqScan(tid, table.getId(), "t")));
+    plans[2] = new Project(Arrays.asList(2, 0), new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+        new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(7)),
+            new SeqScan(tid, table.getId(), "t")));
+    plans[3] = new Aggregate(new Filter(new Predicate(1, Predicate.Op.NOT_EQUALS, new IntField(7)),
+        new SeqScan(tid, table.getId(), "t")), new int[] { 1, 2, 0 }, 0,
+        new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.COUNT, Aggregator.Op.AVG });
+    plans[4] = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+        new Filter(new Predicate(2, Predicate.Op.LESS_THAN, new IntField(10)),
+            new SeqScan(tid, table.getId(), "a")),
+        new SeqScan(tid, table.getId(), "b"));
+    for (OpIterator plan : plans) {
+      List<List<Integer>> tuples = readTuples(plan);
+      assertEquals(tuples, readBatches((BatchIterator) plan));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Unit test that HashEquiJoin probes whole batches, hashing its left child
+   * in several parts and splitting the matches of a tuple across batches
+   */
+  @Test public void hashEquiJoinBatches() throws Exception {
+    int[] left = new int[2 * HashEquiJoin.MAP_SIZE + 5000];
+    for (int i = 0; i < left.length; i++)
+      left[i] = i % 100;
+    int[] right = new int[300];
+    for (int i = 0; i < right.length; i++)
+      right[i] = i % 150;
+    JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    List<List<Integer>> tuples = readTuples(new HashEquiJoin(eq,
+        TestUtil.createTupleList(1, left), TestUtil.createTupleList(1, right)));
+    // 200 of the right tuples match 450 left tuples each
+    assertEquals(200 * 450, tuples.size());
+    for (List<Integer> t : tuples)
+      assertEquals(t.get(0), t.get(1));
+    assertEquals(tuples, readBatches(new HashEquiJoin(eq,
+        TestUtil.createTupleList(1, left), TestUtil.createTupleList(1, right))));
+
+    // string fields are hashed as Fields
+    Object[] strings = new Object[2 * 3000];
+    for (int i = 0; i < 3000; i++) {
+      strings[2 * i] = "k" + i % 10;
+      strings[2 * i + 1] = i;
+    }
+    Object[] keys = new Object[2 * 20];
+    for (int i = 0; i < 20; i++) {
+      keys[2 * i] = "k" + i;
+      keys[2 * i + 1] = i;
+    }
+    HashEquiJoin join = new HashEquiJoin(eq, TestUtil.createTupleList(2, strings),
+        TestUtil.createTupleList(2, keys));
+    join.open();
+    int count = 0;
+    TupleBatch b;
+    while ((b = join.nextBatch()) != null) {
+      for (int i = 0; i < b.numSelected(); i++) {
+        Tuple t = b.getTuple(b.selected(i));
+        assertEquals(t.getField(0), t.getField(2));
+        count++;
+      }
+    }
+    join.close();
+    assertEquals(10 * 300, count);
+  }
+
+  /**
+   * Unit test for BatchAdapter in both directions
+   */
+  @Test public void adapters() throws Exception {
+    int[] data = new int[3000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = i;
+    List<List<Integer>> expected = readTuples(TestUtil.createTupleList(1, data));
+
+    BatchIterator batches = BatchAdapter.batches(TestUtil.createTupleList(1, data));
+    assertEquals(expected, readBatches(batches));
+    assertEquals(expected, readTuples(BatchAdapter.tuples(batches)));
+
+    OpIterator tuples = BatchAdapter.tuples(BatchAdapter.batches(TestUtil.createTupleList(1, data)));
+    tuples.open();
+    tuples.next();
+    tuples.rewind();
+    assertEquals(0, ((IntField) tuples.next().getField(0)).getValue());
+    tuples.close();
+
+    BatchIterator empty = BatchAdapter.batches(TestUtil.createTupleList(1, new int[0]));
+    empty.open();
+    assertNull(empty.nextBatch());
+    empty.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BatchIteratorTest.class);
+  }
+}
@@ -97,6 +97,26 @@ public class CatalogTest extends SimpleDbTestBase {
     	assertEquals(f, Database.getCatalog().getDatabaseFile(id2));
     }
 
+    /**
+     * Unit test for Catalog.addColumnGroup() and getColumnGroups()
+     */
+    @Test public void columnGroups() {
+        Database.getCatalog().addColumnGroup(id1, 1, 0);
+        Database.getCatalog().addColumnGroup(id1, 0, 1);
+        assertEquals(1, Database.getCatalog().getColumnGroups(id1).size());
+        Assert.assertArrayEquals(new int[] { 0, 1 }, Database.getCatalog().getColumnGroups(id1).get(0));
+        assertEquals(0, Database.getCatalog().getColumnGroups(id2).size());
+
+        for (int[] group : new int[][] { { 0 }, { 0, 0 }, { 0, 2 } }) {
+            try {
+                Database.getCatalog().addColumnGroup(id1, group);
+                Assert.fail("Should not add column group of fields " + java.util.Arrays.toString(group));
+            } catch (IllegalArgumentException e) {
+                // Expected to get here
+            }
+        }
+    }
+
     /**
      * JUnit suite target
      */
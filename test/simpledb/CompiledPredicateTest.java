@@ -0,0 +1,180 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.CompiledPredicate;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.TupleBatch;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class CompiledPredicateTest extends SimpleDbTestBase {
+
+  final TupleDesc td = Utility.getTupleDesc(2);
+
+  private Tuple tuple(int a, int b) {
+    Tuple t = new Tuple(td);
+    t.setField(0, new IntField(a));
+    t.setField(1, new IntField(b));
+    return t;
+  }
+
+  private static Predicate pred(int field, Predicate.Op op, int c) {
+    return new Predicate(field, op, new IntField(c));
+  }
+
+  /**
+   * Unit test that compiled conjunctions agree with the interpreted predicates
+   */
+  @Test public void agreesWithPredicate() {
+    Random rand = new Random(42);
+    Predicate.Op[] ops = Predicate.Op.values();
+    for (int trial = 0; trial < 200; trial++) {
+      Predicate[] conjuncts = new Predicate[1 + rand.nextInt(3)];
+      for (int i = 0; i < conjuncts.length; i++)
+        conjuncts[i] = pred(rand.nextInt(2), ops[rand.nextInt(ops.length)], rand.nextInt(10));
+      CompiledPredicate c = CompiledPredicate.compile(td, conjuncts);
+
+      TupleBatch batch = new TupleBatch(td);
+      List<Tuple> expected = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        Tuple t = tuple(rand.nextInt(10), rand.nextInt(10));
+        boolean match = true;
+        for (Predicate p : conjuncts)
+          match &= p.filter(t);
+        assertEquals(match, c.matches(t));
+        if (match)
+          expected.add(t);
+        batch.add(t);
+      }
+      assertEquals(expected.size(), c.filter(batch));
+      for (int i = 0; i < expected.size(); i++)
+        assertTrue(expected.get(i) == batch.getTuple(batch.selected(i)));
+    }
+  }
+
+  /**
+   * Unit test that range predicates on one field are merged
+   */
+  @Test public void rangesMerge() {
+    CompiledPredicate c = CompiledPredicate.compile(td,
+        pred(0, Predicate.Op.GREATER_THAN, 5), pred(0, Predicate.Op.LESS_THAN_OR_EQ, 10));
+    assertEquals("6 <= $0 <= 10", c.toString());
+    assertFalse(c.matches(tuple(5, 0)));
+    assertTrue(c.matches(tuple(6, 0)));
+    assertTrue(c.matches(tuple(10, 0)));
+    assertFalse(c.matches(tuple(11, 0)));
+
+    c = CompiledPredicate.compile(td, pred(1, Predicate.Op.NOT_EQUALS, 3),
+        pred(0, Predicate.Op.EQUALS, 2), pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 1));
+    assertEquals("$0 = 2 AND $1 <> 3", c.toString());
+
+    // contradictions and bounds at the ends of the int range
+    c = CompiledPredicate.compile(td, pred(0, Predicate.Op.EQUALS, 1), pred(0, Predicate.Op.EQUALS, 2));
+    assertEquals("false", c.toString());
+    c = CompiledPredicate.compile(td, pred(0, Predicate.Op.GREATER_THAN, Integer.MAX_VALUE));
+    assertFalse(c.matches(tuple(Integer.MAX_VALUE, 0)));
+    c = CompiledPredicate.compile(td, pred(0, Predicate.Op.LESS_THAN, Integer.MIN_VALUE));
+    assertFalse(c.matches(tuple(Integer.MIN_VALUE, 0)));
+  }
+
+  /**
+   * Unit test for predicates on STRING fields
+   */
+  @Test public void strings() throws Exception {
+    TupleIterator it = TestUtil.createTupleList(2,
+        new Object[] { 1, "apple", 2, "pineapple", 3, "pear" });
+    TupleDesc std = it.getTupleDesc();
+    CompiledPredicate eq = CompiledPredicate.compile(std,
+        new Predicate(1, Predicate.Op.EQUALS, new StringField("pear", 10)));
+    CompiledPredicate like = CompiledPredicate.compile(std,
+        new Predicate(1, Predicate.Op.LIKE, new StringField("apple", 10)));
+    CompiledPredicate gt = CompiledPredicate.compile(std,
+        new Predicate(1, Predicate.Op.GREATER_THAN, new StringField("b", 10)),
+        new Predicate(0, Predicate.Op.LESS_THAN, new IntField(3)));
+    assertEquals("$0 <= 2 AND Predicate[field=1, op=>, operand=b]", gt.toString());
+
+    int[] matches = new int[3];
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      matches[0] += eq.matches(t) ? 1 : 0;
+      matches[1] += like.matches(t) ? 1 : 0;
+      matches[2] += gt.matches(t) ? 1 : 0;
+    }
+    assertEquals(1, matches[0]);
+    assertEquals(2, matches[1]);
+    assertEquals(1, matches[2]);
+  }
+
+  /**
+   * Unit test that a chain of Filters returns the same tuples when fused
+   */
+  @Test public void filterChain() throws Exception {
+    OpIterator scan = new TestUtil.MockScan(-5, 5, 2);
+    Filter op = new Filter(pred(0, Predicate.Op.GREATER_THAN, -3),
+        new Filter(pred(1, Predicate.Op.LESS_THAN, 3),
+            new Filter(pred(0, Predicate.Op.NOT_EQUALS, 0), scan)));
+    op.open();
+    OpIterator expected = TestUtil.createTupleList(2,
+        new int[] { -2, -2, -1, -1, 1, 1, 2, 2 });
+    TestUtil.matchAllTuples(expected, op);
+    op.rewind();
+    expected.rewind();
+    TestUtil.matchAllTuples(expected, op);
+    op.close();
+  }
+
+  /**
+   * Unit test that Filters push their predicates into scans of a HeapFile
+   */
+  @Test public void pushdown() throws Exception {
+    List<List<Integer>> tuples = new ArrayList<>();
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2000, 100, null, tuples);
+    TransactionId tid = new TransactionId();
+    SeqScan scan = new SeqScan(tid, f.getId(), "t");
+    Filter op = new Filter(pred(0, Predicate.Op.LESS_THAN, 30),
+        new Filter(pred(1, Predicate.Op.GREATER_THAN_OR_EQ, 50), scan));
+    op.open();
+    assertEquals("$0 <= 29 AND 50 <= $1", scan.getPushedPredicate().toString());
+    op.close();
+    assertEquals(null, scan.getPushedPredicate());
+
+    List<List<Integer>> expected = new ArrayList<>();
+    for (List<Integer> t : tuples) {
+      if (t.get(0) < 30 && t.get(1) >= 50)
+        expected.add(t);
+    }
+    // the second time, the pages are partly decoded already
+    SystemTestUtil.matchTuples(op, expected);
+    SystemTestUtil.matchTuples(op, expected);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CompiledPredicateTest.class);
+  }
+}
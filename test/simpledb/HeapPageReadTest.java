@@ -3,6 +3,8 @@ package simpledb;
 import simpledb.TestUtil.SkeletonFile;
 import simpledb.common.Database;
 import simpledb.common.Utility;
+import simpledb.execution.CompiledPredicate;
+import simpledb.execution.Predicate;
 import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
@@ -102,6 +104,38 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.iterator() with a pushed-down predicate
+     */
+    @Test public void testFilteredIterator() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        CompiledPredicate p = CompiledPredicate.compile(Utility.getTupleDesc(2),
+                new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(30000)),
+                new Predicate(1, Predicate.Op.NOT_EQUALS, new IntField(56874)));
+        List<Tuple> matches = new ArrayList<>();
+        page.iterator(p).forEachRemaining(matches::add);
+
+        int row = 0;
+        for (int[] values : EXAMPLE_VALUES) {
+            if (values[0] > 30000 && values[1] != 56874) {
+                Tuple tup = matches.get(row++);
+                assertEquals(values[0], ((IntField) tup.getField(0)).getValue());
+                assertEquals(values[1], ((IntField) tup.getField(1)).getValue());
+            }
+        }
+        assertEquals(row, matches.size());
+
+        // decoded tuples are kept, and undecoded ones are written back as read
+        Iterator<Tuple> it = page.iterator();
+        for (int i = 0; i < EXAMPLE_VALUES.length; i++) {
+            Tuple tup = it.next();
+            if (matches.contains(tup))
+                matches.remove(tup);
+        }
+        assertTrue(matches.isEmpty());
+        assertTrue(Arrays.equals(EXAMPLE_DATA, new HeapPage(pid, EXAMPLE_DATA).getPageData()));
+    }
+
     /**
      * Unit test for HeapPage.getNumEmptySlots()
      */
@@ -175,4 +175,29 @@ public class IntHistogramTest {
 		Assert.assertTrue(h.estimateSelectivity(Op.NOT_EQUALS, 3) < 0.001);
 		Assert.assertTrue(h.estimateSelectivity(Op.NOT_EQUALS, 8) > 0.01);
 	}
+
+	/**
+	 * Values can be removed again, and values outside the range are
+	 * counted in buckets of their own.
+	 */
+	@Test public void removeAndOutOfRangeTest() {
+		IntHistogram h = new IntHistogram(10, 1, 10);
+		for (int c = 1; c <= 10; c++)
+			h.addValue(c);
+		for (int c = 21; c <= 30; c++)
+			h.addValue(c);
+
+		Assert.assertEquals(20, h.numValues());
+		Assert.assertEquals(0.5, h.estimateSelectivity(Op.LESS_THAN, 15), 0.001);
+		Assert.assertEquals(0.75, h.estimateSelectivity(Op.LESS_THAN_OR_EQ, 25), 0.001);
+		Assert.assertEquals(0.05, h.estimateSelectivity(Op.EQUALS, 22), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.GREATER_THAN, 30), 0.001);
+
+		for (int c = 21; c <= 30; c++)
+			h.removeValue(c);
+		h.removeValue(0);
+		Assert.assertEquals(10, h.numValues());
+		Assert.assertEquals(1.0, h.estimateSelectivity(Op.LESS_THAN, 15), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, 22), 0.001);
+	}
 }
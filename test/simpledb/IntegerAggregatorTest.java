@@ -130,6 +130,45 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Test computing several aggregates in one pass
+   */
+  @Test public void mergeMultiple() throws Exception {
+    scan1.open();
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE,
+        new int[] { 1, 1, 1, 0 },
+        new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.AVG, Aggregator.Op.COUNT });
+    while (scan1.hasNext())
+      agg.mergeTupleIntoGroup(scan1.next());
+    OpIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(5, new int[] {
+        1, 12, 2, 4, 3,
+        3, 12, 2, 4, 3,
+        5, 7, 7, 7, 1 }), it);
+    assertEquals(3, agg.numGroups());
+  }
+
+  /**
+   * Test that AVG does not overflow when the sum of a group exceeds an int
+   */
+  @Test public void mergeAvgLargeValues() throws Exception {
+    OpIterator scan = TestUtil.createTupleList(width1, new int[] {
+        1, Integer.MAX_VALUE,
+        1, Integer.MAX_VALUE - 2,
+        2, Integer.MIN_VALUE,
+        2, Integer.MIN_VALUE + 2 });
+    scan.open();
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    while (scan.hasNext())
+      agg.mergeTupleIntoGroup(scan.next());
+    OpIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1, new int[] {
+        1, Integer.MAX_VALUE - 1,
+        2, Integer.MIN_VALUE + 1 }), it);
+  }
+
   /**
    * Test IntegerAggregator.iterator() for OpIterator behaviour
    */
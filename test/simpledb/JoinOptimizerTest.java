@@ -274,6 +274,37 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
         Assert.assertTrue(cardinality == 800 || cardinality == 2000);
     }
 
+    /**
+     * Without primary keys, an equi-join is estimated from the numbers of
+     * distinct values of the join fields.
+     */
+    @Test
+    public void estimateJoinCardinalityDistinct() throws ParsingException, IOException {
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+        JoinOptimizer j = new JoinOptimizer(p.generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + " t1, " + tableName2
+                        + " t2 WHERE t1.c3 = t2.c4;"),
+                new ArrayList<>());
+
+        // 20 values on each side
+        double cardinality = j.estimateJoinCardinality(new LogicalJoinNode("t1", "t2",
+                "c" + 3, "c" + 4, Predicate.Op.EQUALS), stats1.estimateTableCardinality(1.0),
+                stats2.estimateTableCardinality(1.0), false, false, TableStats.getStatsMap());
+        Assert.assertEquals(1000 * 10000 / 20.0, cardinality, 1000 * 10000 / 20.0 * 0.05);
+
+        // a filter keeping 1% of t2 leaves most of its 20 values
+        cardinality = j.estimateJoinCardinality(new LogicalJoinNode("t1", "t2",
+                "c" + 3, "c" + 4, Predicate.Op.EQUALS), stats1.estimateTableCardinality(1.0),
+                stats2.estimateTableCardinality(0.01), false, false, TableStats.getStatsMap());
+        Assert.assertEquals(1000 * 100 / 20.0, cardinality, 1000 * 100 / 20.0 * 0.1);
+
+        cardinality = j.estimateJoinCardinality(new LogicalJoinNode("t1", "t2",
+                "c" + 3, "c" + 4, Predicate.Op.NOT_EQUALS), stats1.estimateTableCardinality(1.0),
+                stats2.estimateTableCardinality(1.0), false, false, TableStats.getStatsMap());
+        Assert.assertEquals(1000 * 10000 * 19 / 20.0, cardinality, 1000 * 10000 / 20.0 * 0.05);
+    }
+
     /**
      * Determine whether the orderJoins implementation is doing a reasonable job
      * of ordering joins, and not taking an unreasonable amount of time to do so
@@ -2,9 +2,13 @@ package simpledb;
 
 import org.junit.Test;
 
+import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.execution.JoinPredicate;
 import simpledb.execution.Predicate;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
 import simpledb.systemtest.SimpleDbTestBase;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
@@ -59,6 +63,20 @@ public class JoinPredicateTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Unit test for JoinPredicate.filter() over STRING fields
+   */
+  @Test public void filterStrings() {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+    Tuple a = new Tuple(td);
+    a.setField(0, new StringField("a", Type.STRING_LEN));
+    Tuple b = new Tuple(td);
+    b.setField(0, new StringField("b", Type.STRING_LEN));
+    assertTrue(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0).filter(a, b));
+    assertFalse(new JoinPredicate(0, Predicate.Op.EQUALS, 0).filter(a, b));
+    assertTrue(new JoinPredicate(0, Predicate.Op.EQUALS, 0).filter(b, b));
+  }
+
   /**
    * JUnit suite target
    */
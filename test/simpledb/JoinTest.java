@@ -9,6 +9,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
 import simpledb.execution.Join;
 import simpledb.execution.JoinPredicate;
 import simpledb.execution.OpIterator;
@@ -90,6 +91,24 @@ public class JoinTest extends SimpleDbTestBase {
     assertTrue(TestUtil.compareTuples(expected, actual));
   }
 
+  /**
+   * Unit test for HashEquiJoin.rewind(), after asking past its end
+   */
+  @Test public void hashEquiJoinRewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
   /**
    * Unit test for Join.getNext() using a &gt; predicate
    */
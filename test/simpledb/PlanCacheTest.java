@@ -0,0 +1,70 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import simpledb.execution.PlanCache;
+
+public class PlanCacheTest {
+
+  /**
+   * Plans are found by their set of tables, and a later plan of a set
+   * replaces the earlier one.
+   */
+  @Test public void addAndReplace() {
+    PlanCache pc = new PlanCache();
+    pc.addPlan(0b01, 10.0, 100, 0, -1);
+    pc.addPlan(0b10, 20.0, 200, 0, -1);
+    pc.addPlan(0b11, 50.0, 150, 0b10, 3);
+    assertEquals(3, pc.size());
+    assertEquals(50.0, pc.getCost(0b11), 0);
+    assertEquals(150, pc.getCard(0b11));
+    assertEquals(0b10, pc.getOuter(0b11));
+    assertEquals(3, pc.getJoin(0b11));
+    assertEquals(-1, pc.getJoin(0b01));
+
+    pc.addPlan(0b11, 40.0, 150, 0b01, 4);
+    assertEquals(3, pc.size());
+    assertEquals(40.0, pc.getCost(0b11), 0);
+    assertEquals(0b01, pc.getOuter(0b11));
+    assertEquals(4, pc.getJoin(0b11));
+  }
+
+  /** All of many sets of tables are kept as the cache grows. */
+  @Test public void grow() {
+    PlanCache pc = new PlanCache();
+    for (long s = 1; s < 5000; s++)
+      pc.addPlan(s << 40 | s, s, (int) s, s << 40, (int) s);
+    assertEquals(4999, pc.size());
+    for (long s = 1; s < 5000; s++) {
+      assertTrue(pc.contains(s << 40 | s));
+      assertEquals(s, pc.getCost(s << 40 | s), 0);
+      assertEquals(s << 40, pc.getOuter(s << 40 | s));
+    }
+    assertFalse(pc.contains(1L << 40));
+    assertFalse(pc.contains(0));
+  }
+
+  @Test(expected = NoSuchElementException.class) public void missing() {
+    PlanCache pc = new PlanCache();
+    pc.addPlan(0b01, 10.0, 100, 0, -1);
+    pc.getCost(0b10);
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void noTables() {
+    new PlanCache().addPlan(0, 1.0, 1, 0, -1);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PlanCacheTest.class);
+  }
+}
@@ -0,0 +1,163 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.Aggregator;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.StreamingAggregate;
+import simpledb.index.BTreeFile;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+public class StreamingAggregateTest extends SimpleDbTestBase {
+
+  final int width1 = 2;
+  OpIterator scan1;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    1, 4,
+                    1, 6,
+                    3, 2,
+                    3, 4,
+                    3, 6,
+                    5, 7 });
+  }
+
+  /**
+   * Unit test for StreamingAggregate with several aggregates
+   */
+  @Test public void multipleAggregates() throws Exception {
+    StreamingAggregate op = new StreamingAggregate(scan1, new int[] { 1, 1, 1 }, 0,
+        new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT });
+    op.open();
+    OpIterator expected = TestUtil.createTupleList(4, new int[] {
+        1, 12, 4, 3,
+        3, 12, 4, 3,
+        5, 7, 7, 1 });
+    expected.open();
+    TestUtil.matchAllTuples(expected, op);
+
+    op.rewind();
+    assertTrue(op.hasNext());
+    assertEquals(1, ((IntField) op.next().getField(0)).getValue());
+    op.close();
+  }
+
+  /**
+   * Unit test that the first group is returned before the input is consumed
+   */
+  @Test public void firstGroupIsStreamed() throws Exception {
+    scan1.open();
+    // count how many input tuples have been read
+    final int[] read = { 0 };
+    OpIterator counting = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN,
+        new IntField(Integer.MIN_VALUE)), scan1) {
+      private static final long serialVersionUID = 1L;
+      @Override protected Tuple fetchNext() throws DbException,
+          TransactionAbortedException {
+        Tuple t = super.fetchNext();
+        if (t != null)
+          read[0]++;
+        return t;
+      }
+    };
+    StreamingAggregate op = new StreamingAggregate(counting, new int[] { 1 }, 0,
+        new Aggregator.Op[] { Aggregator.Op.MAX });
+    op.open();
+    Tuple first = op.next();
+    assertEquals(6, ((IntField) first.getField(1)).getValue());
+    // the first group, plus the tuple that ended it
+    assertEquals(4, read[0]);
+    op.close();
+  }
+
+  /**
+   * Unit test for LogicalPlan.isOrderedOn()
+   */
+  @Test public void isOrderedOn() throws Exception {
+    OpIterator sorted = new OrderBy(1, false, scan1);
+    assertTrue(LogicalPlan.isOrderedOn(sorted, 1));
+    assertFalse(LogicalPlan.isOrderedOn(sorted, 0));
+    assertTrue(LogicalPlan.isOrderedOn(new Filter(new Predicate(0, Predicate.Op.EQUALS,
+        TestUtil.getField(1)), sorted), 1));
+    assertFalse(LogicalPlan.isOrderedOn(scan1, 0));
+
+    TransactionId tid = new TransactionId();
+    File heap = File.createTempFile("table", ".dat");
+    heap.deleteOnExit();
+    HeapFile hf = new HeapFile(heap, Utility.getTupleDesc(2));
+    Database.getCatalog().addTable(hf, "heap_t");
+    assertFalse(LogicalPlan.isOrderedOn(new SeqScan(tid, hf.getId(), "h"), 0));
+
+    File index = File.createTempFile("table_index", ".dat");
+    index.deleteOnExit();
+    BTreeFile bf = new BTreeFile(index, 1, Utility.getTupleDesc(2));
+    Database.getCatalog().addTable(bf, "btree_t");
+    assertTrue(LogicalPlan.isOrderedOn(new SeqScan(tid, bf.getId(), "b"), 1));
+    assertFalse(LogicalPlan.isOrderedOn(new SeqScan(tid, bf.getId(), "b"), 0));
+  }
+
+  /**
+   * Unit test that the planner streams a GROUP BY on the key of a B+ tree
+   */
+  @Test public void plannerSelectsStreaming() throws Exception {
+    File index = File.createTempFile("table_index", ".dat");
+    index.deleteOnExit();
+    BTreeFile bf = new BTreeFile(index, 0, Utility.getTupleDesc(2, "c"));
+    Database.getCatalog().addTable(bf, "BTREE_AGG");
+    File heap = File.createTempFile("table", ".dat");
+    heap.deleteOnExit();
+    Database.getCatalog().addTable(new HeapFile(heap, Utility.getTupleDesc(2, "c")), "HEAP_AGG");
+
+    TransactionId tid = new TransactionId();
+    Parser p = new Parser();
+    Operator plan = (Operator) p.generateLogicalPlan(tid,
+        "SELECT t.c0, COUNT(t.c1) FROM BTREE_AGG t GROUP BY t.c0;")
+        .physicalPlan(tid, new HashMap<>(), false);
+    assertTrue(plan.getChildren()[0] instanceof StreamingAggregate);
+
+    plan = (Operator) p.generateLogicalPlan(tid,
+        "SELECT t.c1, COUNT(t.c0) FROM BTREE_AGG t GROUP BY t.c1;")
+        .physicalPlan(tid, new HashMap<>(), false);
+    assertFalse(plan.getChildren()[0] instanceof StreamingAggregate);
+
+    plan = (Operator) p.generateLogicalPlan(tid,
+        "SELECT t.c0, COUNT(t.c1) FROM HEAP_AGG t GROUP BY t.c0;")
+        .physicalPlan(tid, new HashMap<>(), false);
+    assertFalse(plan.getChildren()[0] instanceof StreamingAggregate);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(StreamingAggregateTest.class);
+  }
+}
@@ -10,14 +10,23 @@ import org.junit.Assert;
 
 import simpledb.common.Database;
 import simpledb.common.DbException;
+import simpledb.execution.Delete;
+import simpledb.execution.Filter;
+import simpledb.execution.Insert;
 import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.WorkerPool;
 import simpledb.optimizer.TableStats;
 import simpledb.storage.Field;
 import simpledb.storage.HeapFile;
 import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
 
 public class TableStatsTest extends SimpleDbTestBase {
 	public static final int IO_COST = 71;
@@ -160,4 +169,144 @@ public class TableStatsTest extends SimpleDbTestBase {
 			Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.LESS_THAN_OR_EQ, belowMin), 0.001);
 		}
 	}
+
+	/**
+	 * Statistics gathered by several workers, each reading a part of the
+	 * table, match those gathered by one.
+	 */
+	@Test public void parallelMatchesSerialTest() {
+		try {
+			WorkerPool.setParallelism(1);
+			TableStats serial = new TableStats(this.tableId, IO_COST);
+			WorkerPool.setParallelism(4);
+			TableStats parallel = new TableStats(this.tableId, IO_COST);
+			Assert.assertEquals(serial.totalTuples(), parallel.totalTuples());
+			for (int col = 0; col < 10; col++) {
+				for (int v = -1; v <= 33; v++) {
+					for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN }) {
+						Assert.assertEquals(serial.estimateSelectivity(col, op, new IntField(v)),
+								parallel.estimateSelectivity(col, op, new IntField(v)), 1e-9);
+					}
+				}
+			}
+		} finally {
+			WorkerPool.resetParallelism();
+		}
+	}
+
+	/**
+	 * Histograms built from a sample of a larger table are still close.
+	 */
+	@Test public void reservoirSampleTest() {
+		try {
+			TableStats.setReservoirSize(2000);
+			WorkerPool.setParallelism(3);
+			TableStats s = new TableStats(this.tableId, IO_COST);
+			Assert.assertEquals(10200, s.totalTuples());
+			for (int col = 0; col < 10; col++) {
+				Assert.assertEquals(1.0/32.0, s.estimateSelectivity(col, Predicate.Op.EQUALS, new IntField(16)), 0.015);
+				Assert.assertEquals(0.5, s.estimateSelectivity(col, Predicate.Op.LESS_THAN, new IntField(16)), 0.1);
+				Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.GREATER_THAN, new IntField(32)), 0.001);
+			}
+		} finally {
+			TableStats.resetReservoirSize();
+			WorkerPool.resetParallelism();
+		}
+	}
+
+	/**
+	 * Statistics from a sample of the pages extrapolate the number of tuples
+	 * and still estimate selectivities closely.
+	 */
+	@Test public void samplePagesTest() {
+		try {
+			TableStats.setSampleFraction(0.3);
+			TableStats s = new TableStats(this.tableId, IO_COST);
+			Assert.assertEquals(f.numPages() * IO_COST, s.estimateScanCost(), 0.001);
+			Assert.assertEquals(10200, s.totalTuples(), 10200 * 0.1);
+			for (int col = 0; col < 10; col++) {
+				Assert.assertEquals(1.0/32.0, s.estimateSelectivity(col, Predicate.Op.EQUALS, new IntField(16)), 0.015);
+				Assert.assertEquals(0.5, s.estimateSelectivity(col, Predicate.Op.LESS_THAN, new IntField(16)), 0.1);
+			}
+		} finally {
+			TableStats.resetSampleFraction();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sampleFractionTest() {
+		TableStats.setSampleFraction(0);
+	}
+
+	/**
+	 * Tuples inserted and deleted after the statistics were computed are
+	 * counted in them, including values outside the range of the table.
+	 */
+	@Test public void insertDeleteTest() throws Exception {
+		// no analysis in the background while the tuples change
+		TableStats.setAnalyzeThreshold(100);
+		try {
+			TableStats s = new TableStats(this.tableId, IO_COST);
+			TableStats.setTableStats(this.tableName, s);
+			double scanCost = s.estimateScanCost();
+			TupleDesc td = f.getTupleDesc();
+			List<Tuple> inserted = new ArrayList<>();
+			for (int i = 0; i < 10200; i++) {
+				Tuple t = new Tuple(td);
+				for (int col = 0; col < 10; col++)
+					t.setField(col, new IntField(100 + i % 100));
+				inserted.add(t);
+			}
+			TransactionId tid = new TransactionId();
+			Insert insert = new Insert(tid, new TupleIterator(td, inserted), this.tableId);
+			insert.open();
+			insert.next();
+			insert.close();
+
+			Assert.assertEquals(20400, s.totalTuples());
+			Assert.assertEquals(2 * scanCost, s.estimateScanCost(), IO_COST);
+			for (int col = 0; col < 10; col++) {
+				Assert.assertEquals(0.5, s.estimateSelectivity(col, Predicate.Op.GREATER_THAN, new IntField(32)), 0.01);
+				Assert.assertEquals(0.75, s.estimateSelectivity(col, Predicate.Op.LESS_THAN, new IntField(150)), 0.01);
+				Assert.assertEquals(0.005, s.estimateSelectivity(col, Predicate.Op.EQUALS, new IntField(120)), 0.002);
+				Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.GREATER_THAN, new IntField(199)), 0.001);
+			}
+
+			// delete the inserted tuples again
+			Delete delete = new Delete(tid, new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ,
+					new IntField(100)), new SeqScan(tid, this.tableId, "t")));
+			delete.open();
+			delete.next();
+			delete.close();
+			Database.getBufferPool().transactionComplete(tid);
+			Assert.assertEquals(10200, s.totalTuples());
+			for (int col = 0; col < 10; col++) {
+				Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.GREATER_THAN, new IntField(32)), 0.001);
+				Assert.assertEquals(0.5, s.estimateSelectivity(col, Predicate.Op.LESS_THAN, new IntField(16)), 0.1);
+			}
+		} finally {
+			TableStats.resetAnalyzeThreshold();
+		}
+	}
+
+	/**
+	 * The numbers of distinct values are estimated from all or some pages.
+	 */
+	@Test public void distinctValuesTest() throws IOException {
+		TableStats s = new TableStats(this.tableId, IO_COST);
+		for (int col = 0; col < 10; col++)
+			Assert.assertEquals(33, s.distinctValues(col), 2);
+
+		List<List<Integer>> keys = new ArrayList<>();
+		HeapFile k = SystemTestUtil.createRandomHeapFile(1, 50000, Integer.MAX_VALUE, null, keys);
+		Database.getCatalog().addTable(k, SystemTestUtil.getUUID());
+		Assert.assertEquals(50000, new TableStats(k.getId(), IO_COST).distinctValues(0), 50000 * 0.05);
+		try {
+			TableStats.setSampleFraction(0.2);
+			Assert.assertEquals(50000, new TableStats(k.getId(), IO_COST).distinctValues(0), 50000 * 0.1);
+			Assert.assertEquals(33, new TableStats(this.tableId, IO_COST).distinctValues(0), 3);
+		} finally {
+			TableStats.resetSampleFraction();
+		}
+	}
 }
@@ -173,6 +173,44 @@ public class TupleDescTest extends SimpleDbTestBase {
         assertEquals(intString2, intString);
     }
 
+    /**
+     * Unit test for TupleDesc.hashCode() and TupleDesc.toString()
+     */
+    @Test public void hashCodeAndToString() {
+        TupleDesc intString = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"a", "b"});
+        TupleDesc intString2 = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        assertEquals(intString.hashCode(), intString2.hashCode());
+        // the hash is serialized, so it depends only on the order of the types
+        assertEquals((31 + Type.INT_TYPE.ordinal()) * 31 + Type.STRING_TYPE.ordinal(), intString.hashCode());
+        assertEquals("INT_TYPE(a), STRING_TYPE(b)", intString.toString());
+        assertEquals("INT_TYPE(null), STRING_TYPE(null)", intString2.toString());
+    }
+
+    /**
+     * Unit test for TupleDesc.intern() and the interned results of merge()
+     * and project()
+     */
+    @Test public void intern() {
+        TupleDesc td1 = Utility.getTupleDesc(2, "x");
+        TupleDesc td2 = Utility.getTupleDesc(3, "y");
+        TupleDesc canonical = TupleDesc.intern(td1);
+        assertSame(canonical, TupleDesc.intern(Utility.getTupleDesc(2, "x")));
+        // the names are part of an interned TupleDesc, unlike equals()
+        assertNotSame(canonical, TupleDesc.intern(Utility.getTupleDesc(2, "z")));
+
+        TupleDesc merged = TupleDesc.merge(td1, td2);
+        assertSame(merged, TupleDesc.merge(td1, td2));
+        assertSame(merged, TupleDesc.merge(Utility.getTupleDesc(2, "x"), Utility.getTupleDesc(3, "y")));
+        assertEquals("y1", merged.getFieldName(3));
+        assertEquals(3, merged.fieldNameToIndex("y1"));
+        assertEquals(4 * Type.INT_TYPE.getLen(), merged.getOffset(4));
+
+        TupleDesc projected = merged.project(new int[] { 3, 0 });
+        assertSame(projected, merged.project(new int[] { 3, 0 }));
+        assertEquals("INT_TYPE(y1), INT_TYPE(x0)", projected.toString());
+        assertEquals(Type.INT_TYPE.getLen(), projected.getOffset(1));
+    }
+
     /**
      * JUnit suite target
      */
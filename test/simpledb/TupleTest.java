@@ -1,10 +1,15 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import junit.framework.JUnit4TestAdapter;
 
+import java.util.Iterator;
+
 import org.junit.Test;
 
+import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
@@ -31,6 +36,65 @@ public class TupleTest extends SimpleDbTestBase {
         assertEquals(new IntField(37), tup.getField(1));
     }
 
+    /**
+     * Unit test for Tuple.getInt(), Tuple.setInt() and Tuple.copyField()
+     */
+    @Test public void intFields() {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE });
+        Tuple tup = new Tuple(td);
+        assertNull(tup.getField(0));
+        tup.setInt(0, 5);
+        tup.setField(1, new StringField("five", 10));
+        tup.setField(2, new IntField(-7));
+
+        assertEquals(5, tup.getInt(0));
+        assertEquals(new IntField(5), tup.getField(0));
+        assertEquals(-7, tup.getInt(2));
+        assertEquals(new StringField("five", 10), tup.getField(1));
+        assertEquals("5\tfive\t-7\t", tup.toString());
+
+        Tuple copy = new Tuple(td);
+        copy.copyField(0, tup, 2);
+        copy.copyField(1, tup, 1);
+        copy.copyField(2, tup, 0);
+        assertEquals("-7\tfive\t5\t", copy.toString());
+
+        Iterator<Field> it = copy.fields();
+        assertEquals(new IntField(-7), it.next());
+        assertEquals(new StringField("five", 10), it.next());
+        assertEquals(new IntField(5), it.next());
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for Tuple.join()
+     */
+    @Test public void join() {
+        Tuple left = Utility.getHeapTuple(new int[] { 1, 2 });
+        Tuple right = Utility.getHeapTuple(new int[] { 3, 4, 5 });
+        TupleDesc td = TupleDesc.merge(left.getTupleDesc(), right.getTupleDesc());
+        Tuple joined = Tuple.join(td, left, right);
+        assertEquals(td, joined.getTupleDesc());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, joined.getInt(i));
+            assertEquals(new IntField(i + 1), joined.getField(i));
+        }
+
+        // a view of a view, and a copy from a view
+        Tuple nested = Tuple.join(TupleDesc.merge(td, left.getTupleDesc()), joined, left);
+        assertEquals("1\t2\t3\t4\t5\t1\t2\t", nested.toString());
+        Tuple copy = new Tuple(left.getTupleDesc());
+        copy.copyField(0, nested, 4);
+        assertEquals(5, copy.getInt(0));
+
+        // setting a field leaves the joined tuples unchanged
+        joined.setInt(3, 40);
+        joined.setField(0, new IntField(10));
+        assertEquals("10\t2\t3\t40\t5\t", joined.toString());
+        assertEquals("1\t2\t", left.toString());
+        assertEquals("3\t4\t5\t", right.toString());
+    }
+
     /**
      * Unit test for Tuple.getTupleDesc()
      */
@@ -0,0 +1,54 @@
+package simpledb.systemtest;
+
+import simpledb.common.Database;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs a GROUP BY with several aggregates over a large table and reports the
+ * time taken and the heap in use afterwards, which should depend on the
+ * number of groups, not the number of rows. With more groups than fit in
+ * the aggregate memory budget the groups are spilled to disk instead.
+ * <p>
+ * Usage: AggregateBenchmark [rows] [groups], e.g.
+ * <code>ant runbench -Dbench=AggregateBenchmark -Dbench.maxmemory=64M -Dbench.args="100000000 1000"</code>
+ * or, for a GROUP BY on an almost unique key,
+ * <code>-Dbench.args="10000000 2147483647"</code>.
+ */
+public class AggregateBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 20000000L;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        long start = System.currentTimeMillis();
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(2, rows, groups);
+        System.out.printf("generated %d rows (%d MB) in %.1f s%n", rows,
+                table.getFile().length() >> 20, (System.currentTimeMillis() - start) / 1000.0);
+
+        TransactionId tid = new TransactionId();
+        Aggregate agg = new Aggregate(new SeqScan(tid, table.getId(), "t"),
+                new int[] { 1, 1, 1, 1 }, 0,
+                new Aggregator.Op[] { Aggregator.Op.COUNT, Aggregator.Op.SUM, Aggregator.Op.AVG,
+                        Aggregator.Op.MAX });
+        start = System.currentTimeMillis();
+        agg.open();
+        long count = 0;
+        while (agg.hasNext()) {
+            agg.next();
+            count++;
+        }
+        long end = System.currentTimeMillis();
+        int spilled = agg.numSpilledPartitions();
+        System.gc();
+        long used = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        agg.close();
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("%d groups in %.1f s (%.0f rows/s), %d partitions spilled, heap in use %d MB%n",
+                count, (end - start) / 1000.0, rows * 1000.0 / Math.max(1, end - start), spilled,
+                used >> 20);
+    }
+}
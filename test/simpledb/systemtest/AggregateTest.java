@@ -2,16 +2,27 @@ package simpledb.systemtest;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import simpledb.Parser;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.execution.Aggregate;
 import simpledb.execution.Aggregator;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.OrderBy;
 import simpledb.execution.SeqScan;
+import simpledb.execution.StreamingAggregate;
+import simpledb.execution.TopN;
 import simpledb.storage.DbFile;
 import simpledb.storage.HeapFile;
 import simpledb.transaction.TransactionAbortedException;
@@ -121,6 +132,134 @@ public class AggregateTest extends SimpleDbTestBase {
         doAggregate(Aggregator.Op.AVG, Aggregator.NO_GROUPING);
     }
 
+    @Test public void testMultipleAggregates()
+            throws IOException, DbException, TransactionAbortedException {
+        List<List<Integer>> createdTuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, ROWS, MAX_VALUE, null, createdTuples);
+        Aggregator.Op[] ops = { Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.MAX,
+                Aggregator.Op.COUNT, Aggregator.Op.AVG };
+
+        // merge the single-aggregate answers column by column
+        Map<Integer, List<Integer>> byGroup = new HashMap<>();
+        for (Aggregator.Op op : ops) {
+            for (List<Integer> r : aggregate(createdTuples, op, 0)) {
+                byGroup.computeIfAbsent(r.get(0), k -> new ArrayList<>(r.subList(0, 1))).add(r.get(1));
+            }
+        }
+        List<List<Integer>> expected = new ArrayList<>(byGroup.values());
+
+        TransactionId tid = new TransactionId();
+        SeqScan ss = new SeqScan(tid, table.getId(), "");
+        Aggregate ag = new Aggregate(ss, new int[] { 1, 1, 1, 1, 1 }, 0, ops);
+        assertEquals(1 + ops.length, ag.getTupleDesc().numFields());
+        SystemTestUtil.matchTuples(ag, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private void validateSpillingAggregate(Aggregator.Op[] ops, int memoryBudget)
+            throws IOException, DbException, TransactionAbortedException {
+        // mostly unique group values
+        List<List<Integer>> createdTuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, 4 * ROWS, 1 << 20, null, createdTuples);
+        Map<Integer, List<Integer>> byGroup = new HashMap<>();
+        for (Aggregator.Op op : ops) {
+            for (List<Integer> r : aggregate(createdTuples, op, 0)) {
+                byGroup.computeIfAbsent(r.get(0), k -> new ArrayList<>(r.subList(0, 1))).add(r.get(1));
+            }
+        }
+        List<List<Integer>> expected = new ArrayList<>(byGroup.values());
+
+        int[] afields = new int[ops.length];
+        Arrays.fill(afields, 1);
+        TransactionId tid = new TransactionId();
+        Aggregate ag = new Aggregate(new SeqScan(tid, table.getId(), ""), afields, 0, ops, memoryBudget);
+        ag.open();
+        assertTrue(ag.numSpilledPartitions() > 0);
+        for (int pass = 0; pass < 2; pass++) {
+            List<List<Integer>> copy = new ArrayList<>(expected);
+            while (ag.hasNext())
+                assertTrue(copy.remove(SystemTestUtil.tupleToList(ag.next())));
+            assertTrue(copy.isEmpty());
+            ag.rewind();
+        }
+        ag.close();
+        assertEquals(0, ag.numSpilledPartitions());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testSpillingAggregate() throws Exception {
+        validateSpillingAggregate(new Aggregator.Op[] { Aggregator.Op.COUNT, Aggregator.Op.AVG }, 64 * 1024);
+    }
+
+    @Test public void testSpillingAggregateRecursive() throws Exception {
+        // the partitions are still too large, so they are split again
+        validateSpillingAggregate(new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.MIN,
+                Aggregator.Op.MAX }, 8 * 1024);
+    }
+
+    @Test public void testParsedMultipleAggregates() throws Exception {
+        List<List<Integer>> createdTuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, ROWS, MAX_VALUE, null, createdTuples, "c");
+        Database.getCatalog().addTable(table, "AGG");
+
+        // the aggregates are projected in SELECT list order
+        Map<Integer, List<Integer>> byGroup = new HashMap<>();
+        for (List<Integer> r : aggregate(createdTuples, Aggregator.Op.MAX, 0))
+            byGroup.computeIfAbsent(r.get(0), k -> new ArrayList<>(r.subList(0, 1))).add(r.get(1));
+        for (List<Integer> r : aggregate(createdTuples, Aggregator.Op.COUNT, 0))
+            byGroup.get(r.get(0)).add(1, r.get(1));
+        List<List<Integer>> expected = new ArrayList<>(byGroup.values());
+
+        TransactionId tid = new TransactionId();
+        OpIterator plan = new Parser().generateLogicalPlan(tid,
+                "SELECT t.c0, COUNT(t.c1), MAX(t.c1) FROM AGG t GROUP BY t.c0;")
+                .physicalPlan(tid, new HashMap<>(), false);
+        SystemTestUtil.matchTuples(plan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the results of the plan, in the order it returns them */
+    private static List<List<Integer>> results(OpIterator plan) throws DbException, TransactionAbortedException {
+        List<List<Integer>> results = new ArrayList<>();
+        plan.open();
+        while (plan.hasNext())
+            results.add(SystemTestUtil.tupleToList(plan.next()));
+        plan.close();
+        return results;
+    }
+
+    /**
+     * A query ordered by its group field hash-aggregates its input, which is
+     * not known to be ordered, and sorts just the groups.
+     */
+    @Test public void testParsedOrderedByGroup() throws Exception {
+        List<List<Integer>> createdTuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, ROWS, MAX_VALUE, null, createdTuples, "c");
+        Database.getCatalog().addTable(table, "AGG");
+        List<List<Integer>> expected = aggregate(createdTuples, Aggregator.Op.SUM, 0);
+        expected.sort((a, b) -> Integer.compare(b.get(0), a.get(0)));
+
+        TransactionId tid = new TransactionId();
+        Operator plan = (Operator) new Parser().generateLogicalPlan(tid,
+                "SELECT t.c0, SUM(t.c1) FROM AGG t GROUP BY t.c0 ORDER BY t.c0 DESC;")
+                .physicalPlan(tid, new HashMap<>(), false);
+        Operator root = (Operator) plan.getChildren()[0];
+        assertTrue(root.getClass().getSimpleName(), root instanceof OrderBy);
+        assertFalse(root.getChildren()[0] instanceof StreamingAggregate);
+        assertEquals(expected, results(plan));
+
+        plan = (Operator) new Parser().generateLogicalPlan(tid,
+                "SELECT t.c0, SUM(t.c1) FROM AGG t GROUP BY t.c0 ORDER BY t.c0 DESC LIMIT 3;")
+                .physicalPlan(tid, new HashMap<>(), false);
+        assertTrue(plan.getChildren()[0] instanceof TopN);
+        assertEquals(expected.subList(0, 3), results(plan));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(AggregateTest.class);
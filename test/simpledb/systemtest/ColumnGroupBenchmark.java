@@ -0,0 +1,57 @@
+package simpledb.systemtest;
+
+import java.util.Arrays;
+import java.util.List;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+
+/**
+ * Estimates conjunctions of predicates on the correlated city and zip code
+ * fields of {@link ColumnGroupStatsTest}, without and with a column group of
+ * the two, and reports the estimates next to the actual selectivities and
+ * the time each estimate takes.
+ * <p>
+ * Usage: ColumnGroupBenchmark [rows], e.g.
+ * <code>ant runbench -Dbench=ColumnGroupBenchmark -Dbench.maxmemory=1G -Dbench.args="200000"</code>
+ */
+public class ColumnGroupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        HeapFile f = ColumnGroupStatsTest.createTable(rows);
+        String[] names = { "city = c and zip = z", "city = c and zip in another city",
+                "zip < 500 and city >= city(600)", "zip < 500 and city < city(250)" };
+        List<List<Predicate>> queries = Arrays.asList(
+                ColumnGroupStatsTest.cityAndZip(123, ColumnGroupStatsTest.city(123)),
+                ColumnGroupStatsTest.cityAndZip(123, ColumnGroupStatsTest.city(456)),
+                Arrays.asList(new Predicate(2, Predicate.Op.LESS_THAN, new IntField(500)),
+                        new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ,
+                                new StringField(ColumnGroupStatsTest.city(600), Type.STRING_LEN))),
+                Arrays.asList(new Predicate(2, Predicate.Op.LESS_THAN, new IntField(500)),
+                        new Predicate(1, Predicate.Op.LESS_THAN,
+                                new StringField(ColumnGroupStatsTest.city(250), Type.STRING_LEN))));
+        double[] actual = { 0.001, 0, 0, 0.25 };
+
+        TableStats independent = new TableStats(f.getId(), 1000);
+        Database.getCatalog().addColumnGroup(f.getId(), 1, 2);
+        TableStats grouped = new TableStats(f.getId(), 1000);
+        for (int q = 0; q < queries.size(); q++) {
+            long start = System.nanoTime();
+            int reps = 100;
+            double g = 0;
+            for (int i = 0; i < reps; i++)
+                g = grouped.estimateSelectivity(queries.get(q));
+            double us = (System.nanoTime() - start) / 1000.0 / reps;
+            System.out.printf("%-34s actual %.6f  independent %.6f  column group %.6f (%.0f us)%n",
+                    names[q], actual[q], independent.estimateSelectivity(queries.get(q)), g, us);
+        }
+        System.out.printf("distinct (city, zip): independent %d, column group %d%n",
+                independent.distinctValues(new int[] { 1, 2 }), grouped.distinctValues(new int[] { 1, 2 }));
+    }
+}
@@ -0,0 +1,132 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+/**
+ * Conjunctions of predicates on the fields of a column group are estimated
+ * from the rows that satisfy all of them, not as if the fields were
+ * independent.
+ */
+public class ColumnGroupStatsTest extends SimpleDbTestBase {
+
+    static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE },
+            new String[] { "id", "city", "zip", "other" });
+
+    static String city(long zip) {
+        return String.format("city %03d", zip / 10);
+    }
+
+    /**
+     * @return a table of rows rows, each with a zip code from 0 to 999, the
+     *         city it is in, of 10 zip codes each, and an unrelated value
+     */
+    static HeapFile createTable(int rows) throws IOException {
+        return SystemTestUtil.createLargeHeapFile(rows, TD, new int[0], i -> {
+            Tuple t = new Tuple(TD);
+            long zip = (i * 7919) % 1000;
+            t.setField(0, new IntField((int) i));
+            t.setField(1, new StringField(city(zip), Type.STRING_LEN));
+            t.setField(2, new IntField((int) zip));
+            t.setField(3, new IntField((int) ((i * 31) % 100)));
+            return t;
+        });
+    }
+
+    static List<Predicate> cityAndZip(long zip, String city) {
+        return Arrays.asList(new Predicate(1, Predicate.Op.EQUALS, new StringField(city, Type.STRING_LEN)),
+                new Predicate(2, Predicate.Op.EQUALS, new IntField((int) zip)));
+    }
+
+    @After public void tearDown() {
+        TableStats.setStatsFile(null);
+    }
+
+    /** Without a column group, predicates are taken to be independent. */
+    @Test public void testIndependent() throws IOException {
+        HeapFile f = createTable(20000);
+        TableStats s = new TableStats(f.getId(), 1000);
+        assertEquals(0.001 * 0.01, s.estimateSelectivity(cityAndZip(123, city(123))), 0.000005);
+        assertEquals(20000, s.distinctValues(new int[] { 1, 2 }));
+    }
+
+    /** Equalities on correlated fields select as many rows as the more selective one. */
+    @Test public void testCorrelated() throws IOException {
+        HeapFile f = createTable(20000);
+        Database.getCatalog().addColumnGroup(f.getId(), 2, 1);
+        TableStats s = new TableStats(f.getId(), 1000);
+        assertEquals(0.001, s.estimateSelectivity(cityAndZip(123, city(123))), 0.0002);
+        assertEquals(1000, s.distinctValues(new int[] { 2, 1 }), 1000 * 0.05);
+
+        // a zip code in another city is not in the table at all
+        assertEquals(0, s.estimateSelectivity(cityAndZip(123, city(456))), 0.00001);
+
+        // ranges contradicting each other
+        List<Predicate> ranges = Arrays.asList(
+                new Predicate(2, Predicate.Op.LESS_THAN, new IntField(500)),
+                new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new StringField(city(600), Type.STRING_LEN)));
+        assertEquals(0, s.estimateSelectivity(ranges), 0.0001);
+
+        // a field outside the group is still taken to be independent
+        List<Predicate> three = Arrays.asList(cityAndZip(123, city(123)).get(0), cityAndZip(123, city(123)).get(1),
+                new Predicate(3, Predicate.Op.LESS_THAN, new IntField(50)));
+        assertEquals(0.001 * 0.5, s.estimateSelectivity(three), 0.0002);
+    }
+
+    /** Statistics saved before a column group was declared are computed again. */
+    @Test public void testSavedStatsWithNewGroup() throws Exception {
+        HeapFile f = createTable(5000);
+        String name = "t" + SystemTestUtil.getUUID().replace("-", "");
+        Database.getCatalog().addTable(f, name);
+        File stats = File.createTempFile("groups", ".stats");
+        stats.delete();
+        stats.deleteOnExit();
+        TableStats.setStatsFile(stats);
+        TableStats.analyze(Collections.singletonList(name));
+
+        Database.getCatalog().addColumnGroup(f.getId(), 1, 2);
+        TableStats.setStatsFile(stats);
+        assertEquals(0.001, TableStats.getTableStats(name).estimateSelectivity(cityAndZip(123, city(123))), 0.0003);
+    }
+
+    /** Column groups may be declared in the schema file. */
+    @Test public void testLoadSchema() throws Exception {
+        File schema = File.createTempFile("schema", ".txt");
+        schema.deleteOnExit();
+        String table = "t" + SystemTestUtil.getUUID().replace("-", "");
+        new File(schema.getParent(), table + ".dat").deleteOnExit();
+        try (PrintWriter out = new PrintWriter(schema)) {
+            out.println(table + " (id int pk, city string, zip int, other int) group (city, zip) group(id, other)");
+        }
+        Database.getCatalog().loadSchema(schema.getPath());
+        List<int[]> groups = Database.getCatalog().getColumnGroups(Database.getCatalog().getTableId(table));
+        assertEquals(2, groups.size());
+        assertArrayEquals(new int[] { 1, 2 }, groups.get(0));
+        assertArrayEquals(new int[] { 0, 3 }, groups.get(1));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ColumnGroupStatsTest.class);
+    }
+}
@@ -0,0 +1,123 @@
+package simpledb.systemtest;
+
+import java.util.NoSuchElementException;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs a three-way conjunctive filter over a table that fits in the
+ * BufferPool, tuple at a time, once evaluating each Predicate through
+ * Field.compare and once with the Filter's compiled conjunction, and reports
+ * the time each takes after a warm-up run.
+ * <p>
+ * Usage: CompiledFilterBenchmark [rows] [repetitions], e.g.
+ * <code>ant runbench -Dbench=CompiledFilterBenchmark -Dbench.maxmemory=1G -Dbench.args="2000000 5"</code>
+ */
+public class CompiledFilterBenchmark {
+
+    /** Evaluates each predicate with Predicate.filter, one tuple at a time. */
+    private static class InterpretedFilter extends Operator {
+        private static final long serialVersionUID = 1L;
+        private final Predicate[] preds;
+        private OpIterator child;
+
+        InterpretedFilter(OpIterator child, Predicate... preds) {
+            this.child = child;
+            this.preds = preds;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            next:
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                for (Predicate p : preds) {
+                    if (!p.filter(t))
+                        continue next;
+                }
+                return t;
+            }
+            return null;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[] { child };
+        }
+
+        public void setChildren(OpIterator[] children) {
+            child = children[0];
+        }
+    }
+
+    private static final Predicate[] PREDICATES = {
+        new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(100)),
+        new Predicate(1, Predicate.Op.LESS_THAN_OR_EQ, new IntField(900)),
+        new Predicate(2, Predicate.Op.NOT_EQUALS, new IntField(7)),
+    };
+
+    private static double run(TransactionId tid, HeapFile table, boolean compiled) throws Exception {
+        OpIterator plan = new SeqScan(tid, table.getId(), "t");
+        if (compiled) {
+            for (Predicate p : PREDICATES)
+                plan = new Filter(p, plan);
+        } else {
+            plan = new InterpretedFilter(plan, PREDICATES);
+        }
+        long start = System.nanoTime();
+        plan.open();
+        while (plan.hasNext())
+            plan.next();
+        plan.close();
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 2000000L;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(4, rows, 1000);
+        // keep the whole table in memory, so that the filters are measured
+        Database.resetBufferPool(table.numPages() + 10);
+        TransactionId tid = new TransactionId();
+        run(tid, table, false);
+        run(tid, table, true);
+
+        double interpreted = 0, compiled = 0;
+        for (int i = 0; i < reps; i++) {
+            interpreted += run(tid, table, false);
+            compiled += run(tid, table, true);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("interpreted: %.3f s, compiled: %.3f s (%.2fx)%n",
+                interpreted / reps, compiled / reps, interpreted / compiled);
+    }
+}
@@ -0,0 +1,63 @@
+package simpledb.systemtest;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.StringField;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs an equality filter and a GROUP BY on a STRING field with few distinct
+ * values, once over a table that stores the strings and once over the same
+ * kind of table with the field dictionary-encoded, and reports the time each
+ * takes after a warm-up run. The plain table is larger than the BufferPool,
+ * so its pages are read and decoded again on every run.
+ * <p>
+ * Usage: DictionaryBenchmark [rows] [repetitions], e.g.
+ * <code>ant runbench -Dbench=DictionaryBenchmark -Dbench.maxmemory=1G -Dbench.args="200000 5"</code>
+ */
+public class DictionaryBenchmark {
+
+    private static double run(TransactionId tid, HeapFile table) throws Exception {
+        long start = System.nanoTime();
+        OpIterator filter = new Filter(new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("value 7", Type.STRING_LEN)), new SeqScan(tid, table.getId(), "t"));
+        OpIterator groups = new Aggregate(new SeqScan(tid, table.getId(), "t"), 0, 1, Aggregator.Op.SUM);
+        for (OpIterator plan : new OpIterator[] { filter, groups }) {
+            plan.open();
+            while (plan.hasNext())
+                plan.next();
+            plan.close();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 200000L;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "n", "s" });
+        HeapFile plain = SystemTestUtil.createLargeRandomHeapFile(rows, 100, td);
+        HeapFile encoded = SystemTestUtil.createLargeRandomHeapFile(rows, 100, td, new int[] { 1 });
+        System.out.printf("pages: plain %d, encoded %d%n", plain.numPages(), encoded.numPages());
+        TransactionId tid = new TransactionId();
+        run(tid, plain);
+        run(tid, encoded);
+
+        double p = 0, e = 0;
+        for (int i = 0; i < reps; i++) {
+            p += run(tid, plain);
+            e += run(tid, encoded);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("plain: %.3f s, encoded: %.3f s (%.2fx)%n", p / reps, e / reps, p / e);
+    }
+}
@@ -0,0 +1,171 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+public class DictionaryEncodingTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE },
+            new String[] { "id", "city", "note" });
+    private static final String[] CITIES = { "Boston", "Cambridge", "Somerville", "Medford" };
+
+    private static HeapFile createEncodedFile() throws IOException {
+        File f = File.createTempFile("dict", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".dict").deleteOnExit();
+        HeapFile hf = new HeapFile(f, TD, new int[] { 1 });
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static Tuple tuple(int id, String city, String note) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(city, Type.STRING_LEN));
+        t.setField(2, new StringField(note, Type.STRING_LEN));
+        return t;
+    }
+
+    private static void insert(HeapFile hf, int from, int to) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = from; i < to; i++) {
+            for (Page p : hf.insertTuple(tid, tuple(i, CITIES[i % CITIES.length], "note " + i)))
+                hf.writePage(p);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static List<Tuple> scan(OpIterator it) throws Exception {
+        List<Tuple> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    /** Encoded fields are stored as codes, and read back as their values. */
+    @Test public void testRoundTrip() throws Exception {
+        HeapFile hf = createEncodedFile();
+        insert(hf, 0, 500);
+
+        // a code takes 4 bytes rather than the 132 of a string
+        int perPage = BufferPool.getPageSize() * 8 / ((4 + 4 + Type.STRING_TYPE.getLen()) * 8 + 1);
+        assertEquals((500 + perPage - 1) / perPage, hf.numPages());
+        assertEquals(CITIES.length, hf.getDictionary().size());
+        assertEquals(CITIES.length, new StringDictionary(hf.getDictionary().getFile()).size());
+
+        // reopen the file, reading the dictionary from disk
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = new HeapFile(hf.getFile(), TD, new int[] { 1 });
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = scan(new SeqScan(tid, reopened.getId(), "t"));
+        assertEquals(500, tuples.size());
+        for (Tuple t : tuples) {
+            int id = t.getInt(0);
+            StringField city = (StringField) t.getField(1);
+            assertEquals(CITIES[id % CITIES.length], city.getValue());
+            assertSame(reopened.getDictionary(), city.getDictionary());
+            assertEquals(new StringField(CITIES[id % CITIES.length], Type.STRING_LEN), city);
+            assertEquals("note " + id, ((StringField) t.getField(2)).getValue());
+        }
+
+        // projected scans decode just the requested fields
+        tuples = scan(new SeqScan(tid, reopened.getId(), "t", new int[] { 1 }));
+        assertEquals(500, tuples.size());
+        assertEquals(1, tuples.get(0).getTupleDesc().numFields());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** New values reach the dictionary file before a page that uses their codes is written. */
+    @Test public void testValuesWrittenBeforePages() throws Exception {
+        HeapFile hf = createEncodedFile();
+        insert(hf, 0, 10);
+        StringDictionary dict = hf.getDictionary();
+        File file = dict.getFile();
+        assertEquals(CITIES.length, new StringDictionary(file).size());
+
+        TransactionId tid = new TransactionId();
+        List<Page> pages = hf.insertTuple(tid, tuple(10, "Quincy", "new city"));
+        assertEquals(CITIES.length + 1, dict.size());
+        hf.writePage(pages.get(0));
+        assertEquals(CITIES.length + 1, new StringDictionary(file).size());
+        // syncing again writes nothing
+        long length = file.length();
+        dict.sync();
+        assertEquals(length, file.length());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Filters, joins and aggregates compare encoded fields by code. */
+    @Test public void testOperators() throws Exception {
+        HeapFile hf = createEncodedFile();
+        insert(hf, 0, 200);
+        TransactionId tid = new TransactionId();
+
+        StringField boston = new StringField("Boston", Type.STRING_LEN);
+        assertEquals(50, scan(new Filter(new Predicate(1, Predicate.Op.EQUALS, boston),
+                new SeqScan(tid, hf.getId(), "t"))).size());
+        StringField boston2 = hf.getDictionary().decode(hf.getDictionary().code("Boston"));
+        StringField medford = hf.getDictionary().decode(hf.getDictionary().code("Medford"));
+        assertTrue(boston2.compare(Predicate.Op.EQUALS, boston2));
+        assertTrue(boston2.compare(Predicate.Op.NOT_EQUALS, medford));
+        assertTrue(boston2.compare(Predicate.Op.LESS_THAN, medford));
+
+        // a value added after the filter first ran
+        Filter arlington = new Filter(new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("Arlington", Type.STRING_LEN)), new SeqScan(tid, hf.getId(), "t"));
+        assertEquals(0, scan(arlington).size());
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        hf.insertTuple(tid, tuple(1000, "Arlington", "new"));
+        assertEquals(1, scan(arlington).size());
+
+        // join on the encoded field
+        List<Tuple> joined = scan(new HashEquiJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 1),
+                new SeqScan(tid, hf.getId(), "a"), new SeqScan(tid, hf.getId(), "b")));
+        assertEquals(4 * 50 * 50 + 1, joined.size());
+        for (Tuple t : joined)
+            assertEquals(t.getField(1), t.getField(4));
+
+        // group by the encoded field
+        Map<String, Integer> counts = new HashMap<>();
+        for (Tuple t : scan(new Aggregate(new SeqScan(tid, hf.getId(), "t"), 0, 1, Aggregator.Op.COUNT)))
+            counts.put(((StringField) t.getField(0)).getValue(), t.getInt(1));
+        Map<String, Integer> expected = new HashMap<>();
+        for (String city : CITIES)
+            expected.put(city, 50);
+        expected.put("Arlington", 1);
+        assertEquals(expected, counts);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Only STRING fields can be encoded. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeIntField() throws Exception {
+        File f = File.createTempFile("dict", ".dat");
+        f.deleteOnExit();
+        new HeapFile(f, TD, new int[] { 0 });
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(DictionaryEncodingTest.class);
+    }
+}
@@ -0,0 +1,278 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.Parser;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+public class ExchangeTest extends SimpleDbTestBase {
+    private static final int THREADS = 4;
+
+    @After public void resetParallelism() {
+        WorkerPool.resetParallelism();
+        LogicalPlan.resetMinParallelPages();
+        Exchange.resetExchangeMemory();
+    }
+
+    private static List<List<Integer>> drain(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        List<List<Integer>> result = new ArrayList<>();
+        while (it.hasNext())
+            result.add(SystemTestUtil.tupleToList(it.next()));
+        return result;
+    }
+
+    private static List<List<Integer>> sorted(List<List<Integer>> tuples) {
+        List<List<Integer>> copy = new ArrayList<>(tuples);
+        copy.sort(Comparator.comparing(Object::toString));
+        return copy;
+    }
+
+    @Test public void testRepartition() throws Exception {
+        validateRepartition();
+    }
+
+    /** Partitions and broadcast outputs larger than the memory budget are spilled and read back. */
+    @Test public void testExchangeSpills() throws Exception {
+        Exchange.setExchangeMemory(64 * 1024);
+        validateRepartition();
+        testBroadcast();
+    }
+
+    private void validateRepartition() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 40000, 100, null, tuples);
+        TransactionId tid = new TransactionId();
+        Repartition r = new Repartition(0, THREADS,
+                ParallelSeqScan.fragments(tid, table.getId(), "t", THREADS));
+
+        List<List<Integer>> all = new ArrayList<>();
+        Map<Integer, Integer> partitionOf = new HashMap<>();
+        for (int i = 0; i < r.numPartitions(); i++) {
+            OpIterator p = r.partition(i);
+            p.open();
+            List<List<Integer>> part = drain(p);
+            p.rewind();
+            assertEquals(part, drain(p));
+            for (List<Integer> t : part) {
+                // every value of the partitioning field is in a single partition
+                Integer other = partitionOf.put(t.get(0), i);
+                assertTrue(other == null || other == i);
+            }
+            all.addAll(part);
+        }
+        for (int i = 0; i < r.numPartitions(); i++)
+            r.partition(i).close();
+        assertEquals(sorted(tuples), sorted(all));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Setting the children of one reader replaces the fragments every reader of the exchange reads. */
+    @Test public void testSetChildren() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1000, 100, null, tuples);
+        TransactionId tid = new TransactionId();
+        Repartition r = new Repartition(0, 2, ParallelSeqScan.fragments(tid, table.getId(), "t", THREADS));
+        OpIterator[] fragments = r.partition(1).getChildren();
+        Predicate small = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(50));
+        for (int i = 0; i < fragments.length; i++)
+            fragments[i] = new Filter(small, fragments[i]);
+        r.partition(1).setChildren(fragments);
+        assertTrue(r.partition(0).getChildren()[0] instanceof Filter);
+
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : tuples) {
+            if (t.get(0) < 50)
+                expected.add(t);
+        }
+        List<List<Integer>> all = new ArrayList<>();
+        for (int i = 0; i < r.numPartitions(); i++) {
+            r.partition(i).open();
+            all.addAll(drain(r.partition(i)));
+        }
+        for (int i = 0; i < r.numPartitions(); i++)
+            r.partition(i).close();
+        assertEquals(sorted(expected), sorted(all));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testBroadcast() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 10000, null, tuples);
+        TransactionId tid = new TransactionId();
+        Broadcast b = new Broadcast(THREADS, new SeqScan(tid, table.getId(), "t"));
+        for (int i = 0; i < b.numOutputs(); i++)
+            SystemTestUtil.matchTuples(b.output(i), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testFragmentErrorIsRethrown() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1000, null, null);
+        TransactionId tid = new TransactionId();
+        OpIterator[] fragments = ParallelSeqScan.fragments(tid, table.getId(), "t", THREADS);
+        fragments[1] = new Filter(new Predicate(0, Predicate.Op.EQUALS, new IntField(0)), fragments[1]) {
+            private static final long serialVersionUID = 1L;
+            @Override protected Tuple fetchNext() throws DbException {
+                throw new DbException("broken fragment");
+            }
+        };
+        Gather g = new Gather(fragments);
+        g.open();
+        try {
+            drain(g);
+            fail("expected the fragment's exception");
+        } catch (DbException e) {
+            assertEquals("broken fragment", e.getMessage());
+        }
+        g.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private void validateParallelAggregate(int rows, int gfield, Predicate filter, Aggregator.Op... ops)
+            throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, rows, 50, null, null);
+        TransactionId tid = new TransactionId();
+        int[] afields = new int[ops.length];
+        for (int i = 0; i < ops.length; i++)
+            afields[i] = 1 + i % 2;
+        OpIterator serialInput = new SeqScan(tid, table.getId(), "t");
+        Predicate[] preds = filter == null ? new Predicate[0] : new Predicate[] { filter };
+        if (filter != null)
+            serialInput = new Filter(filter, serialInput);
+        Aggregate serial = new Aggregate(serialInput, afields, gfield, ops);
+        Aggregate parallel = Aggregate.parallel(
+                ParallelSeqScan.fragments(tid, table.getId(), "t", THREADS, preds), afields, gfield, ops);
+        assertEquals(serial.getTupleDesc(), parallel.getTupleDesc());
+        serial.open();
+        parallel.open();
+        assertEquals(sorted(drain(serial)), sorted(drain(parallel)));
+        parallel.rewind();
+        serial.rewind();
+        assertEquals(sorted(drain(serial)), sorted(drain(parallel)));
+        serial.close();
+        parallel.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testParallelAggregate() throws Exception {
+        validateParallelAggregate(30000, 0, null, Aggregator.Op.COUNT, Aggregator.Op.SUM, Aggregator.Op.AVG,
+                Aggregator.Op.MIN, Aggregator.Op.MAX);
+        validateParallelAggregate(30000, Aggregator.NO_GROUPING, null, Aggregator.Op.COUNT, Aggregator.Op.AVG,
+                Aggregator.Op.MIN);
+    }
+
+    /** The partial sums of each fragment exceed an int, and are merged without truncating them. */
+    @Test public void testParallelAggregateOfLargeSums() throws Exception {
+        TupleDesc td = Utility.getTupleDesc(2);
+        int rows = 20000;
+        HeapFile table = SystemTestUtil.createLargeHeapFile(rows, td, new int[0], i -> {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField((int) (i % 2)));
+            t.setField(1, new IntField(2000000000 - (int) i));
+            return t;
+        });
+        TransactionId tid = new TransactionId();
+        int[] afields = { 1, 1 };
+        Aggregator.Op[] ops = { Aggregator.Op.AVG, Aggregator.Op.SUM };
+        Aggregate parallel = Aggregate.parallel(
+                ParallelSeqScan.fragments(tid, table.getId(), "t", THREADS, new Predicate[0]), afields, 0, ops);
+        Aggregate serial = new Aggregate(new SeqScan(tid, table.getId(), "t"), afields, 0, ops);
+        serial.open();
+        parallel.open();
+        List<List<Integer>> result = sorted(drain(parallel));
+        assertEquals(sorted(drain(serial)), result);
+        for (int g = 0; g < 2; g++) {
+            long sum = 0;
+            for (int i = g; i < rows; i += 2)
+                sum += 2000000000 - i;
+            assertEquals(Arrays.asList(g, (int) (sum / (rows / 2)), (int) sum), result.get(g));
+        }
+        serial.close();
+        parallel.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testParallelAggregateOfEmptyFragments() throws Exception {
+        // the table is a single morsel, so all but one fragment are empty;
+        // they must not affect MIN
+        validateParallelAggregate(3000, Aggregator.NO_GROUPING,
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(7)),
+                Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG, Aggregator.Op.COUNT);
+        validateParallelAggregate(3000, Aggregator.NO_GROUPING,
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0)),
+                Aggregator.Op.MIN, Aggregator.Op.COUNT);
+    }
+
+    private List<List<Integer>> runQuery(String sql, Map<String, TableStats> stats, int threads,
+                                         Class<?> expectedRoot) throws Exception {
+        WorkerPool.setParallelism(threads);
+        TransactionId tid = new TransactionId();
+        OpIterator plan = new Parser().generateLogicalPlan(tid, sql).physicalPlan(tid, stats, false);
+        OpIterator root = ((Operator) plan).getChildren()[0];
+        if (expectedRoot != null)
+            assertTrue(root.getClass().getSimpleName(), expectedRoot.isInstance(root));
+        plan.open();
+        List<List<Integer>> result = drain(plan);
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return sorted(result);
+    }
+
+    @Test public void testParallelPlans() throws Exception {
+        LogicalPlan.setMinParallelPages(0);
+        HeapFile a = SystemTestUtil.createRandomHeapFile(2, 20000, 5000, null, null, "c");
+        HeapFile b = SystemTestUtil.createRandomHeapFile(2, 10000, 5000, null, null, "c");
+        HeapFile small = SystemTestUtil.createRandomHeapFile(2, 50, 5000, null, null, "c");
+        Database.getCatalog().addTable(a, "EXA");
+        Database.getCatalog().addTable(b, "EXB");
+        Database.getCatalog().addTable(small, "EXSMALL");
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("EXA", new TableStats(a.getId(), 1));
+        stats.put("EXB", new TableStats(b.getId(), 1));
+        stats.put("EXSMALL", new TableStats(small.getId(), 1));
+        // keep EXSMALL serial
+        LogicalPlan.setMinParallelPages(small.numPages() + 1);
+        assertTrue(a.numPages() > small.numPages() && b.numPages() > small.numPages());
+
+        String[] queries = {
+                "SELECT * FROM EXA a WHERE a.c0 < 1000;",
+                "SELECT a.c1, b.c1 FROM EXA a, EXB b WHERE a.c0 = b.c0 AND b.c1 < 2500;",
+                "SELECT a.c0, b.c1 FROM EXA a, EXSMALL b WHERE a.c0 > b.c0 AND b.c1 < 200;",
+                "SELECT a.c1, COUNT(a.c0), AVG(b.c1), MAX(b.c0) FROM EXA a, EXB b WHERE a.c0 = b.c0 GROUP BY a.c1;",
+                "SELECT COUNT(a.c0), MIN(a.c1) FROM EXA a, EXSMALL s WHERE a.c0 = s.c0;",
+                "SELECT a.c1, b.c0 FROM EXA a, EXB b WHERE a.c0 = b.c0 AND a.c1 < b.c1;",
+        };
+        Class<?>[] roots = { Gather.class, Gather.class, Gather.class, Aggregate.class, Aggregate.class,
+                Gather.class };
+        for (int q = 0; q < queries.length; q++) {
+            List<List<Integer>> serial = runQuery(queries[q], stats, 1, null);
+            assertEquals(queries[q], serial, runQuery(queries[q], stats, THREADS, roots[q]));
+        }
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ExchangeTest.class);
+    }
+}
@@ -0,0 +1,59 @@
+package simpledb.systemtest;
+
+import simpledb.common.Database;
+import simpledb.execution.OrderBy;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Sorts a table roughly ten times larger than the JVM heap with OrderBy.
+ * <p>
+ * Usage: ExternalSortBenchmark [rows] [sortMemoryBytes]. By default the table
+ * holds 10x the maximum heap size of two-column integer tuples, and OrderBy
+ * gets a quarter of the heap. Run with a small heap, e.g.
+ * <code>ant runbench -Dbench=ExternalSortBenchmark -Dbench.maxmemory=64M</code>.
+ */
+public class ExternalSortBenchmark {
+    private static final int COLUMNS = 2;
+
+    public static void main(String[] args) throws Exception {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 10 * maxHeap / (COLUMNS * 4);
+        int sortMemory = args.length > 1 ? Integer.parseInt(args[1]) : (int) (maxHeap / 4);
+
+        System.out.printf("max heap %d MB, %d rows, sort memory %d MB%n",
+                maxHeap >> 20, rows, sortMemory >> 20);
+        long start = System.currentTimeMillis();
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(COLUMNS, rows, Integer.MAX_VALUE);
+        System.out.printf("generated %d MB table in %.1f s%n", table.getFile().length() >> 20,
+                (System.currentTimeMillis() - start) / 1000.0);
+
+        TransactionId tid = new TransactionId();
+        OrderBy ob = new OrderBy(0, true, new SeqScan(tid, table.getId(), "t"), sortMemory);
+        start = System.currentTimeMillis();
+        ob.open();
+        long runsDone = System.currentTimeMillis();
+        long count = 0;
+        int prev = Integer.MIN_VALUE;
+        while (ob.hasNext()) {
+            Tuple t = ob.next();
+            int v = ((IntField) t.getField(0)).getValue();
+            if (v < prev)
+                throw new IllegalStateException("output out of order at row " + count);
+            prev = v;
+            count++;
+        }
+        long end = System.currentTimeMillis();
+        System.out.printf("run generation %.1f s (%d runs), merge %.1f s, total %.1f s%n",
+                (runsDone - start) / 1000.0, ob.numSpilledRuns(), (end - runsDone) / 1000.0,
+                (end - start) / 1000.0);
+        ob.close();
+        Database.getBufferPool().transactionComplete(tid);
+        if (count != rows)
+            throw new IllegalStateException("expected " + rows + " rows, sorted " + count);
+        System.out.printf("sorted %d rows, %.0f rows/s%n", count, count * 1000.0 / Math.max(1, end - start));
+    }
+}
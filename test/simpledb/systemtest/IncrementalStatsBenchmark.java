@@ -0,0 +1,79 @@
+package simpledb.systemtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Insert;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Bulk loads tuples into two tables, one with statistics and one without,
+ * and reports the time each load takes, and how far the estimates of the
+ * statistics kept up to date during the load are from those of statistics
+ * computed afterwards by a full scan. The loaded values lie beyond the range
+ * of the table before the load.
+ * <p>
+ * Usage: IncrementalStatsBenchmark [rows] [loaded rows], e.g.
+ * <code>ant runbench -Dbench=IncrementalStatsBenchmark -Dbench.maxmemory=1G -Dbench.args="2000 5000"</code>
+ */
+public class IncrementalStatsBenchmark {
+
+    private static double load(HeapFile table, List<Tuple> tuples) throws Exception {
+        long start = System.nanoTime();
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, new TupleIterator(table.getTupleDesc(), tuples), table.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int loaded = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        TupleDesc td = Utility.getTupleDesc(2);
+        HeapFile plain = SystemTestUtil.createLargeRandomHeapFile(2, rows, 1000);
+        HeapFile kept = SystemTestUtil.createLargeRandomHeapFile(2, rows, 1000);
+        Database.getCatalog().addTable(plain, "plain");
+        Database.getCatalog().addTable(kept, "kept");
+        // keep the statistics from being analyzed again during the load
+        TableStats.setAnalyzeThreshold(Double.MAX_VALUE);
+        TableStats stats = new TableStats(kept.getId(), 1000);
+        TableStats.setTableStats("kept", stats);
+
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < loaded; i++) {
+            Tuple t = new Tuple(td);
+            t.setInt(0, 1000 + i % 1000);
+            t.setInt(1, i % 2000);
+            tuples.add(t);
+        }
+        double p = load(plain, tuples);
+        double k = load(kept, tuples);
+        System.out.printf("load without stats: %.3f s, with stats: %.3f s%n", p, k);
+
+        TableStats scanned = new TableStats(kept.getId(), 1000);
+        System.out.printf("tuples: kept %d, scanned %d%n", stats.totalTuples(), scanned.totalTuples());
+        double error = 0;
+        for (int field = 0; field < 2; field++) {
+            for (int v = 0; v <= 2000; v += 50) {
+                IntField c = new IntField(v);
+                error = Math.max(error, Math.abs(stats.estimateSelectivity(field, Predicate.Op.LESS_THAN, c)
+                        - scanned.estimateSelectivity(field, Predicate.Op.LESS_THAN, c)));
+            }
+        }
+        System.out.printf("max < selectivity error: %.4f%n", error);
+        TableStats.resetAnalyzeThreshold();
+    }
+}
@@ -0,0 +1,67 @@
+package simpledb.systemtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.common.Database;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.execution.SeqScan;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Joins two tables on fields with few distinct values, a many-to-many join
+ * like those of fact tables, for several numbers of distinct values, and
+ * reports the actual number of joined tuples next to the estimate from the
+ * numbers of distinct values and the estimate without statistics, which
+ * assumes the join yields as many tuples as its larger side.
+ * <p>
+ * Usage: JoinCardinalityBenchmark [rows], e.g.
+ * <code>ant runbench -Dbench=JoinCardinalityBenchmark -Dbench.maxmemory=1G -Dbench.args="20000"</code>
+ */
+public class JoinCardinalityBenchmark {
+
+    private static Map<Integer, Integer> counts(TransactionId tid, HeapFile f) throws Exception {
+        Map<Integer, Integer> counts = new HashMap<>();
+        SeqScan scan = new SeqScan(tid, f.getId(), "t");
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            counts.merge(t.getInt(0), 1, Integer::sum);
+        }
+        scan.close();
+        return counts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        TransactionId tid = new TransactionId();
+        for (int ndv : new int[] { 10, 100, 1000, 10000 }) {
+            HeapFile a = SystemTestUtil.createLargeRandomHeapFile(1, rows, ndv, "c");
+            HeapFile b = SystemTestUtil.createLargeRandomHeapFile(1, rows / 2, ndv, "c");
+            Database.getCatalog().addTable(a, "a" + ndv);
+            Database.getCatalog().addTable(b, "b" + ndv);
+            Map<String, TableStats> stats = new HashMap<>();
+            stats.put("a" + ndv, new TableStats(a.getId(), 1000));
+            stats.put("b" + ndv, new TableStats(b.getId(), 1000));
+            Map<String, Integer> aliases = new HashMap<>();
+            aliases.put("a", a.getId());
+            aliases.put("b", b.getId());
+
+            long actual = 0;
+            Map<Integer, Integer> bCounts = counts(tid, b);
+            for (Map.Entry<Integer, Integer> e : counts(tid, a).entrySet())
+                actual += (long) e.getValue() * bCounts.getOrDefault(e.getKey(), 0);
+            int estimate = JoinOptimizer.estimateTableJoinCardinality(Predicate.Op.EQUALS, "a", "b",
+                    "c0", "c0", rows, rows / 2, false, false, stats, aliases);
+            int blind = JoinOptimizer.estimateTableJoinCardinality(Predicate.Op.EQUALS, "a", "b",
+                    "c0", "c0", rows, rows / 2, false, false, new HashMap<>(), aliases);
+            System.out.printf("values %5d: actual %10d, distinct-count estimate %10d, without stats %10d%n",
+                    ndv, actual, estimate, blind);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb.systemtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.common.Database;
+import simpledb.execution.OpIterator;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.TableStats;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Optimizes and runs two 15-table queries of the tables of
+ * {@link JoinOrderTest}, a star of 14 filtered tables joined with a fact
+ * table on their keys, and a chain of tables each joined with the next on
+ * its key, ordering their joins by dynamic programming and greedily, and
+ * reports the time either takes and the time the plan takes to run.
+ * <p>
+ * Usage: JoinOrderBenchmark [fact rows], e.g.
+ * <code>ant runbench -Dbench=JoinOrderBenchmark -Dbench.maxmemory=1G -Dbench.args="20000"</code>
+ */
+public class JoinOrderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Map<String, TableStats> stats = new HashMap<>();
+
+        int[] mods = new int[14];
+        StringBuilder from = new StringBuilder("f");
+        StringBuilder where = new StringBuilder("d1.c1 < 2");
+        for (int k = 1; k <= 14; k++) {
+            mods[k - 1] = 100;
+            JoinOrderTest.createTable(stats, "d" + k, 100, 10);
+            from.append(", d").append(k);
+            where.append(" AND f.c").append(k).append(" = d").append(k).append(".c0");
+            if (k % 3 == 0)
+                where.append(" AND d").append(k).append(".c1 < 5");
+        }
+        JoinOrderTest.createTable(stats, "f", rows, mods);
+        String star = "SELECT f.c0 FROM " + from + " WHERE " + where + ";";
+
+        from = new StringBuilder("t0");
+        where = new StringBuilder("t0.c0 < 100");
+        JoinOrderTest.createTable(stats, "t0", rows / 10, rows / 10);
+        for (int k = 1; k < 15; k++) {
+            JoinOrderTest.createTable(stats, "t" + k, rows / 10, rows / 10);
+            from.append(", t").append(k);
+            where.append(" AND t").append(k - 1).append(".c1 = t").append(k).append(".c0");
+        }
+        String chain = "SELECT t0.c0 FROM " + from + " WHERE " + where + ";";
+
+        for (String query : new String[] { star, chain }) {
+            for (int maxDpJoins : new int[] { JoinOptimizer.DEFAULT_MAX_DP_JOINS, 0 }) {
+                JoinOptimizer.setMaxDpJoins(maxDpJoins);
+                TransactionId tid = new TransactionId();
+                int reps = 20;
+                OpIterator plan = null;
+                for (int i = 0; i < 3; i++)
+                    JoinOrderTest.plan(stats, tid, query);
+                long start = System.nanoTime();
+                for (int i = 0; i < reps; i++)
+                    plan = JoinOrderTest.plan(stats, tid, query);
+                double optimize = (System.nanoTime() - start) / 1e6 / reps;
+                start = System.nanoTime();
+                int count = JoinOrderTest.count(plan);
+                double run = (System.nanoTime() - start) / 1e6;
+                Database.getBufferPool().transactionComplete(tid);
+                System.out.printf("%-5s %-7s optimized in %7.2f ms, %s plan, ran in %7.1f ms, %d tuples%n",
+                        query == star ? "star" : "chain", maxDpJoins > 0 ? "DPccp" : "greedy", optimize,
+                        JoinOrderTest.isBushy(plan) ? "bushy" : "left-deep", run, count);
+            }
+        }
+        JoinOptimizer.resetMaxDpJoins();
+    }
+}
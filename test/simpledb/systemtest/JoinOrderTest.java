@@ -0,0 +1,183 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.Parser;
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.QueryPlanVisualizer;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Joins are ordered into bushy plans where those are cheaper, and greedily
+ * when there are more of them than dynamic programming is allowed, and both
+ * plans compute the results of the query.
+ */
+public class JoinOrderTest extends SimpleDbTestBase {
+
+    private final Map<String, TableStats> stats = new HashMap<>();
+
+    /**
+     * Creates a table whose key c0 runs from 0 to rows - 1, and whose other
+     * fields c1, c2, ... are c0 * k % mods[k - 1].
+     */
+    static void createTable(Map<String, TableStats> stats, String name, int rows, int... mods)
+            throws IOException {
+        Type[] types = new Type[mods.length + 1];
+        String[] names = new String[mods.length + 1];
+        for (int k = 0; k <= mods.length; k++) {
+            types[k] = Type.INT_TYPE;
+            names[k] = "c" + k;
+        }
+        TupleDesc td = new TupleDesc(types, names);
+        HeapFile f = SystemTestUtil.createLargeHeapFile(rows, td, new int[0], i -> {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField((int) i));
+            for (int k = 1; k <= mods.length; k++)
+                t.setField(k, new IntField((int) (i * k % mods[k - 1])));
+            return t;
+        });
+        Database.getCatalog().addTable(f, name, "c0");
+        stats.put(name, new TableStats(f.getId(), 1000));
+    }
+
+    /** @return the number of tuples the plan yields */
+    static int count(OpIterator plan) throws Exception {
+        int count = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        return count;
+    }
+
+    /** @return the plan of the query, optimized with the specified statistics */
+    static OpIterator plan(Map<String, TableStats> stats, TransactionId tid, String query) throws Exception {
+        return new Parser().generateLogicalPlan(tid, query).physicalPlan(tid, stats, false);
+    }
+
+    /** @return the plan of the query, after checking that it yields the expected number of tuples */
+    private OpIterator run(String query, int expected) throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator plan = plan(stats, tid, query);
+        assertEquals(expected, count(plan));
+        Database.getBufferPool().transactionComplete(tid);
+        return plan;
+    }
+
+    /** @return the number of joins in the plan */
+    static int joins(OpIterator plan) {
+        int joins = plan instanceof Join || plan instanceof HashEquiJoin ? 1 : 0;
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren())
+                joins += joins(child);
+        }
+        return joins;
+    }
+
+    /** @return whether a join in the plan joins the results of two other joins */
+    static boolean isBushy(OpIterator plan) {
+        if (!(plan instanceof Operator))
+            return false;
+        OpIterator[] children = ((Operator) plan).getChildren();
+        if ((plan instanceof Join || plan instanceof HashEquiJoin) && joins(children[0]) > 0
+                && joins(children[1]) > 0)
+            return true;
+        for (OpIterator child : children) {
+            if (isBushy(child))
+                return true;
+        }
+        return false;
+    }
+
+    @After public void tearDown() {
+        JoinOptimizer.resetMaxDpJoins();
+    }
+
+    /**
+     * Each of two large tables is joined with a small one on its key first,
+     * rather than with each other on a field of only 10 values.
+     */
+    @Test public void testBushy() throws Exception {
+        createTable(stats, "a", 10, 10);
+        createTable(stats, "b", 5000, 10);
+        createTable(stats, "c", 5000, 10);
+        createTable(stats, "d", 10, 10);
+        OpIterator plan = run("SELECT a.c0, d.c0 FROM a, b, c, d "
+                + "WHERE a.c0 = b.c0 AND b.c1 = c.c1 AND c.c0 = d.c0;", 10);
+        assertEquals(3, joins(plan));
+        assertTrue(isBushy(plan));
+    }
+
+    /** A star of 14 tables around a fact table is ordered by either algorithm. */
+    @Test public void testStar() throws Exception {
+        int[] mods = new int[14];
+        StringBuilder from = new StringBuilder("f");
+        StringBuilder where = new StringBuilder("d1.c1 < 2");
+        for (int k = 1; k <= 14; k++) {
+            mods[k - 1] = 20;
+            createTable(stats, "d" + k, 20, 4);
+            from.append(", d").append(k);
+            where.append(" AND f.c").append(k).append(" = d").append(k).append(".c0");
+        }
+        createTable(stats, "f", 500, mods);
+        String query = "SELECT f.c0 FROM " + from + " WHERE " + where + ";";
+
+        // d1.c1 = d1.c0 % 4 < 2 for f.c1 = f.c0 % 20 in 0, 1, 4, 5, ..., 17
+        int expected = 0;
+        for (int i = 0; i < 500; i++) {
+            if (i % 20 % 4 < 2)
+                expected++;
+        }
+        assertEquals(14, joins(run(query, expected)));
+        JoinOptimizer.setMaxDpJoins(0);
+        assertEquals(14, joins(run(query, expected)));
+    }
+
+    /**
+     * A join between two tables another join already joined, in a cycle of
+     * joins or on a second field, filters the joined tuples.
+     */
+    @Test public void testCycle() throws Exception {
+        createTable(stats, "a", 20, 5);
+        createTable(stats, "b", 100, 5);
+        createTable(stats, "c", 100, 7);
+        // c0 < 20 and c0 % 5 == c0 % 7 for c0 = 0 to 4
+        String triangle = "SELECT a.c0 FROM a, b, c WHERE a.c0 = b.c0 AND b.c0 = c.c0 AND a.c1 = c.c1;";
+        String twoFields = "SELECT a.c0 FROM a, c WHERE a.c0 = c.c0 AND a.c1 = c.c1;";
+        for (int maxDpJoins : new int[] { JoinOptimizer.DEFAULT_MAX_DP_JOINS, 0 }) {
+            JoinOptimizer.setMaxDpJoins(maxDpJoins);
+            OpIterator plan = run(triangle, 5);
+            assertEquals(2, joins(plan));
+            new QueryPlanVisualizer().printQueryPlanTree(plan, System.out);
+            assertEquals(1, joins(run(twoFields, 5)));
+        }
+        // c0 % 5 < c0 % 7 for 11 of c0 = 0 to 19
+        assertEquals(11, count(plan(stats, new TransactionId(),
+                "SELECT a.c0 FROM a, c WHERE a.c0 = c.c0 AND a.c1 < c.c1;")));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(JoinOrderTest.class);
+    }
+}
@@ -0,0 +1,115 @@
+package simpledb.systemtest;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Joins two tables that fit in the BufferPool on an INT field with many
+ * matches per key and sums a field of each joined tuple, once copying every
+ * joined tuple field by field into a new Tuple, as the joins used to, and
+ * once reading the joined view directly, and reports the time each takes
+ * after a warm-up run.
+ * <p>
+ * Usage: JoinTupleBenchmark [rows] [repetitions], e.g.
+ * <code>ant runbench -Dbench=JoinTupleBenchmark -Dbench.maxmemory=1G -Dbench.args="20000 5"</code>
+ */
+public class JoinTupleBenchmark {
+
+    /** Copies each tuple of its child into a new Tuple, boxing every field. */
+    private static class Copy extends Operator {
+        private static final long serialVersionUID = 1L;
+        private OpIterator child;
+
+        Copy(OpIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            if (!child.hasNext())
+                return null;
+            Tuple t = child.next();
+            Tuple copy = new Tuple(t.getTupleDesc());
+            for (int i = 0; i < t.getTupleDesc().numFields(); i++)
+                copy.setField(i, t.getField(i));
+            return copy;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[] { child };
+        }
+
+        public void setChildren(OpIterator[] children) {
+            child = children[0];
+        }
+    }
+
+    private static double run(TransactionId tid, HeapFile a, HeapFile b, boolean copy) throws Exception {
+        OpIterator plan = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, a.getId(), "a"), new SeqScan(tid, b.getId(), "b"));
+        if (copy)
+            plan = new Copy(plan);
+        long start = System.nanoTime();
+        long sum = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            sum += t.getInt(1) + t.getInt(5);
+        }
+        plan.close();
+        // use the sum, so that reading the fields is not optimized away
+        if (sum == 42)
+            System.out.println();
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 20000L;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        // about 100 matches per key
+        HeapFile a = SystemTestUtil.createLargeRandomHeapFile(4, rows, (int) (rows / 100));
+        HeapFile b = SystemTestUtil.createLargeRandomHeapFile(4, rows, (int) (rows / 100));
+        Database.resetBufferPool(a.numPages() + b.numPages() + 10);
+        TransactionId tid = new TransactionId();
+        run(tid, a, b, true);
+        run(tid, a, b, false);
+
+        double copied = 0, joined = 0;
+        for (int i = 0; i < reps; i++) {
+            copied += run(tid, a, b, true);
+            joined += run(tid, a, b, false);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("copied: %.3f s, joined view: %.3f s (%.2fx)%n",
+                copied / reps, joined / reps, copied / joined);
+    }
+}
@@ -0,0 +1,110 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.OrderBy;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+public class OrderByTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+    private static final int COLUMNS = 2;
+
+    private void validateOrderBy(int memoryBudget, boolean asc, boolean expectSpill)
+            throws IOException, DbException, TransactionAbortedException {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, null, tuples);
+
+        List<List<Integer>> expected = new ArrayList<>(tuples);
+        Comparator<List<Integer>> byFirst = Comparator.comparing(t -> t.get(0));
+        expected.sort(asc ? byFirst : byFirst.reversed());
+
+        TransactionId tid = new TransactionId();
+        OrderBy ob = new OrderBy(0, asc, new SeqScan(tid, table.getId(), ""), memoryBudget);
+        ob.open();
+        assertEquals(expectSpill, ob.numSpilledRuns() > 0);
+        for (int pass = 0; pass < 2; pass++) {
+            List<List<Integer>> actual = new ArrayList<>();
+            while (ob.hasNext())
+                actual.add(SystemTestUtil.tupleToList(ob.next()));
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < actual.size(); i++)
+                assertEquals(expected.get(i).get(0), actual.get(i).get(0));
+            // same multiset of tuples, not just the same keys
+            actual.sort(Comparator.comparing(Object::toString));
+            List<List<Integer>> sortedExpected = new ArrayList<>(tuples);
+            sortedExpected.sort(Comparator.comparing(Object::toString));
+            assertEquals(sortedExpected, actual);
+            ob.rewind();
+        }
+        ob.close();
+        assertEquals(0, ob.numSpilledRuns());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testInMemorySort() throws Exception {
+        validateOrderBy(OrderBy.DEFAULT_SORT_MEMORY, true, false);
+    }
+
+    @Test public void testExternalSort() throws Exception {
+        // a few hundred tuples per run
+        validateOrderBy(32 * 1024, true, true);
+    }
+
+    @Test public void testExternalSortDescending() throws Exception {
+        validateOrderBy(32 * 1024, false, true);
+    }
+
+    @Test public void testExternalSortMultiPassMerge() throws Exception {
+        // the budget only holds 2 run blocks, so runs are merged in groups
+        validateOrderBy(2 * BufferPool.getPageSize(), true, true);
+    }
+
+    private void validateMultiKeyOrderBy(int memoryBudget)
+            throws IOException, DbException, TransactionAbortedException {
+        // few distinct values, so that the later keys break many ties
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, ROWS, 8, null, tuples);
+
+        List<List<Integer>> expected = new ArrayList<>(tuples);
+        expected.sort(Comparator.<List<Integer>, Integer>comparing(t -> t.get(1)).reversed()
+                .thenComparing(t -> t.get(0))
+                .thenComparing(Comparator.<List<Integer>, Integer>comparing(t -> t.get(2)).reversed()));
+
+        TransactionId tid = new TransactionId();
+        OrderBy ob = new OrderBy(new int[] { 1, 0, 2 }, new boolean[] { false, true, false },
+                new SeqScan(tid, table.getId(), ""), memoryBudget);
+        ob.open();
+        List<List<Integer>> actual = new ArrayList<>();
+        while (ob.hasNext())
+            actual.add(SystemTestUtil.tupleToList(ob.next()));
+        assertEquals(expected, actual);
+        ob.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testMultiKeySort() throws Exception {
+        validateMultiKeyOrderBy(OrderBy.DEFAULT_SORT_MEMORY);
+    }
+
+    @Test public void testMultiKeyExternalSort() throws Exception {
+        validateMultiKeyOrderBy(32 * 1024);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(OrderByTest.class);
+    }
+}
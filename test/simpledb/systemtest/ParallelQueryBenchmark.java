@@ -0,0 +1,59 @@
+package simpledb.systemtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.Parser;
+import simpledb.common.Database;
+import simpledb.execution.OpIterator;
+import simpledb.execution.WorkerPool;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Plans and runs a join followed by a GROUP BY with 1, 2, 4 and 8 worker
+ * threads and reports the time taken by each; with more than one thread the
+ * planner repartitions both join inputs and aggregates in parallel.
+ * <p>
+ * Usage: ParallelQueryBenchmark [rows], e.g.
+ * <code>ant runbench -Dbench=ParallelQueryBenchmark -Dbench.maxmemory=1G -Dbench.args="2000000"</code>
+ */
+public class ParallelQueryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 2000000L;
+
+        HeapFile a = SystemTestUtil.createLargeRandomHeapFile(2, rows, (int) rows, "c");
+        HeapFile b = SystemTestUtil.createLargeRandomHeapFile(2, rows / 2, (int) rows, "c");
+        Database.getCatalog().addTable(a, "BENCH_A");
+        Database.getCatalog().addTable(b, "BENCH_B");
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("BENCH_A", new TableStats(a.getId(), 1));
+        stats.put("BENCH_B", new TableStats(b.getId(), 1));
+        String sql = "SELECT a.c1, COUNT(b.c1), SUM(b.c1) FROM BENCH_A a, BENCH_B b"
+                + " WHERE a.c0 = b.c0 AND a.c1 < " + rows / 2 + " GROUP BY a.c1;";
+
+        int[] threadCounts = { 1, 2, 4, 8 };
+        double base = 0;
+        for (int threads : threadCounts) {
+            WorkerPool.setParallelism(threads);
+            TransactionId tid = new TransactionId();
+            OpIterator plan = new Parser().generateLogicalPlan(tid, sql).physicalPlan(tid, stats, false);
+            long start = System.currentTimeMillis();
+            plan.open();
+            long count = 0;
+            while (plan.hasNext()) {
+                plan.next();
+                count++;
+            }
+            plan.close();
+            double secs = (System.currentTimeMillis() - start) / 1000.0;
+            Database.getBufferPool().transactionComplete(tid);
+            if (threads == 1)
+                base = secs;
+            System.out.printf("%d threads: %d groups in %.2f s (%.2fx)%n", threads, count, secs,
+                    base / secs);
+        }
+    }
+}
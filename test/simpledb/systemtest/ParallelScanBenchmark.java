@@ -0,0 +1,52 @@
+package simpledb.systemtest;
+
+import simpledb.common.Database;
+import simpledb.execution.OpIterator;
+import simpledb.execution.ParallelSeqScan;
+import simpledb.execution.Predicate;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs a selective filtered scan over a large table with 1, 2, 4 and 8
+ * worker threads and reports the time taken by each. Every run reads the
+ * table from disk, because the table is much larger than the BufferPool.
+ * <p>
+ * Usage: ParallelScanBenchmark [rows], e.g.
+ * <code>ant runbench -Dbench=ParallelScanBenchmark -Dbench.maxmemory=256M -Dbench.args="20000000"</code>
+ */
+public class ParallelScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 20000000L;
+
+        long start = System.currentTimeMillis();
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(4, rows, 1000000);
+        System.out.printf("generated %d rows (%d MB) in %.1f s%n", rows,
+                table.getFile().length() >> 20, (System.currentTimeMillis() - start) / 1000.0);
+
+        int[] threadCounts = { 1, 2, 4, 8 };
+        double base = 0;
+        for (int threads : threadCounts) {
+            TransactionId tid = new TransactionId();
+            OpIterator scan = new ParallelSeqScan(tid, table.getId(), "t", threads,
+                    new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10000)),
+                    new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(500000)));
+            start = System.currentTimeMillis();
+            scan.open();
+            long count = 0;
+            while (scan.hasNext()) {
+                scan.next();
+                count++;
+            }
+            scan.close();
+            double secs = (System.currentTimeMillis() - start) / 1000.0;
+            Database.getBufferPool().transactionComplete(tid);
+            if (threads == 1)
+                base = secs;
+            System.out.printf("%d threads: %d rows in %.2f s (%.2fx)%n", threads, count, secs,
+                    base / secs);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.ParallelSeqScan;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.execution.Predicate;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+public class ParallelSeqScanTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 3;
+
+    private void validateScan(int rows, int threads)
+            throws IOException, DbException, TransactionAbortedException {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, rows, null, tuples);
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(new ParallelSeqScan(tid, table.getId(), "t", threads), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testScan() throws Exception {
+        int[] threadCounts = { 1, 2, 4, 8 };
+        for (int threads : threadCounts)
+            validateScan(2000, threads);
+    }
+
+    @Test public void testEmptyAndSmallTables() throws Exception {
+        validateScan(0, 4);
+        validateScan(1, 4);
+    }
+
+    @Test public void testFilter() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 5000, null, tuples);
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : tuples) {
+            if (t.get(0) < 100 && t.get(1) >= 500)
+                expected.add(t);
+        }
+
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 4,
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100)),
+                new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(500)));
+        SystemTestUtil.matchTuples(scan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testRewindAndEarlyClose() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 20000, null, null);
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 4);
+        scan.open();
+        // stop part way through while the workers are still producing
+        for (int i = 0; i < 100; i++)
+            scan.next();
+        scan.rewind();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        assertEquals(20000, count);
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testTupleDesc() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 10, null, null);
+        TransactionId tid = new TransactionId();
+        assertEquals(new SeqScan(tid, table.getId(), "t").getTupleDesc(),
+                new ParallelSeqScan(tid, table.getId(), "t", 2).getTupleDesc());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresHeapFile() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        BTreeFile bf = new BTreeFile(f, 0, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(bf, "pscan_btree");
+        new ParallelSeqScan(new TransactionId(), bf.getId(), "b", 2);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ParallelSeqScanTest.class);
+    }
+}
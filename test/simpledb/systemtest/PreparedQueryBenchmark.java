@@ -0,0 +1,65 @@
+package simpledb.systemtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.Parser;
+import simpledb.PreparedQuery;
+import simpledb.common.Database;
+import simpledb.execution.OpIterator;
+import simpledb.optimizer.TableStats;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs a short query, a lookup of one key of a fact table joined with some
+ * of the small tables of {@link JoinOrderTest}, many times with a different
+ * key each time, parsing and optimizing it each time and as a prepared query
+ * whose plan is cached, and reports the time a run takes either way.
+ * <p>
+ * Usage: PreparedQueryBenchmark [tables] [runs], e.g.
+ * <code>ant runbench -Dbench=PreparedQueryBenchmark -Dbench.args="8 2000"</code>
+ */
+public class PreparedQueryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tables = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Map<String, TableStats> stats = new HashMap<>();
+
+        int[] mods = new int[tables];
+        StringBuilder from = new StringBuilder("f");
+        StringBuilder where = new StringBuilder("f.c0 = ");
+        for (int k = 1; k <= tables; k++) {
+            mods[k - 1] = 10;
+            JoinOrderTest.createTable(stats, "d" + k, 10, 10);
+            from.append(", d").append(k);
+            where.append(" AND f.c").append(k).append(" = d").append(k).append(".c0");
+        }
+        JoinOrderTest.createTable(stats, "f", 1000, mods);
+        for (Map.Entry<String, TableStats> e : stats.entrySet())
+            TableStats.setTableStats(e.getKey(), e.getValue());
+        String select = "SELECT f.c0 FROM " + from + " WHERE ";
+
+        PreparedQuery prepared = new Parser().prepare(select + where.toString().replaceFirst("= ", "= ?") + ";");
+        for (boolean prepare : new boolean[] { false, true, false, true }) {
+            long start = System.nanoTime();
+            int count = 0;
+            for (int i = 0; i < runs; i++) {
+                TransactionId tid = new TransactionId();
+                OpIterator plan;
+                if (prepare) {
+                    plan = prepared.bind(tid, i % 1000).getPhysicalPlan();
+                } else {
+                    String query = select + where.toString().replaceFirst("= ", "= " + (i % 1000)) + ";";
+                    plan = new Parser().generateLogicalPlan(tid, query).physicalPlan(tid,
+                            TableStats.getStatsMap(), false);
+                }
+                count += JoinOrderTest.count(plan);
+                Database.getBufferPool().transactionComplete(tid);
+            }
+            double us = (System.nanoTime() - start) / 1e3 / runs;
+            System.out.printf("%-8s %d tables: %8.1f us per run, %d tuples%n",
+                    prepare ? "prepared" : "parsed", tables + 1, us, count);
+        }
+    }
+}
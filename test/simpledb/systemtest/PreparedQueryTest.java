@@ -0,0 +1,171 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.Parser;
+import simpledb.ParsingException;
+import simpledb.PreparedQuery;
+import simpledb.common.Database;
+import simpledb.execution.Query;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.QueryPlanCache;
+import simpledb.optimizer.TableStats;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Prepared queries bind their parameters each time they run, and the plans
+ * of queries run again are taken from the QueryPlanCache until the catalog
+ * or the statistics change.
+ */
+public class PreparedQueryTest extends SimpleDbTestBase {
+
+    private static final String QUERY = "SELECT a.c0 FROM a, b WHERE a.c0 = b.c0 AND b.c1 = ? AND a.c0 < ?;";
+
+    /** Creates table a of 100 rows and b of 1000 rows, with statistics, as {@link JoinOrderTest} does. */
+    private static void createTables() throws IOException {
+        Map<String, TableStats> stats = new HashMap<>();
+        JoinOrderTest.createTable(stats, "a", 100, 10);
+        JoinOrderTest.createTable(stats, "b", 1000, 10);
+        for (Map.Entry<String, TableStats> e : stats.entrySet())
+            TableStats.setTableStats(e.getKey(), e.getValue());
+    }
+
+    /** @return the number of rows of a with c0 * 1 % 10 == c1 and c0 < max */
+    private static int expected(int c1, int max) {
+        int expected = 0;
+        for (int i = 0; i < Math.min(100, max); i++) {
+            if (i % 10 == c1)
+                expected++;
+        }
+        return expected;
+    }
+
+    private static int run(PreparedQuery q, Object... params) throws Exception {
+        TransactionId tid = new TransactionId();
+        Query query = q.bind(tid, params);
+        int count = JoinOrderTest.count(query.getPhysicalPlan());
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+
+    private static LogicalPlan plan(PreparedQuery q, Object... params) throws Exception {
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = q.bind(tid, params).getLogicalPlan();
+        Database.getBufferPool().transactionComplete(tid);
+        return lp;
+    }
+
+    @After public void tearDown() {
+        QueryPlanCache.clear();
+        QueryPlanCache.resetCapacity();
+    }
+
+    /** A prepared query is optimized once and runs with the values bound each time. */
+    @Test public void testParameters() throws Exception {
+        createTables();
+        PreparedQuery q = new Parser().prepare(QUERY);
+        assertEquals(2, q.numParameters());
+        assertEquals(1, QueryPlanCache.size());
+        LogicalPlan lp = QueryPlanCache.get(q.getText());
+        assertNotNull(lp);
+
+        assertEquals(expected(3, 50), run(q, 3, 50));
+        assertEquals(1, QueryPlanCache.size());
+        assertSame(lp, plan(q, 3, 50));
+        assertEquals(expected(7, 80), run(q, 7, 80));
+        assertEquals(expected(0, 1000), run(q, 0, 1000));
+        assertSame(lp, plan(q, 1, 1));
+
+        // the same query prepared again shares the plan
+        assertSame(lp, plan(new Parser().prepare("SELECT a.c0 FROM a, b\n WHERE a.c0 = b.c0\t"
+                + "AND b.c1 = ?   AND a.c0 < ?"), 5, 5));
+    }
+
+    @Test(expected = ParsingException.class) public void testWrongParameters() throws Exception {
+        createTables();
+        new Parser().prepare(QUERY).bind(new TransactionId(), 3);
+    }
+
+    @Test(expected = ParsingException.class) public void testNotAnInteger() throws Exception {
+        createTables();
+        new Parser().prepare(QUERY).bind(new TransactionId(), 3, "x");
+    }
+
+    @Test(expected = ParsingException.class) public void testSubquery() throws Exception {
+        createTables();
+        new Parser().prepare("SELECT a.c0 FROM a WHERE a.c0 = (SELECT b.c0 FROM b WHERE b.c0 = 1);");
+    }
+
+    /** A plan is optimized again after the statistics or the catalog change. */
+    @Test public void testInvalidation() throws Exception {
+        createTables();
+        PreparedQuery q = new Parser().prepare(QUERY);
+        LogicalPlan lp = plan(q, 3, 50);
+        assertTrue(lp.isCurrent());
+
+        TableStats.setTableStats("b", TableStats.getTableStats("b"));
+        assertFalse(lp.isCurrent());
+        assertNull(QueryPlanCache.get(q.getText()));
+        LogicalPlan replanned = plan(q, 3, 50);
+        assertNotSame(lp, replanned);
+        assertSame(replanned, plan(q, 3, 50));
+
+        Database.getCatalog().addColumnGroup(Database.getCatalog().getTableId("b"), 0, 1);
+        assertFalse(replanned.isCurrent());
+        assertNotSame(replanned, plan(q, 3, 50));
+        assertEquals(expected(3, 50), run(q, 3, 50));
+    }
+
+    /** Statements run again are neither parsed nor optimized again. */
+    @Test public void testStatements() throws Exception {
+        createTables();
+        Parser p = new Parser();
+        p.processNextStatement("SELECT a.c0 FROM a, b WHERE a.c0 = b.c0 AND b.c1 = 3;");
+        LogicalPlan lp = QueryPlanCache.get("SELECT a.c0 FROM a, b WHERE a.c0 = b.c0 AND b.c1 = 3");
+        assertNotNull(lp);
+        p.processNextStatement("  SELECT a.c0 FROM a, b WHERE a.c0 = b.c0 AND b.c1 = 3 ;\n");
+        assertEquals(1, QueryPlanCache.size());
+        assertSame(lp, QueryPlanCache.get("SELECT a.c0 FROM a, b WHERE a.c0 = b.c0 AND b.c1 = 3"));
+
+        // a different constant is a different query
+        p.processNextStatement("SELECT a.c0 FROM a, b WHERE a.c0 = b.c0 AND b.c1 = 4;");
+        assertEquals(2, QueryPlanCache.size());
+        // string constants keep their spaces
+        assertEquals("SELECT * FROM t WHERE t.s = 'a  b'",
+                QueryPlanCache.normalize("SELECT *  FROM t\nWHERE t.s = 'a  b' ;"));
+    }
+
+    /** The least recently used plans are dropped when the cache is full. */
+    @Test public void testCapacity() throws Exception {
+        createTables();
+        QueryPlanCache.setCapacity(2);
+        PreparedQuery q1 = new Parser().prepare("SELECT a.c0 FROM a WHERE a.c1 = ?;");
+        PreparedQuery q2 = new Parser().prepare("SELECT b.c0 FROM b WHERE b.c1 = ?;");
+        PreparedQuery q3 = new Parser().prepare(QUERY);
+        assertEquals(10, run(q1, 1));
+        assertEquals(100, run(q2, 1));
+        assertEquals(10, run(q1, 2));
+        assertEquals(expected(1, 100), run(q3, 1, 100));
+        assertEquals(2, QueryPlanCache.size());
+        assertNotNull(QueryPlanCache.get(q1.getText()));
+        assertNull(QueryPlanCache.get(q2.getText()));
+        assertEquals(100, run(q2, 1));
+
+        QueryPlanCache.setCapacity(0);
+        assertEquals(0, QueryPlanCache.size());
+        assertEquals(10, run(q1, 1));
+        assertEquals(0, QueryPlanCache.size());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PreparedQueryTest.class);
+    }
+}
@@ -0,0 +1,76 @@
+package simpledb.systemtest;
+
+import java.util.Arrays;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.Project;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Joins two tables with two INT and three STRING fields on an INT field and
+ * returns one INT field of each, once scanning every field of both tables
+ * and projecting at the top of the plan, and once scanning just the three
+ * fields the query needs, and reports the time each takes after a warm-up
+ * run. The tables are larger than the BufferPool, so pages are decoded
+ * again on every run.
+ * <p>
+ * Usage: ProjectionBenchmark [rows] [repetitions], e.g.
+ * <code>ant runbench -Dbench=ProjectionBenchmark -Dbench.maxmemory=1G -Dbench.args="100000 5"</code>
+ */
+public class ProjectionBenchmark {
+
+    private static double run(TransactionId tid, HeapFile a, HeapFile b, boolean narrow) throws Exception {
+        OpIterator join;
+        if (narrow) {
+            join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                    new SeqScan(tid, a.getId(), "a", new int[] { 0, 1 }),
+                    new SeqScan(tid, b.getId(), "b", new int[] { 0 }));
+        } else {
+            join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                    new SeqScan(tid, a.getId(), "a"), new SeqScan(tid, b.getId(), "b"));
+        }
+        TupleDesc td = join.getTupleDesc();
+        int f1 = td.fieldNameToIndex("a.f1");
+        int f2 = td.fieldNameToIndex("b.f0");
+        OpIterator plan = new Project(Arrays.asList(f1, f2), new Type[] { Type.INT_TYPE, Type.INT_TYPE }, join);
+        long start = System.nanoTime();
+        plan.open();
+        while (plan.hasNext())
+            plan.next();
+        plan.close();
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 100000L;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        TupleDesc td = new TupleDesc(
+                new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE, Type.STRING_TYPE },
+                new String[] { "f0", "f1", "s0", "s1", "s2" });
+        HeapFile a = SystemTestUtil.createLargeRandomHeapFile(rows, (int) rows, td);
+        HeapFile b = SystemTestUtil.createLargeRandomHeapFile(rows, (int) rows, td);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        run(tid, a, b, false);
+        run(tid, a, b, true);
+
+        double wide = 0, narrow = 0;
+        for (int i = 0; i < reps; i++) {
+            wide += run(tid, a, b, false);
+            narrow += run(tid, a, b, true);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("all fields scanned: %.3f s, needed fields scanned: %.3f s (%.2fx)%n",
+                wide / reps, narrow / reps, wide / narrow);
+    }
+}
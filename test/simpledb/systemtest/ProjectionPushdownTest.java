@@ -0,0 +1,195 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import simpledb.Parser;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+public class ProjectionPushdownTest extends SimpleDbTestBase {
+
+    private static List<List<Integer>> project(List<List<Integer>> tuples, int... columns) {
+        List<List<Integer>> result = new ArrayList<>();
+        for (List<Integer> t : tuples) {
+            List<Integer> p = new ArrayList<>();
+            for (int c : columns)
+                p.add(t.get(c));
+            result.add(p);
+        }
+        return result;
+    }
+
+    private static void findScans(OpIterator node, List<SeqScan> scans) {
+        if (node instanceof SeqScan) {
+            scans.add((SeqScan) node);
+        } else if (node instanceof Operator) {
+            for (OpIterator child : ((Operator) node).getChildren())
+                findScans(child, scans);
+        }
+    }
+
+    /** Scans of a HeapFile return the requested fields, decoded or not. */
+    @Test public void testProjectedHeapScan() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(4, 3000, 1000, null, tuples, "c");
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, f.getId(), "t", new int[] { 3, 1 });
+        assertEquals(2, scan.getTupleDesc().numFields());
+        assertEquals("t.c3", scan.getTupleDesc().getFieldName(0));
+        assertEquals("t.c1", scan.getTupleDesc().getFieldName(1));
+        assertEquals(3, scan.getColumn(0));
+
+        // from the page data, then from the tuples decoded by a full scan
+        SystemTestUtil.matchTuples(scan, project(tuples, 3, 1));
+        SystemTestUtil.matchTuples(f, tid, tuples);
+        SystemTestUtil.matchTuples(scan, project(tuples, 3, 1));
+
+        // a predicate pushed into a projected scan is over the projected fields
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : project(tuples, 3, 1)) {
+            if (t.get(0) < 300)
+                expected.add(t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(50);
+        SystemTestUtil.matchTuples(new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(300)),
+                new SeqScan(tid, f.getId(), "t", new int[] { 3, 1 })), expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** A file that is not a HeapFile, reading the pages of one. */
+    private static class OtherFile implements DbFile {
+        private final HeapFile f;
+
+        OtherFile(HeapFile f) {
+            this.f = f;
+        }
+
+        public Page readPage(PageId id) {
+            return f.readPage(id);
+        }
+
+        public void writePage(Page p) throws IOException {
+            f.writePage(p);
+        }
+
+        public List<Page> insertTuple(TransactionId tid, Tuple t) {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<Page> deleteTuple(TransactionId tid, Tuple t) {
+            throw new UnsupportedOperationException();
+        }
+
+        public DbFileIterator iterator(TransactionId tid) {
+            return f.iterator(tid);
+        }
+
+        public int getId() {
+            return f.getId();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return f.getTupleDesc();
+        }
+    }
+
+    /** Scans of other files project the tuples themselves. */
+    @Test public void testProjectedOtherScan() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, 2000, null, tuples);
+        Database.getCatalog().addTable(new OtherFile(f), SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, f.getId(), "t", new int[] { 2, 1 });
+        assertFalse(scan.pushPredicate(CompiledPredicate.compile(scan.getTupleDesc(),
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(1)))));
+        SystemTestUtil.matchTuples(scan, project(tuples, 2, 1));
+        Database.getBufferPool().transactionComplete(tid);
+
+        File index = File.createTempFile("table_index", ".dat");
+        index.deleteOnExit();
+        BTreeFile bf = new BTreeFile(index, 1, Utility.getTupleDesc(3));
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+        assertTrue(LogicalPlan.isOrderedOn(new SeqScan(tid, bf.getId(), "b", new int[] { 2, 1 }), 1));
+        assertFalse(LogicalPlan.isOrderedOn(new SeqScan(tid, bf.getId(), "b", new int[] { 2, 1 }), 0));
+    }
+
+    /** Parallel scans return the requested fields too. */
+    @Test public void testProjectedMorselScan() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(4, 20000, 1000, null, tuples, "c");
+        TransactionId tid = new TransactionId();
+        OpIterator scan = new Gather(ParallelSeqScan.fragments(tid, f.getId(), "t", new int[] { 2 }, 3,
+                new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(500))));
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : project(tuples, 2)) {
+            if (t.get(0) >= 500)
+                expected.add(t);
+        }
+        SystemTestUtil.matchTuples(scan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The planner scans only the fields a query refers to. */
+    @Test public void testPlannerProjectsScans() throws Exception {
+        List<List<Integer>> aTuples = new ArrayList<>();
+        List<List<Integer>> bTuples = new ArrayList<>();
+        HeapFile a = SystemTestUtil.createRandomHeapFile(4, 500, 100, null, aTuples, "c");
+        HeapFile b = SystemTestUtil.createRandomHeapFile(4, 300, 100, null, bTuples, "c");
+        Database.getCatalog().addTable(a, "PROJA");
+        Database.getCatalog().addTable(b, "PROJB");
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("PROJA", new TableStats(a.getId(), 1));
+        stats.put("PROJB", new TableStats(b.getId(), 1));
+
+        TransactionId tid = new TransactionId();
+        OpIterator plan = new Parser().generateLogicalPlan(tid,
+                "SELECT x.c1, y.c3 FROM PROJA x, PROJB y WHERE x.c0 = y.c0 AND x.c2 < 50;")
+                .physicalPlan(tid, stats, false);
+        List<SeqScan> scans = new ArrayList<>();
+        findScans(plan, scans);
+        assertEquals(2, scans.size());
+        scans.sort(Comparator.comparing(SeqScan::getAlias));
+        assertArrayEquals(new int[] { 0, 1, 2 }, scans.get(0).getColumns());
+        assertArrayEquals(new int[] { 0, 3 }, scans.get(1).getColumns());
+
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> x : aTuples) {
+            for (List<Integer> y : bTuples) {
+                if (x.get(0).equals(y.get(0)) && x.get(2) < 50)
+                    expected.add(Arrays.asList(x.get(1), y.get(3)));
+            }
+        }
+        SystemTestUtil.matchTuples(plan, expected);
+
+        // every field is needed for SELECT *
+        plan = new Parser().generateLogicalPlan(tid, "SELECT * FROM PROJA x WHERE x.c2 < 50;")
+                .physicalPlan(tid, stats, false);
+        scans.clear();
+        findScans(plan, scans);
+        assertNull(scans.get(0).getColumns());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ProjectionPushdownTest.class);
+    }
+}
@@ -0,0 +1,103 @@
+package simpledb.systemtest;
+
+import java.util.NoSuchElementException;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs a selective filter over a table larger than the BufferPool, so that
+ * every page is read and decoded again on every run, once with the Filter
+ * pushing its predicate into the scan and once with the Filter evaluating it
+ * on fully decoded tuples, and reports the time each takes after a warm-up
+ * run.
+ * <p>
+ * Usage: PushdownScanBenchmark [rows] [repetitions], e.g.
+ * <code>ant runbench -Dbench=PushdownScanBenchmark -Dbench.maxmemory=1G -Dbench.args="2000000 5"</code>
+ */
+public class PushdownScanBenchmark {
+
+    /** Hides the scan from the Filter, so that nothing is pushed into it. */
+    private static class Opaque implements OpIterator {
+        private static final long serialVersionUID = 1L;
+        private final OpIterator child;
+
+        Opaque(OpIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            return child.hasNext();
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            return child.next();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void close() {
+            child.close();
+        }
+    }
+
+    private static double run(TransactionId tid, HeapFile table, boolean pushdown) throws Exception {
+        OpIterator scan = new SeqScan(tid, table.getId(), "t");
+        if (!pushdown)
+            scan = new Opaque(scan);
+        // selects about 1% of the rows
+        OpIterator plan = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(10)), scan);
+        long start = System.nanoTime();
+        int count = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        if (count == 0)
+            throw new IllegalStateException("nothing selected");
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 2000000L;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(4, rows, 1000);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        run(tid, table, false);
+        run(tid, table, true);
+
+        double decoded = 0, pushed = 0;
+        for (int i = 0; i < reps; i++) {
+            decoded += run(tid, table, false);
+            pushed += run(tid, table, true);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("filter on decoded tuples: %.3f s, pushed into the scan: %.3f s (%.2fx)%n",
+                decoded / reps, pushed / reps, decoded / pushed);
+    }
+}
@@ -0,0 +1,69 @@
+package simpledb.systemtest;
+
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+
+/**
+ * Computes the statistics of a large table from every page and from samples
+ * of several fractions of its pages, and reports the time each takes and the
+ * error of the sampled statistics against the full scan: the relative error
+ * of the number of tuples, and the largest absolute error of the selectivity
+ * of = and &lt; over a range of constants of every field.
+ * <p>
+ * Usage: SampledStatsBenchmark [rows] [fields] [fractions...], e.g.
+ * <code>ant runbench -Dbench=SampledStatsBenchmark -Dbench.maxmemory=1G -Dbench.args="2000000 4 0.01 0.1"</code>
+ */
+public class SampledStatsBenchmark {
+
+    private static final int MAX_VALUE = 1 << 16;
+
+    private static TableStats stats(HeapFile table, double fraction, double[] seconds) {
+        TableStats.setSampleFraction(fraction);
+        long start = System.nanoTime();
+        TableStats s = new TableStats(table.getId(), 1000);
+        seconds[0] = (System.nanoTime() - start) / 1e9;
+        TableStats.resetSampleFraction();
+        return s;
+    }
+
+    private static double maxError(TableStats full, TableStats sampled, int fields, Predicate.Op op) {
+        double error = 0;
+        for (int i = 0; i < fields; i++) {
+            for (int v = 0; v <= MAX_VALUE; v += MAX_VALUE / 64) {
+                IntField c = new IntField(v);
+                error = Math.max(error, Math.abs(full.estimateSelectivity(i, op, c)
+                        - sampled.estimateSelectivity(i, op, c)));
+            }
+        }
+        return error;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 2000000L;
+        int fields = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        double[] fractions = { 0.01, 0.1 };
+        if (args.length > 2) {
+            fractions = new double[args.length - 2];
+            for (int i = 2; i < args.length; i++)
+                fractions[i - 2] = Double.parseDouble(args[i]);
+        }
+
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(rows, MAX_VALUE, Utility.getTupleDesc(fields));
+        System.out.printf("pages: %d%n", table.numPages());
+        double[] seconds = new double[1];
+        stats(table, 1, seconds);
+        TableStats full = stats(table, 1, seconds);
+        System.out.printf("full scan: %.3f s, %d tuples%n", seconds[0], full.totalTuples());
+        for (double fraction : fractions) {
+            TableStats sampled = stats(table, fraction, seconds);
+            System.out.printf("sample %.3f: %.3f s, tuples error %.2f%%, max error = %.4f, < %.4f%n",
+                    fraction, seconds[0],
+                    100.0 * Math.abs(sampled.totalTuples() - full.totalTuples()) / full.totalTuples(),
+                    maxError(full, sampled, fields, Predicate.Op.EQUALS),
+                    maxError(full, sampled, fields, Predicate.Op.LESS_THAN));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package simpledb.systemtest;
+
+import simpledb.execution.Predicate;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+
+/**
+ * Reports the mean and largest errors of the selectivities estimated with
+ * equal-width and equi-depth histograms, for equality and range predicates
+ * on the INT and prefixed STRING fields of {@link SkewedStatsTest}, over
+ * Zipfian values from uniform to very skewed.
+ * <p>
+ * Usage: SkewedStatsBenchmark [rows] [values], e.g.
+ * <code>ant runbench -Dbench=SkewedStatsBenchmark -Dbench.maxmemory=1G -Dbench.args="100000 1000"</code>
+ */
+public class SkewedStatsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int domain = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        String[] fields = { "int", "string" };
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN };
+        for (double exponent : new double[] { 0, 0.5, 1, 1.5, 2 }) {
+            int[] values = SkewedStatsTest.zipf(rows, domain, exponent, 1);
+            HeapFile f = SkewedStatsTest.createTable(values);
+            for (TableStats.HistogramType type : TableStats.HistogramType.values()) {
+                TableStats.setHistogramType(type);
+                long start = System.nanoTime();
+                TableStats stats = new TableStats(f.getId(), 1000);
+                long ms = (System.nanoTime() - start) / 1000000;
+                StringBuilder sb = new StringBuilder(String.format("zipf %.1f %-10s %5d ms", exponent, type, ms));
+                for (int field = 0; field < 2; field++) {
+                    for (Predicate.Op op : ops) {
+                        double[] e = SkewedStatsTest.errors(stats, field, op, values, domain);
+                        sb.append(String.format("  %s %s mean %.5f max %.5f", fields[field], op, e[0], e[1]));
+                    }
+                }
+                System.out.println(sb);
+            }
+        }
+        TableStats.resetHistogramType();
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.Field;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+/**
+ * Measures how far the selectivities estimated from table statistics are
+ * from the actual ones on skewed fields: an INT field with Zipfian values,
+ * and a STRING field of the same values after a long shared prefix.
+ */
+public class SkewedStatsTest extends SimpleDbTestBase {
+
+    static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+            new String[] { "n", "s" });
+    static final String PREFIX = "https://www.example.com/customers/accounts/";
+
+    /**
+     * @return rows values from 0 to values - 1, the one of rank k drawn with
+     *         probability proportional to 1 / k^exponent, the ranks given to
+     *         the values at random
+     */
+    static int[] zipf(int rows, int values, double exponent, long seed) {
+        Random r = new Random(seed);
+        double[] cumulative = new double[values];
+        double sum = 0;
+        for (int k = 0; k < values; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        int[] byRank = new int[values];
+        for (int k = 0; k < values; k++) {
+            int j = r.nextInt(k + 1);
+            byRank[k] = byRank[j];
+            byRank[j] = k;
+        }
+        int[] result = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            int k = Arrays.binarySearch(cumulative, r.nextDouble() * sum);
+            result[i] = byRank[Math.min(values - 1, k >= 0 ? k : -k - 1)];
+        }
+        return result;
+    }
+
+    static String string(int v) {
+        return PREFIX + String.format("%06d", v);
+    }
+
+    static Field field(int f, int v) {
+        return f == 0 ? new IntField(v) : new StringField(string(v), Type.STRING_LEN);
+    }
+
+    /** @return a table whose rows hold each of the values in both fields */
+    static HeapFile createTable(int[] values) throws IOException {
+        return SystemTestUtil.createLargeHeapFile(values.length, TD, new int[0], i -> {
+            Tuple t = new Tuple(TD);
+            t.setField(0, field(0, values[(int) i]));
+            t.setField(1, field(1, values[(int) i]));
+            return t;
+        });
+    }
+
+    /**
+     * @return the mean and the largest absolute difference between the
+     *         estimated and actual selectivities of <tt>field op v</tt> on a
+     *         table of the specified values, for each v from 0 to domain - 1
+     */
+    static double[] errors(TableStats stats, int field, Predicate.Op op, int[] values, int domain) {
+        long[] counts = new long[domain];
+        for (int v : values)
+            counts[v]++;
+        double sum = 0, max = 0;
+        long less = 0;
+        for (int v = 0; v < domain; v++) {
+            double actual = (op == Predicate.Op.EQUALS ? counts[v] : less) / (double) values.length;
+            double error = Math.abs(stats.estimateSelectivity(field, op, field(field, v)) - actual);
+            sum += error;
+            max = Math.max(max, error);
+            less += counts[v];
+        }
+        return new double[] { sum / domain, max };
+    }
+
+    private static TableStats stats(HeapFile f, TableStats.HistogramType type) {
+        TableStats.setHistogramType(type);
+        try {
+            return new TableStats(f.getId(), 1000);
+        } finally {
+            TableStats.resetHistogramType();
+        }
+    }
+
+    /** Equi-depth histograms estimate both fields closely, even very skewed. */
+    @Test public void equiDepthTest() throws IOException {
+        int[] values = zipf(20000, 1000, 1.2, 1);
+        TableStats s = stats(createTable(values), TableStats.HistogramType.EQUI_DEPTH);
+        for (int f = 0; f < 2; f++) {
+            assertEquals(0, errors(s, f, Predicate.Op.EQUALS, values, 1000)[1], 0.005);
+            assertEquals(0, errors(s, f, Predicate.Op.LESS_THAN, values, 1000)[1], 0.02);
+        }
+    }
+
+    /**
+     * Equal-width histograms get the heavy values wrong, and cannot tell
+     * apart strings that share their first characters at all.
+     */
+    @Test public void equiWidthTest() throws IOException {
+        int[] values = zipf(20000, 1000, 1.2, 2);
+        HeapFile f = createTable(values);
+        TableStats width = stats(f, TableStats.HistogramType.EQUI_WIDTH);
+        TableStats depth = stats(f, TableStats.HistogramType.EQUI_DEPTH);
+        for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN }) {
+            for (int field = 0; field < 2; field++) {
+                double[] w = errors(width, field, op, values, 1000);
+                double[] d = errors(depth, field, op, values, 1000);
+                assertTrue(d[0] < w[0]);
+                assertTrue(d[1] < w[1]);
+            }
+        }
+        assertTrue(errors(width, 1, Predicate.Op.LESS_THAN, values, 1000)[0] > 0.1);
+    }
+
+    /** Histograms of a sample of a skewed table still find its heavy values. */
+    @Test public void sampledTest() throws IOException {
+        int[] values = zipf(20000, 1000, 1.2, 3);
+        HeapFile f = createTable(values);
+        TableStats.setReservoirSize(4000);
+        try {
+            TableStats s = stats(f, TableStats.HistogramType.EQUI_DEPTH);
+            assertEquals(20000, s.totalTuples());
+            for (int field = 0; field < 2; field++) {
+                assertEquals(0, errors(s, field, Predicate.Op.EQUALS, values, 1000)[1], 0.01);
+                assertEquals(0, errors(s, field, Predicate.Op.LESS_THAN, values, 1000)[1], 0.04);
+            }
+        } finally {
+            TableStats.resetReservoirSize();
+        }
+    }
+
+    /** Tuples inserted and deleted later are counted in equi-depth histograms too. */
+    @Test public void insertDeleteTest() throws IOException {
+        int[] values = zipf(5000, 100, 1.0, 4);
+        TableStats s = stats(createTable(values), TableStats.HistogramType.EQUI_DEPTH);
+        double heavy = s.estimateSelectivity(0, Predicate.Op.EQUALS, field(0, values[0]));
+        Tuple t = new Tuple(TD);
+        t.setField(0, field(0, 500));
+        t.setField(1, field(1, 500));
+        for (int i = 0; i < 5000; i++)
+            s.addTuple(t);
+        assertEquals(0.5, s.estimateSelectivity(0, Predicate.Op.EQUALS, field(0, 500)), 0.01);
+        assertEquals(0.5, s.estimateSelectivity(1, Predicate.Op.GREATER_THAN_OR_EQ, field(1, 500)), 0.01);
+        assertEquals(0.5, s.estimateSelectivity(0, Predicate.Op.LESS_THAN, field(0, 100)), 0.01);
+        for (int i = 0; i < 5000; i++)
+            s.removeTuple(t);
+        assertEquals(0, s.estimateSelectivity(0, Predicate.Op.EQUALS, field(0, 500)), 0.001);
+        assertEquals(heavy, s.estimateSelectivity(0, Predicate.Op.EQUALS, field(0, values[0])), 0.001);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SkewedStatsTest.class);
+    }
+}
@@ -0,0 +1,76 @@
+package simpledb.systemtest;
+
+import simpledb.common.Database;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.TupleComparator;
+import simpledb.storage.Field;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compares sorting a wide table with the comparators from TupleComparator
+ * against comparing through Field.compare and Predicate.Op, as OrderBy used
+ * to.
+ * <p>
+ * Usage: SortComparatorBenchmark [rows] [columns] [rounds], e.g.
+ * <code>ant runbench -Dbench=SortComparatorBenchmark</code>.
+ */
+public class SortComparatorBenchmark {
+
+    /** The comparison OrderBy used before TupleComparator, for reference. */
+    private static int compareFields(Tuple a, Tuple b, int[] fields, boolean[] asc) {
+        for (int i = 0; i < fields.length; i++) {
+            Field f1 = a.getField(fields[i]);
+            Field f2 = b.getField(fields[i]);
+            if (f1.compare(Predicate.Op.EQUALS, f2))
+                continue;
+            if (f1.compare(Predicate.Op.GREATER_THAN, f2))
+                return asc[i] ? 1 : -1;
+            return asc[i] ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private static long time(List<Tuple> input, Comparator<Tuple> cmp, int rounds) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            List<Tuple> copy = new ArrayList<>(input);
+            long start = System.nanoTime();
+            copy.sort(cmp);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        // a small value range makes the later sort keys matter
+        HeapFile table = SystemTestUtil.createRandomHeapFile(columns, rows, 64, null, null);
+        TransactionId tid = new TransactionId();
+        List<Tuple> input = new ArrayList<>(rows);
+        SeqScan scan = new SeqScan(tid, table.getId(), "t");
+        scan.open();
+        while (scan.hasNext())
+            input.add(scan.next());
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        int[] fields = { columns - 1, 0, columns / 2 };
+        boolean[] asc = { true, false, true };
+        long legacy = time(input, (a, b) -> compareFields(a, b, fields, asc), rounds);
+        long compiled = time(input, TupleComparator.forKeys(table.getTupleDesc(), fields, asc), rounds);
+        System.out.printf("%d rows x %d columns, 3 sort keys, best of %d%n", rows, columns, rounds);
+        System.out.printf("Field.compare comparator: %.1f ms%n", legacy / 1e6);
+        System.out.printf("TupleComparator:          %.1f ms (%.2fx)%n", compiled / 1e6,
+                (double) legacy / compiled);
+    }
+}
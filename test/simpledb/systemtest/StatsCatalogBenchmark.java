@@ -0,0 +1,50 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+
+/**
+ * Analyzes some large tables and saves their statistics, then reports the
+ * time taken to get them at startup by reading every table, as the Parser
+ * did, and by loading the saved statistics.
+ * <p>
+ * Usage: StatsCatalogBenchmark [tables] [rows per table], e.g.
+ * <code>ant runbench -Dbench=StatsCatalogBenchmark -Dbench.maxmemory=1G -Dbench.args="4 500000"</code>
+ */
+public class StatsCatalogBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tables = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long rows = args.length > 1 ? Long.parseLong(args[1]) : 500000L;
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < tables; i++) {
+            HeapFile f = SystemTestUtil.createLargeRandomHeapFile(4, rows, 1 << 20);
+            names.add("t" + i);
+            Database.getCatalog().addTable(f, names.get(i));
+        }
+        File stats = File.createTempFile("catalog", ".stats");
+        stats.deleteOnExit();
+        stats.delete();
+        TableStats.setStatsFile(stats);
+        TableStats.analyze(names);
+        System.out.printf("stats file: %d bytes%n", stats.length());
+
+        long start = System.nanoTime();
+        TableStats.computeStatistics();
+        double compute = (System.nanoTime() - start) / 1e9;
+
+        TableStats.getStatsMap().clear();
+        TableStats.setStatsFile(stats);
+        start = System.nanoTime();
+        TableStats.getStatsMap();
+        double load = (System.nanoTime() - start) / 1e9;
+        System.out.printf("analyze: %.3f s, load: %.3f s%n", compute, load);
+    }
+}
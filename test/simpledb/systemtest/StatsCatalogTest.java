@@ -0,0 +1,167 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.Parser;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Insert;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+public class StatsCatalogTest extends SimpleDbTestBase {
+
+    @After public void tearDown() {
+        TableStats.setStatsFile(null);
+        TableStats.resetAnalyzeThreshold();
+    }
+
+    private static File statsFile() throws Exception {
+        File f = File.createTempFile("catalog", ".stats");
+        f.delete();
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static String addTable(HeapFile f) {
+        String name = "t" + SystemTestUtil.getUUID().replace("-", "");
+        Database.getCatalog().addTable(f, name);
+        return name;
+    }
+
+    /** Analyzed statistics are loaded from the file rather than recomputed. */
+    @Test public void testSaveAndLoad() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 1500, 100, null, new ArrayList<>());
+        String name = addTable(f);
+        File stats = statsFile();
+        TableStats.setStatsFile(stats);
+        TableStats.analyze(Collections.singletonList(name));
+        assertTrue(stats.exists());
+        TableStats analyzed = TableStats.getTableStats(name);
+        assertEquals(1500, analyzed.totalTuples());
+
+        // empty the first page on disk, keeping the number of pages
+        HeapPage p = (HeapPage) f.readPage(new HeapPageId(f.getId(), 0));
+        Iterator<Tuple> it = p.iterator();
+        while (it.hasNext())
+            p.deleteTuple(it.next());
+        f.writePage(p);
+
+        TableStats.getStatsMap().clear();
+        TableStats.setStatsFile(stats);
+        TableStats loaded = TableStats.getTableStats(name);
+        assertNotSame(analyzed, loaded);
+        assertEquals(1500, loaded.totalTuples());
+        assertEquals(analyzed.estimateScanCost(), loaded.estimateScanCost(), 0.0);
+        for (int v = 0; v < 100; v += 10) {
+            assertEquals(analyzed.estimateSelectivity(1, Predicate.Op.LESS_THAN, new IntField(v)),
+                    loaded.estimateSelectivity(1, Predicate.Op.LESS_THAN, new IntField(v)), 0.0);
+        }
+
+        // ANALYZE reads the table again
+        new Parser().processNextStatement("ANALYZE " + name + ";");
+        assertTrue(TableStats.getTableStats(name).totalTuples() < 1500);
+    }
+
+    /** Tables missing from the file, or with a different number of pages, are analyzed. */
+    @Test public void testLoadMissingAndResized() throws Exception {
+        HeapFile a = SystemTestUtil.createRandomHeapFile(2, 1500, 100, null, new ArrayList<>());
+        String aName = addTable(a);
+        File stats = statsFile();
+        TableStats.setStatsFile(stats);
+        TableStats.analyze(Collections.singletonList(aName));
+
+        Database.reset();
+        TableStats.getStatsMap().clear();
+        HeapFile a2 = SystemTestUtil.createRandomHeapFile(2, 3000, 100, null, new ArrayList<>());
+        Database.getCatalog().addTable(a2, aName);
+        HeapFile b = SystemTestUtil.createRandomHeapFile(2, 700, 100, null, new ArrayList<>());
+        String bName = addTable(b);
+        TableStats.setStatsFile(stats);
+        assertEquals(3000, TableStats.getTableStats(aName).totalTuples());
+        assertEquals(700, TableStats.getTableStats(bName).totalTuples());
+    }
+
+    /** Enough inserted tuples make a table be analyzed again in the background. */
+    @Test public void testStaleStatsReanalyzed() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 700, 100, null, new ArrayList<>());
+        String name = addTable(f);
+        TableStats.setAnalyzeThreshold(0);
+        TableStats.analyze(Collections.singletonList(name));
+        assertEquals(700, TableStats.getTableStats(name).totalTuples());
+
+        List<Tuple> tuples = new ArrayList<>();
+        TupleDesc td = Utility.getTupleDesc(2);
+        for (int i = 0; i < TableStats.ANALYZE_BASE_THRESHOLD; i++) {
+            Tuple t = new Tuple(td);
+            t.setInt(0, i);
+            t.setInt(1, i);
+            tuples.add(t);
+        }
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, new TupleIterator(td, tuples), f.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        // counted once the transaction commits
+        assertEquals(0, TableStats.getModifications(f.getId()));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(TableStats.ANALYZE_BASE_THRESHOLD, TableStats.getModifications(f.getId()));
+        TableStats before = TableStats.getTableStats(name);
+        assertEquals(700 + TableStats.ANALYZE_BASE_THRESHOLD, before.totalTuples());
+
+        // one more tuple passes the threshold
+        tid = new TransactionId();
+        insert = new Insert(tid, new TupleIterator(td, tuples.subList(0, 1)), f.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        assertSame(before, TableStats.getTableStats(name));
+        Database.getBufferPool().transactionComplete(tid);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (TableStats.getTableStats(name) == before && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(700 + TableStats.ANALYZE_BASE_THRESHOLD + 1, TableStats.getTableStats(name).totalTuples());
+        assertEquals(0, TableStats.getModifications(f.getId()));
+    }
+
+    /** The tuples of an aborted transaction are not counted. */
+    @Test public void testAbortedModificationsIgnored() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100, 100, null, new ArrayList<>());
+        String name = addTable(f);
+        TableStats.setAnalyzeThreshold(0);
+        TableStats.analyze(Collections.singletonList(name));
+
+        List<Tuple> tuples = new ArrayList<>();
+        TupleDesc td = Utility.getTupleDesc(2);
+        for (int i = 0; i <= TableStats.ANALYZE_BASE_THRESHOLD; i++) {
+            Tuple t = new Tuple(td);
+            t.setInt(0, i);
+            t.setInt(1, i);
+            tuples.add(t);
+        }
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, new TupleIterator(td, tuples), f.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(0, TableStats.getModifications(f.getId()));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(StatsCatalogTest.class);
+    }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.function.LongFunction;
 
 import org.junit.Assert;
 
@@ -90,6 +91,87 @@ public class SystemTestUtil {
         return temp;
     }
 
+    /**
+     * Creates a heap file of random integers by writing it a page at a time,
+     * so tables much larger than the JVM heap can be generated. The file is
+     * added to the catalog under a random name.
+     */
+    public static HeapFile createLargeRandomHeapFile(int columns, long rows, int maxValue)
+            throws IOException {
+        return createLargeRandomHeapFile(rows, maxValue, Utility.getTupleDesc(columns));
+    }
+
+    public static HeapFile createLargeRandomHeapFile(int columns, long rows, int maxValue,
+            String colPrefix) throws IOException {
+        return createLargeRandomHeapFile(rows, maxValue, Utility.getTupleDesc(columns, colPrefix));
+    }
+
+    /**
+     * Like {@link #createLargeRandomHeapFile(int, long, int)}, with fields of
+     * the specified types; STRING fields hold random numbers in text.
+     */
+    public static HeapFile createLargeRandomHeapFile(long rows, int maxValue, TupleDesc td)
+            throws IOException {
+        return createLargeRandomHeapFile(rows, maxValue, td, new int[0]);
+    }
+
+    /**
+     * Like {@link #createLargeRandomHeapFile(long, int, TupleDesc)}, with the
+     * specified STRING fields dictionary-encoded.
+     */
+    public static HeapFile createLargeRandomHeapFile(long rows, int maxValue, TupleDesc td,
+            int[] encodedFields) throws IOException {
+        int columns = td.numFields();
+        Random r = new Random();
+        return createLargeHeapFile(rows, td, encodedFields, i -> {
+            Tuple t = new Tuple(td);
+            for (int j = 0; j < columns; j++) {
+                int value = r.nextInt(maxValue);
+                if (td.getFieldType(j) == Type.STRING_TYPE)
+                    t.setField(j, new StringField("value " + value, Type.STRING_LEN));
+                else
+                    t.setField(j, new IntField(value));
+            }
+            return t;
+        });
+    }
+
+    /**
+     * Writes the specified number of tuples, each made by row from its
+     * number, to a new HeapFile added to the catalog, a page at a time.
+     */
+    public static HeapFile createLargeHeapFile(long rows, TupleDesc td, int[] encodedFields,
+            LongFunction<Tuple> row) throws IOException {
+        File temp = File.createTempFile("table", ".dat");
+        temp.deleteOnExit();
+        new File(temp.getPath() + ".dict").deleteOnExit();
+        HeapFile hf = new HeapFile(temp, td, encodedFields);
+        Database.getCatalog().addTable(hf, getUUID());
+
+        int pageNo = 0;
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), pageNo), HeapPage.createEmptyPageData());
+        try (java.io.OutputStream out = new java.io.BufferedOutputStream(new java.io.FileOutputStream(temp))) {
+            for (long i = 0; i < rows; i++) {
+                Tuple t = row.apply(i);
+                if (page.getNumEmptySlots() == 0) {
+                    if (hf.getDictionary() != null)
+                        hf.getDictionary().sync();
+                    out.write(page.getPageData());
+                    page = new HeapPage(new HeapPageId(hf.getId(), ++pageNo), HeapPage.createEmptyPageData());
+                }
+                try {
+                    page.insertTuple(t);
+                } catch (DbException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (hf.getDictionary() != null)
+                hf.getDictionary().sync();
+            out.write(page.getPageData());
+        }
+        return hf;
+    }
+
     public static List<Integer> tupleToList(Tuple tuple) {
         List<Integer> list = new ArrayList<>();
         for (int i = 0; i < tuple.getTupleDesc().numFields(); ++i) {
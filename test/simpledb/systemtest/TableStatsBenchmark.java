@@ -0,0 +1,84 @@
+package simpledb.systemtest;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.execution.WorkerPool;
+import simpledb.optimizer.IntHistogram;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Computes the statistics of a table larger than the BufferPool, once with
+ * two scans of the table, the first for the range of each field and the
+ * second for its histogram, and once with TableStats, which reads it once
+ * with WorkerPool.getParallelism() workers, and reports the time each takes
+ * after a warm-up run.
+ * <p>
+ * Usage: TableStatsBenchmark [rows] [fields] [repetitions], e.g.
+ * <code>ant runbench -Dbench=TableStatsBenchmark -Dbench.maxmemory=1G -Dbench.args="1000000 4 3"</code>
+ */
+public class TableStatsBenchmark {
+
+    private static void scan(TransactionId tid, HeapFile table, int fields, int[] min, int[] max,
+            IntHistogram[] hists) throws Exception {
+        SeqScan scan = new SeqScan(tid, table.getId(), "t");
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            for (int i = 0; i < fields; i++) {
+                int v = t.getInt(i);
+                if (hists != null) {
+                    hists[i].addValue(v);
+                } else {
+                    min[i] = Math.min(min[i], v);
+                    max[i] = Math.max(max[i], v);
+                }
+            }
+        }
+        scan.close();
+    }
+
+    private static double twoPass(TransactionId tid, HeapFile table, int fields) throws Exception {
+        long start = System.nanoTime();
+        int[] min = new int[fields], max = new int[fields];
+        for (int i = 0; i < fields; i++) {
+            min[i] = Integer.MAX_VALUE;
+            max[i] = Integer.MIN_VALUE;
+        }
+        scan(tid, table, fields, min, max, null);
+        IntHistogram[] hists = new IntHistogram[fields];
+        for (int i = 0; i < fields; i++)
+            hists[i] = new IntHistogram(100, min[i], max[i]);
+        scan(tid, table, fields, min, max, hists);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static double onePass(HeapFile table) {
+        long start = System.nanoTime();
+        new TableStats(table.getId(), 1000);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 1000000L;
+        int fields = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int reps = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(rows, 1 << 20, Utility.getTupleDesc(fields));
+        System.out.printf("pages: %d, workers: %d%n", table.numPages(), WorkerPool.getParallelism());
+        TransactionId tid = new TransactionId();
+        twoPass(tid, table, fields);
+        onePass(table);
+
+        double two = 0, one = 0;
+        for (int i = 0; i < reps; i++) {
+            two += twoPass(tid, table, fields);
+            one += onePass(table);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("two passes: %.3f s, one pass: %.3f s (%.2fx)%n", two / reps, one / reps, two / one);
+    }
+}
@@ -0,0 +1,121 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.Parser;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.Limit;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.SeqScan;
+import simpledb.execution.TopN;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+public class TopNTest extends SimpleDbTestBase {
+    private static final int ROWS = 3000;
+    private static final int COLUMNS = 2;
+
+    private void validateTopN(int limit, boolean asc)
+            throws IOException, DbException, TransactionAbortedException {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, null, tuples);
+
+        List<List<Integer>> expected = new ArrayList<>(tuples);
+        Comparator<List<Integer>> byFirst = Comparator.comparing(t -> t.get(0));
+        expected.sort(asc ? byFirst : byFirst.reversed());
+        expected = expected.subList(0, Math.min(limit, expected.size()));
+
+        TransactionId tid = new TransactionId();
+        TopN topN = new TopN(0, asc, limit, new SeqScan(tid, table.getId(), ""));
+        topN.open();
+        for (int pass = 0; pass < 2; pass++) {
+            List<List<Integer>> actual = new ArrayList<>();
+            while (topN.hasNext())
+                actual.add(SystemTestUtil.tupleToList(topN.next()));
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < actual.size(); i++)
+                assertEquals(expected.get(i).get(0), actual.get(i).get(0));
+            topN.rewind();
+        }
+        topN.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testTopNAscending() throws Exception {
+        validateTopN(10, true);
+    }
+
+    @Test public void testTopNDescending() throws Exception {
+        validateTopN(10, false);
+    }
+
+    @Test public void testLimitLargerThanInput() throws Exception {
+        validateTopN(ROWS * 2, true);
+    }
+
+    @Test public void testLimitZero() throws Exception {
+        validateTopN(0, true);
+    }
+
+    @Test public void testParsedLimit() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, null, tuples, "c");
+        String name = "TOPN";
+        Database.getCatalog().addTable(table, name);
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+
+        OpIterator plan = p.generateLogicalPlan(tid, "SELECT * FROM " + name
+                + " t ORDER BY t.c0 DESC LIMIT 7;").physicalPlan(tid, new HashMap<>(), false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof TopN);
+        int count = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        assertEquals(7, count);
+
+        plan = p.generateLogicalPlan(tid, "SELECT * FROM " + name + " t limit 3;")
+                .physicalPlan(tid, new HashMap<>(), false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof Limit);
+        count = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        assertEquals(3, count);
+
+        // the limit of one statement does not carry over to the next
+        plan = p.generateLogicalPlan(tid, "SELECT * FROM " + name + " t;")
+                .physicalPlan(tid, new HashMap<>(), false);
+        count = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        assertEquals(ROWS, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(TopNTest.class);
+    }
+}
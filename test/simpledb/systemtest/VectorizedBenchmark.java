@@ -0,0 +1,107 @@
+package simpledb.systemtest;
+
+import java.util.NoSuchElementException;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs a scan-filter-aggregate query over a table that fits in the
+ * BufferPool, once passing batches between the operators and once hiding
+ * each operator behind a plain OpIterator so that tuples are passed one at a
+ * time, and reports the time each takes after a warm-up run.
+ * <p>
+ * Usage: VectorizedBenchmark [rows] [repetitions], e.g.
+ * <code>ant runbench -Dbench=VectorizedBenchmark -Dbench.maxmemory=1G -Dbench.args="2000000 5"</code>
+ */
+public class VectorizedBenchmark {
+
+    /** Hides whether an iterator supports batches. */
+    private static class TupleAtATime implements OpIterator {
+        private static final long serialVersionUID = 1L;
+        private final OpIterator child;
+
+        TupleAtATime(OpIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            return child.hasNext();
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            return child.next();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void close() {
+            child.close();
+        }
+    }
+
+    private static OpIterator plan(TransactionId tid, HeapFile table, boolean batches) {
+        OpIterator scan = new SeqScan(tid, table.getId(), "t");
+        if (!batches)
+            scan = new TupleAtATime(scan);
+        OpIterator filter = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(800)),
+                new Filter(new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(100)), scan));
+        if (!batches)
+            filter = new TupleAtATime(filter);
+        return new Aggregate(filter, new int[] { 1, 2, 3 }, 0,
+                new Aggregator.Op[] { Aggregator.Op.COUNT, Aggregator.Op.SUM, Aggregator.Op.MAX });
+    }
+
+    private static double run(TransactionId tid, HeapFile table, boolean batches) throws Exception {
+        OpIterator agg = plan(tid, table, batches);
+        long start = System.nanoTime();
+        agg.open();
+        while (agg.hasNext())
+            agg.next();
+        agg.close();
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 2000000L;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        HeapFile table = SystemTestUtil.createLargeRandomHeapFile(4, rows, 1000);
+        // keep the whole table in memory, so that the operators are measured
+        Database.resetBufferPool(table.numPages() + 10);
+        TransactionId tid = new TransactionId();
+        run(tid, table, true);
+        run(tid, table, false);
+
+        double tuples = 0, batches = 0;
+        for (int i = 0; i < reps; i++) {
+            tuples += run(tid, table, false);
+            batches += run(tid, table, true);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        System.out.printf("tuple at a time: %.3f s, batches: %.3f s (%.2fx)%n",
+                tuples / reps, batches / reps, tuples / batches);
+    }
+}